@@ -0,0 +1,159 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.inventoryapp.PlantRow;
+import com.example.android.inventoryapp.data.PlantContract.PlantEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmark of the sorted and filtered pages of the catalog on 100,000 plants, read through
+ * {@link PlantProvider} first with the catalog indexes, then without them. The times are only
+ * logged, as they depend on the device; the test checks that both give the same pages.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CatalogQueryBenchmarkTest {
+
+    private static final String LOG_TAG = CatalogQueryBenchmarkTest.class.getSimpleName();
+
+    private static final String TEST_DATABASE_NAME = "catalog_query_benchmark_test.db";
+
+    private static final int PLANT_COUNT = 100000;
+
+    /**
+     * Number of pages read one after the other for each query
+     */
+    private static final int PAGE_COUNT = 10;
+
+    private static final int PAGE_SIZE = 50;
+
+    private static final String[] CATALOG_INDEX_NAMES = {
+            PlantEntry.NAME_INDEX_NAME,
+            PlantEntry.PRICE_INDEX_NAME,
+            PlantEntry.QUANTITY_INDEX_NAME,
+            PlantEntry.UPDATED_INDEX_NAME,
+            PlantEntry.LOW_STOCK_INDEX_NAME};
+
+    /**
+     * Sort orders and filters measured
+     */
+    private static final CatalogQuery[] QUERIES = {
+            CatalogQuery.DEFAULT.withSort(PlantEntry.SORT_BY_NAME),
+            CatalogQuery.DEFAULT.withSort(PlantEntry.SORT_BY_PRICE),
+            CatalogQuery.DEFAULT.withSort(PlantEntry.SORT_BY_QUANTITY),
+            CatalogQuery.DEFAULT.withSort(PlantEntry.SORT_BY_UPDATED),
+            CatalogQuery.DEFAULT.withSort(PlantEntry.SORT_BY_PRICE).withFilters(1000L, 2000L, null),
+            CatalogQuery.DEFAULT.withSort(PlantEntry.SORT_BY_QUANTITY).withFilters(null, null, 5),
+            CatalogQuery.DEFAULT.withSort(PlantEntry.SORT_BY_NAME).withFilters(null, null, 5),
+            // Almost all the plants are well stocked, as the quantities go up to MAX_QUANTITY
+            CatalogQuery.DEFAULT.withLowStockThreshold(PlantEntry.DEFAULT_LOW_STOCK_THRESHOLD)};
+
+    private TestDatabase mDatabase;
+    private PlantDbHelper mDbHelper;
+    private PlantProvider mProvider;
+
+    @Before
+    public void setUp() throws Exception {
+        mDatabase = new TestDatabase(TEST_DATABASE_NAME);
+        mDbHelper = mDatabase.getDbHelper();
+        mProvider = mDatabase.getProvider();
+
+        // Fixed seed, so that every run measures the same catalog
+        Random random = new Random(42);
+        ContentValues[] plants = new ContentValues[PLANT_COUNT];
+        for (int i = 0; i < plants.length; i++) {
+            plants[i] = TestDatabase.plantValues("Plant " + random.nextInt(1000000), random.nextInt(999999),
+                    random.nextInt(PlantEntry.MAX_QUANTITY + 1), "Supplier " + i % 50);
+        }
+        mProvider.bulkInsert(PlantEntry.CONTENT_URI, plants);
+
+        // Spread the times of the last change, as the bulk insertion gives them all the same
+        mDbHelper.getWritableDatabase().execSQL("UPDATE " + PlantEntry.TABLE_NAME + " SET "
+                + PlantEntry.COLUMN_PLANT_UPDATED_AT + " = (" + PlantEntry._ID + " * 7919) % 100003");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mDatabase.delete();
+    }
+
+    @Test
+    public void sortedAndFilteredPages_withAndWithoutIndexes() throws Exception {
+        long[][] indexedPages = new long[QUERIES.length][];
+        long[] indexedNs = new long[QUERIES.length];
+        for (int i = 0; i < QUERIES.length; i++) {
+            // Read once to warm up the statement cache and the page cache
+            readPages(QUERIES[i]);
+            long start = System.nanoTime();
+            indexedPages[i] = readPages(QUERIES[i]);
+            indexedNs[i] = System.nanoTime() - start;
+        }
+
+        for (String indexName : CATALOG_INDEX_NAMES) {
+            // The partial index only exists from Lollipop on
+            mDbHelper.getWritableDatabase().execSQL("DROP INDEX IF EXISTS " + indexName);
+        }
+
+        for (int i = 0; i < QUERIES.length; i++) {
+            readPages(QUERIES[i]);
+            long start = System.nanoTime();
+            long[] pages = readPages(QUERIES[i]);
+            long unindexedNs = System.nanoTime() - start;
+
+            assertArrayEquals(QUERIES[i].getSort(), indexedPages[i], pages);
+            Log.i(LOG_TAG, "Sort " + QUERIES[i].getSort()
+                    + (QUERIES[i].isLowStock() ? " (low stock)" : QUERIES[i].isFiltered() ? " (filtered)" : "") + ": "
+                    + indexedNs[i] / PAGE_COUNT / 1000 + " us per page with indexes, "
+                    + unindexedNs / PAGE_COUNT / 1000 + " us per page without");
+        }
+    }
+
+    /**
+     * Read the first pages of the given query, like the catalog does while scrolling,
+     * and return the IDs of the plants read.
+     */
+    private long[] readPages(CatalogQuery query) {
+        long[] ids = new long[PAGE_COUNT * PAGE_SIZE];
+        int count = 0;
+        PlantRow last = null;
+        for (int page = 0; page < PAGE_COUNT; page++) {
+            Uri uri = last == null ? query.buildFirstPageUri(PAGE_SIZE)
+                    : query.buildNextPageUri(getSortValue(last, query.getSort()), last.getId(), PAGE_SIZE);
+            Cursor cursor = mProvider.query(uri, PlantRow.PROJECTION, null, null, null);
+            try {
+                while (cursor.moveToNext()) {
+                    last = new PlantRow(cursor);
+                    ids[count++] = last.getId();
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return ids;
+    }
+
+    private static String getSortValue(PlantRow row, String sort) {
+        switch (sort) {
+            case PlantEntry.SORT_BY_NAME:
+                return row.getName();
+            case PlantEntry.SORT_BY_PRICE:
+                return String.valueOf(row.getPriceCents());
+            case PlantEntry.SORT_BY_QUANTITY:
+                return String.valueOf(row.getQuantity());
+            default:
+                return String.valueOf(row.getUpdatedAt());
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.inventoryapp.data.PlantContract.PlantEntry;
+import com.example.android.inventoryapp.data.PlantContract.StockMovementEntry;
+import com.example.android.inventoryapp.data.PlantContract.SupplierEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumentation test of the change log of {@link PlantProvider}: every write gives the
+ * plants it changes a new change sequence, and the changes URI returns the plants changed or
+ * deleted since a given sequence.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PlantChangeLogTest {
+
+    private static final String TEST_DATABASE_NAME = "plant_change_log_test.db";
+
+    private TestDatabase mDatabase;
+    private PlantProvider mProvider;
+
+    @Before
+    public void setUp() throws Exception {
+        mDatabase = new TestDatabase(TEST_DATABASE_NAME);
+        mProvider = mDatabase.getProvider();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mDatabase.delete();
+    }
+
+    @Test
+    public void writes_areReturnedInSequenceOrder() throws Exception {
+        long rose = insertPlant("Rose", "Green Farm");
+        long tulip = insertPlant("Tulip", "Green Farm");
+        long cactus = insertPlant("Cactus", "Desert Co");
+        long since = queryLastSequence(PlantEntry.buildChangesUri(0));
+
+        // Nothing has changed since the last sequence read
+        assertEquals(0, queryChanges(PlantEntry.buildChangesUri(since)).size());
+
+        // An adjustment, a rejected adjustment, a deletion, and an empty update
+        ContentValues delta = new ContentValues();
+        delta.put(PlantEntry.KEY_QUANTITY_DELTA, 2);
+        mProvider.update(PlantEntry.buildAdjustUri(tulip), delta, null, null);
+        delta.put(PlantEntry.KEY_QUANTITY_DELTA, -20);
+        mProvider.update(PlantEntry.buildAdjustUri(cactus), delta, null, null);
+        mProvider.delete(ContentUris.withAppendedId(PlantEntry.CONTENT_URI, rose), null, null);
+
+        ContentValues reason = new ContentValues();
+        reason.put(PlantEntry.KEY_MOVEMENT_REASON, StockMovementEntry.REASON_SALE);
+        assertEquals(0, mProvider.update(ContentUris.withAppendedId(PlantEntry.CONTENT_URI, cactus),
+                reason, null, null));
+
+        List<long[]> changes = queryChanges(PlantEntry.buildChangesUri(since));
+        assertEquals(2, changes.size());
+        assertArrayEquals(new long[]{tulip, 0}, changes.get(0));
+        assertArrayEquals(new long[]{rose, 1}, changes.get(1));
+    }
+
+    @Test
+    public void supplierChange_isChangeOfItsPlants() throws Exception {
+        long rose = insertPlant("Rose", "Green Farm");
+        long tulip = insertPlant("Tulip", "Green Farm");
+        insertPlant("Cactus", "Desert Co");
+        long since = queryLastSequence(PlantEntry.buildChangesUri(0));
+
+        long supplierId = querySupplierId(rose);
+        ContentValues supplier = new ContentValues();
+        supplier.put(SupplierEntry.COLUMN_SUPPLIER_PHONE, "555-0101");
+        assertEquals(1, mProvider.update(ContentUris.withAppendedId(SupplierEntry.CONTENT_URI, supplierId),
+                supplier, null, null));
+
+        // Both plants of the supplier, with the same sequence
+        List<long[]> changes = queryChanges(PlantEntry.buildChangesUri(since));
+        assertEquals(2, changes.size());
+        assertArrayEquals(new long[]{rose, 0}, changes.get(0));
+        assertArrayEquals(new long[]{tulip, 0}, changes.get(1));
+        assertEquals(since + 1, queryLastSequence(PlantEntry.buildChangesUri(since)));
+    }
+
+    @Test
+    public void supplierRenamedInBatch_isNotReusedByLaterPlants() throws Exception {
+        long rose = insertPlant("Rose", "Green Farm");
+        long supplierId = querySupplierId(rose);
+
+        // The first insertion resolves the supplier, which is then renamed in the same batch
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newInsert(PlantEntry.CONTENT_URI)
+                .withValues(TestDatabase.plantValues("Tulip", 450, 3, "Green Farm")).build());
+        operations.add(ContentProviderOperation.newUpdate(
+                ContentUris.withAppendedId(SupplierEntry.CONTENT_URI, supplierId))
+                .withValue(SupplierEntry.COLUMN_SUPPLIER_NAME, "Blue Farm").build());
+        operations.add(ContentProviderOperation.newInsert(PlantEntry.CONTENT_URI)
+                .withValues(TestDatabase.plantValues("Cactus", 450, 3, "Green Farm")).build());
+        long cactus = ContentUris.parseId(mProvider.applyBatch(operations)[2].uri);
+
+        // The last plant gets a new supplier with the name it was given
+        assertTrue(querySupplierId(cactus) != supplierId);
+        Cursor cursor = mProvider.query(ContentUris.withAppendedId(PlantEntry.CONTENT_URI, cactus),
+                new String[]{PlantEntry.COLUMN_PLANT_SUPPLIER_NAME}, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals("Green Farm", cursor.getString(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void pages_startAfterTheSequenceAndIdOfTheLastRow() throws Exception {
+        // A bulk insertion gives the same sequence to all its plants
+        ContentValues[] plants = new ContentValues[5];
+        for (int i = 0; i < plants.length; i++) {
+            plants[i] = TestDatabase.plantValues("Plant " + i, 450, 3, "Green Farm");
+        }
+        assertEquals(5, mProvider.bulkInsert(PlantEntry.CONTENT_URI, plants));
+        insertPlant("Fern", "Green Farm");
+
+        List<long[]> pages = new ArrayList<>();
+        long since = 0;
+        Long afterId = null;
+        while (true) {
+            Uri.Builder builder = PlantEntry.buildChangesUri(since).buildUpon()
+                    .appendQueryParameter(PlantEntry.QUERY_PARAMETER_LIMIT, "2");
+            if (afterId != null) {
+                builder.appendQueryParameter(PlantEntry.QUERY_PARAMETER_AFTER_ID, String.valueOf(afterId));
+            }
+            Cursor cursor = mProvider.query(builder.build(), new String[]{PlantEntry.COLUMN_PLANT_NAME},
+                    null, null, null);
+            try {
+                if (!cursor.moveToLast()) {
+                    break;
+                }
+                since = cursor.getLong(cursor.getColumnIndexOrThrow(PlantEntry.COLUMN_PLANT_UPDATED_SEQ));
+                afterId = cursor.getLong(cursor.getColumnIndexOrThrow(PlantEntry._ID));
+                pages.add(new long[]{afterId, since});
+            } finally {
+                cursor.close();
+            }
+        }
+
+        // 6 plants in pages of 2, the last one with the next sequence
+        assertEquals(3, pages.size());
+        assertEquals(pages.get(0)[1], pages.get(1)[1]);
+        assertEquals(pages.get(1)[1] + 1, pages.get(2)[1]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownColumn_isRejected() throws Exception {
+        mProvider.query(PlantEntry.buildChangesUri(0), new String[]{"COUNT(*)"}, null, null, null);
+    }
+
+    /**
+     * Insert a plant with the given name and supplier through the provider, and return its ID.
+     */
+    private long insertPlant(String name, String supplierName) {
+        return ContentUris.parseId(mProvider.insert(PlantEntry.CONTENT_URI,
+                TestDatabase.plantValues(name, 450, 3, supplierName)));
+    }
+
+    /**
+     * Read the supplier ID of the plant with the given ID.
+     */
+    private long querySupplierId(long plantId) {
+        Cursor cursor = mProvider.query(ContentUris.withAppendedId(PlantEntry.CONTENT_URI, plantId),
+                new String[]{PlantEntry.COLUMN_PLANT_SUPPLIER_ID}, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Read the changes of the given changes URI, as {ID, deleted} pairs.
+     */
+    private List<long[]> queryChanges(Uri uri) {
+        List<long[]> changes = new ArrayList<>();
+        Cursor cursor = mProvider.query(uri, new String[]{PlantEntry._ID}, null, null, null);
+        try {
+            assertEquals(Arrays.asList(PlantEntry._ID, PlantEntry.COLUMN_PLANT_UPDATED_SEQ, PlantEntry.COLUMN_DELETED),
+                    Arrays.asList(cursor.getColumnNames()));
+            while (cursor.moveToNext()) {
+                changes.add(new long[]{cursor.getLong(0), cursor.getLong(2)});
+            }
+        } finally {
+            cursor.close();
+        }
+        return changes;
+    }
+
+    /**
+     * Read the greatest change sequence of the given changes URI.
+     */
+    private long queryLastSequence(Uri uri) {
+        Cursor cursor = mProvider.query(uri, null, null, null, null);
+        try {
+            assertTrue(cursor.moveToLast());
+            return cursor.getLong(cursor.getColumnIndexOrThrow(PlantEntry.COLUMN_PLANT_UPDATED_SEQ));
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.inventoryapp.data.PlantContract.PlantEntry;
+import com.example.android.inventoryapp.data.PlantContract.SupplierEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumentation test of the connection configuration of {@link PlantDbHelper}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PlantDbHelperTest {
+
+    private static final String TEST_DATABASE_NAME = "plant_db_helper_test.db";
+
+    private TestDatabase mDatabase;
+    private PlantDbHelper mDbHelper;
+
+    @Before
+    public void setUp() throws Exception {
+        mDatabase = new TestDatabase(TEST_DATABASE_NAME);
+        mDbHelper = mDatabase.getDbHelper();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mDatabase.delete();
+    }
+
+    @Test
+    public void database_usesWriteAheadLogging() throws Exception {
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        assertEquals("wal", DatabaseUtils.stringForQuery(db, "PRAGMA journal_mode", null).toLowerCase());
+        // NORMAL is 1
+        assertEquals(1, DatabaseUtils.longForQuery(db, "PRAGMA synchronous", null));
+        // The automatic checkpoints are only a backstop
+        assertEquals(PlantDbHelper.AUTOCHECKPOINT_PAGES,
+                DatabaseUtils.longForQuery(db, "PRAGMA wal_autocheckpoint", null));
+    }
+
+    /**
+     * Keep a large write transaction open on a background thread, and check that a query
+     * on another thread completes meanwhile, and only sees the committed rows.
+     */
+    @Test
+    public void read_isNotBlockedByWriteTransaction() throws Exception {
+        final SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        final long supplierId = insertSupplier(db);
+        db.insertOrThrow(PlantEntry.TABLE_NAME, null, createPlant("Committed", supplierId));
+
+        final CountDownLatch written = new CountDownLatch(1);
+        final CountDownLatch read = new CountDownLatch(1);
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                db.beginTransactionNonExclusive();
+                try {
+                    for (int i = 0; i < 5000; i++) {
+                        db.insertOrThrow(PlantEntry.TABLE_NAME, null, createPlant("Uncommitted " + i, supplierId));
+                    }
+                    written.countDown();
+                    // Keep the transaction open until the reader is done
+                    read.await(10, TimeUnit.SECONDS);
+                    db.setTransactionSuccessful();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    db.endTransaction();
+                }
+            }
+        });
+        writer.start();
+        assertTrue(written.await(30, TimeUnit.SECONDS));
+
+        final long[] count = {-1};
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Cursor cursor = db.query(PlantEntry.TABLE_NAME, null, null, null, null, null, null);
+                try {
+                    count[0] = cursor.getCount();
+                } finally {
+                    cursor.close();
+                }
+                read.countDown();
+            }
+        });
+        long start = System.nanoTime();
+        reader.start();
+        // The writer only finishes once the reader is done, so a blocked reader times out
+        reader.join(TimeUnit.SECONDS.toMillis(5));
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertFalse("Read blocked by the write transaction", reader.isAlive());
+        assertEquals(1, count[0]);
+        assertTrue("Read took " + elapsedMs + " ms", elapsedMs < 1000);
+
+        writer.join();
+        assertEquals(5001, DatabaseUtils.queryNumEntries(db, PlantEntry.TABLE_NAME));
+    }
+
+    @Test
+    public void checkpoint_emptiesWriteAheadLog() throws Exception {
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        long supplierId = insertSupplier(db);
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < 5000; i++) {
+                db.insertOrThrow(PlantEntry.TABLE_NAME, null, createPlant("Plant " + i, supplierId));
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        mDbHelper.checkpoint();
+        // The second column is the number of pages in the log, the third one the pages copied
+        Cursor cursor = db.rawQuery("PRAGMA wal_checkpoint(PASSIVE)", null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(cursor.getLong(1), cursor.getLong(2));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Insert the supplier of the test plants into the suppliers table, and return its ID.
+     */
+    private static long insertSupplier(SQLiteDatabase db) {
+        ContentValues values = new ContentValues();
+        values.put(SupplierEntry.COLUMN_SUPPLIER_NAME, "Supplier");
+        values.put(SupplierEntry.COLUMN_SUPPLIER_PHONE, "555-0100");
+        values.put(SupplierEntry.COLUMN_SUPPLIER_EMAIL, "supplier@example.com");
+        return db.insertOrThrow(SupplierEntry.TABLE_NAME, null, values);
+    }
+
+    /**
+     * Return the values of a row of the plants table with the given name and supplier.
+     */
+    private static ContentValues createPlant(String name, long supplierId) {
+        ContentValues values = new ContentValues();
+        values.put(PlantEntry.COLUMN_PLANT_NAME, name);
+        values.put(PlantEntry.COLUMN_PLANT_PRICE_CENTS, 999);
+        values.put(PlantEntry.COLUMN_PLANT_QUANTITY, 10);
+        values.put(PlantEntry.COLUMN_PLANT_SUPPLIER_ID, supplierId);
+        return values;
+    }
+}
@@ -0,0 +1,302 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteConstraintException;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Build;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.inventoryapp.data.PlantContract.PlantEntry;
+import com.example.android.inventoryapp.data.PlantContract.StockMovementEntry;
+import com.example.android.inventoryapp.data.PlantContract.SummaryEntry;
+import com.example.android.inventoryapp.data.PlantContract.SupplierEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Instrumentation test of {@link PlantMigrations}, upgrading fixture databases created
+ * with the schema of version 1 to the current version.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PlantMigrationsTest {
+
+    private static final String TEST_DATABASE_NAME = "plant_migrations_test.db";
+
+    /**
+     * Schema of the plants table in version 1, frozen here on purpose: it must not follow
+     * the changes of the contract.
+     */
+    private static final String VERSION_1_SCHEMA = "CREATE TABLE plants ("
+            + "_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + "plant_name TEXT NOT NULL, "
+            + "plant_price REAL NOT NULL, "
+            + "plant_quantity INTEGER NOT NULL DEFAULT 0, "
+            + "plant_image TEXT, "
+            + "plant_supplier_name TEXT NOT NULL, "
+            + "plant_supplier_phone TEXT NOT NULL, "
+            + "plant_supplier_email TEXT NOT NULL);";
+
+    private TestDatabase mDatabase;
+    private PlantDbHelper mDbHelper;
+
+    @Before
+    public void setUp() throws Exception {
+        mDatabase = new TestDatabase(TEST_DATABASE_NAME);
+        mDbHelper = mDatabase.getDbHelper();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mDatabase.delete();
+    }
+
+    @Test
+    public void migrations_areOrderedWithoutGaps() throws Exception {
+        int version = PlantMigrations.FIRST_VERSION;
+        for (PlantMigrations.Migration migration : PlantMigrations.MIGRATIONS) {
+            assertEquals(version + 1, migration.version);
+            version = migration.version;
+        }
+        assertEquals(PlantDbHelper.DATABASE_VERSION, version);
+    }
+
+    @Test
+    public void upgradeFromVersion1_keepsData() throws Exception {
+        createVersion1Fixture();
+
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        assertEquals(PlantDbHelper.DATABASE_VERSION, db.getVersion());
+
+        Cursor cursor = db.query(PlantEntry.VIEW_NAME, null, null, null, null, null, PlantEntry._ID);
+        try {
+            assertEquals(3, cursor.getCount());
+            assertTrue(cursor.moveToFirst());
+            assertEquals(1, cursor.getLong(cursor.getColumnIndexOrThrow(PlantEntry._ID)));
+            assertEquals("Rose", cursor.getString(cursor.getColumnIndexOrThrow(PlantEntry.COLUMN_PLANT_NAME)));
+            assertEquals(450, PlantEntry.getPriceCents(cursor));
+            assertEquals(12, cursor.getInt(cursor.getColumnIndexOrThrow(PlantEntry.COLUMN_PLANT_QUANTITY)));
+            assertEquals("Green Farm",
+                    cursor.getString(cursor.getColumnIndexOrThrow(PlantEntry.COLUMN_PLANT_SUPPLIER_NAME)));
+        } finally {
+            cursor.close();
+        }
+
+        // The search index has been filled with the plants already in the database
+        assertEquals(2, DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM " + PlantEntry.SEARCH_TABLE_NAME
+                + " WHERE " + PlantEntry.SEARCH_TABLE_NAME + " MATCH ?", new String[]{"green"}));
+    }
+
+    @Test
+    public void upgradeFromVersion1_usesIndexes() throws Exception {
+        createVersion1Fixture();
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+
+        assertPlanUsesIndex(db, PlantEntry.NAME_INDEX_NAME, "SELECT * FROM " + PlantEntry.TABLE_NAME
+                + " ORDER BY " + PlantEntry.COLUMN_PLANT_NAME + " COLLATE NOCASE", null);
+        assertPlanUsesIndex(db, PlantEntry.SUPPLIER_INDEX_NAME, "SELECT * FROM " + PlantEntry.TABLE_NAME
+                + " WHERE " + PlantEntry.COLUMN_PLANT_SUPPLIER_ID + " = ?", new String[]{"1"});
+        assertPlanUsesIndex(db, PlantEntry.QUANTITY_INDEX_NAME, "SELECT * FROM " + PlantEntry.TABLE_NAME
+                + " WHERE " + PlantEntry.COLUMN_PLANT_QUANTITY + " < ?", new String[]{"5"});
+        assertPlanUsesIndex(db, PlantEntry.PRICE_INDEX_NAME, "SELECT * FROM " + PlantEntry.TABLE_NAME
+                + " ORDER BY " + PlantEntry.COLUMN_PLANT_PRICE_CENTS + ", " + PlantEntry._ID, null);
+        assertPlanUsesIndex(db, PlantEntry.UPDATED_INDEX_NAME, "SELECT * FROM " + PlantEntry.TABLE_NAME
+                + " ORDER BY " + PlantEntry.COLUMN_PLANT_UPDATED_AT + " DESC, " + PlantEntry._ID + " DESC", null);
+    }
+
+    @Test
+    public void upgradeFromVersion1_readsLowStockFromPartialIndex() throws Exception {
+        // Partial indexes came with the SQLite of Lollipop
+        assumeTrue(Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP);
+        createVersion1Fixture();
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+
+        // The same query as the low stock URI of the provider
+        assertPlanUsesIndex(db, PlantEntry.LOW_STOCK_INDEX_NAME, "SELECT * FROM " + PlantEntry.TABLE_NAME
+                + " WHERE " + PlantMigrations.LOW_STOCK_INDEX_WHERE + " AND " + PlantEntry.COLUMN_PLANT_QUANTITY
+                + " < ? ORDER BY " + PlantEntry.COLUMN_PLANT_QUANTITY + ", " + PlantEntry._ID,
+                new String[]{String.valueOf(PlantEntry.DEFAULT_LOW_STOCK_THRESHOLD)});
+
+        // The plants already in the database have been indexed: Tulip, out of stock, and Cactus,
+        // low on stock, are to reorder, as counted apart by the summary
+        assertEquals(2, DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM " + PlantEntry.TABLE_NAME
+                + " INDEXED BY " + PlantEntry.LOW_STOCK_INDEX_NAME
+                + " WHERE " + PlantMigrations.LOW_STOCK_INDEX_WHERE + " AND " + PlantEntry.COLUMN_PLANT_QUANTITY
+                + " < " + PlantEntry.DEFAULT_LOW_STOCK_THRESHOLD, null));
+        assertEquals(2, DatabaseUtils.longForQuery(db, "SELECT " + SummaryEntry.COLUMN_OUT_OF_STOCK_COUNT
+                + " + " + SummaryEntry.COLUMN_LOW_STOCK_COUNT + " FROM " + SummaryEntry.TABLE_NAME, null));
+    }
+
+    @Test
+    public void upgradeFromVersion1_computesSummary() throws Exception {
+        createVersion1Fixture();
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+
+        // Rose: 4.5 x 12, Tulip: out of stock, Cactus: 7.0 x 3, low on stock
+        assertSummary(db, 3, 7500, 1, 1);
+
+        // The triggers keep the summary equal to the totals computed from the plants
+        db.execSQL("INSERT INTO plants (plant_name, plant_price_cents, plant_quantity, supplier_id) "
+                + "VALUES ('Fern', 300, 2, 1)");
+        db.execSQL("UPDATE plants SET plant_quantity = 4 WHERE plant_name = 'Tulip'");
+        db.execSQL("UPDATE plants SET plant_price_cents = 500 WHERE plant_name = 'Rose'");
+        db.execSQL("UPDATE suppliers SET supplier_phone = '555-0101' WHERE supplier_name = 'Desert Co'");
+        db.execSQL("DELETE FROM plants WHERE plant_name = 'Cactus'");
+
+        // Rose: 5.0 x 12, Tulip: 2.25 x 4, low on stock, Fern: 3.0 x 2, low on stock
+        assertSummary(db, 3, 7500, 0, 2);
+        assertSummary(db, DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM plants", null),
+                DatabaseUtils.longForQuery(db, "SELECT SUM(plant_price_cents * plant_quantity) FROM plants", null),
+                DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM plants WHERE plant_quantity = 0", null),
+                DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM plants WHERE plant_quantity BETWEEN 1 AND "
+                        + (SummaryEntry.LOW_STOCK_THRESHOLD - 1), null));
+    }
+
+    @Test
+    public void upgradeFromVersion1_movesSuppliersToTheirTable() throws Exception {
+        createVersion1Fixture();
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+
+        // Rose and Tulip share the same supplier row
+        assertEquals(2, DatabaseUtils.queryNumEntries(db, SupplierEntry.TABLE_NAME));
+        assertEquals(1, DatabaseUtils.longForQuery(db, "SELECT COUNT(DISTINCT " + PlantEntry.COLUMN_PLANT_SUPPLIER_ID
+                + ") FROM " + PlantEntry.TABLE_NAME + " WHERE " + PlantEntry.COLUMN_PLANT_NAME
+                + " IN ('Rose', 'Tulip')", null));
+
+        // The IDs of the plants aren't used again after the rebuild of the table
+        db.execSQL("INSERT INTO plants (plant_name, plant_price_cents, plant_quantity, supplier_id) "
+                + "VALUES ('Fern', 300, 2, 1)");
+        assertEquals(4, DatabaseUtils.longForQuery(db, "SELECT MAX(_id) FROM plants", null));
+
+        // A plant can't refer to a supplier that doesn't exist
+        try {
+            db.execSQL("INSERT INTO plants (plant_name, plant_price_cents, plant_quantity, supplier_id) "
+                    + "VALUES ('Orchid', 1200, 1, 99)");
+            fail("Plant inserted with a missing supplier");
+        } catch (SQLiteConstraintException expected) {
+        }
+
+        // Renaming a supplier renames it in the search index of all its plants
+        db.execSQL("UPDATE suppliers SET supplier_name = 'Blue Farm' WHERE supplier_name = 'Green Farm'");
+        assertEquals(0, DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM " + PlantEntry.SEARCH_TABLE_NAME
+                + " WHERE " + PlantEntry.SEARCH_TABLE_NAME + " MATCH ?", new String[]{"green"}));
+        assertEquals(3, DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM " + PlantEntry.SEARCH_TABLE_NAME
+                + " WHERE " + PlantEntry.SEARCH_TABLE_NAME + " MATCH ?", new String[]{"blue"}));
+    }
+
+    @Test
+    public void upgradeFromVersion1_opensStockLedger() throws Exception {
+        createVersion1Fixture();
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+
+        // Rose and Cactus are in stock, Tulip has no movement
+        assertEquals(2, DatabaseUtils.queryNumEntries(db, StockMovementEntry.TABLE_NAME));
+        assertEquals(0, DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM plants WHERE plant_quantity != "
+                + "(SELECT IFNULL(SUM(delta), 0) FROM stock_movements WHERE plant_id = plants._id)", null));
+
+        // The quantity at a given time is read from the index alone
+        assertPlanUsesIndex(db, StockMovementEntry.PLANT_INDEX_NAME, "SELECT SUM(delta) FROM "
+                + StockMovementEntry.TABLE_NAME + " WHERE plant_id = ? AND created_at <= ?", new String[]{"1", "0"});
+
+        // The movements of a plant are deleted with the plant
+        db.execSQL("DELETE FROM plants WHERE plant_name = 'Cactus'");
+        assertEquals(1, DatabaseUtils.queryNumEntries(db, StockMovementEntry.TABLE_NAME));
+    }
+
+    @Test
+    public void upgradeFromVersion1_startsChangeLog() throws Exception {
+        createVersion1Fixture();
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+
+        // All the plants start at the first sequence, read through the view
+        assertEquals(3, DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM " + PlantEntry.VIEW_NAME
+                + " WHERE " + PlantEntry.COLUMN_PLANT_UPDATED_SEQ + " = 1", null));
+        assertEquals(2, PlantChangeLog.nextSequence(db));
+
+        // The changes are read from the index by change sequence
+        assertPlanUsesIndex(db, PlantEntry.UPDATED_SEQ_INDEX_NAME, "SELECT _id FROM " + PlantEntry.VIEW_NAME
+                + " WHERE updated_seq > ? ORDER BY updated_seq, _id", new String[]{"1"});
+
+        // A change of a supplier is a change of all its plants
+        db.execSQL("UPDATE suppliers SET supplier_phone = '555-0101' WHERE supplier_name = 'Green Farm'");
+        assertEquals(2, DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM plants WHERE updated_seq = 2", null));
+    }
+
+    @Test
+    public void create_matchesUpgradedSchema() throws Exception {
+        // A new database goes through the same steps as an upgraded one
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        assertEquals(PlantDbHelper.DATABASE_VERSION, db.getVersion());
+        int partialIndexCount = Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP ? 1 : 0;
+        assertEquals(6 + partialIndexCount, DatabaseUtils.longForQuery(db,
+                "SELECT COUNT(*) FROM sqlite_master WHERE type = 'index'"
+                + " AND tbl_name = ? AND name LIKE 'plants\\_%\\_index' ESCAPE '\\'",
+                new String[]{PlantEntry.TABLE_NAME}));
+    }
+
+    /**
+     * Create the test database with the schema and the version of version 1, and a few plants.
+     */
+    private void createVersion1Fixture() {
+        SQLiteDatabase db = mDatabase.getContext().openOrCreateDatabase(TEST_DATABASE_NAME, Context.MODE_PRIVATE, null);
+        try {
+            db.execSQL(VERSION_1_SCHEMA);
+            String insert = "INSERT INTO plants (plant_name, plant_price, plant_quantity, plant_image, "
+                    + "plant_supplier_name, plant_supplier_phone, plant_supplier_email) VALUES ";
+            db.execSQL(insert + "('Rose', 4.5, 12, NULL, 'Green Farm', '555-0100', 'farm@example.com')");
+            db.execSQL(insert + "('Tulip', 2.25, 0, NULL, 'Green Farm', '555-0100', 'farm@example.com')");
+            db.execSQL(insert + "('Cactus', 7.0, 3, 'content://media/external/images/media/1', "
+                    + "'Desert Co', '555-0199', 'desert@example.com')");
+            db.setVersion(1);
+        } finally {
+            db.close();
+        }
+    }
+
+    /**
+     * Check the single row of the inventory summary.
+     */
+    private static void assertSummary(SQLiteDatabase db, long plantCount, long stockValueCents,
+                                      long outOfStockCount, long lowStockCount) {
+        Cursor cursor = db.query(SummaryEntry.TABLE_NAME, null, null, null, null, null, null);
+        try {
+            assertEquals(1, cursor.getCount());
+            assertTrue(cursor.moveToFirst());
+            assertEquals(plantCount, cursor.getLong(cursor.getColumnIndexOrThrow(SummaryEntry.COLUMN_PLANT_COUNT)));
+            assertEquals(stockValueCents,
+                    cursor.getLong(cursor.getColumnIndexOrThrow(SummaryEntry.COLUMN_STOCK_VALUE_CENTS)));
+            assertEquals(outOfStockCount,
+                    cursor.getLong(cursor.getColumnIndexOrThrow(SummaryEntry.COLUMN_OUT_OF_STOCK_COUNT)));
+            assertEquals(lowStockCount,
+                    cursor.getLong(cursor.getColumnIndexOrThrow(SummaryEntry.COLUMN_LOW_STOCK_COUNT)));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Check that the query plan of the given query uses the given index.
+     */
+    private static void assertPlanUsesIndex(SQLiteDatabase db, String indexName, String sql, String[] args) {
+        StringBuilder plan = new StringBuilder();
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+        try {
+            // The detail is the last column on every version of SQLite
+            int detailIndex = cursor.getColumnCount() - 1;
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(detailIndex)).append('\n');
+            }
+        } finally {
+            cursor.close();
+        }
+        assertTrue(sql + ":\n" + plan, plan.indexOf("INDEX " + indexName) >= 0);
+        assertFalse(sql + ":\n" + plan, plan.indexOf("TEMP B-TREE") >= 0);
+    }
+}
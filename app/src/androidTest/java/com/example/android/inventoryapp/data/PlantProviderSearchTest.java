@@ -0,0 +1,197 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDebug;
+import android.net.Uri;
+import android.support.test.runner.AndroidJUnit4;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.example.android.inventoryapp.PlantRow;
+import com.example.android.inventoryapp.data.PlantContract.PlantEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumentation test of the search of {@link PlantProvider}, checking that all the searches
+ * share the same compiled statement whatever the text searched for, and that the pages of the
+ * results follow the ranking of the whole search.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PlantProviderSearchTest {
+
+    private static final String LOG_TAG = PlantProviderSearchTest.class.getSimpleName();
+
+    private static final String TEST_DATABASE_NAME = "plant_provider_search_test.db";
+
+    private static final String[] NAMES = {"Rose", "Tulip", "Orchid", "Lavender", "Cactus", "Fern"};
+
+    private static final String[] SUPPLIERS = {"Green Farm", "Desert Co", "Rosewood Nursery"};
+
+    /**
+     * Texts searched for, as typed one letter after the other
+     */
+    private static final String[] QUERIES = {"r", "ro", "ros", "rose", "t", "tu", "tul", "or", "orc",
+            "la", "lav", "ca", "cac", "fe", "fer", "gr", "gre", "green", "de", "des"};
+
+    private TestDatabase mDatabase;
+    private PlantDbHelper mDbHelper;
+    private PlantProvider mProvider;
+
+    @Before
+    public void setUp() throws Exception {
+        mDatabase = new TestDatabase(TEST_DATABASE_NAME);
+        mDbHelper = mDatabase.getDbHelper();
+        mProvider = mDatabase.getProvider();
+
+        ContentValues[] plants = new ContentValues[1000];
+        for (int i = 0; i < plants.length; i++) {
+            plants[i] = TestDatabase.plantValues(NAMES[i % NAMES.length] + " " + i, 150 + i % 20 * 100, i % 50,
+                    SUPPLIERS[i % SUPPLIERS.length]);
+        }
+        mProvider.bulkInsert(PlantEntry.CONTENT_URI, plants);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mDatabase.delete();
+    }
+
+    @Test
+    public void repeatedSearches_hitStatementCache() throws Exception {
+        // Compile the statement of the search once
+        search("warm up");
+
+        long[] before = getStatementCacheStats();
+        for (String query : QUERIES) {
+            search(query);
+        }
+        long[] after = getStatementCacheStats();
+
+        // Every search found the statement compiled by the first one
+        assertEquals("Statement cache misses", 0, after[1] - before[1]);
+        assertTrue("Statement cache hits", after[0] - before[0] >= QUERIES.length);
+    }
+
+    /**
+     * Compare the time of the searches through the provider, which reuse the same compiled
+     * statement, with the time of the same searches written as distinct SQL strings, which
+     * SQLite has to parse and plan every time. The times are only logged, as they depend
+     * on the device.
+     */
+    @Test
+    public void boundSearches_saveParseAndPlanTime() throws Exception {
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        int rounds = 20;
+        search("warm up");
+
+        long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            for (String query : QUERIES) {
+                search(query + round);
+            }
+        }
+        long boundNs = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            for (String query : QUERIES) {
+                String text = query + round;
+                String like = DatabaseUtils.sqlEscapeString(text + "%");
+                String contains = DatabaseUtils.sqlEscapeString("%" + text + "%");
+                readAll(db.rawQuery("SELECT " + TextUtils.join(", ", PlantRow.PROJECTION) + " FROM "
+                        + PlantEntry.TABLE_NAME + " WHERE " + PlantEntry._ID + " IN (SELECT docid FROM "
+                        + PlantEntry.SEARCH_TABLE_NAME + " WHERE " + PlantEntry.SEARCH_TABLE_NAME
+                        + " MATCH " + DatabaseUtils.sqlEscapeString(text + "*") + ") ORDER BY CASE"
+                        + " WHEN " + PlantEntry.COLUMN_PLANT_NAME + " LIKE " + like + " THEN 0"
+                        + " WHEN " + PlantEntry.COLUMN_PLANT_NAME + " LIKE " + contains + " THEN 1"
+                        + " ELSE 2 END, " + PlantEntry.COLUMN_PLANT_NAME + " COLLATE NOCASE", null));
+            }
+        }
+        long literalNs = System.nanoTime() - start;
+
+        int count = rounds * QUERIES.length;
+        Log.i(LOG_TAG, "Bound searches: " + boundNs / count / 1000 + " us per search, "
+                + "literal searches: " + literalNs / count / 1000 + " us per search, "
+                + "saved: " + (literalNs - boundNs) / count / 1000 + " us per search");
+    }
+
+    @Test
+    public void pagedSearch_readsAllResultsInRankOrder() throws Exception {
+        for (String query : new String[]{"r", "ro", "gr", "de"}) {
+            List<Long> expectedIds = new ArrayList<>();
+            readIds(PlantEntry.buildSearchUri(query), expectedIds, new String[1]);
+            assertFalse(query, expectedIds.isEmpty());
+
+            // Read the results 7 at a time, each page after the last plant of the previous one
+            List<Long> ids = new ArrayList<>();
+            String[] lastName = new String[1];
+            int count = readIds(PlantEntry.buildSearchUri(query, 7), ids, lastName);
+            while (count == 7) {
+                long lastId = ids.get(ids.size() - 1);
+                count = readIds(PlantEntry.buildSearchUri(query, lastName[0], lastId, 7), ids, lastName);
+            }
+            assertEquals(query, expectedIds, ids);
+        }
+    }
+
+    /**
+     * Add the IDs of the plants read from the given URI to the given list, keep the name of
+     * the last one, and return the number of plants read.
+     */
+    private int readIds(Uri uri, List<Long> ids, String[] lastName) {
+        Cursor cursor = mProvider.query(uri, PlantRow.PROJECTION, null, null, null);
+        try {
+            int idColumn = cursor.getColumnIndexOrThrow(PlantEntry._ID);
+            int nameColumn = cursor.getColumnIndexOrThrow(PlantEntry.COLUMN_PLANT_NAME);
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getLong(idColumn));
+                lastName[0] = cursor.getString(nameColumn);
+            }
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void search(String query) {
+        readAll(mProvider.query(PlantEntry.buildSearchUri(query), PlantRow.PROJECTION, null, null, null));
+    }
+
+    private static void readAll(Cursor cursor) {
+        try {
+            while (cursor.moveToNext()) {
+                cursor.getLong(0);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Return the statement cache hits and misses of all the connections to the test database.
+     */
+    private static long[] getStatementCacheStats() {
+        long[] stats = new long[2];
+        for (SQLiteDebug.DbStats dbStats : SQLiteDebug.getDatabaseInfo().dbStats) {
+            // The cache statistics read "hits/misses/size"
+            if (dbStats.dbName.contains(TEST_DATABASE_NAME) && dbStats.cache != null) {
+                String[] cache = dbStats.cache.split("/");
+                stats[0] += Long.parseLong(cache[0].trim());
+                stats[1] += Long.parseLong(cache[1].trim());
+            }
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.inventoryapp.PlantRow;
+import com.example.android.inventoryapp.data.PlantContract.PlantEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumentation test of the cache of the plants read one by one by {@link PlantProvider},
+ * checking that the repeated reads are served from memory and that the writes are never
+ * hidden by the cache.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PlantRowCacheTest {
+
+    private static final String TEST_DATABASE_NAME = "plant_row_cache_test.db";
+
+    private TestDatabase mDatabase;
+    private PlantProvider mProvider;
+    private Uri mPlantUri;
+
+    @Before
+    public void setUp() throws Exception {
+        mDatabase = new TestDatabase(TEST_DATABASE_NAME);
+        mProvider = mDatabase.getProvider();
+
+        mPlantUri = mProvider.insert(PlantEntry.CONTENT_URI, TestDatabase.plantValues("Rose", 450, 12, "Green Farm"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mDatabase.delete();
+    }
+
+    @Test
+    public void repeatedReads_areServedFromMemory() throws Exception {
+        Bundle before = getStats();
+        assertEquals("Rose", readName());
+        assertEquals("Rose", readName());
+        assertEquals("Rose", readName());
+        Bundle after = getStats();
+
+        assertEquals(1, after.getLong(PlantContract.KEY_ROW_CACHE_MISSES)
+                - before.getLong(PlantContract.KEY_ROW_CACHE_MISSES));
+        assertEquals(2, after.getLong(PlantContract.KEY_ROW_CACHE_HITS)
+                - before.getLong(PlantContract.KEY_ROW_CACHE_HITS));
+    }
+
+    @Test
+    public void readAfterUpdate_seesChangeFromMemory() throws Exception {
+        readName();
+
+        ContentValues values = new ContentValues();
+        values.put(PlantEntry.COLUMN_PLANT_NAME, "Red Rose");
+        assertEquals(1, mProvider.update(mPlantUri, values, null, null));
+        int quantity = mProvider.update(PlantEntry.buildAdjustUri(ContentUris.parseId(mPlantUri)),
+                adjustment(-2), null, null);
+        assertEquals(10, quantity);
+
+        Bundle before = getStats();
+        Cursor cursor = mProvider.query(mPlantUri, PlantRow.PROJECTION, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            PlantRow row = new PlantRow(cursor);
+            assertEquals("Red Rose", row.getName());
+            assertEquals(10, row.getQuantity());
+        } finally {
+            cursor.close();
+        }
+        Bundle after = getStats();
+
+        // The plant has been read again by the writes, so the reload is a hit
+        assertEquals(0, after.getLong(PlantContract.KEY_ROW_CACHE_MISSES)
+                - before.getLong(PlantContract.KEY_ROW_CACHE_MISSES));
+    }
+
+    @Test
+    public void readAfterDelete_findsNothing() throws Exception {
+        readName();
+        assertEquals(1, mProvider.delete(mPlantUri, null, null));
+
+        Cursor cursor = mProvider.query(mPlantUri, PlantRow.PROJECTION, null, null, null);
+        try {
+            assertEquals(0, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+        assertEquals(0, getStats().getInt(PlantContract.KEY_ROW_CACHE_SIZE));
+    }
+
+    @Test
+    public void readAfterUpdateOfAllPlants_seesChange() throws Exception {
+        readName();
+
+        ContentValues values = new ContentValues();
+        values.put(PlantEntry.COLUMN_PLANT_SUPPLIER_NAME, "Desert Co");
+        values.put(PlantEntry.COLUMN_PLANT_SUPPLIER_EMAIL, "desert@example.com");
+        assertEquals(1, mProvider.update(PlantEntry.CONTENT_URI, values, null, null));
+
+        Cursor cursor = mProvider.query(mPlantUri,
+                new String[]{PlantEntry.COLUMN_PLANT_SUPPLIER_NAME}, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals("Desert Co", cursor.getString(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void readInBatch_seesBatchWritesAndIsNotCached() throws Exception {
+        readName();
+
+        // The batch reads its own write, then fails, and is rolled back
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newUpdate(mPlantUri)
+                .withValue(PlantEntry.COLUMN_PLANT_NAME, "Red Rose").build());
+        operations.add(ContentProviderOperation.newAssertQuery(mPlantUri)
+                .withValue(PlantEntry.COLUMN_PLANT_NAME, "Red Rose").build());
+        operations.add(ContentProviderOperation.newAssertQuery(mPlantUri)
+                .withValue(PlantEntry.COLUMN_PLANT_NAME, "White Rose").build());
+        try {
+            mProvider.applyBatch(operations);
+            fail("The last assertion of the batch should have failed");
+        } catch (OperationApplicationException expected) {
+            // The batch has been rolled back
+        }
+
+        // Nothing of the rolled back batch stays in the cache
+        assertEquals("Rose", readName());
+    }
+
+    private String readName() {
+        Cursor cursor = mProvider.query(mPlantUri, null, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getString(cursor.getColumnIndexOrThrow(PlantEntry.COLUMN_PLANT_NAME));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private Bundle getStats() {
+        return mProvider.call(PlantContract.METHOD_GET_ROW_CACHE_STATS, null, null);
+    }
+
+    private static ContentValues adjustment(int delta) {
+        ContentValues values = new ContentValues();
+        values.put(PlantEntry.KEY_QUANTITY_DELTA, delta);
+        return values;
+    }
+}
@@ -0,0 +1,228 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.inventoryapp.data.PlantContract.PendingAdjustmentEntry;
+import com.example.android.inventoryapp.data.PlantContract.PlantEntry;
+import com.example.android.inventoryapp.data.PlantContract.StockMovementEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumentation test of the stock ledger of {@link PlantProvider}: every change of a stock
+ * quantity appends a movement, and the compaction keeps the quantities of the plants.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StockLedgerTest {
+
+    private static final String TEST_DATABASE_NAME = "stock_ledger_test.db";
+
+    private TestDatabase mDatabase;
+    private PlantDbHelper mDbHelper;
+    private PlantProvider mProvider;
+
+    @Before
+    public void setUp() throws Exception {
+        mDatabase = new TestDatabase(TEST_DATABASE_NAME);
+        mDbHelper = mDatabase.getDbHelper();
+        mProvider = mDatabase.getProvider();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mDatabase.delete();
+    }
+
+    @Test
+    public void quantityChanges_appendMovements() throws Exception {
+        long id = insertPlant("Rose", 12);
+
+        // A sale, a receipt, and a correction of the quantity
+        ContentValues delta = new ContentValues();
+        delta.put(PlantEntry.KEY_QUANTITY_DELTA, -2);
+        assertEquals(10, mProvider.update(PlantEntry.buildAdjustUri(id), delta, null, null));
+        delta.put(PlantEntry.KEY_QUANTITY_DELTA, 5);
+        assertEquals(15, mProvider.update(PlantEntry.buildAdjustUri(id), delta, null, null));
+        ContentValues quantity = new ContentValues();
+        quantity.put(PlantEntry.COLUMN_PLANT_QUANTITY, 14);
+        assertEquals(1, mProvider.update(ContentUris.withAppendedId(PlantEntry.CONTENT_URI, id), quantity,
+                null, null));
+
+        // A rejected adjustment and an update of the name don't move the stock
+        delta.put(PlantEntry.KEY_QUANTITY_DELTA, -20);
+        assertEquals(PlantEntry.ADJUST_REJECTED, mProvider.update(PlantEntry.buildAdjustUri(id), delta, null, null));
+        ContentValues name = new ContentValues();
+        name.put(PlantEntry.COLUMN_PLANT_NAME, "Red Rose");
+        mProvider.update(ContentUris.withAppendedId(PlantEntry.CONTENT_URI, id), name, null, null);
+
+        // Most recent first
+        Cursor cursor = mProvider.query(StockMovementEntry.buildMovementsUri(id), null, null, null, null);
+        try {
+            assertEquals(4, cursor.getCount());
+            int[] deltas = {-1, 5, -2, 12};
+            int[] reasons = {StockMovementEntry.REASON_CORRECTION, StockMovementEntry.REASON_RECEIPT,
+                    StockMovementEntry.REASON_SALE, StockMovementEntry.REASON_RECEIPT};
+            for (int i = 0; cursor.moveToNext(); i++) {
+                assertEquals(deltas[i], cursor.getInt(cursor.getColumnIndexOrThrow(StockMovementEntry.COLUMN_DELTA)));
+                assertEquals(reasons[i], cursor.getInt(cursor.getColumnIndexOrThrow(StockMovementEntry.COLUMN_REASON)));
+            }
+        } finally {
+            cursor.close();
+        }
+        assertEquals(14, queryStock(StockMovementEntry.buildStockUri(id, System.currentTimeMillis())));
+        assertEquals(0, queryStock(StockMovementEntry.buildStockUri(id, 0)));
+    }
+
+    @Test
+    public void updateOfSeveralPlants_appendsMovementsOfChangedPlants() throws Exception {
+        long rose = insertPlant("Rose", 12);
+        long tulip = insertPlant("Tulip", 3);
+        long fern = insertPlant("Fern", 0);
+
+        ContentValues quantity = new ContentValues();
+        quantity.put(PlantEntry.COLUMN_PLANT_QUANTITY, 3);
+        quantity.put(PlantEntry.KEY_MOVEMENT_REASON, StockMovementEntry.REASON_SALE);
+        assertEquals(3, mProvider.update(PlantEntry.CONTENT_URI, quantity, null, null));
+
+        // Tulip already had 3: only Rose and Fern have moved
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        assertEquals(1, countMovements(db, tulip));
+        assertEquals(2, countMovements(db, rose));
+        assertEquals(1, countMovements(db, fern));
+        assertEquals(3, queryStock(StockMovementEntry.buildStockUri(rose, System.currentTimeMillis())));
+        assertEquals(3, queryStock(StockMovementEntry.buildStockUri(fern, System.currentTimeMillis())));
+
+        // The movements of a plant are deleted with the plant
+        mProvider.delete(ContentUris.withAppendedId(PlantEntry.CONTENT_URI, rose), null, null);
+        assertEquals(0, countMovements(db, rose));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void snapshotReason_isRejected() throws Exception {
+        long id = insertPlant("Rose", 12);
+        ContentValues delta = new ContentValues();
+        delta.put(PlantEntry.KEY_QUANTITY_DELTA, 1);
+        delta.put(PlantEntry.KEY_MOVEMENT_REASON, StockMovementEntry.REASON_SNAPSHOT);
+        mProvider.update(PlantEntry.buildAdjustUri(id), delta, null, null);
+    }
+
+    @Test
+    public void compaction_keepsQuantitiesAtTheEndOfEachDay() throws Exception {
+        long id = insertPlant("Rose", 0);
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+
+        // Three movements a day for the last 400 days, adding up to the quantity of the plant
+        long now = System.currentTimeMillis();
+        long start = now - 400 * StockLedger.DAY_MILLIS;
+        for (int day = 0; day < 400; day++) {
+            for (int i = 0; i < 3; i++) {
+                ContentValues movement = new ContentValues();
+                movement.put(StockMovementEntry.COLUMN_PLANT_ID, id);
+                movement.put(StockMovementEntry.COLUMN_DELTA, i == 2 ? -1 : 1);
+                movement.put(StockMovementEntry.COLUMN_REASON, StockMovementEntry.REASON_RECEIPT);
+                movement.put(StockMovementEntry.COLUMN_CREATED_AT, start + day * StockLedger.DAY_MILLIS + i);
+                db.insertOrThrow(StockMovementEntry.TABLE_NAME, null, movement);
+            }
+        }
+        db.execSQL("UPDATE plants SET plant_quantity = 400 WHERE _id = " + id);
+
+        // Right after the last movement of a day, and in the middle of a day
+        long lastYear = start + 200 * StockLedger.DAY_MILLIS + 2;
+        long lastMonth = start + 390 * StockLedger.DAY_MILLIS + 1;
+        long lastYearStock = queryStock(StockMovementEntry.buildStockUri(id, lastYear));
+        long lastMonthStock = queryStock(StockMovementEntry.buildStockUri(id, lastMonth));
+
+        Bundle result = mProvider.call(PlantContract.METHOD_COMPACT_STOCK_MOVEMENTS, null, null);
+        assertNotNull(result);
+        assertTrue(result.getInt(PlantContract.KEY_MOVEMENTS_REMOVED) > 0);
+
+        // The last 30 days as they were, a snapshot a day for the rest of the year, and a
+        // single snapshot before that
+        long count = countMovements(db, id);
+        assertTrue("Movements left: " + count, count <= 31 * 3 + 366 + 1);
+        assertEquals(400, DatabaseUtils.longForQuery(db, "SELECT SUM(delta) FROM stock_movements", null));
+        assertEquals(lastYearStock, queryStock(StockMovementEntry.buildStockUri(id, lastYear)));
+        assertEquals(lastMonthStock, queryStock(StockMovementEntry.buildStockUri(id, lastMonth)));
+
+        // Nothing left to compact
+        result = mProvider.call(PlantContract.METHOD_COMPACT_STOCK_MOVEMENTS, null, null);
+        assertEquals(0, result.getInt(PlantContract.KEY_MOVEMENTS_REMOVED));
+        assertEquals(count, countMovements(db, id));
+    }
+
+    @Test
+    public void pendingAdjustments_areAppliedAndDeletedTogether() throws Exception {
+        long id = insertPlant("Rose", 12);
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        for (int delta : new int[]{-1, -1, 3}) {
+            ContentValues pending = new ContentValues();
+            pending.put(PendingAdjustmentEntry.COLUMN_PLANT_ID, id);
+            pending.put(PendingAdjustmentEntry.COLUMN_DELTA, delta);
+            assertNotNull(mProvider.insert(PendingAdjustmentEntry.CONTENT_URI, pending));
+        }
+
+        // A batch failing after the adjustment leaves both the plant and the rows as they were
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newUpdate(PlantEntry.buildAdjustUri(id))
+                .withValue(PlantEntry.KEY_QUANTITY_DELTA, 1)
+                .build());
+        operations.add(ContentProviderOperation.newDelete(PendingAdjustmentEntry.CONTENT_URI).build());
+        ArrayList<ContentProviderOperation> failing = new ArrayList<>(operations);
+        failing.add(ContentProviderOperation.newUpdate(PlantEntry.CONTENT_URI)
+                .withValue(PlantEntry.COLUMN_PLANT_NAME, "")
+                .build());
+        try {
+            mProvider.applyBatch(failing);
+            fail("The batch should have failed");
+        } catch (IllegalArgumentException e) {
+            // Expected: a plant requires a name
+        }
+        assertEquals(3, DatabaseUtils.queryNumEntries(db, PendingAdjustmentEntry.TABLE_NAME));
+        assertEquals(12, queryStock(StockMovementEntry.buildStockUri(id, System.currentTimeMillis())));
+
+        mProvider.applyBatch(operations);
+        assertEquals(0, DatabaseUtils.queryNumEntries(db, PendingAdjustmentEntry.TABLE_NAME));
+        assertEquals(13, queryStock(StockMovementEntry.buildStockUri(id, System.currentTimeMillis())));
+    }
+
+    /**
+     * Insert a plant with the given name and quantity through the provider, and return its ID.
+     */
+    private long insertPlant(String name, int quantity) {
+        return ContentUris.parseId(mProvider.insert(PlantEntry.CONTENT_URI,
+                TestDatabase.plantValues(name, 450, quantity, "Green Farm")));
+    }
+
+    /**
+     * Read the stock quantity of the given stock URI.
+     */
+    private long queryStock(Uri uri) {
+        Cursor cursor = mProvider.query(uri, null, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(cursor.getColumnIndexOrThrow(PlantEntry.COLUMN_PLANT_QUANTITY));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static long countMovements(SQLiteDatabase db, long plantId) {
+        return DatabaseUtils.queryNumEntries(db, StockMovementEntry.TABLE_NAME,
+                StockMovementEntry.COLUMN_PLANT_ID + "=?", new String[]{String.valueOf(plantId)});
+    }
+}
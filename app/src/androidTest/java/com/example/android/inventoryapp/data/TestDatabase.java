@@ -0,0 +1,75 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+
+import com.example.android.inventoryapp.data.PlantContract.PlantEntry;
+
+/**
+ * {@link TestDatabase} is a plants database of its own for an instrumentation test, deleted
+ * when created and when the test is done, with the {@link PlantDbHelper} and the
+ * {@link PlantProvider} which read and write it.
+ */
+final class TestDatabase {
+
+    private final Context mContext;
+    private final String mName;
+    private final PlantDbHelper mDbHelper;
+    private PlantProvider mProvider;
+
+    /**
+     * Delete the database with the given name left by an earlier run, if any, and create the
+     * helper of a new one, with the default settings. The database is created when it is first
+     * opened.
+     */
+    TestDatabase(String name) {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mName = name;
+        mContext.deleteDatabase(name);
+        mDbHelper = new PlantDbHelper(mContext, name, PlantDbHelper.DEFAULT_SYNCHRONOUS,
+                PlantDbHelper.DEFAULT_CACHE_SIZE_KB, PlantDbHelper.DEFAULT_MMAP_SIZE);
+    }
+
+    Context getContext() {
+        return mContext;
+    }
+
+    PlantDbHelper getDbHelper() {
+        return mDbHelper;
+    }
+
+    /**
+     * Return the provider of this database, created on the first call.
+     */
+    PlantProvider getProvider() {
+        if (mProvider == null) {
+            mProvider = new PlantProvider(mDbHelper);
+            mProvider.attachInfo(mContext, null);
+        }
+        return mProvider;
+    }
+
+    /**
+     * Close the database and delete it. To call when the test is done.
+     */
+    void delete() {
+        mDbHelper.close();
+        mContext.deleteDatabase(mName);
+    }
+
+    /**
+     * Return the values of a new plant with the given name, price, quantity and supplier, to
+     * insert through the provider.
+     */
+    static ContentValues plantValues(String name, int priceCents, int quantity, String supplierName) {
+        ContentValues values = new ContentValues();
+        values.put(PlantEntry.COLUMN_PLANT_NAME, name);
+        values.put(PlantEntry.COLUMN_PLANT_PRICE_CENTS, priceCents);
+        values.put(PlantEntry.COLUMN_PLANT_QUANTITY, quantity);
+        values.put(PlantEntry.COLUMN_PLANT_SUPPLIER_NAME, supplierName);
+        values.put(PlantEntry.COLUMN_PLANT_SUPPLIER_PHONE, "555-0100");
+        values.put(PlantEntry.COLUMN_PLANT_SUPPLIER_EMAIL, "supplier@example.com");
+        return values;
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.android.inventoryapp.data;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Minimal benchmark harness for the local JVM: runs an operation a number of times after a
+ * warm-up, keeps the distribution of the times of the iterations, and writes all the results
+ * of a benchmark class as a JSON file, so that the results of two releases can be compared
+ * by a script.
+ *
+ * The results are written to the directory given by the "benchmark.resultsDir" system
+ * property, set by the build to app/build/outputs/benchmark.
+ */
+
+final class BenchmarkReport {
+
+    /**
+     * An operation measured by the harness.
+     */
+    interface Operation {
+        /**
+         * Run the operation once.
+         *
+         * @param iteration the number of the iteration, from 0, warm-up included
+         */
+        void run(int iteration);
+    }
+
+    /**
+     * The times of the iterations of an operation on a catalog of a given size.
+     */
+    static final class Result {
+        final String operation;
+        final int rows;
+        final int iterations;
+        final long minNs;
+        final long medianNs;
+        final long p90Ns;
+        final long meanNs;
+
+        Result(String operation, int rows, long[] timesNs) {
+            this.operation = operation;
+            this.rows = rows;
+            this.iterations = timesNs.length;
+            long[] sorted = timesNs.clone();
+            Arrays.sort(sorted);
+            long total = 0;
+            for (long time : sorted) {
+                total += time;
+            }
+            minNs = sorted[0];
+            medianNs = sorted[sorted.length / 2];
+            p90Ns = sorted[(int) Math.min(sorted.length - 1, Math.ceil(sorted.length * 0.9) - 1)];
+            meanNs = total / sorted.length;
+        }
+    }
+
+    /** Name of the benchmark, and of its results file */
+    private final String mName;
+
+    /** Version of SQLite the benchmark runs against */
+    private final String mSqliteVersion;
+
+    private final List<Result> mResults = new ArrayList<>();
+
+    BenchmarkReport(String name, String sqliteVersion) {
+        mName = name;
+        mSqliteVersion = sqliteVersion;
+    }
+
+    /**
+     * Run the given operation warmUp times, then measure it iterations times.
+     *
+     * @return the result, also added to the report
+     */
+    Result measure(String operation, int rows, int warmUp, int iterations, Operation op) {
+        for (int i = 0; i < warmUp; i++) {
+            op.run(i);
+        }
+        long[] timesNs = new long[iterations];
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            op.run(warmUp + i);
+            timesNs[i] = System.nanoTime() - start;
+        }
+        Result result = new Result(operation, rows, timesNs);
+        mResults.add(result);
+        return result;
+    }
+
+    /**
+     * Write all the results to [benchmark.resultsDir]/[name].json, and return the file.
+     */
+    File write() throws IOException {
+        File directory = new File(System.getProperty("benchmark.resultsDir", "build/outputs/benchmark"));
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        File file = new File(directory, mName + ".json");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(toJson());
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    /**
+     * Return the results as a JSON object, one entry per operation and catalog size.
+     */
+    String toJson() {
+        StringBuilder json = new StringBuilder("{\n");
+        json.append("  \"benchmark\": \"").append(mName).append("\",\n");
+        json.append("  \"timestamp\": ").append(System.currentTimeMillis()).append(",\n");
+        json.append("  \"sqlite_version\": \"").append(mSqliteVersion).append("\",\n");
+        json.append("  \"java_version\": \"").append(System.getProperty("java.version")).append("\",\n");
+        json.append("  \"results\": [");
+        for (int i = 0; i < mResults.size(); i++) {
+            Result result = mResults.get(i);
+            json.append(i == 0 ? "\n" : ",\n");
+            json.append("    {\"operation\": \"").append(result.operation).append('"')
+                    .append(", \"rows\": ").append(result.rows)
+                    .append(", \"iterations\": ").append(result.iterations)
+                    .append(", \"min_ns\": ").append(result.minNs)
+                    .append(", \"median_ns\": ").append(result.medianNs)
+                    .append(", \"p90_ns\": ").append(result.p90Ns)
+                    .append(", \"mean_ns\": ").append(result.meanNs)
+                    .append('}');
+        }
+        return json.append("\n  ]\n}\n").toString();
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.net.Uri;
+
+import com.example.android.inventoryapp.BuildConfig;
+import com.example.android.inventoryapp.PlantRow;
+import com.example.android.inventoryapp.data.PlantContract.PlantEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmark of the operations of {@link PlantProvider} on catalogs of 1,000, 10,000 and 100,000
+ * plants, run on the local JVM by Robolectric against the SQLite build it bundles. Only
+ * compiled with the "benchmark" project property:
+ *
+ *     ./gradlew testDebugUnitTest -Pbenchmark --tests '*Benchmark'
+ *
+ * The results are written as JSON to app/build/outputs/benchmark/PlantProviderBenchmark.json.
+ * The absolute times depend on the machine, so compare results measured on the same one.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25)
+public class PlantProviderBenchmark {
+
+    private static final String DATABASE_NAME = "plant_provider_benchmark.db";
+
+    /**
+     * Number of plants in the catalogs measured
+     */
+    private static final int[] CATALOG_SIZES = {1000, 10000, 100000};
+
+    private static final String[] NAMES = {"Rose", "Tulip", "Orchid", "Lavender", "Cactus", "Fern"};
+
+    private static final String[] SUPPLIERS = {"Green Farm", "Desert Co", "Rosewood Nursery"};
+
+    /**
+     * Number of iterations run before measuring, and measured, for each operation
+     */
+    private static final int WARM_UP = 50;
+    private static final int ITERATIONS = 500;
+
+    /**
+     * Number of plants inserted by each bulk insertion, and read by each page
+     */
+    private static final int BULK_SIZE = 100;
+    private static final int PAGE_SIZE = 50;
+
+    @Test
+    public void providerOperations_atEachCatalogSize() throws Exception {
+        Context context = RuntimeEnvironment.application;
+        BenchmarkReport report = null;
+        for (int rows : CATALOG_SIZES) {
+            context.deleteDatabase(DATABASE_NAME);
+            PlantDbHelper dbHelper = new PlantDbHelper(context, DATABASE_NAME, PlantDbHelper.DEFAULT_SYNCHRONOUS,
+                    PlantDbHelper.DEFAULT_CACHE_SIZE_KB, PlantDbHelper.DEFAULT_MMAP_SIZE);
+            try {
+                PlantProvider provider = new PlantProvider(dbHelper);
+                provider.attachInfo(context, null);
+                if (report == null) {
+                    report = new BenchmarkReport(PlantProviderBenchmark.class.getSimpleName(),
+                            DatabaseUtils.stringForQuery(dbHelper.getReadableDatabase(),
+                                    "SELECT sqlite_version()", null));
+                }
+                fillCatalog(provider, rows);
+                measureOperations(report, provider, rows);
+            } finally {
+                dbHelper.close();
+                context.deleteDatabase(DATABASE_NAME);
+            }
+        }
+
+        report.write();
+    }
+
+    /**
+     * Measure every operation on the catalog of the given provider, holding the given number
+     * of plants. The reads are measured first, on the catalog as filled.
+     */
+    private static void measureOperations(BenchmarkReport report, final PlantProvider provider, final int rows) {
+        // Fixed seed, so that every run reads and writes the same plants
+        final Random random = new Random(rows);
+
+        report.measure("point_query", rows, WARM_UP, ITERATIONS, new BenchmarkReport.Operation() {
+            @Override
+            public void run(int iteration) {
+                Uri uri = ContentUris.withAppendedId(PlantEntry.CONTENT_URI, 1 + random.nextInt(rows));
+                assertEquals(1, readAll(provider.query(uri, null, null, null, null)));
+            }
+        });
+        report.measure("list_page", rows, WARM_UP, ITERATIONS, new BenchmarkReport.Operation() {
+            @Override
+            public void run(int iteration) {
+                Uri uri = CatalogQuery.DEFAULT.buildNextPageUri(null, random.nextInt(rows - PAGE_SIZE), PAGE_SIZE);
+                assertEquals(PAGE_SIZE, readAll(provider.query(uri, PlantRow.PROJECTION, null, null, null)));
+            }
+        });
+        report.measure("list_page_sorted_by_name", rows, WARM_UP, ITERATIONS, new BenchmarkReport.Operation() {
+            @Override
+            public void run(int iteration) {
+                Uri uri = CatalogQuery.DEFAULT.withSort(PlantEntry.SORT_BY_NAME).buildFirstPageUri(PAGE_SIZE);
+                assertEquals(PAGE_SIZE, readAll(provider.query(uri, PlantRow.PROJECTION, null, null, null)));
+            }
+        });
+        report.measure("search", rows, WARM_UP, ITERATIONS, new BenchmarkReport.Operation() {
+            @Override
+            public void run(int iteration) {
+                Uri uri = PlantEntry.buildSearchUri(NAMES[iteration % NAMES.length].substring(0, 3)).buildUpon()
+                        .appendQueryParameter(PlantEntry.QUERY_PARAMETER_LIMIT, String.valueOf(PAGE_SIZE))
+                        .build();
+                assertEquals(PAGE_SIZE, readAll(provider.query(uri, PlantRow.PROJECTION, null, null, null)));
+            }
+        });
+
+        report.measure("update", rows, WARM_UP, ITERATIONS, new BenchmarkReport.Operation() {
+            @Override
+            public void run(int iteration) {
+                Uri uri = ContentUris.withAppendedId(PlantEntry.CONTENT_URI, 1 + random.nextInt(rows));
+                ContentValues values = new ContentValues();
+                values.put(PlantEntry.COLUMN_PLANT_PRICE_CENTS, random.nextInt(10000));
+                assertEquals(1, provider.update(uri, values, null, null));
+            }
+        });
+        report.measure("insert", rows, WARM_UP, ITERATIONS, new BenchmarkReport.Operation() {
+            @Override
+            public void run(int iteration) {
+                assertNotNull(provider.insert(PlantEntry.CONTENT_URI, createPlant(random, rows + iteration)));
+            }
+        });
+        report.measure("bulk_insert_" + BULK_SIZE, rows, WARM_UP / 10, ITERATIONS / 10,
+                new BenchmarkReport.Operation() {
+                    @Override
+                    public void run(int iteration) {
+                        ContentValues[] plants = new ContentValues[BULK_SIZE];
+                        for (int i = 0; i < plants.length; i++) {
+                            plants[i] = createPlant(random, rows + iteration * BULK_SIZE + i);
+                        }
+                        assertEquals(BULK_SIZE, provider.bulkInsert(PlantEntry.CONTENT_URI, plants));
+                    }
+                });
+    }
+
+    /**
+     * Insert the given number of plants in the catalog of the given provider.
+     */
+    private static void fillCatalog(PlantProvider provider, int rows) {
+        Random random = new Random(42);
+        ContentValues[] plants = new ContentValues[rows];
+        for (int i = 0; i < plants.length; i++) {
+            plants[i] = createPlant(random, i);
+        }
+        assertEquals(rows, provider.bulkInsert(PlantEntry.CONTENT_URI, plants));
+    }
+
+    private static ContentValues createPlant(Random random, int number) {
+        ContentValues values = new ContentValues();
+        values.put(PlantEntry.COLUMN_PLANT_NAME, NAMES[number % NAMES.length] + " " + number);
+        values.put(PlantEntry.COLUMN_PLANT_PRICE_CENTS, random.nextInt(10000));
+        values.put(PlantEntry.COLUMN_PLANT_QUANTITY, random.nextInt(PlantEntry.MAX_QUANTITY + 1));
+        values.put(PlantEntry.COLUMN_PLANT_SUPPLIER_NAME, SUPPLIERS[number % SUPPLIERS.length]);
+        values.put(PlantEntry.COLUMN_PLANT_SUPPLIER_PHONE, "555-0100");
+        values.put(PlantEntry.COLUMN_PLANT_SUPPLIER_EMAIL, "supplier@example.com");
+        return values;
+    }
+
+    /**
+     * Read every row of the given cursor, like a list binding them would, then close it.
+     *
+     * @return the number of rows read
+     */
+    private static int readAll(Cursor cursor) {
+        try {
+            int count = 0;
+            while (cursor.moveToNext()) {
+                cursor.getLong(0);
+                cursor.getString(1);
+                count++;
+            }
+            return count;
+        } finally {
+            cursor.close();
+        }
+    }
+}
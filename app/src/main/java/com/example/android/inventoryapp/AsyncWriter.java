@@ -0,0 +1,216 @@
+package com.example.android.inventoryapp;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link AsyncWriter} runs the writes of the screens (inserts, updates and deletes of plants)
+ * on a background thread, and delivers their results to callbacks on the main thread, so that
+ * a write never blocks the UI, whatever the size of the plants table.
+ *
+ * All the writes run one at a time, in the order they were made, so that a plant saved then
+ * deleted is never deleted first. The queue of pending writes is bounded: a write made while
+ * it is full is rejected, and its callback is told that the write failed.
+ *
+ * In debug builds, {@link InventoryApplication} makes StrictMode kill the app on any disk
+ * write on the main thread, so that every new write goes through this class.
+ */
+
+public final class AsyncWriter {
+
+    public static final String LOG_TAG = AsyncWriter.class.getSimpleName();
+
+    /**
+     * Maximum number of writes waiting for the background thread
+     */
+    private static final int MAX_PENDING_WRITES = 64;
+
+    /**
+     * Callback receiving the result of a write on the main thread.
+     */
+    public interface Callback<T> {
+        /**
+         * Called on the main thread once the write is done, with the result of the
+         * ContentResolver method, or with the result of a failed write (a null URI, or 0 rows)
+         * if the write threw an exception or was rejected.
+         */
+        void onWriteComplete(T result);
+    }
+
+    private static AsyncWriter sInstance;
+
+    private final ContentResolver mContentResolver;
+
+    /**
+     * Single background thread running the writes in order, with a bounded queue
+     */
+    private final ThreadPoolExecutor mExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(MAX_PENDING_WRITES));
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Return the writer of the app.
+     */
+    public static synchronized AsyncWriter getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new AsyncWriter(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private AsyncWriter(Context context) {
+        mContentResolver = context.getContentResolver();
+    }
+
+    /**
+     * Insert a row at the given URL in the background, like {@link ContentResolver#insert}.
+     *
+     * @param callback The callback receiving the URL of the new row, or null if the insertion
+     *                 failed, or null to ignore the result
+     */
+    public void insert(final Uri url, final ContentValues values, Callback<Uri> callback) {
+        submit(new Write<Uri>(callback, null) {
+            @Override
+            Uri write() {
+                return mContentResolver.insert(url, values);
+            }
+        });
+    }
+
+    /**
+     * Update the rows at the given URI in the background, like {@link ContentResolver#update}.
+     *
+     * @param callback The callback receiving the number of rows updated (0 if the update
+     *                 failed), or null to ignore the result
+     */
+    public void update(final Uri uri, final ContentValues values, Callback<Integer> callback) {
+        submit(new Write<Integer>(callback, 0) {
+            @Override
+            Integer write() {
+                return mContentResolver.update(uri, values, null, null);
+            }
+        });
+    }
+
+    /**
+     * Delete the rows at the given URL in the background, like {@link ContentResolver#delete}.
+     *
+     * @param callback The callback receiving the number of rows deleted (0 if the deletion
+     *                 failed), or null to ignore the result
+     */
+    public void delete(final Uri url, Callback<Integer> callback) {
+        submit(new Write<Integer>(callback, 0) {
+            @Override
+            Integer write() {
+                return mContentResolver.delete(url, null, null);
+            }
+        });
+    }
+
+    /**
+     * Run the given write on the background thread, after the writes already queued, for
+     * the writers handling their results themselves, like {@link StockWriteQueue}.
+     *
+     * @return false if the write has been rejected, the queue being full
+     */
+    boolean execute(Runnable write) {
+        try {
+            mExecutor.execute(write);
+            return true;
+        } catch (RejectedExecutionException e) {
+            Log.e(LOG_TAG, "Too many pending writes, write rejected", e);
+            return false;
+        }
+    }
+
+    /**
+     * Run the given write on the background thread, after the writes already queued, waiting
+     * for room in the queue if it is full, for the writes which must never be rejected, like
+     * the saves of the {@link StockWriteQueue}. The wait is as long as the write running.
+     *
+     * @return false if the calling thread has been interrupted while waiting, and the write
+     * hasn't been queued
+     */
+    boolean executeOrWait(Runnable write) {
+        try {
+            mExecutor.execute(write);
+            return true;
+        } catch (RejectedExecutionException e) {
+            Log.w(LOG_TAG, "Too many pending writes, waiting for room in the queue");
+        }
+        try {
+            // The background thread is running, as the queue is full: it takes the write
+            // from the queue once the writes before it are done
+            mExecutor.getQueue().put(write);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Log.e(LOG_TAG, "Interrupted while waiting for room in the queue", e);
+            return false;
+        }
+    }
+
+    /**
+     * A write run on the background thread, delivering its result to its callback.
+     */
+    private abstract class Write<T> implements Runnable {
+        private final Callback<T> mCallback;
+
+        /** Result delivered if the write fails */
+        private final T mFailedResult;
+
+        Write(Callback<T> callback, T failedResult) {
+            mCallback = callback;
+            mFailedResult = failedResult;
+        }
+
+        /**
+         * Run the write and return its result. Runs on the background thread.
+         */
+        abstract T write();
+
+        @Override
+        public void run() {
+            T result;
+            try {
+                result = write();
+            } catch (RuntimeException e) {
+                Log.e(LOG_TAG, "Write failed", e);
+                result = mFailedResult;
+            }
+            deliver(result);
+        }
+
+        /**
+         * Deliver the given result to the callback on the main thread.
+         */
+        void deliver(final T result) {
+            if (mCallback == null) {
+                return;
+            }
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    mCallback.onWriteComplete(result);
+                }
+            });
+        }
+    }
+
+    private <T> void submit(Write<T> write) {
+        if (!execute(write)) {
+            write.deliver(write.mFailedResult);
+        }
+    }
+}
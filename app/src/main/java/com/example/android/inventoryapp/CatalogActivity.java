@@ -2,6 +2,7 @@ package com.example.android.inventoryapp;
 
 import android.app.LoaderManager;
 import android.content.ContentUris;
+import android.content.Context;
 import android.content.CursorLoader;
 import android.content.DialogInterface;
 import android.content.Intent;
@@ -9,28 +10,32 @@ import android.content.Loader;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
 import android.support.design.widget.FloatingActionButton;
 import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.DividerItemDecoration;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.SearchView;
-import android.text.TextUtils;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
-import android.widget.Toast;
+import android.widget.EditText;
+import android.widget.TextView;
 
+import com.example.android.inventoryapp.data.CatalogQuery;
 import com.example.android.inventoryapp.data.PlantContract.PlantEntry;
-
+import com.example.android.inventoryapp.data.PlantContract.SummaryEntry;
 
 /**
  * Displays list of plants that were entered and stored in the app.
  */
 
 public class CatalogActivity extends AppCompatActivity
-        implements LoaderManager.LoaderCallbacks<Cursor>, SearchView.OnQueryTextListener {
+        implements LoaderManager.LoaderCallbacks<PlantListLoader.Result>, SearchView.OnQueryTextListener,
+        PlantAdapter.OnPlantClickListener {
 
     /**
      * UI elements related with the SearchView
@@ -44,6 +49,24 @@ public class CatalogActivity extends AppCompatActivity
      */
     String mSearchQuery = null;
 
+    /**
+     * Handler running the search once the user stops typing
+     */
+    private final Handler mSearchHandler = new Handler();
+
+    /**
+     * Runs the search for {@link #mSearchQuery}
+     */
+    private final Runnable mSearchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            PlantListLoader loader = getPlantListLoader();
+            if (loader != null) {
+                loader.setSearchQuery(mSearchQuery);
+            }
+        }
+    };
+
     /**
      * Tag for the log messages
      */
@@ -55,26 +78,115 @@ public class CatalogActivity extends AppCompatActivity
     private static final int PLANT_LOADER = 0;
 
     /**
-     * Adapter for the ListView
+     * Identifier for the inventory summary loader
      */
-    PlantCursorAdapter mCursorAdapter;
+    private static final int STATS_LOADER = 1;
 
     /**
-     * Root ListView
+     * Columns of the inventory summary shown in the header, and their indices
      */
-    ListView mPlantListView;
+    private static final String[] STATS_PROJECTION = {
+            SummaryEntry.COLUMN_PLANT_COUNT,
+            SummaryEntry.COLUMN_STOCK_VALUE_CENTS,
+            SummaryEntry.COLUMN_OUT_OF_STOCK_COUNT,
+            SummaryEntry.COLUMN_LOW_STOCK_COUNT};
+    private static final int INDEX_PLANT_COUNT = 0;
+    private static final int INDEX_STOCK_VALUE_CENTS = 1;
+    private static final int INDEX_OUT_OF_STOCK_COUNT = 2;
+    private static final int INDEX_LOW_STOCK_COUNT = 3;
 
     /**
-     * EmptyViews for the ListView
+     * The next page is loaded as soon as the user scrolls within
+     * this number of rows from the end of the list
+     */
+    private static final int PAGE_PREFETCH_DISTANCE = 15;
+
+    /**
+     * Minimum time between two reloads of the list, so that a burst of changes
+     * to the plants is coalesced into a single reload
+     */
+    private static final long LIST_UPDATE_THROTTLE_MS = 250;
+
+    /**
+     * Time without typing after which the search runs, so that a fast typist
+     * doesn't start a query for every keystroke
+     */
+    private static final long SEARCH_DEBOUNCE_MS = 300;
+
+    /**
+     * Adapter for the RecyclerView
+     */
+    PlantAdapter mPlantAdapter;
+
+    /**
+     * Root RecyclerView
+     */
+    RecyclerView mPlantRecyclerView;
+
+    /**
+     * LayoutManager of the RecyclerView
+     */
+    LinearLayoutManager mLayoutManager;
+
+    /**
+     * EmptyViews for the RecyclerView
      */
     View mEmptyView;
     View mEmptySearchView;
 
+    /**
+     * Header showing the totals of the inventory
+     */
+    TextView mStatsHeader;
+
+    /**
+     * Formatter of the stock value of the header and of the price filters, and the buffer
+     * it writes into
+     */
+    private final PriceFormatter mPriceFormatter = new PriceFormatter();
+    private final char[] mPriceBuffer = new char[PriceFormatter.BUFFER_SIZE];
+
+    /**
+     * Loads the inventory summary for the header. Reading the summary costs a single row,
+     * whatever the number of plants, so it is simply read again after every change.
+     */
+    private final LoaderManager.LoaderCallbacks<Cursor> mStatsLoaderCallbacks =
+            new LoaderManager.LoaderCallbacks<Cursor>() {
+                @Override
+                public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+                    CursorLoader loader = new CursorLoader(CatalogActivity.this, SummaryEntry.CONTENT_URI,
+                            STATS_PROJECTION, null, null, null);
+                    loader.setUpdateThrottle(LIST_UPDATE_THROTTLE_MS);
+                    return loader;
+                }
+
+                @Override
+                public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
+                    // Hide the header while the shop is empty
+                    if (cursor == null || !cursor.moveToFirst() || cursor.getInt(INDEX_PLANT_COUNT) == 0) {
+                        mStatsHeader.setVisibility(View.GONE);
+                        return;
+                    }
+                    mStatsHeader.setText(getString(R.string.catalog_stats_header,
+                            cursor.getInt(INDEX_PLANT_COUNT),
+                            formatPriceCents(cursor.getLong(INDEX_STOCK_VALUE_CENTS)),
+                            cursor.getInt(INDEX_OUT_OF_STOCK_COUNT),
+                            cursor.getInt(INDEX_LOW_STOCK_COUNT)));
+                    mStatsHeader.setVisibility(View.VISIBLE);
+                }
+
+                @Override
+                public void onLoaderReset(Loader<Cursor> loader) {
+                    mStatsHeader.setVisibility(View.GONE);
+                }
+            };
+
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_catalog);
+        StartupTimings.getInstance().mark(StartupTimings.MARK_CATALOG_INFLATED);
 
         // Setup FAB to open EditorActivity
         FloatingActionButton fab = (FloatingActionButton) findViewById(R.id.fab);
@@ -86,45 +198,65 @@ public class CatalogActivity extends AppCompatActivity
             }
         });
 
-        // Find the ListView which will be populated with the plant data
-        mPlantListView = (ListView) findViewById(R.id.list);
+        // Find the RecyclerView which will be populated with the plant data
+        mPlantRecyclerView = (RecyclerView) findViewById(R.id.list);
+        mLayoutManager = new LinearLayoutManager(this);
+        mPlantRecyclerView.setLayoutManager(mLayoutManager);
+        mPlantRecyclerView.addItemDecoration(
+                new DividerItemDecoration(this, mLayoutManager.getOrientation()));
 
-        // Find two empty views on the ListView, so that they only show programmatically or when
-        // the list has 0 items or when, after a search, there are no results to display in the list.
+        // Find two empty views on the RecyclerView, so that they only show when the list
+        // has 0 items or when, after a search, there are no results to display in the list.
         mEmptyView = findViewById(R.id.empty_view);
         mEmptySearchView = findViewById(R.id.empty_search_view);
+        mEmptyView.setVisibility(View.GONE);
+        mEmptySearchView.setVisibility(View.GONE);
 
+        // Find the header showing the totals of the inventory, hidden until they are loaded
+        mStatsHeader = (TextView) findViewById(R.id.stats_header);
+        mStatsHeader.setVisibility(View.GONE);
 
-        // Setup an Adapter to create a list item for each row of the plant data in the Cursor.
-        // There is no plant data yet (until the loader finishes) so pass in null for the Cursor;
-        mCursorAdapter = new PlantCursorAdapter(this, null);
-        mPlantListView.setAdapter(mCursorAdapter);
+        // Setup an Adapter to create a list item for each row of the plant data.
+        // There is no plant data yet (until the loader finishes), and the clicks on
+        // the rows open DetailActivity.
+        mPlantAdapter = new PlantAdapter(this, this);
+        mPlantRecyclerView.setAdapter(mPlantAdapter);
 
-        // Setup the item click listener to open DetailActivity
-        mPlantListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+        // Load the next page of plants when the user gets close to the end of the list
+        mPlantRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
             @Override
-            public void onItemClick(AdapterView<?> adapterView, View view, int position, long id) {
-
-                // Create new intent to go to {@link DetailActivity}
-                Intent intent = new Intent(CatalogActivity.this, DetailActivity.class);
-
-                // Form the content URI that represents the specific list item that was clicked on,
-                // by appending the "id" onto the {@link ProductEntry#CONTENT_URI}.
-                // Example => content://com.example.android.storeinventory/products/2, for product id = 2
-                Uri currentPlantUri = ContentUris.withAppendedId(PlantEntry.CONTENT_URI, id);
-
-                // Set the URI on the data field of the intent
-                intent.setData(currentPlantUri);
-
-                // Launch the {@link DetailActivity} to display the data for the current item
-                startActivity(intent);
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                int itemCount = mPlantAdapter.getItemCount();
+                if (itemCount > 0 && mLayoutManager.findLastVisibleItemPosition()
+                        >= itemCount - PAGE_PREFETCH_DISTANCE) {
+                    PlantListLoader loader = getPlantListLoader();
+                    if (loader != null) {
+                        loader.loadNextPage();
+                    }
+                }
             }
         });
 
-        // Kick off the loader
+        // Kick off the loaders
         getLoaderManager().initLoader(PLANT_LOADER, null, this);
+        getLoaderManager().initLoader(STATS_LOADER, null, mStatsLoaderCallbacks);
+    }
+
+    @Override
+    public void onPlantClick(long plantId) {
+        // Create new intent to go to {@link DetailActivity}
+        Intent intent = new Intent(CatalogActivity.this, DetailActivity.class);
 
+        // Form the content URI that represents the specific list item that was clicked on,
+        // by appending the "id" onto the {@link PlantEntry#CONTENT_URI}.
+        // Example => content://com.example.android.inventoryapp/plants/2, for plant id = 2
+        Uri currentPlantUri = ContentUris.withAppendedId(PlantEntry.CONTENT_URI, plantId);
 
+        // Set the URI on the data field of the intent
+        intent.setData(currentPlantUri);
+
+        // Launch the {@link DetailActivity} to display the data for the current item
+        startActivity(intent);
     }
 
     @Override
@@ -132,12 +264,29 @@ public class CatalogActivity extends AppCompatActivity
         super.onStart();
     }
 
+    @Override
+    protected void onPause() {
+        super.onPause();
+        // Write the queued sales before leaving the screen
+        StockWriteQueue.getInstance(this).flush();
+    }
+
     /**
      * Helper method to delete all plants in the database.
      */
     private void deleteAllPlants() {
-        int rowsDeleted = getContentResolver().delete(PlantEntry.CONTENT_URI, null, null);
-        Log.v(LOG_TAG, rowsDeleted + " rows deleted from plant database");
+        // Delete in the background, the list is reloaded once the plants are gone
+        final Context context = getApplicationContext();
+        AsyncWriter.getInstance(this).delete(PlantEntry.CONTENT_URI, new AsyncWriter.Callback<Integer>() {
+            @Override
+            public void onWriteComplete(Integer rowsDeleted) {
+                Log.v(LOG_TAG, rowsDeleted + " rows deleted from plant database");
+                // All the plants are gone, and so are their thumbnails
+                if (rowsDeleted != 0) {
+                    ThumbnailCache.deleteAll(context);
+                }
+            }
+        });
     }
 
     @Override
@@ -155,6 +304,22 @@ public class CatalogActivity extends AppCompatActivity
         return true;
     }
 
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        // Check the current sort order, as kept by the loader across configuration changes
+        PlantListLoader loader = getPlantListLoader();
+        CatalogQuery query = loader != null ? loader.getCatalogQuery() : CatalogQuery.DEFAULT;
+        MenuItem sortItem = menu.findItem(getSortMenuItemId(query.getSort()));
+        if (sortItem != null) {
+            sortItem.setChecked(true);
+        }
+
+        // The plants to reorder are always sorted by quantity
+        menu.findItem(R.id.action_low_stock).setChecked(query.isLowStock());
+        menu.findItem(R.id.action_sort).setEnabled(!query.isLowStock());
+        return super.onPrepareOptionsMenu(menu);
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         // User clicked on a menu option in the app bar overflow menu
@@ -163,10 +328,156 @@ public class CatalogActivity extends AppCompatActivity
             case R.id.action_delete_all_entries:
                 showDeleteConfirmationDialog();
                 return true;
+            // Respond to a click on one of the sort orders
+            case R.id.action_sort_by_date_added:
+                setSort(PlantEntry.SORT_BY_ID);
+                return true;
+            case R.id.action_sort_by_name:
+                setSort(PlantEntry.SORT_BY_NAME);
+                return true;
+            case R.id.action_sort_by_price:
+                setSort(PlantEntry.SORT_BY_PRICE);
+                return true;
+            case R.id.action_sort_by_quantity:
+                setSort(PlantEntry.SORT_BY_QUANTITY);
+                return true;
+            case R.id.action_sort_by_recently_updated:
+                setSort(PlantEntry.SORT_BY_UPDATED);
+                return true;
+            // Respond to a click on the "Filter" menu option
+            case R.id.action_filter:
+                showFilterDialog();
+                return true;
+            // Respond to a click on the "Plants to reorder" menu option
+            case R.id.action_low_stock:
+                toggleLowStock();
+                return true;
         }
         return super.onOptionsItemSelected(item);
     }
 
+    /**
+     * Return the loader of the plants, or null if it hasn't been created yet
+     */
+    private PlantListLoader getPlantListLoader() {
+        Loader<PlantListLoader.Result> loader = getLoaderManager().getLoader(PLANT_LOADER);
+        return (PlantListLoader) loader;
+    }
+
+    /**
+     * Return the ID of the menu item of the given sort order
+     */
+    private static int getSortMenuItemId(String sort) {
+        switch (sort) {
+            case PlantEntry.SORT_BY_NAME:
+                return R.id.action_sort_by_name;
+            case PlantEntry.SORT_BY_PRICE:
+                return R.id.action_sort_by_price;
+            case PlantEntry.SORT_BY_QUANTITY:
+                return R.id.action_sort_by_quantity;
+            case PlantEntry.SORT_BY_UPDATED:
+                return R.id.action_sort_by_recently_updated;
+            default:
+                return R.id.action_sort_by_date_added;
+        }
+    }
+
+    /**
+     * Reload the plants in the given order, keeping the filters
+     */
+    private void setSort(String sort) {
+        PlantListLoader loader = getPlantListLoader();
+        if (loader != null) {
+            loader.setCatalogQuery(loader.getCatalogQuery().withSort(sort));
+            invalidateOptionsMenu();
+        }
+    }
+
+    /**
+     * Switch between all the plants and only the plants to reorder, keeping the filters
+     */
+    private void toggleLowStock() {
+        PlantListLoader loader = getPlantListLoader();
+        if (loader != null) {
+            CatalogQuery query = loader.getCatalogQuery();
+            loader.setCatalogQuery(query.withLowStockThreshold(
+                    query.isLowStock() ? null : PlantEntry.DEFAULT_LOW_STOCK_THRESHOLD));
+            invalidateOptionsMenu();
+        }
+    }
+
+    /**
+     * Show the dialog to filter the plants by price and stock quantity, filled in with the
+     * current filters. Empty fields don't filter.
+     */
+    private void showFilterDialog() {
+        final PlantListLoader loader = getPlantListLoader();
+        if (loader == null) {
+            return;
+        }
+        CatalogQuery query = loader.getCatalogQuery();
+        View view = getLayoutInflater().inflate(R.layout.dialog_filter, null);
+        final EditText minPriceEditText = (EditText) view.findViewById(R.id.filter_min_price);
+        final EditText maxPriceEditText = (EditText) view.findViewById(R.id.filter_max_price);
+        final EditText quantityBelowEditText = (EditText) view.findViewById(R.id.filter_quantity_below);
+        if (query.getMinPriceCents() != null) {
+            minPriceEditText.setText(formatPriceCents(query.getMinPriceCents()));
+        }
+        if (query.getMaxPriceCents() != null) {
+            maxPriceEditText.setText(formatPriceCents(query.getMaxPriceCents()));
+        }
+        if (query.getQuantityBelow() != null) {
+            quantityBelowEditText.setText(String.valueOf(query.getQuantityBelow()));
+        }
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle(R.string.filter_dialog_title);
+        builder.setView(view);
+        builder.setPositiveButton(R.string.filter_apply, new DialogInterface.OnClickListener() {
+            public void onClick(DialogInterface dialog, int id) {
+                loader.setCatalogQuery(loader.getCatalogQuery().withFilters(
+                        parsePriceCents(minPriceEditText.getText().toString()),
+                        parsePriceCents(maxPriceEditText.getText().toString()),
+                        parseQuantity(quantityBelowEditText.getText().toString())));
+            }
+        });
+        builder.setNeutralButton(R.string.filter_clear, new DialogInterface.OnClickListener() {
+            public void onClick(DialogInterface dialog, int id) {
+                loader.setCatalogQuery(loader.getCatalogQuery().withFilters(null, null, null));
+            }
+        });
+        builder.setNegativeButton(R.string.cancel, null);
+        builder.create().show();
+    }
+
+    /**
+     * Parse the price typed in a filter field into cents, or return null if it is empty
+     * or invalid
+     */
+    private static Long parsePriceCents(String text) {
+        long priceCents = PriceFormatter.parseCents(text.trim(), PlantEntry.MAX_PRICE_CENTS);
+        return priceCents >= 0 ? priceCents : null;
+    }
+
+    /**
+     * Format the given amount of cents with two decimals
+     */
+    private String formatPriceCents(long cents) {
+        return new String(mPriceBuffer, 0, mPriceFormatter.formatCents(cents, mPriceBuffer));
+    }
+
+    /**
+     * Parse the quantity typed in a filter field, or return null if it is empty or invalid
+     */
+    private static Integer parseQuantity(String text) {
+        try {
+            int quantity = Integer.parseInt(text.trim());
+            return quantity >= 0 ? quantity : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
     /**
      * Method to ask confirmation to the user for deleting the current plant
      */
@@ -197,82 +508,69 @@ public class CatalogActivity extends AppCompatActivity
     }
 
     @Override
-    public Loader<Cursor> onCreateLoader(int i, Bundle args) {
-        String mSelectionArgs;
-
-        // If the search query is not an empty string, query the db with the given mSearchQuery
-        if (mSearchQuery != null && !TextUtils.isEmpty(mSearchQuery)) {
-            mSelectionArgs = PlantEntry.COLUMN_PLANT_NAME + " LIKE '%" + mSearchQuery + "%'";
-            // Set empty view on the ListView, so that it only shows when there are no results
-            // for the search to show in the list.
-            mEmptyView.setVisibility(View.GONE);
-            mPlantListView.setEmptyView(mEmptySearchView);
-            Log.e(LOG_TAG, mSelectionArgs);
-        } else {
-            // If the search query is an empty string, gets everything from the db
-            mSelectionArgs = null;
-            // Set empty view on the ListView, so that it only shows when the list has 0 items
-            mEmptySearchView.setVisibility(View.GONE);
-            mPlantListView.setEmptyView(mEmptyView);
-        }
-
-        // Define a projection that specifies the columns from the table we care about
-        String[] projection = {
-                PlantEntry._ID,
-                PlantEntry.COLUMN_PLANT_NAME,
-                PlantEntry.COLUMN_PLANT_PRICE,
-                PlantEntry.COLUMN_PLANT_QUANTITY};
-
-        // Perform a query on the provider using the ContentResolver.
-        // Use the {@link PlantEntry#CONTENT_URI} to access the plant data.
-        return new CursorLoader(this,    // Parent activity context
-                PlantEntry.CONTENT_URI,  // Parent content URI to query
-                projection,              // The columns to return for each row
-                mSelectionArgs,          // Either null, or the search query the user entered
-                null,                    // Selection criteria
-                null);                   // Default sort order
+    public Loader<PlantListLoader.Result> onCreateLoader(int id, Bundle args) {
+        // Either search the db with the given mSearchQuery, if it is not an empty string,
+        // or load all the plants one page at a time.
+        PlantListLoader loader = new PlantListLoader(this, mSearchQuery, CatalogQuery.DEFAULT);
+        loader.setUpdateThrottle(LIST_UPDATE_THROTTLE_MS);
+        return loader;
     }
 
 
     @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
-        // Update {@link PlantCursorAdapter} with this new cursor containing updated plant data
-        mCursorAdapter.swapCursor(cursor);
+    public void onLoadFinished(Loader<PlantListLoader.Result> loader, PlantListLoader.Result result) {
+        // Update {@link PlantAdapter} with the new rows, rebinding only the rows that have changed
+        mPlantAdapter.setResult(result);
+
+        // Show the empty view when the list has 0 items, or the empty search view
+        // when there are no results for the search or the filters to show in the list.
+        boolean isFiltered = result.isSearch() || result.catalogQuery.isFiltered();
+        boolean isEmpty = result.rows.isEmpty();
+        mEmptyView.setVisibility(isEmpty && !isFiltered ? View.VISIBLE : View.GONE);
+        mEmptySearchView.setVisibility(isEmpty && isFiltered ? View.VISIBLE : View.GONE);
+
+        // Log the timings of the cold start once its first rows are shown
+        StartupTimings timings = StartupTimings.getInstance();
+        if (timings.mark(StartupTimings.MARK_FIRST_ROWS_SHOWN)) {
+            Log.i(LOG_TAG, "Cold start: " + timings.toText());
+        }
     }
 
     @Override
-    public void onLoaderReset(Loader<Cursor> loader) {
+    public void onLoaderReset(Loader<PlantListLoader.Result> loader) {
         // Callback called when the data needs to be deleted
-        mCursorAdapter.swapCursor(null);
-
+        mPlantAdapter.setResult(null);
     }
 
     @Override
     public boolean onQueryTextSubmit(String query) {
-        Toast.makeText(this, "Searching for " + query, Toast.LENGTH_SHORT).show();
-
-        mSearchQuery = searchView.getQuery().toString().trim();
+        // Search right away, without waiting for the debounce delay
+        mSearchQuery = query;
+        mSearchHandler.removeCallbacks(mSearchRunnable);
+        mSearchRunnable.run();
 
-        getLoaderManager().restartLoader(PLANT_LOADER, null, this);
-        Log.e(LOG_TAG, "LOADER RESTARTED");
-
-        // After you run your desired action:
-        // clear search bar
-        searchView.setQuery("", false);
-
-        // collapse the search box back to the menu icon
-        searchView.setIconified(true);
-
-        // clear the focus of the SearchView and
+        // Clear the focus of the SearchView to hide the keyboard, keeping
+        // the text so that the user can still refine it
         View current = getCurrentFocus();
         if (current != null)
             current.clearFocus();
 
-        return false;
+        return true;
     }
 
     @Override
     public boolean onQueryTextChange(String newText) {
-        return false;
+        // Search as the user types, once the text hasn't changed for a while. The search
+        // for the previous text is canceled by the loader if it is still running.
+        mSearchQuery = newText;
+        mSearchHandler.removeCallbacks(mSearchRunnable);
+        mSearchHandler.postDelayed(mSearchRunnable, SEARCH_DEBOUNCE_MS);
+        return true;
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mSearchHandler.removeCallbacks(mSearchRunnable);
     }
 }
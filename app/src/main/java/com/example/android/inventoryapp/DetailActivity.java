@@ -2,7 +2,7 @@ package com.example.android.inventoryapp;
 
 import android.annotation.SuppressLint;
 import android.app.LoaderManager;
-import android.content.ContentValues;
+import android.content.ContentUris;
 import android.content.Context;
 import android.content.CursorLoader;
 import android.content.DialogInterface;
@@ -23,9 +23,6 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import com.example.android.inventoryapp.data.PlantContract.PlantEntry;
-import com.squareup.picasso.Picasso;
-
-import jp.wasabeef.picasso.transformations.CropCircleTransformation;
 
 /**
  * Allows user to show all the details about a db saved plant.
@@ -56,6 +53,12 @@ public class DetailActivity extends AppCompatActivity implements LoaderManager.L
      */
     private TextView mPriceTextView;
 
+    /**
+     * Formatter of the plant's price, and the buffer it writes into
+     */
+    private final PriceFormatter mPriceFormatter = new PriceFormatter();
+    private final char[] mPriceBuffer = new char[PriceFormatter.BUFFER_SIZE];
+
     /**
      * TextView field for the plant's stock quantity
      */
@@ -110,6 +113,16 @@ public class DetailActivity extends AppCompatActivity implements LoaderManager.L
      */
     private Uri mCurrentPlantUri;
 
+    /**
+     * Stock quantity of the plant in the database, without the queued adjustments
+     */
+    private int mQuantity;
+
+    /**
+     * Queue of the stock adjustments not written yet
+     */
+    private StockWriteQueue mStockWriteQueue;
+
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -131,6 +144,8 @@ public class DetailActivity extends AppCompatActivity implements LoaderManager.L
         mImagePlant = (ImageView) findViewById(R.id.detail_plant_image_view);
 
 
+        mStockWriteQueue = StockWriteQueue.getInstance(this);
+
         Intent intent = getIntent();
         mCurrentPlantUri = intent.getData();
         if(mCurrentPlantUri != null) {
@@ -164,7 +179,6 @@ public class DetailActivity extends AppCompatActivity implements LoaderManager.L
 
             // Find the columns of plant attributes that we're interested in
             int nameColumnIndex = cursor.getColumnIndex(PlantEntry.COLUMN_PLANT_NAME);
-            int priceColumnIndex = cursor.getColumnIndex(PlantEntry.COLUMN_PLANT_PRICE);
             int quantityColumnIndex = cursor.getColumnIndex(PlantEntry.COLUMN_PLANT_QUANTITY);
             int imageColumnIndex = cursor.getColumnIndex(PlantEntry.COLUMN_PLANT_IMAGE);
             int supplierNameColumnIndex = cursor.getColumnIndex(PlantEntry.COLUMN_PLANT_SUPPLIER_NAME);
@@ -173,8 +187,8 @@ public class DetailActivity extends AppCompatActivity implements LoaderManager.L
 
             // Extract out the value from the Cursor for the respective column index
             final String name = cursor.getString(nameColumnIndex);
-            Double price = cursor.getDouble(priceColumnIndex);
-            final int quantity = cursor.getInt(quantityColumnIndex);
+            long priceCents = PlantEntry.getPriceCents(cursor);
+            int quantity = cursor.getInt(quantityColumnIndex);
             final String image = cursor.getString(imageColumnIndex);
             final String supplierName = cursor.getString(supplierNameColumnIndex);
             final String supplierPhone = cursor.getString(supplierPhoneColumnIndex);
@@ -182,34 +196,26 @@ public class DetailActivity extends AppCompatActivity implements LoaderManager.L
 
             // Update the views on the screen with the values from the database
             mNameTextView.setText(name);
-            mPriceTextView.setText(String.format("%.02f", price));
-            mQuantityTextView.setText(String.valueOf(quantity));
+            mPriceTextView.setText(mPriceBuffer, 0, mPriceFormatter.formatCents(priceCents, mPriceBuffer));
+            mQuantity = quantity;
+            showQuantity();
             mSupplierNameTextView.setText(supplierName);
             mSupplierPhoneTextView.setText(supplierPhone);
             mSupplierEmailTextView.setText(supplierEmail);
 
 
-            // Set saved image for the current plant and transform it
-            // to a circle shape, based on the image placeholder
-            Picasso.with(this).load(image)
-                    .placeholder(R.drawable.ic_plant_image_placeholder)
-                    .transform(new CropCircleTransformation())
-                    .fit()
-                    .centerCrop()
-                    .into(mImagePlant);
+            // Set the cached thumbnail of the saved image for the current plant,
+            // already cropped to a circle shape
+            ThumbnailCache.load(mImagePlant, ContentUris.parseId(mCurrentPlantUri), image);
 
 
             // Set OnClickListener on plant's stock quantity decrement button
             mButtonDecrementPlantQuantity.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View v) {
-                    // Reduce plant quantity, checking before if updated quantity is more than 0.
-                    if (quantity > 0) {
-                        int updatedPlantQuantity = quantity - 1;
-                        ContentValues values = new ContentValues();
-                        values.put(PlantEntry.COLUMN_PLANT_QUANTITY, updatedPlantQuantity);
-                        mContext.getContentResolver().update(mCurrentPlantUri, values, null, null);
-                    } else {
+                    // Reduce plant quantity by one. The queue checks that the updated quantity
+                    // isn't less than 0, and otherwise rejects the adjustment.
+                    if (!adjustPlantQuantity(-1)) {
                         // In the case quantity is equal to zero, send a Toast message to user
                         // advising the plant is out of stock
                         Toast.makeText(mContext, mContext.getString(R.string.error_button_decrement_plant_quantity),
@@ -222,13 +228,9 @@ public class DetailActivity extends AppCompatActivity implements LoaderManager.L
             mButtonIncrementPlantQuantity.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View v) {
-                    // Increase plant quantity, checking before if updated quantity is less than 9999 pcs.
-                    if (quantity < 9999) {
-                        int updatedPlantQuantity = quantity + 1;
-                        ContentValues values = new ContentValues();
-                        values.put(PlantEntry.COLUMN_PLANT_QUANTITY, updatedPlantQuantity);
-                        mContext.getContentResolver().update(mCurrentPlantUri, values, null, null);
-                    } else {
+                    // Increase plant quantity by one. The queue checks that the updated quantity
+                    // isn't more than 9999 pcs, and otherwise rejects the adjustment.
+                    if (!adjustPlantQuantity(1)) {
                         // In the case quantity is equal to 9999 pcs (stock quantity limit), send a Toast message to user
                         // advising the plant stock is full.
                         Toast.makeText(mContext, mContext.getString(R.string.error_button_increment_plant_quantity),
@@ -269,6 +271,34 @@ public class DetailActivity extends AppCompatActivity implements LoaderManager.L
         }
     }
 
+    /**
+     * Queue the given delta for the stock quantity of the current plant, and show the
+     * updated quantity right away. Return false if the new quantity would be out of
+     * the valid range.
+     */
+    private boolean adjustPlantQuantity(int delta) {
+        if (!mStockWriteQueue.adjust(ContentUris.parseId(mCurrentPlantUri), mQuantity, delta)) {
+            return false;
+        }
+        showQuantity();
+        return true;
+    }
+
+    /**
+     * Show the stock quantity of the plant, including the adjustments not written yet.
+     */
+    private void showQuantity() {
+        long plantId = ContentUris.parseId(mCurrentPlantUri);
+        mQuantityTextView.setText(String.valueOf(mStockWriteQueue.getQuantity(plantId, mQuantity)));
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        // Write the queued adjustments before leaving the screen
+        mStockWriteQueue.flush();
+    }
+
     @Override
     public void onLoaderReset(Loader<Cursor> loader) {
         // Loader can't be invalidated, so there's to action to do.
@@ -361,23 +391,29 @@ public class DetailActivity extends AppCompatActivity implements LoaderManager.L
     private void deletePlant() {
         // Only perform the delete if this is an existing plant.
         if (mCurrentPlantUri != null) {
-            // Call the ContentResolver to delete the plant at the given content URI.
-            // Pass in null for the selection and selection args because the mCurrentPlantUri
+            // Delete the plant at the given content URI in the background. The mCurrentPlantUri
             // content URI already identifies the plant that we want.
-            int rowsDeleted = getContentResolver().delete(mCurrentPlantUri, null, null);
-
-            // Show a toast message depending on whether or not the delete was successful.
-            if (rowsDeleted == 0) {
-                // If no rows were deleted, then there was an error with the delete.
-                Toast.makeText(this, getString(R.string.editor_delete_plant_failed),
-                        Toast.LENGTH_SHORT).show();
-            } else {
-                // Otherwise, the delete was successful and we can display a toast.
-                Toast.makeText(this, getString(R.string.editor_delete_plant_successful),
-                        Toast.LENGTH_SHORT).show();
-            }
+            final Context context = getApplicationContext();
+            final long plantId = ContentUris.parseId(mCurrentPlantUri);
+            AsyncWriter.getInstance(this).delete(mCurrentPlantUri, new AsyncWriter.Callback<Integer>() {
+                @Override
+                public void onWriteComplete(Integer rowsDeleted) {
+                    // Show a toast message depending on whether or not the delete was successful.
+                    if (rowsDeleted == 0) {
+                        // If no rows were deleted, then there was an error with the delete.
+                        Toast.makeText(context, context.getString(R.string.editor_delete_plant_failed),
+                                Toast.LENGTH_SHORT).show();
+                    } else {
+                        // Otherwise, the delete was successful: delete the thumbnails of the
+                        // plant, now that it is gone, and display a toast.
+                        ThumbnailCache.delete(context, plantId);
+                        Toast.makeText(context, context.getString(R.string.editor_delete_plant_successful),
+                                Toast.LENGTH_SHORT).show();
+                    }
+                }
+            });
 
-            // Close the activity
+            // Close the activity, the plant is deleted in the background
             finish();
         }
     }
@@ -2,6 +2,7 @@ package com.example.android.inventoryapp;
 
 import android.annotation.SuppressLint;
 import android.app.LoaderManager;
+import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.CursorLoader;
@@ -28,13 +29,10 @@ import android.widget.ImageView;
 import android.widget.Toast;
 
 import com.example.android.inventoryapp.data.PlantContract.PlantEntry;
-import com.squareup.picasso.Picasso;
 
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import jp.wasabeef.picasso.transformations.CropCircleTransformation;
-
 /**
  * Allows user to create a new plant or edit an existing one.
  */
@@ -123,6 +121,17 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
      */
     private boolean mPlantHasChanged = false;
 
+    /**
+     * Boolean flag that keeps track of whether the plant is being saved in the background
+     */
+    private boolean mSaving = false;
+
+    /**
+     * Formatter of the plant's price, and the buffer it writes into
+     */
+    private final PriceFormatter mPriceFormatter = new PriceFormatter();
+    private final char[] mPriceBuffer = new char[PriceFormatter.BUFFER_SIZE];
+
     /**
      * OnTouchListener that listens for any user touches on a View, implying that they are modifying
      * the view, and we change the mPlantHasChanged boolean to true.
@@ -255,12 +264,7 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
 
             // Preserve chosen image for the plant and transform it
             // to a circle shape, based on the image placeholder
-            Picasso.with(mContext).load(mImageUri)
-                    .placeholder(R.drawable.ic_plant_image_placeholder)
-                    .transform(new CropCircleTransformation())
-                    .fit()
-                    .centerCrop()
-                    .into(mImagePlant);
+            ThumbnailCache.loadOriginal(mImagePlant, mImageUri);
         }
     }
 
@@ -282,14 +286,21 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
 
 
     /**
-     * Get user input from editor and save/update plant into database.
+     * Get user input from editor and save/update plant into database, in the background.
+     *
+     * @return true if the plant is being saved, false if the input is invalid or a previous
+     * save has not completed yet
      */
     private boolean savePlant() {
+        // Ignore the taps on "Save" while the plant is being saved
+        if (mSaving) {
+            return false;
+        }
+
         // Read all data from input fields and use trim to eliminate leading
-        // or trailing white space. For priceString automatically replace "," char for
-        // decimal with "." to handle correctly the double value.
+        // or trailing white space.
         String nameString = mNameEditText.getText().toString().trim();
-        String priceString = mPriceEditText.getText().toString().trim().replace(",", ".");
+        String priceString = mPriceEditText.getText().toString().trim();
         String quantityString = mQuantityEditText.getText().toString().trim();
         String supplierNameString = mSupplierNameEditText.getText().toString().trim();
         String supplierPhoneString = mSupplierPhoneEditText.getText().toString().trim();
@@ -330,8 +341,10 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
 
         // Redundant check for invalid characters into price field (on some mobile
         // phone user can even put letters in the field) to prevent error in the app
-        // when trying to save plant data
-        if(!(priceString.matches("^[0-9.,]+$"))) {
+        // when trying to save plant data. The price is parsed into exact cents, with
+        // "." or "," as decimal separator.
+        long priceCents = PriceFormatter.parseCents(priceString, PlantEntry.MAX_PRICE_CENTS);
+        if (priceCents < 0) {
             Toast.makeText(this, R.string.editor_error_price_field, Toast.LENGTH_SHORT).show();
             return false;
         }
@@ -352,7 +365,7 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         // and plant attributes from the editor are the values.
         ContentValues values = new ContentValues();
         values.put(PlantEntry.COLUMN_PLANT_NAME, nameString);
-        values.put(PlantEntry.COLUMN_PLANT_PRICE, priceString);
+        values.put(PlantEntry.COLUMN_PLANT_PRICE_CENTS, priceCents);
         values.put(PlantEntry.COLUMN_PLANT_QUANTITY, quantityString);
         values.put(PlantEntry.COLUMN_PLANT_IMAGE, imagePath);
         values.put(PlantEntry.COLUMN_PLANT_SUPPLIER_NAME, supplierNameString);
@@ -360,43 +373,66 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         values.put(PlantEntry.COLUMN_PLANT_SUPPLIER_EMAIL, supplierEmailString);
 
 
+        // The plant is saved in the background, the activity is closed once it is saved
+        mSaving = true;
+        AsyncWriter writer = AsyncWriter.getInstance(this);
+        final Context context = getApplicationContext();
+        final String savedImage = imagePath;
+
         // Determine if this is a new or existing plant by checking if mCurrentPlantUri is null or not
         if (mCurrentPlantUri == null) {
             // This is a NEW plant, so insert a new plant into the provider,
-            // returning the content URI for the new plant.
-            Uri newUri = getContentResolver().insert(PlantEntry.CONTENT_URI, values);
-
-            // Show a toast message depending on whether or not the insertion was successful.
-            if (newUri == null) {
-                // If the new content URI is null, then there was an error with insertion.
-                Toast.makeText(this, getString(R.string.editor_insert_plant_failed),
-                        Toast.LENGTH_SHORT).show();
-                return false;
-            } else {
-                // Otherwise, the insertion was successful and we can display a toast.
-                Toast.makeText(this, getString(R.string.editor_insert_plant_successful),
-                        Toast.LENGTH_SHORT).show();
-                return true;
-            }
+            // receiving the content URI for the new plant.
+            writer.insert(PlantEntry.CONTENT_URI, values, new AsyncWriter.Callback<Uri>() {
+                @Override
+                public void onWriteComplete(Uri newUri) {
+                    // Show a toast message depending on whether or not the insertion was successful.
+                    if (newUri == null) {
+                        // If the new content URI is null, then there was an error with insertion.
+                        onSaveComplete(false, R.string.editor_insert_plant_failed);
+                    } else {
+                        // Otherwise, the insertion was successful: generate the thumbnail of
+                        // the image of the plant, now that it is committed, and display a toast.
+                        ThumbnailCache.generate(context, ContentUris.parseId(newUri), savedImage);
+                        onSaveComplete(true, R.string.editor_insert_plant_successful);
+                    }
+                }
+            });
         } else {
             // Otherwise this is an EXISTING plant, so update the plant with content URI: mCurrentPlantUri
-            // and pass in the new ContentValues. Pass in null for the selection and selection args
-            // because mCurrentPlantUri will already identify the correct row in the database that
-            // we want to modify.
-            int rowsAffected = getContentResolver().update(mCurrentPlantUri, values, null, null);
-
-            // Show a toast message depending on whether or not the update was successful.
-            if (rowsAffected == 0) {
-                // If no rows were affected, then there was an error with the update.
-                Toast.makeText(this, getString(R.string.editor_update_plant_failed),
-                        Toast.LENGTH_SHORT).show();
-                return false;
-            } else {
-                // Otherwise, the update was successful and we can display a toast.
-                Toast.makeText(this, getString(R.string.editor_update_plant_successful),
-                        Toast.LENGTH_SHORT).show();
-                return true;
-            }
+            // and pass in the new ContentValues. mCurrentPlantUri will already identify the correct
+            // row in the database that we want to modify.
+            final long plantId = ContentUris.parseId(mCurrentPlantUri);
+            writer.update(mCurrentPlantUri, values, new AsyncWriter.Callback<Integer>() {
+                @Override
+                public void onWriteComplete(Integer rowsAffected) {
+                    // Show a toast message depending on whether or not the update was successful.
+                    if (rowsAffected == 0) {
+                        // If no rows were affected, then there was an error with the update.
+                        onSaveComplete(false, R.string.editor_update_plant_failed);
+                    } else {
+                        // Otherwise, the update was successful: generate the thumbnail of the
+                        // image of the plant, if it has changed, and display a toast.
+                        ThumbnailCache.generate(context, plantId, savedImage);
+                        onSaveComplete(true, R.string.editor_update_plant_successful);
+                    }
+                }
+            });
+        }
+        return true;
+    }
+
+    /**
+     * Called on the main thread once the plant has been saved in the background: show the
+     * given message, and close the editor if the plant has been saved, or let the user try
+     * again otherwise.
+     */
+    private void onSaveComplete(boolean saved, int messageId) {
+        mSaving = false;
+        Toast.makeText(getApplicationContext(), messageId, Toast.LENGTH_SHORT).show();
+        if (saved && !isFinishing()) {
+            // Exit activity
+            finish();
         }
     }
 
@@ -429,11 +465,8 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         switch (item.getItemId()) {
             // Respond to a click on the "Save" menu option
             case R.id.action_save:
-                // Save plant to database
-                if (savePlant()) {
-                    // Exit activity
-                    finish();
-                };
+                // Save plant to database, the activity is closed once it is saved
+                savePlant();
                 return true;
             // Respond to a click on the "Delete" menu option
             case R.id.action_delete:
@@ -500,7 +533,7 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
 
                 PlantEntry._ID,
                 PlantEntry.COLUMN_PLANT_NAME,
-                PlantEntry.COLUMN_PLANT_PRICE,
+                PlantEntry.COLUMN_PLANT_PRICE_CENTS,
                 PlantEntry.COLUMN_PLANT_QUANTITY,
                 PlantEntry.COLUMN_PLANT_IMAGE,
                 PlantEntry.COLUMN_PLANT_SUPPLIER_NAME,
@@ -530,7 +563,6 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         if (cursor.moveToFirst()) {
             // Find the columns of plant attributes that we're interested in
             int nameColumnIndex = cursor.getColumnIndex(PlantEntry.COLUMN_PLANT_NAME);
-            int priceColumnIndex = cursor.getColumnIndex(PlantEntry.COLUMN_PLANT_PRICE);
             int quantityColumnIndex = cursor.getColumnIndex(PlantEntry.COLUMN_PLANT_QUANTITY);
             int imageColumnIndex = cursor.getColumnIndex(PlantEntry.COLUMN_PLANT_IMAGE);
             int supplierNameColumnIndex = cursor.getColumnIndex(PlantEntry.COLUMN_PLANT_SUPPLIER_NAME);
@@ -539,7 +571,7 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
 
             // Extract out the value from the Cursor for the given column index
             String name = cursor.getString(nameColumnIndex);
-            Double price = cursor.getDouble(priceColumnIndex);
+            long priceCents = PlantEntry.getPriceCents(cursor);
             int quantity = cursor.getInt(quantityColumnIndex);
             image = cursor.getString(imageColumnIndex);
             String supplierName = cursor.getString(supplierNameColumnIndex);
@@ -548,20 +580,18 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
 
             // Update the views on the screen with the values from the database
             mNameEditText.setText(name);
-            mPriceEditText.setText(String.format("%.02f", price));
+            mPriceEditText.setText(mPriceBuffer, 0, mPriceFormatter.formatCents(priceCents, mPriceBuffer));
             mQuantityEditText.setText(String.valueOf(quantity));
             mSupplierNameEditText.setText(supplierName);
             mSupplierPhoneEditText.setText(supplierPhone);
             mSupplierEmailEditText.setText(supplierEmail);
 
-            // Set chosen image for the plant and transform it
-            // to a circle shape, based on the image placeholder
-            Picasso.with(mContext).load(image)
-                    .placeholder(R.drawable.ic_plant_image_placeholder)
-                    .transform(new CropCircleTransformation())
-                    .fit()
-                    .centerCrop()
-                    .into(mImagePlant);
+            // Set the cached thumbnail of the saved image for the plant,
+            // already cropped to a circle shape. Keep the image chosen by the user
+            // if the plant is loaded again before being saved.
+            if (mImageUri == null) {
+                ThumbnailCache.load(mImagePlant, ContentUris.parseId(mCurrentPlantUri), image);
+            }
         }
     }
 
@@ -578,7 +608,7 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
 
     /**
      * Method to set chosen plant image to ImageView holder if the request
-     * is successful. Use Picasso to set the image into the ImageView holder,
+     * is successful. Use ThumbnailCache to set the image into the ImageView holder,
      * making a shape transformation on it based onn the image placeholder
      */
     @Override
@@ -599,14 +629,10 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
                     e.printStackTrace();
                 }
 
-                // Set saved image for the current plant and transform it
-                // to a circle shape, based on the image placeholder
-                Picasso.with(mContext).load(mImageUri)
-                        .placeholder(R.drawable.ic_plant_image_placeholder)
-                        .transform(new CropCircleTransformation())
-                        .fit()
-                        .centerCrop()
-                        .into(mImagePlant);
+                // Set chosen image for the current plant, resized to the thumbnail size
+                // and transformed to a circle shape. Its thumbnail is generated when the
+                // plant is saved.
+                ThumbnailCache.loadOriginal(mImagePlant, mImageUri);
 
             } catch (Exception e) {
                 e.printStackTrace();
@@ -660,23 +686,29 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
     private void deletePlant() {
         // Only perform the delete if this is an existing plant.
         if (mCurrentPlantUri != null) {
-            // Call the ContentResolver to delete the plant at the given content URI.
-            // Pass in null for the selection and selection args because the mCurrentPlantUri
+            // Delete the plant at the given content URI in the background. The mCurrentPlantUri
             // content URI already identifies the plant that we want.
-            int rowsDeleted = getContentResolver().delete(mCurrentPlantUri, null, null);
-
-            // Show a toast message depending on whether or not the delete was successful.
-            if (rowsDeleted == 0) {
-                // If no rows were deleted, then there was an error with the delete.
-                Toast.makeText(this, getString(R.string.editor_delete_plant_failed),
-                        Toast.LENGTH_SHORT).show();
-            } else {
-                // Otherwise, the delete was successful and we can display a toast.
-                Toast.makeText(this, getString(R.string.editor_delete_plant_successful),
-                        Toast.LENGTH_SHORT).show();
-            }
+            final Context context = getApplicationContext();
+            final long plantId = ContentUris.parseId(mCurrentPlantUri);
+            AsyncWriter.getInstance(this).delete(mCurrentPlantUri, new AsyncWriter.Callback<Integer>() {
+                @Override
+                public void onWriteComplete(Integer rowsDeleted) {
+                    // Show a toast message depending on whether or not the delete was successful.
+                    if (rowsDeleted == 0) {
+                        // If no rows were deleted, then there was an error with the delete.
+                        Toast.makeText(context, context.getString(R.string.editor_delete_plant_failed),
+                                Toast.LENGTH_SHORT).show();
+                    } else {
+                        // Otherwise, the delete was successful: delete the thumbnails of the
+                        // plant, now that it is gone, and display a toast.
+                        ThumbnailCache.delete(context, plantId);
+                        Toast.makeText(context, context.getString(R.string.editor_delete_plant_successful),
+                                Toast.LENGTH_SHORT).show();
+                    }
+                }
+            });
 
-            // Close the activity
+            // Close the activity, the plant is deleted in the background
             finish();
         }
     }
@@ -0,0 +1,103 @@
+package com.example.android.inventoryapp;
+
+import android.app.Application;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Bundle;
+import android.os.StrictMode;
+import android.util.Log;
+
+import com.example.android.inventoryapp.data.CatalogQuery;
+import com.example.android.inventoryapp.data.PlantContract;
+
+/**
+ * {@link InventoryApplication} is the application of the Inventory App.
+ *
+ * When the app starts, it opens the database and reads the first page of the catalog on a
+ * background thread, while the main thread inflates the catalog: the creation or upgrade of
+ * the database, the configuration of its connection and the first reads from the disk are
+ * done by the time the catalog loader queries its first page. The steps of the start are
+ * recorded in {@link StartupTimings}. The same thread then rolls the old stock movements into
+ * snapshots, so that the stock ledger stays bounded in size.
+ *
+ * In debug builds, it makes StrictMode kill the app on any disk write on the main thread,
+ * so that a write to the database made by a screen outside of {@link AsyncWriter} is found
+ * as soon as it runs, instead of making the UI stutter on slower devices.
+ */
+
+public class InventoryApplication extends Application {
+
+    public static final String LOG_TAG = InventoryApplication.class.getSimpleName();
+
+    @Override
+    protected void attachBaseContext(Context base) {
+        super.attachBaseContext(base);
+        // The earliest callback of the app, before the provider is created
+        StartupTimings.getInstance().mark(StartupTimings.MARK_APPLICATION_CREATED);
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        if (BuildConfig.DEBUG) {
+            StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                    .detectDiskWrites()
+                    .penaltyLog()
+                    .penaltyDeath()
+                    .build());
+        }
+
+        startDatabaseWarmUp();
+    }
+
+    /**
+     * Open the database and read the first page of the catalog on a background thread, then
+     * compact the stock ledger. The catalog loader querying the database meanwhile waits for
+     * the database to be open, and then reads pages already in the cache.
+     */
+    private void startDatabaseWarmUp() {
+        final ContentResolver contentResolver = getContentResolver();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                StartupTimings timings = StartupTimings.getInstance();
+                try {
+                    contentResolver.call(PlantContract.BASE_CONTENT_URI, PlantContract.METHOD_OPEN_DATABASE,
+                            null, null);
+                    timings.mark(StartupTimings.MARK_DATABASE_OPENED);
+
+                    // Same query as the first one of the catalog, so that the same pages of the
+                    // same index are read
+                    Cursor cursor = contentResolver.query(
+                            CatalogQuery.DEFAULT.buildFirstPageUri(PlantListLoader.PAGE_SIZE),
+                            PlantRow.PROJECTION, null, null, null);
+                    if (cursor != null) {
+                        // Counting the rows runs the query and reads all of them
+                        cursor.getCount();
+                        cursor.close();
+                    }
+                    timings.mark(StartupTimings.MARK_FIRST_PAGE_PRIMED);
+                } catch (RuntimeException e) {
+                    // The catalog opens the database itself
+                    Log.e(LOG_TAG, "Failed to warm up the database", e);
+                    return;
+                }
+
+                // Only once the first page has been read, not to delay the catalog
+                try {
+                    Bundle result = contentResolver.call(PlantContract.BASE_CONTENT_URI,
+                            PlantContract.METHOD_COMPACT_STOCK_MOVEMENTS, null, null);
+                    if (result != null) {
+                        Log.i(LOG_TAG, "Stock movements compacted: "
+                                + result.getInt(PlantContract.KEY_MOVEMENTS_REMOVED) + " removed");
+                    }
+                } catch (RuntimeException e) {
+                    // The ledger is compacted again at the next start
+                    Log.e(LOG_TAG, "Failed to compact the stock movements", e);
+                }
+            }
+        }, "DatabaseWarmUp").start();
+    }
+}
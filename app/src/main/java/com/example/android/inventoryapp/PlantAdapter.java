@@ -0,0 +1,220 @@
+package com.example.android.inventoryapp;
+
+import android.content.Context;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageButton;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link PlantAdapter} is an adapter for a RecyclerView that uses a list of {@link PlantRow}
+ * as its data source. This adapter knows how to create list items for each row of plant data,
+ * and applies the differences computed by the {@link PlantListLoader} when the rows change,
+ * so that only the rows that have actually changed are rebound.
+ */
+
+public class PlantAdapter extends RecyclerView.Adapter<PlantAdapter.ViewHolder> {
+
+    /**
+     * Listener for the clicks on the rows of the list.
+     */
+    public interface OnPlantClickListener {
+        /**
+         * Called when the row of the plant with the given ID has been clicked.
+         */
+        void onPlantClick(long plantId);
+    }
+
+    /**
+     * App context
+     */
+    private final Context mContext;
+
+    /**
+     * Listener notified when a row is clicked
+     */
+    private final OnPlantClickListener mPlantClickListener;
+
+    /**
+     * Formatter of the prices and quantities shown in the list
+     */
+    private final PriceFormatter mPriceFormatter = new PriceFormatter();
+
+    /**
+     * Queue of the stock adjustments not written yet, which the rows show right away
+     */
+    private final StockWriteQueue mStockWriteQueue;
+
+    /**
+     * Rows currently shown in the list
+     */
+    private List<PlantRow> mRows = Collections.emptyList();
+
+    /**
+     * OnClickListener shared by all the rows. Each row is tagged with its {@link ViewHolder},
+     * which knows the ID of the plant bound to it.
+     */
+    private final View.OnClickListener mRowClickListener = new View.OnClickListener() {
+        @Override
+        public void onClick(View v) {
+            ViewHolder holder = (ViewHolder) v.getTag();
+            mPlantClickListener.onPlantClick(holder.plantId);
+        }
+    };
+
+    /**
+     * OnClickListener shared by the sale buttons of all the rows. Each button is tagged
+     * with the {@link ViewHolder} of its row, which knows the plant bound to it.
+     */
+    private final View.OnClickListener mSaleClickListener = new View.OnClickListener() {
+        @Override
+        public void onClick(View v) {
+            ViewHolder holder = (ViewHolder) v.getTag();
+
+            // Reduce plant quantity by one. The sale is queued with the other taps and written
+            // a bit later, and the row shows the reduced quantity right away. The queue checks
+            // that the updated quantity isn't less than 0, and otherwise rejects the sale.
+            if (mStockWriteQueue.adjust(holder.plantId, holder.quantity, -1)) {
+                int position = holder.getAdapterPosition();
+                if (position != RecyclerView.NO_POSITION) {
+                    notifyItemChanged(position);
+                }
+            } else {
+                // In the case quantity is equal to zero, send a Toast message to user
+                // advising the plant is out of stock
+                Toast.makeText(mContext, mContext.getString(R.string.error_button_decrement_plant_quantity),
+                        Toast.LENGTH_SHORT).show();
+            }
+        }
+    };
+
+    /**
+     * Views of a list item and the buffers holding the text they display, so that
+     * binding a row neither looks up the views nor allocates.
+     */
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        final TextView nameTextView;
+        final TextView priceTextView;
+        final TextView quantityTextView;
+        final ImageButton saleButton;
+
+        /**
+         * Text buffers owned by the row: a TextView set from a char array keeps reading
+         * from it, so each TextView needs its own buffer.
+         */
+        final char[] priceBuffer = new char[PriceFormatter.BUFFER_SIZE];
+        final char[] quantityBuffer = new char[PriceFormatter.BUFFER_SIZE];
+
+        /** ID of the plant currently bound to the row */
+        long plantId;
+
+        /** Stock quantity of the plant in the database, without the queued sales */
+        int quantity;
+
+        ViewHolder(View view) {
+            super(view);
+            nameTextView = (TextView) view.findViewById(R.id.plant_name);
+            priceTextView = (TextView) view.findViewById(R.id.plant_price);
+            quantityTextView = (TextView) view.findViewById(R.id.plant_quantity);
+            saleButton = (ImageButton) view.findViewById(R.id.list_view_decrement_plant_quantity);
+        }
+    }
+
+    /**
+     * Constructs a new {@link PlantAdapter}.
+     *
+     * @param context  The context
+     * @param listener The listener notified when a row is clicked
+     */
+    public PlantAdapter(Context context, OnPlantClickListener listener) {
+        mContext = context.getApplicationContext();
+        mPlantClickListener = listener;
+        mStockWriteQueue = StockWriteQueue.getInstance(context);
+        setHasStableIds(true);
+    }
+
+    /**
+     * Show the rows of the given result. If the result has been computed from the rows
+     * currently shown, only the rows that have changed are updated (and animated).
+     * Otherwise all the rows are rebound.
+     *
+     * @param result The rows to show, or null to clear the list
+     */
+    public void setResult(PlantListLoader.Result result) {
+        if (result == null) {
+            mRows = Collections.emptyList();
+            notifyDataSetChanged();
+        } else if (result.previousRows == mRows) {
+            mRows = result.rows;
+            result.diff.dispatchUpdatesTo(this);
+        } else {
+            mRows = result.rows;
+            notifyDataSetChanged();
+        }
+    }
+
+    @Override
+    public int getItemCount() {
+        return mRows.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return mRows.get(position).getId();
+    }
+
+    /**
+     * Makes a new blank list item view. No data is set (or bound) to the views yet.
+     *
+     * @param parent   The parent to which the new view is attached to
+     * @param viewType The type of the new view
+     * @return the ViewHolder of the newly created list item view.
+     */
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.list_item, parent, false);
+        ViewHolder holder = new ViewHolder(view);
+
+        // Open the details of the plant when the row is clicked
+        view.setTag(holder);
+        view.setOnClickListener(mRowClickListener);
+
+        // Implement onClickListener method to ImageButton to reduce plant quantity
+        // by one every time button is touched on the list row
+        holder.saleButton.setTag(holder);
+        holder.saleButton.setOnClickListener(mSaleClickListener);
+        return holder;
+    }
+
+    /**
+     * This method binds the plant data of the row at the given position to the given list
+     * item layout. For example, the name for the current plant can be set on the name TextView
+     * in the list item layout.
+     *
+     * @param holder   The ViewHolder of an existing view, returned earlier by onCreateViewHolder()
+     * @param position The position of the row to bind
+     */
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position) {
+        PlantRow row = mRows.get(position);
+        holder.plantId = row.getId();
+        holder.quantity = row.getQuantity();
+
+        // Update the TextViews with the attributes of the current plant,
+        // formatted straight into the buffers of the row
+        holder.nameTextView.setText(row.getName());
+
+        int priceLength = mPriceFormatter.formatCents(row.getPriceCents(), holder.priceBuffer);
+        holder.priceTextView.setText(holder.priceBuffer, 0, priceLength);
+
+        int quantity = mStockWriteQueue.getQuantity(row.getId(), row.getQuantity());
+        int quantityLength = mPriceFormatter.formatInteger(quantity, holder.quantityBuffer);
+        holder.quantityTextView.setText(holder.quantityBuffer, 0, quantityLength);
+    }
+}
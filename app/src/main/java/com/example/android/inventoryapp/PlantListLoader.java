@@ -0,0 +1,610 @@
+package com.example.android.inventoryapp;
+
+import android.content.AsyncTaskLoader;
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.support.v4.content.ContentResolverCompat;
+import android.support.v4.os.CancellationSignal;
+import android.support.v4.os.OperationCanceledException;
+import android.support.v7.util.DiffUtil;
+import android.text.TextUtils;
+
+import com.example.android.inventoryapp.data.CatalogQuery;
+import com.example.android.inventoryapp.data.PlantContract;
+import com.example.android.inventoryapp.data.PlantContract.PlantEntry;
+import com.example.android.inventoryapp.data.PlantSearch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Loads the rows of the catalog on a background thread one page at a time, either the plants
+ * matching a search, in the order of their ranking, or all the plants, in the sort order and
+ * with the filters of a {@link CatalogQuery}, and computes there the differences with the rows
+ * delivered previously, so that the list only rebinds the rows that have changed.
+ *
+ * When single plants change, only those plants are read again. Observers of the list can
+ * also opt in to coalesce a burst of changes into a single reload with
+ * {@link #setUpdateThrottle(long)}.
+ *
+ * The text of the search can change while the loader runs, as the user types. The query of
+ * the previous text is then canceled, and when the new text only narrows the previous one,
+ * the new results are filtered in memory from the previous ones instead of being queried,
+ * provided all the previous results were loaded.
+ */
+
+public class PlantListLoader extends AsyncTaskLoader<PlantListLoader.Result> {
+
+    /**
+     * Number of plants read from the database for each page of the catalog
+     */
+    public static final int PAGE_SIZE = 50;
+
+    /**
+     * Rows of the catalog, with the differences from the rows of the previous result.
+     */
+    public static class Result {
+        /** The rows to show in the list */
+        public final List<PlantRow> rows;
+
+        /** The rows of the previous result, which {@link #diff} starts from */
+        public final List<PlantRow> previousRows;
+
+        /** The differences between {@link #previousRows} and {@link #rows} */
+        public final DiffUtil.DiffResult diff;
+
+        /** Whether there are more plants to load after the last row */
+        public final boolean hasMore;
+
+        /** The text searched for, or null if the rows are all the plants */
+        public final String searchQuery;
+
+        /** The sort order and the filters of the plants, when they aren't a search */
+        public final CatalogQuery catalogQuery;
+
+        Result(List<PlantRow> rows, List<PlantRow> previousRows, DiffUtil.DiffResult diff, boolean hasMore,
+               String searchQuery, CatalogQuery catalogQuery) {
+            this.rows = rows;
+            this.previousRows = previousRows;
+            this.diff = diff;
+            this.hasMore = hasMore;
+            this.searchQuery = searchQuery;
+            this.catalogQuery = catalogQuery;
+        }
+
+        /**
+         * Whether the rows are the results of a search, instead of all the plants
+         */
+        public boolean isSearch() {
+            return searchQuery != null;
+        }
+    }
+
+    /**
+     * Returns the name of a row, to sort the results of a search refined in memory
+     */
+    private static final PlantSearch.NameProvider<PlantRow> ROW_NAMES = new PlantSearch.NameProvider<PlantRow>() {
+        @Override
+        public String getName(PlantRow row) {
+            return row.getName();
+        }
+    };
+
+    /**
+     * Text the user is searching for, or null to load all the plants
+     */
+    private volatile String mSearchQuery;
+
+    /**
+     * Sort order and filters of the plants, when not searching
+     */
+    private volatile CatalogQuery mCatalogQuery;
+
+    /**
+     * Signal canceling the queries of the load running in background, if any
+     */
+    private CancellationSignal mCancellationSignal;
+
+    /**
+     * The changes read by the load running in background, to read again if it is canceled
+     */
+    private volatile boolean mLoadingReloadPages;
+    private volatile Long[] mLoadingChangedIds;
+
+    /**
+     * Observer of the plants, reading again only the plants which have changed when the
+     * notification names a single plant, and all the pages already loaded otherwise.
+     *
+     * The URI of the change is only given from API 16 on. Below, the framework only calls
+     * {@link ContentObserver#onChange(boolean)}, so every change reloads all the pages, which
+     * is slower but still right.
+     */
+    private final ContentObserver mObserver = new ContentObserver(new Handler()) {
+        @Override
+        public boolean deliverSelfNotifications() {
+            return true;
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+            // The changed plants are unknown, as always before API 16, so all of them must be
+            // read again
+            mReloadPages = true;
+            onContentChanged();
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            // If the change concerns a single plant, only that plant must be read again
+            List<String> segments = uri != null ? uri.getPathSegments() : null;
+            if (segments != null && segments.size() == 2
+                    && PlantContract.PATH_PLANTS.equals(segments.get(0))
+                    && TextUtils.isDigitsOnly(segments.get(1))) {
+                synchronized (mChangedIds) {
+                    mChangedIds.add(Long.parseLong(segments.get(1)));
+                }
+                onContentChanged();
+            } else {
+                onChange(selfChange);
+            }
+        }
+    };
+
+    /**
+     * IDs of the single plants which have changed since the last load
+     */
+    private final Set<Long> mChangedIds = new HashSet<>();
+
+    /**
+     * Whether {@link #mObserver} is registered
+     */
+    private boolean mObserving;
+
+    /**
+     * Last result delivered
+     */
+    private volatile Result mResult;
+
+    /**
+     * Number of pages to load
+     */
+    private volatile int mPageCount = 1;
+
+    /**
+     * Whether the plants have changed since the last load, so that the pages already
+     * loaded must be read again instead of only loading the following ones
+     */
+    private volatile boolean mReloadPages = true;
+
+    /**
+     * Constructs a new {@link PlantListLoader}.
+     *
+     * @param context      The context
+     * @param searchQuery  The text to search for, or null to load all the plants
+     * @param catalogQuery The sort order and the filters of the plants, when not searching
+     */
+    public PlantListLoader(Context context, String searchQuery, CatalogQuery catalogQuery) {
+        super(context);
+        mSearchQuery = normalizeSearchQuery(searchQuery);
+        mCatalogQuery = catalogQuery;
+    }
+
+    /**
+     * Whether this loader searches plants, instead of loading all of them
+     */
+    public boolean isSearch() {
+        return mSearchQuery != null;
+    }
+
+    /**
+     * Change the text to search for, canceling the load of the previous text if it is
+     * still running.
+     *
+     * @param searchQuery The text to search for, or null to load all the plants
+     */
+    public void setSearchQuery(String searchQuery) {
+        String query = normalizeSearchQuery(searchQuery);
+        if (TextUtils.equals(query, mSearchQuery)) {
+            return;
+        }
+        mSearchQuery = query;
+        mPageCount = 1;
+        // Forcing a new load cancels the running one
+        onContentChanged();
+    }
+
+    /**
+     * Return the sort order and the filters of the plants
+     */
+    public CatalogQuery getCatalogQuery() {
+        return mCatalogQuery;
+    }
+
+    /**
+     * Change the sort order or the filters of the plants, reloading them from the first page.
+     */
+    public void setCatalogQuery(CatalogQuery catalogQuery) {
+        if (catalogQuery.equals(mCatalogQuery)) {
+            return;
+        }
+        mCatalogQuery = catalogQuery;
+        mPageCount = 1;
+        onContentChanged();
+    }
+
+    private static String normalizeSearchQuery(String searchQuery) {
+        if (searchQuery == null || searchQuery.trim().length() == 0) {
+            return null;
+        }
+        return searchQuery.trim();
+    }
+
+    /**
+     * Load the next page of plants, if there is one and it isn't already loading.
+     */
+    public void loadNextPage() {
+        Result result = mResult;
+        if (result == null || !result.hasMore || mPageCount * PAGE_SIZE > result.rows.size()) {
+            return;
+        }
+        mPageCount++;
+        onContentChanged();
+    }
+
+    @Override
+    public Result loadInBackground() {
+        Result previous = mResult;
+        List<PlantRow> previousRows = previous != null ? previous.rows : Collections.<PlantRow>emptyList();
+        String searchQuery = mSearchQuery;
+        CatalogQuery catalogQuery = mCatalogQuery;
+
+        // Clear the flag before querying, so that the changes happening during the
+        // query will trigger another load
+        boolean reloadPages = mReloadPages || previous == null;
+        mReloadPages = false;
+        Long[] changedIds;
+        synchronized (mChangedIds) {
+            changedIds = mChangedIds.toArray(new Long[mChangedIds.size()]);
+            mChangedIds.clear();
+        }
+        mLoadingReloadPages = reloadPages;
+        mLoadingChangedIds = changedIds;
+
+        CancellationSignal signal = new CancellationSignal();
+        synchronized (this) {
+            mCancellationSignal = signal;
+        }
+        try {
+            // Read the pages one after the other, each one starting right after the last
+            // plant of the previous one. If nothing has changed, keep the pages already
+            // loaded and only read the following ones.
+            int pageCount = mPageCount;
+            List<PlantRow> rows = new ArrayList<>(pageCount * PAGE_SIZE);
+            boolean hasMore = true;
+            if (searchQuery != null) {
+                if (!reloadPages && changedIds.length == 0 && previous.searchQuery != null) {
+                    if (searchQuery.equals(previous.searchQuery)) {
+                        rows.addAll(previousRows);
+                        hasMore = previous.hasMore;
+                    } else if (!previous.hasMore && PlantSearch.narrows(previous.searchQuery, searchQuery)) {
+                        // The plants haven't changed, all the previous results are loaded, and
+                        // the new text only narrows the previous one: all the results are among
+                        // the previous results
+                        rows.addAll(refineSearch(previousRows, searchQuery));
+                        hasMore = false;
+                    }
+                }
+            } else if (!reloadPages && previous.searchQuery == null && catalogQuery.equals(previous.catalogQuery)) {
+                // If only some plants have changed, keep the pages already loaded and only
+                // read those plants
+                rows.addAll(previousRows);
+                hasMore = previous.hasMore;
+                Comparator<PlantRow> comparator = getRowComparator(catalogQuery.getSort());
+                for (Long changedId : changedIds) {
+                    updateRow(changedId, rows, hasMore, catalogQuery, comparator, signal);
+                }
+            }
+            while (hasMore && rows.size() < pageCount * PAGE_SIZE) {
+                hasMore = readRows(buildNextPageUri(rows, searchQuery, catalogQuery), rows, signal) == PAGE_SIZE;
+            }
+
+            signal.throwIfCanceled();
+            DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new RowDiffCallback(previousRows, rows), false);
+            return new Result(Collections.unmodifiableList(rows), previousRows, diff, hasMore, searchQuery,
+                    catalogQuery);
+        } catch (OperationCanceledException e) {
+            // The result of a canceled load is dropped anyway
+            return null;
+        } finally {
+            synchronized (this) {
+                mCancellationSignal = null;
+            }
+        }
+    }
+
+    @Override
+    public void cancelLoadInBackground() {
+        super.cancelLoadInBackground();
+        // Stop the query running in background, instead of waiting for its stale result
+        synchronized (this) {
+            if (mCancellationSignal != null) {
+                mCancellationSignal.cancel();
+            }
+        }
+    }
+
+    /**
+     * Return the content URI of the page of plants following the given rows, the results of
+     * the given search, or the plants of the given catalog query when not searching.
+     */
+    private static Uri buildNextPageUri(List<PlantRow> rows, String searchQuery, CatalogQuery catalogQuery) {
+        if (rows.isEmpty()) {
+            return searchQuery != null ? PlantEntry.buildSearchUri(searchQuery, PAGE_SIZE)
+                    : catalogQuery.buildFirstPageUri(PAGE_SIZE);
+        }
+        PlantRow last = rows.get(rows.size() - 1);
+        if (searchQuery != null) {
+            return PlantEntry.buildSearchUri(searchQuery, last.getName(), last.getId(), PAGE_SIZE);
+        }
+        return catalogQuery.buildNextPageUri(getSortValue(last, catalogQuery.getSort()), last.getId(), PAGE_SIZE);
+    }
+
+    /**
+     * Return the given search results which match the given text, ranked like
+     * the provider ranks them.
+     */
+    private static List<PlantRow> refineSearch(List<PlantRow> rows, String searchQuery) {
+        List<String> words = PlantSearch.tokenizeQuery(searchQuery);
+        List<PlantRow> results = new ArrayList<>();
+        for (PlantRow row : rows) {
+            if (PlantSearch.matches(words, row.getName(), row.getSupplierName())) {
+                results.add(row);
+            }
+        }
+        PlantSearch.sortByRank(results, ROW_NAMES, searchQuery);
+        return results;
+    }
+
+    /**
+     * Read again the plant with the given ID, and update, move, insert or remove its row
+     * in the given rows, sorted by the given comparator.
+     *
+     * @param id           The ID of the plant which has changed
+     * @param rows         The rows loaded so far
+     * @param hasMore      Whether there are more plants after the last row
+     * @param catalogQuery The filters of the rows
+     * @param comparator   The order of the rows
+     * @param signal       The signal canceling the load
+     */
+    private void updateRow(long id, List<PlantRow> rows, boolean hasMore, CatalogQuery catalogQuery,
+                           Comparator<PlantRow> comparator, CancellationSignal signal) {
+        List<PlantRow> changedRows = new ArrayList<>(1);
+        readRows(ContentUris.withAppendedId(PlantEntry.CONTENT_URI, id), changedRows, signal);
+
+        // Remove the previous row of the plant: the change may have moved it in the sort order
+        for (int i = 0; i < rows.size(); i++) {
+            if (rows.get(i).getId() == id) {
+                rows.remove(i);
+                break;
+            }
+        }
+
+        // Insert the plant at its position, unless it has been deleted or filtered out. Plants
+        // which now come after the last row will come with the following pages.
+        if (!changedRows.isEmpty()) {
+            PlantRow row = changedRows.get(0);
+            if (catalogQuery.matches(row.getPriceCents(), row.getQuantity())) {
+                // Rows are never equal, as the comparator breaks the ties by ID
+                int position = -(Collections.binarySearch(rows, row, comparator) + 1);
+                if (position < rows.size() || !hasMore) {
+                    rows.add(position, row);
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the value of the sort column of the given row, as given to the provider to
+     * read the page after that row, or null when sorting by ID.
+     */
+    private static String getSortValue(PlantRow row, String sort) {
+        switch (sort) {
+            case PlantEntry.SORT_BY_NAME:
+                return row.getName();
+            case PlantEntry.SORT_BY_PRICE:
+                return String.valueOf(row.getPriceCents());
+            case PlantEntry.SORT_BY_QUANTITY:
+                return String.valueOf(row.getQuantity());
+            case PlantEntry.SORT_BY_UPDATED:
+                return String.valueOf(row.getUpdatedAt());
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Return a comparator of the rows ordering them like the provider does for the given sort.
+     */
+    private static Comparator<PlantRow> getRowComparator(final String sort) {
+        // Only the most recently updated plants come first
+        final int direction = PlantEntry.SORT_BY_UPDATED.equals(sort) ? -1 : 1;
+        return new Comparator<PlantRow>() {
+            @Override
+            public int compare(PlantRow first, PlantRow second) {
+                int result;
+                switch (sort) {
+                    case PlantEntry.SORT_BY_NAME:
+                        result = compareIgnoreCase(first.getName(), second.getName());
+                        break;
+                    case PlantEntry.SORT_BY_PRICE:
+                        result = compareLongs(first.getPriceCents(), second.getPriceCents());
+                        break;
+                    case PlantEntry.SORT_BY_QUANTITY:
+                        result = compareLongs(first.getQuantity(), second.getQuantity());
+                        break;
+                    case PlantEntry.SORT_BY_UPDATED:
+                        result = compareLongs(first.getUpdatedAt(), second.getUpdatedAt());
+                        break;
+                    default:
+                        result = 0;
+                }
+                if (result == 0) {
+                    result = compareLongs(first.getId(), second.getId());
+                }
+                return direction * result;
+            }
+        };
+    }
+
+    private static int compareLongs(long first, long second) {
+        return first < second ? -1 : (first == second ? 0 : 1);
+    }
+
+    /**
+     * Compare two names like the NOCASE collation of SQLite, which only ignores the case
+     * of the ASCII letters.
+     */
+    private static int compareIgnoreCase(String first, String second) {
+        int length = Math.min(first.length(), second.length());
+        for (int i = 0; i < length; i++) {
+            char firstChar = first.charAt(i);
+            char secondChar = second.charAt(i);
+            if (firstChar >= 'A' && firstChar <= 'Z') {
+                firstChar += 'a' - 'A';
+            }
+            if (secondChar >= 'A' && secondChar <= 'Z') {
+                secondChar += 'a' - 'A';
+            }
+            if (firstChar != secondChar) {
+                return firstChar - secondChar;
+            }
+        }
+        return first.length() - second.length();
+    }
+
+    /**
+     * Query the given URI and add its rows to the given list. Return the number of rows added.
+     *
+     * @throws OperationCanceledException if the signal is canceled during the query
+     */
+    private int readRows(Uri uri, List<PlantRow> rows, CancellationSignal signal) {
+        Cursor cursor = ContentResolverCompat.query(getContext().getContentResolver(), uri,
+                PlantRow.PROJECTION, null, null, null, signal);
+        if (cursor == null) {
+            return 0;
+        }
+        try {
+            int count = 0;
+            while (cursor.moveToNext()) {
+                rows.add(new PlantRow(cursor));
+                count++;
+            }
+            return count;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Override
+    public void deliverResult(Result result) {
+        // A load canceled too late to be dropped by the loader has no result to deliver
+        if (isReset() || result == null) {
+            return;
+        }
+        mResult = result;
+        mLoadingChangedIds = null;
+        if (isStarted()) {
+            super.deliverResult(result);
+        }
+    }
+
+    @Override
+    public void onCanceled(Result result) {
+        // The changes read by a canceled load haven't been delivered: read them again
+        Long[] changedIds = mLoadingChangedIds;
+        if (changedIds == null) {
+            // The load was canceled before it started
+            return;
+        }
+        mLoadingChangedIds = null;
+        if (mLoadingReloadPages) {
+            mReloadPages = true;
+        } else {
+            synchronized (mChangedIds) {
+                Collections.addAll(mChangedIds, changedIds);
+            }
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (!mObserving) {
+            // Observe all the changes to the plants from the first load on
+            getContext().getContentResolver().registerContentObserver(PlantEntry.CONTENT_URI, true, mObserver);
+            mObserving = true;
+        }
+        if (mResult != null) {
+            deliverResult(mResult);
+        }
+        if (takeContentChanged() || mResult == null) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        if (mObserving) {
+            getContext().getContentResolver().unregisterContentObserver(mObserver);
+            mObserving = false;
+        }
+        mResult = null;
+    }
+
+    /**
+     * Compares two lists of rows by plant ID and content.
+     */
+    private static class RowDiffCallback extends DiffUtil.Callback {
+        private final List<PlantRow> mOldRows;
+        private final List<PlantRow> mNewRows;
+
+        RowDiffCallback(List<PlantRow> oldRows, List<PlantRow> newRows) {
+            mOldRows = oldRows;
+            mNewRows = newRows;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOldRows.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNewRows.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOldRows.get(oldItemPosition).getId() == mNewRows.get(newItemPosition).getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOldRows.get(oldItemPosition).hasSameContent(mNewRows.get(newItemPosition));
+        }
+    }
+}
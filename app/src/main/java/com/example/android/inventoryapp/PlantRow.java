@@ -0,0 +1,108 @@
+package com.example.android.inventoryapp;
+
+import android.database.Cursor;
+
+import com.example.android.inventoryapp.data.PlantContract.PlantEntry;
+
+/**
+ * Immutable snapshot of the data of a plant shown in a row of the catalog.
+ * Rows are read from the database on a background thread, so they can be
+ * compared with the previous rows there, and bound to the list without keeping
+ * any Cursor open.
+ */
+
+public class PlantRow {
+
+    /**
+     * Columns of the plants table needed to build a row
+     */
+    public static final String[] PROJECTION = {
+            PlantEntry._ID,
+            PlantEntry.COLUMN_PLANT_NAME,
+            PlantEntry.COLUMN_PLANT_PRICE_CENTS,
+            PlantEntry.COLUMN_PLANT_QUANTITY,
+            PlantEntry.COLUMN_PLANT_SUPPLIER_NAME,
+            PlantEntry.COLUMN_PLANT_UPDATED_AT};
+
+    /**
+     * Indices of the columns in {@link #PROJECTION}
+     */
+    private static final int INDEX_ID = 0;
+    private static final int INDEX_NAME = 1;
+    private static final int INDEX_PRICE_CENTS = 2;
+    private static final int INDEX_QUANTITY = 3;
+    private static final int INDEX_SUPPLIER_NAME = 4;
+    private static final int INDEX_UPDATED_AT = 5;
+
+    private final long mId;
+    private final String mName;
+    private final long mPriceCents;
+    private final int mQuantity;
+    private final String mSupplierName;
+    private final long mUpdatedAt;
+
+    /**
+     * Constructs a new {@link PlantRow} from the current row of a cursor
+     * with the columns of {@link #PROJECTION}.
+     *
+     * @param cursor The cursor, already moved to the row of the plant
+     */
+    public PlantRow(Cursor cursor) {
+        mId = cursor.getLong(INDEX_ID);
+        mName = cursor.getString(INDEX_NAME);
+        mPriceCents = cursor.getLong(INDEX_PRICE_CENTS);
+        mQuantity = cursor.getInt(INDEX_QUANTITY);
+        mSupplierName = cursor.getString(INDEX_SUPPLIER_NAME);
+        mUpdatedAt = cursor.getLong(INDEX_UPDATED_AT);
+    }
+
+    public long getId() {
+        return mId;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Return the price of the plant, in cents.
+     */
+    public long getPriceCents() {
+        return mPriceCents;
+    }
+
+    public int getQuantity() {
+        return mQuantity;
+    }
+
+    /**
+     * Return the name of the supplier, which isn't shown in the row but lets the catalog
+     * refine the results of a search in memory.
+     */
+    public String getSupplierName() {
+        return mSupplierName;
+    }
+
+    /**
+     * Return the time of the last change of the plant, which isn't shown in the row but
+     * lets the catalog keep the plants sorted by it.
+     */
+    public long getUpdatedAt() {
+        return mUpdatedAt;
+    }
+
+    /**
+     * Return true if the given row holds the same data as this one. The supplier name and the
+     * time of the last change are compared too, though they aren't shown, so that no change of
+     * the row is ever reported as unchanged: rebinding a row which only differs by them costs
+     * little, and the row stays right if they are shown one day.
+     */
+    public boolean hasSameContent(PlantRow other) {
+        return mId == other.mId
+                && mQuantity == other.mQuantity
+                && mPriceCents == other.mPriceCents
+                && mUpdatedAt == other.mUpdatedAt
+                && (mName == null ? other.mName == null : mName.equals(other.mName))
+                && (mSupplierName == null ? other.mSupplierName == null : mSupplierName.equals(other.mSupplierName));
+    }
+}
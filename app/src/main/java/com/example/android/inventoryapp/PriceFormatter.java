@@ -0,0 +1,161 @@
+package com.example.android.inventoryapp;
+
+import java.text.DecimalFormatSymbols;
+
+/**
+ * {@link PriceFormatter} formats prices and stock quantities into char arrays owned by the
+ * caller, without allocating any object, so that the list rows can be bound while scrolling
+ * without creating garbage. The formatted text can be shown with
+ * {@link android.widget.TextView#setText(char[], int, int)}.
+ *
+ * Prices are whole numbers of cents, as stored in the database: formatting them is exact
+ * fixed-point arithmetic, with no floating point rounding.
+ */
+
+public class PriceFormatter {
+
+    /**
+     * Minimum size of the buffers passed to the formatter, enough for any long value
+     * with its sign, decimal separator and two decimals.
+     */
+    public static final int BUFFER_SIZE = 24;
+
+    /**
+     * Decimal separator of the default locale, as used by String.format("%.02f")
+     */
+    private final char mDecimalSeparator;
+
+    /**
+     * Constructs a new {@link PriceFormatter} using the decimal separator of the default locale.
+     */
+    public PriceFormatter() {
+        this(DecimalFormatSymbols.getInstance().getDecimalSeparator());
+    }
+
+    /**
+     * Constructs a new {@link PriceFormatter}.
+     *
+     * @param decimalSeparator the char separating the units from the cents
+     */
+    public PriceFormatter(char decimalSeparator) {
+        mDecimalSeparator = decimalSeparator;
+    }
+
+    /**
+     * Format the given amount of cents as units with two decimals.
+     *
+     * @param cents  the amount to format, in cents
+     * @param buffer the buffer to write into, at least {@link #BUFFER_SIZE} chars long
+     * @return the number of chars written at the start of the buffer
+     */
+    public int formatCents(long cents, char[] buffer) {
+        boolean negative = cents < 0;
+        long units = Math.abs(cents / 100);
+        int fraction = (int) Math.abs(cents % 100);
+
+        // Write the chars from right to left, starting from the end of the formatted text
+        int length = (negative ? 1 : 0) + countDigits(units) + 3;
+        int i = length;
+        buffer[--i] = (char) ('0' + fraction % 10);
+        buffer[--i] = (char) ('0' + fraction / 10);
+        buffer[--i] = mDecimalSeparator;
+        i = writeDigits(units, buffer, i);
+        if (negative) {
+            buffer[--i] = '-';
+        }
+        return length;
+    }
+
+    /**
+     * Format the given integer value, like String.valueOf(value) does.
+     *
+     * @param value  the value to format
+     * @param buffer the buffer to write into, at least {@link #BUFFER_SIZE} chars long
+     * @return the number of chars written at the start of the buffer
+     */
+    public int formatInteger(int value, char[] buffer) {
+        boolean negative = value < 0;
+        long magnitude = Math.abs((long) value);
+
+        int length = (negative ? 1 : 0) + countDigits(magnitude);
+        int i = writeDigits(magnitude, buffer, length);
+        if (negative) {
+            buffer[--i] = '-';
+        }
+        return length;
+    }
+
+    /**
+     * Parse a price typed by the user, in units with at most two decimals after a '.' or a
+     * ',' (like "12", "12.5" or "12,50"), into cents, without allocating any object.
+     *
+     * @param text the text to parse, without leading or trailing spaces
+     * @return the price in cents, or -1 if the text isn't a valid price or is above maxCents
+     */
+    public static long parseCents(CharSequence text, long maxCents) {
+        long units = 0;
+        int fraction = 0;
+        int digits = 0;
+        int decimals = -1;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '.' || c == ',') {
+                // Only one separator
+                if (decimals >= 0) {
+                    return -1;
+                }
+                decimals = 0;
+            } else if (c >= '0' && c <= '9') {
+                if (decimals < 0) {
+                    units = units * 10 + (c - '0');
+                    // Stop before the value overflows
+                    if (units > maxCents / 100) {
+                        return -1;
+                    }
+                } else if (decimals < 2) {
+                    fraction = fraction * 10 + (c - '0');
+                    decimals++;
+                } else {
+                    return -1;
+                }
+                digits++;
+            } else {
+                return -1;
+            }
+        }
+        if (digits == 0) {
+            return -1;
+        }
+        // "12.5" is 12 units and 50 cents
+        if (decimals == 1) {
+            fraction *= 10;
+        }
+        long cents = units * 100 + fraction;
+        return cents <= maxCents ? cents : -1;
+    }
+
+    /**
+     * Write the digits of the given non negative value in the buffer, ending right before
+     * the given position. Return the position of the first digit written.
+     */
+    private static int writeDigits(long value, char[] buffer, int end) {
+        int i = end;
+        do {
+            buffer[--i] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        return i;
+    }
+
+    /**
+     * Return the number of decimal digits of the given non negative value.
+     */
+    private static int countDigits(long value) {
+        int digits = 1;
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.android.inventoryapp;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * {@link StartupTimings} keeps the time of the steps of a cold start of the app, from the
+ * creation of the application to the first rows shown in the catalog, so that a slow start
+ * can be traced back to the database warm-up or to the inflation of the catalog.
+ *
+ * Each mark is only kept the first time it is reached: the catalog created again after a
+ * rotation, or its rows loaded again, don't count as a cold start. Marks can be reached from
+ * any thread, as the database is warmed up on a background thread while the main thread
+ * inflates the catalog.
+ */
+
+public final class StartupTimings {
+
+    /** The application has been created, the start of the timings */
+    public static final String MARK_APPLICATION_CREATED = "application_created";
+
+    /** The database has been opened, created or upgraded, and its connection configured */
+    public static final String MARK_DATABASE_OPENED = "database_opened";
+
+    /** The first page of the catalog has been read, priming the page cache of the database */
+    public static final String MARK_FIRST_PAGE_PRIMED = "first_page_primed";
+
+    /** The views of the catalog have been inflated */
+    public static final String MARK_CATALOG_INFLATED = "catalog_inflated";
+
+    /** The first rows of the catalog have been shown */
+    public static final String MARK_FIRST_ROWS_SHOWN = "first_rows_shown";
+
+    /**
+     * Source of the time of the marks, in nanoseconds.
+     */
+    interface Clock {
+        long nanoTime();
+    }
+
+    private static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+
+    private static final StartupTimings sInstance = new StartupTimings(SYSTEM_CLOCK);
+
+    private final Clock mClock;
+
+    /**
+     * Time of the marks reached so far, in nanoseconds, in the order they were reached
+     */
+    private final LinkedHashMap<String, Long> mMarks = new LinkedHashMap<>();
+
+    /**
+     * Return the timings of the cold start of the app.
+     */
+    public static StartupTimings getInstance() {
+        return sInstance;
+    }
+
+    StartupTimings(Clock clock) {
+        mClock = clock;
+    }
+
+    /**
+     * Record the given mark at the current time, if it hasn't been reached before.
+     *
+     * @return true if the mark has been recorded, false if it had already been reached
+     */
+    public synchronized boolean mark(String name) {
+        if (mMarks.containsKey(name)) {
+            return false;
+        }
+        mMarks.put(name, mClock.nanoTime());
+        return true;
+    }
+
+    /**
+     * Return whether the given mark has been reached.
+     */
+    public synchronized boolean hasMark(String name) {
+        return mMarks.containsKey(name);
+    }
+
+    /**
+     * Return the time between the two given marks, in milliseconds, or -1 if either hasn't
+     * been reached yet.
+     */
+    public synchronized long getElapsedMillis(String from, String to) {
+        Long start = mMarks.get(from);
+        Long end = mMarks.get(to);
+        if (start == null || end == null) {
+            return -1;
+        }
+        return (end - start) / 1000000;
+    }
+
+    /**
+     * Return a copy of the marks reached so far, in the order they were reached, with their
+     * time in milliseconds since {@link #MARK_APPLICATION_CREATED} (or since the first mark,
+     * if the application mark hasn't been reached).
+     */
+    public synchronized Map<String, Long> getMarks() {
+        LinkedHashMap<String, Long> marks = new LinkedHashMap<>();
+        Long origin = mMarks.get(MARK_APPLICATION_CREATED);
+        for (Map.Entry<String, Long> mark : mMarks.entrySet()) {
+            if (origin == null) {
+                origin = mark.getValue();
+            }
+            marks.put(mark.getKey(), (mark.getValue() - origin) / 1000000);
+        }
+        return marks;
+    }
+
+    /**
+     * Return the marks reached so far on a single line, like
+     * "application_created=0ms database_opened=12ms".
+     */
+    public String toText() {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, Long> mark : getMarks().entrySet()) {
+            if (text.length() > 0) {
+                text.append(' ');
+            }
+            text.append(String.format(Locale.US, "%s=%dms", mark.getKey(), mark.getValue()));
+        }
+        return text.toString();
+    }
+}
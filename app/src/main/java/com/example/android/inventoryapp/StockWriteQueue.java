@@ -0,0 +1,371 @@
+package com.example.android.inventoryapp;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentUris;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.RemoteException;
+import android.support.v4.util.LongSparseArray;
+import android.util.Log;
+import android.widget.Toast;
+
+import com.example.android.inventoryapp.data.PlantContract;
+import com.example.android.inventoryapp.data.PlantContract.PendingAdjustmentEntry;
+import com.example.android.inventoryapp.data.PlantContract.PlantEntry;
+
+import java.util.ArrayList;
+
+/**
+ * {@link StockWriteQueue} collects the stock adjustments made by the sale and +/- buttons,
+ * adds up the deltas of each plant in memory, and writes them to the database in a single
+ * batch a few hundred milliseconds after the first tap, or when the screen is paused.
+ * A burst of taps thus costs one transaction and one change notification instead of one
+ * per tap.
+ *
+ * The screens show the optimistic quantity, the quantity in the database plus the deltas
+ * not applied yet, right away. Each tap is also saved right away, on the background thread,
+ * as a row of the pending adjustments, and the batch applies the saved rows and deletes them
+ * in the same transaction: a tap is applied exactly once, even if the process dies before,
+ * during or after the batch. The rows left by a process which died are applied when the app
+ * restarts. A save is never dropped: if the queue of the writer is full, the tap waits for
+ * room in it.
+ *
+ * If the quantity in the database has changed since the tap, and the adjustment would take
+ * it out of the valid range, the batch rejects it, and a Toast tells the user that the
+ * quantity shown went back.
+ */
+
+public final class StockWriteQueue {
+
+    public static final String LOG_TAG = StockWriteQueue.class.getSimpleName();
+
+    /**
+     * Delay between the first queued tap and the write of the batch
+     */
+    private static final long FLUSH_DELAY_MS = 300;
+
+    private static StockWriteQueue sInstance;
+
+    private final Context mContext;
+
+    /**
+     * Deltas not applied to the plants yet, by plant ID, shown by the screens
+     */
+    private final LongSparseArray<Integer> mUnappliedDeltas = new LongSparseArray<>();
+
+    /**
+     * Deltas not saved as pending adjustments yet, by plant ID, a part of the unapplied deltas
+     */
+    private final LongSparseArray<Integer> mUnsavedDeltas = new LongSparseArray<>();
+
+    /**
+     * Whether the save of the unsaved deltas is queued on the writer. Guarded by this.
+     */
+    private boolean mSaveScheduled;
+
+    /**
+     * Writer running the saves and the batches on its background thread, one at a time, in
+     * order with the other writes of the app
+     */
+    private final AsyncWriter mWriter;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Whether the write of the next batch is scheduled. Only accessed on the main thread.
+     */
+    private boolean mFlushScheduled;
+
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private final Runnable mSaveRunnable = new Runnable() {
+        @Override
+        public void run() {
+            save();
+        }
+    };
+
+    private final Runnable mRejectedRunnable = new Runnable() {
+        @Override
+        public void run() {
+            Toast.makeText(mContext, R.string.error_stock_adjustment_rejected, Toast.LENGTH_LONG).show();
+        }
+    };
+
+    private final Runnable mWriteRunnable = new Runnable() {
+        @Override
+        public void run() {
+            write();
+        }
+    };
+
+    /**
+     * Return the queue of the app, applying in the background the adjustments saved by a
+     * previous process which died before applying them.
+     */
+    public static synchronized StockWriteQueue getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new StockWriteQueue(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private StockWriteQueue(Context context) {
+        mContext = context;
+        mWriter = AsyncWriter.getInstance(context);
+        // First in the queue of the writer, before any save of this process
+        mWriter.executeOrWait(new Runnable() {
+            @Override
+            public void run() {
+                loadPendingAdjustments();
+                write();
+            }
+        });
+    }
+
+    /**
+     * Queue the given delta for the stock quantity of the given plant, unless the optimistic
+     * quantity would be out of the valid range.
+     *
+     * @param plantId  The ID of the plant
+     * @param quantity The quantity of the plant read from the database
+     * @param delta    The quantity to add
+     * @return true if the delta has been queued, false if it has been rejected
+     */
+    public boolean adjust(long plantId, int quantity, int delta) {
+        boolean save;
+        synchronized (this) {
+            int newQuantity = getQuantity(plantId, quantity) + delta;
+            if (newQuantity < 0 || newQuantity > PlantEntry.MAX_QUANTITY) {
+                return false;
+            }
+            addDelta(mUnappliedDeltas, plantId, delta);
+            addDelta(mUnsavedDeltas, plantId, delta);
+            save = !mSaveScheduled;
+            mSaveScheduled = true;
+        }
+
+        // Save the delta right away on the background thread, so that it survives the death
+        // of the process. The taps made until the save runs are saved with it. The save is
+        // never dropped: if too many writes are pending, wait for room in the queue.
+        if (save && !mWriter.executeOrWait(mSaveRunnable)) {
+            // Interrupted: saved with the next taps, or by the batch
+            synchronized (this) {
+                mSaveScheduled = false;
+            }
+        }
+
+        // Write the batch a bit later, with all the taps made in the meantime
+        if (!mFlushScheduled) {
+            mFlushScheduled = true;
+            mHandler.postDelayed(mFlushRunnable, FLUSH_DELAY_MS);
+        }
+        return true;
+    }
+
+    /**
+     * Return the optimistic stock quantity of the given plant: the given quantity read from
+     * the database, plus the deltas not applied yet.
+     */
+    public synchronized int getQuantity(long plantId, int quantity) {
+        if (mUnappliedDeltas.size() == 0) {
+            return quantity;
+        }
+        return quantity + getDelta(mUnappliedDeltas, plantId);
+    }
+
+    /**
+     * Apply all the queued deltas now, in a single batch on a background thread. Called
+     * when the screens showing the stock are paused.
+     */
+    public void flush() {
+        mHandler.removeCallbacks(mFlushRunnable);
+        mFlushScheduled = false;
+        synchronized (this) {
+            if (mUnappliedDeltas.size() == 0) {
+                return;
+            }
+        }
+        if (!mWriter.execute(mWriteRunnable)) {
+            // Too many writes are pending: the deltas are saved, and applied with the next taps
+            Log.w(LOG_TAG, "Stock adjustments postponed");
+        }
+    }
+
+    /**
+     * Save the deltas not saved yet as pending adjustments, in a single transaction. Return
+     * false if they couldn't be saved, and are still to save. Runs on the background thread.
+     */
+    private boolean save() {
+        long[] plantIds;
+        int[] deltas;
+        synchronized (this) {
+            mSaveScheduled = false;
+            int size = mUnsavedDeltas.size();
+            if (size == 0) {
+                return true;
+            }
+            plantIds = new long[size];
+            deltas = new int[size];
+            for (int i = 0; i < size; i++) {
+                plantIds[i] = mUnsavedDeltas.keyAt(i);
+                deltas[i] = mUnsavedDeltas.valueAt(i);
+            }
+            mUnsavedDeltas.clear();
+        }
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        for (int i = 0; i < plantIds.length; i++) {
+            if (deltas[i] != 0) {
+                operations.add(ContentProviderOperation.newInsert(PendingAdjustmentEntry.CONTENT_URI)
+                        .withValue(PendingAdjustmentEntry.COLUMN_PLANT_ID, plantIds[i])
+                        .withValue(PendingAdjustmentEntry.COLUMN_DELTA, deltas[i])
+                        .build());
+            }
+        }
+        try {
+            if (!operations.isEmpty()) {
+                mContext.getContentResolver().applyBatch(PlantContract.CONTENT_AUTHORITY, operations);
+            }
+            return true;
+        } catch (RemoteException | OperationApplicationException e) {
+            // Nothing has been saved: save the deltas again with the next taps
+            Log.e(LOG_TAG, "Failed to save the stock adjustments", e);
+            synchronized (this) {
+                for (int i = 0; i < plantIds.length; i++) {
+                    addDelta(mUnsavedDeltas, plantIds[i], deltas[i]);
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Apply all the pending adjustments saved so far, and delete them, in a single batch, then
+     * forget their deltas. Runs on the background thread.
+     */
+    private void write() {
+        if (!save()) {
+            return;
+        }
+
+        // The pending adjustments are only written on this thread: the rows read are the
+        // ones the batch deletes
+        LongSparseArray<Integer> deltas = new LongSparseArray<>();
+        long lastId = readPendingAdjustments(deltas);
+        if (deltas.size() == 0) {
+            return;
+        }
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        for (int i = 0; i < deltas.size(); i++) {
+            if (deltas.valueAt(i) != 0) {
+                operations.add(ContentProviderOperation.newUpdate(PlantEntry.buildAdjustUri(deltas.keyAt(i)))
+                        .withValue(PlantEntry.KEY_QUANTITY_DELTA, deltas.valueAt(i))
+                        .build());
+            }
+        }
+        operations.add(ContentProviderOperation.newDelete(PendingAdjustmentEntry.CONTENT_URI)
+                .withSelection(PendingAdjustmentEntry._ID + "<=?", new String[]{String.valueOf(lastId)})
+                .build());
+        try {
+            ContentProviderResult[] results = mContext.getContentResolver()
+                    .applyBatch(PlantContract.CONTENT_AUTHORITY, operations);
+            boolean rejected = false;
+            for (int i = 0; i < results.length; i++) {
+                // The quantity in the database has changed since the tap
+                if (results[i].count != null && results[i].count == PlantEntry.ADJUST_REJECTED) {
+                    Log.w(LOG_TAG, "Stock adjustment rejected: " + operations.get(i).getUri());
+                    rejected = true;
+                }
+            }
+            if (rejected) {
+                // The optimistic quantity shown is about to go back to the one in the
+                // database: tell the user
+                mHandler.post(mRejectedRunnable);
+            }
+        } catch (RemoteException | OperationApplicationException e) {
+            // Nothing has been written: the adjustments are still pending, applied by the next
+            // batch or when the app restarts
+            Log.e(LOG_TAG, "Failed to write the stock adjustments", e);
+            return;
+        }
+
+        synchronized (this) {
+            for (int i = 0; i < deltas.size(); i++) {
+                addDelta(mUnappliedDeltas, deltas.keyAt(i), -deltas.valueAt(i));
+            }
+        }
+
+        // The batch has notified the screens before the deltas were forgotten, and a screen
+        // reloaded in between has added them to the new quantities: notify them again
+        Uri uri = deltas.size() == 1 ? ContentUris.withAppendedId(PlantEntry.CONTENT_URI, deltas.keyAt(0))
+                : PlantEntry.CONTENT_URI;
+        mContext.getContentResolver().notifyChange(uri, null);
+    }
+
+    /**
+     * Read the pending adjustments into the given deltas, added up by plant ID. Return the ID
+     * of the last adjustment read. Runs on the background thread.
+     */
+    private long readPendingAdjustments(LongSparseArray<Integer> deltas) {
+        long lastId = 0;
+        Cursor cursor = mContext.getContentResolver().query(PendingAdjustmentEntry.CONTENT_URI,
+                new String[]{PendingAdjustmentEntry._ID, PendingAdjustmentEntry.COLUMN_PLANT_ID,
+                        PendingAdjustmentEntry.COLUMN_DELTA}, null, null, null);
+        if (cursor == null) {
+            return lastId;
+        }
+        try {
+            while (cursor.moveToNext()) {
+                lastId = Math.max(lastId, cursor.getLong(0));
+                addDelta(deltas, cursor.getLong(1), cursor.getInt(2));
+            }
+        } finally {
+            cursor.close();
+        }
+        return lastId;
+    }
+
+    /**
+     * Add the adjustments left by a previous process to the unapplied deltas, so that they
+     * are shown, and forgotten once applied, like the deltas of this process. Runs on the
+     * background thread, before any save of this process.
+     */
+    private void loadPendingAdjustments() {
+        LongSparseArray<Integer> deltas = new LongSparseArray<>();
+        readPendingAdjustments(deltas);
+        synchronized (this) {
+            for (int i = 0; i < deltas.size(); i++) {
+                addDelta(mUnappliedDeltas, deltas.keyAt(i), deltas.valueAt(i));
+            }
+        }
+    }
+
+    private static int getDelta(LongSparseArray<Integer> deltas, long plantId) {
+        Integer delta = deltas.get(plantId);
+        return delta != null ? delta : 0;
+    }
+
+    /**
+     * Add the given delta to the delta of the given plant, forgetting it if it is 0.
+     */
+    private static void addDelta(LongSparseArray<Integer> deltas, long plantId, int delta) {
+        int sum = getDelta(deltas, plantId) + delta;
+        if (sum == 0) {
+            deltas.remove(plantId);
+        } else {
+            deltas.put(plantId, sum);
+        }
+    }
+}
@@ -0,0 +1,387 @@
+package com.example.android.inventoryapp;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapShader;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Shader;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.DocumentsContract;
+import android.provider.OpenableColumns;
+import android.text.TextUtils;
+import android.util.Log;
+import android.widget.ImageView;
+
+import com.squareup.picasso.Picasso;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import jp.wasabeef.picasso.transformations.CropCircleTransformation;
+
+/**
+ * {@link ThumbnailCache} keeps in the app storage a small, already cropped to a circle,
+ * thumbnail of the image of each plant. The thumbnail is generated once, on a background
+ * thread, when the image of a plant is saved, so that the screens showing the plant only
+ * decode a few KB instead of the full-size original picture. The screens generate and
+ * delete the thumbnails once their writes are committed, never within the transaction of
+ * the provider, which could still be rolled back.
+ *
+ * Thumbnails are named after the ID of the plant and a SHA-1 digest of its image URI, size
+ * and time of last change, so that neither a new image nor an image edited or replaced behind
+ * the same URI shows the thumbnail of the previous one. As reading the size and the time
+ * of an image is disk I/O, the thumbnails are looked up on the background thread too.
+ */
+
+public final class ThumbnailCache {
+
+    public static final String LOG_TAG = ThumbnailCache.class.getSimpleName();
+
+    /**
+     * Directory of the thumbnails, in the files directory of the app
+     */
+    private static final String THUMBNAIL_DIRECTORY = "thumbnails";
+
+    /**
+     * Extension of the thumbnail files. PNG keeps the transparent corners of the circle.
+     */
+    private static final String THUMBNAIL_EXTENSION = ".png";
+
+    /**
+     * Background thread looking up, generating and deleting the thumbnails, one at a time
+     */
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    private ThumbnailCache() {
+    }
+
+    /**
+     * Show the thumbnail of the given plant in the given view, once it has been looked up on
+     * the background thread. If the thumbnail hasn't been generated yet, show the original
+     * image, cropped on the fly, and generate the thumbnail for the next time.
+     *
+     * @param view     The view to show the image in
+     * @param plantId  The ID of the plant
+     * @param imageUri The URI of the original image of the plant
+     */
+    public static void load(final ImageView view, final long plantId, final String imageUri) {
+        // The view shows the last image asked for, whatever the order the lookups end in
+        view.setTag(imageUri);
+        if (TextUtils.isEmpty(imageUri)) {
+            view.setImageResource(R.drawable.ic_plant_image_placeholder);
+            return;
+        }
+
+        final Context appContext = view.getContext().getApplicationContext();
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final File thumbnail = getThumbnailFile(appContext, plantId, imageUri);
+                final boolean exists = thumbnail != null && thumbnail.exists();
+                sMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!imageUri.equals(view.getTag())) {
+                            return;
+                        }
+                        if (exists) {
+                            Picasso.with(appContext).load(thumbnail)
+                                    .placeholder(R.drawable.ic_plant_image_placeholder)
+                                    .into(view);
+                        } else {
+                            loadOriginal(view, Uri.parse(imageUri));
+                            if (thumbnail != null) {
+                                generate(appContext, plantId, imageUri);
+                            }
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Show the given original image in the given view, cropped to a circle. This is only
+     * meant for images which aren't saved yet, like a picture just chosen in the editor.
+     */
+    public static void loadOriginal(ImageView view, Uri imageUri) {
+        int size = getThumbnailSize(view.getContext());
+        Picasso.with(view.getContext()).load(imageUri)
+                .placeholder(R.drawable.ic_plant_image_placeholder)
+                .resize(size, size)
+                .centerCrop()
+                .transform(new CropCircleTransformation())
+                .into(view);
+    }
+
+    /**
+     * Generate the thumbnail of the given image of the given plant on a background thread,
+     * unless it already exists, and delete the thumbnails of the previous images of the plant.
+     *
+     * @param context  The context
+     * @param plantId  The ID of the plant
+     * @param imageUri The URI of the image of the plant, or null if it has none
+     */
+    public static void generate(Context context, final long plantId, final String imageUri) {
+        final Context appContext = context.getApplicationContext();
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                File thumbnail = null;
+                if (!TextUtils.isEmpty(imageUri)) {
+                    thumbnail = getThumbnailFile(appContext, plantId, imageUri);
+                    if (thumbnail == null
+                            || !thumbnail.exists() && !writeThumbnail(appContext, Uri.parse(imageUri), thumbnail)) {
+                        return;
+                    }
+                }
+                deleteThumbnails(appContext, plantId, thumbnail);
+            }
+        });
+    }
+
+    /**
+     * Delete the thumbnails of the given plant on a background thread.
+     */
+    public static void delete(Context context, final long plantId) {
+        final Context appContext = context.getApplicationContext();
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                deleteThumbnails(appContext, plantId, null);
+            }
+        });
+    }
+
+    /**
+     * Delete the thumbnails of all the plants on a background thread.
+     */
+    public static void deleteAll(Context context) {
+        final Context appContext = context.getApplicationContext();
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                File[] files = getThumbnailDirectory(appContext).listFiles();
+                if (files != null) {
+                    for (File file : files) {
+                        file.delete();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Return the size of the side of the thumbnails, in pixels
+     */
+    private static int getThumbnailSize(Context context) {
+        return context.getResources().getDimensionPixelSize(R.dimen.plant_thumbnail_size);
+    }
+
+    private static File getThumbnailDirectory(Context context) {
+        return new File(context.getFilesDir(), THUMBNAIL_DIRECTORY);
+    }
+
+    /**
+     * Return the file of the thumbnail of the given image of the given plant,
+     * named {@code <plant ID>_<key of the image>.png}, or null if the image can't be read.
+     * Runs on the background thread.
+     */
+    private static File getThumbnailFile(Context context, long plantId, String imageUri) {
+        String key = getImageKey(context, Uri.parse(imageUri));
+        if (key == null) {
+            return null;
+        }
+        return new File(getThumbnailDirectory(context), plantId + "_" + key + THUMBNAIL_EXTENSION);
+    }
+
+    /**
+     * Return the key of the given image: the SHA-1 digest of its URI, size and time of last
+     * change, as told by the provider of the image, or by the file system for a file URI. If
+     * neither is known, the digest is of the URI and of the bytes of the image instead. Return
+     * null if the image can't be read. Runs on the background thread.
+     */
+    private static String getImageKey(Context context, Uri imageUri) {
+        long size = -1;
+        long lastModified = -1;
+        try {
+            if (ContentResolver.SCHEME_FILE.equals(imageUri.getScheme())) {
+                File file = new File(imageUri.getPath());
+                size = file.length();
+                lastModified = file.lastModified();
+            } else {
+                Cursor cursor = context.getContentResolver().query(imageUri, null, null, null, null);
+                if (cursor != null) {
+                    try {
+                        if (cursor.moveToFirst()) {
+                            size = getLong(cursor, OpenableColumns.SIZE);
+                            // A constant inlined by the compiler, thus safe below KitKat
+                            lastModified = getLong(cursor, DocumentsContract.Document.COLUMN_LAST_MODIFIED);
+                        }
+                    } finally {
+                        cursor.close();
+                    }
+                }
+            }
+
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(imageUri.toString().getBytes("UTF-8"));
+            if (size > 0 || lastModified > 0) {
+                digest.update((size + "_" + lastModified).getBytes("UTF-8"));
+            } else {
+                InputStream input = context.getContentResolver().openInputStream(imageUri);
+                if (input == null) {
+                    throw new IOException("Cannot open " + imageUri);
+                }
+                try {
+                    byte[] buffer = new byte[8192];
+                    int count;
+                    while ((count = input.read(buffer)) != -1) {
+                        digest.update(buffer, 0, count);
+                    }
+                } finally {
+                    input.close();
+                }
+            }
+
+            StringBuilder key = new StringBuilder();
+            for (byte b : digest.digest()) {
+                key.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return key.toString();
+        } catch (IOException | NoSuchAlgorithmException | RuntimeException e) {
+            // Including the SecurityException of an image whose permission has been revoked
+            Log.e(LOG_TAG, "Failed to read " + imageUri, e);
+            return null;
+        }
+    }
+
+    /**
+     * Return the value of the given column of the current row of the given cursor, or -1 if
+     * the cursor has no such column, or no value in it.
+     */
+    private static long getLong(Cursor cursor, String column) {
+        int index = cursor.getColumnIndex(column);
+        return index != -1 && !cursor.isNull(index) ? cursor.getLong(index) : -1;
+    }
+
+    /**
+     * Delete the thumbnails of the given plant, except the given one (which can be null).
+     */
+    private static void deleteThumbnails(Context context, long plantId, final File keep) {
+        final String prefix = plantId + "_";
+        File[] files = getThumbnailDirectory(context).listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(prefix) && (keep == null || !name.equals(keep.getName()));
+            }
+        });
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Decode the given image, crop it to a circle of the thumbnail size and write it into
+     * the given file. Return true if the thumbnail has been written.
+     */
+    private static boolean writeThumbnail(Context context, Uri imageUri, File thumbnail) {
+        int size = getThumbnailSize(context);
+        Bitmap original = null;
+        Bitmap cropped = null;
+        try {
+            // Read only the dimensions first, to decode the image subsampled to the smallest
+            // power of two still larger than the thumbnail, instead of at full size
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            decodeStream(context, imageUri, options);
+            if (options.outWidth <= 0 || options.outHeight <= 0) {
+                Log.e(LOG_TAG, "Failed to decode " + imageUri);
+                return false;
+            }
+            int sampleSize = 1;
+            int side = Math.min(options.outWidth, options.outHeight);
+            while (side / (sampleSize * 2) >= size) {
+                sampleSize *= 2;
+            }
+            options.inJustDecodeBounds = false;
+            options.inSampleSize = sampleSize;
+            original = decodeStream(context, imageUri, options);
+            if (original == null) {
+                Log.e(LOG_TAG, "Failed to decode " + imageUri);
+                return false;
+            }
+
+            // Scale the center square of the image to the thumbnail and draw it as a circle
+            int originalSide = Math.min(original.getWidth(), original.getHeight());
+            float scale = (float) size / originalSide;
+            Matrix matrix = new Matrix();
+            matrix.setScale(scale, scale);
+            matrix.postTranslate((size - original.getWidth() * scale) / 2,
+                    (size - original.getHeight() * scale) / 2);
+            BitmapShader shader = new BitmapShader(original, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
+            shader.setLocalMatrix(matrix);
+            Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
+            paint.setShader(shader);
+            cropped = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+            new Canvas(cropped).drawCircle(size / 2f, size / 2f, size / 2f, paint);
+
+            // Write into a temporary file first, so that a thumbnail is never read half written
+            File directory = thumbnail.getParentFile();
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                Log.e(LOG_TAG, "Failed to create " + directory);
+                return false;
+            }
+            File temporary = new File(directory, thumbnail.getName() + ".tmp");
+            OutputStream output = new FileOutputStream(temporary);
+            try {
+                cropped.compress(Bitmap.CompressFormat.PNG, 100, output);
+            } finally {
+                output.close();
+            }
+            return temporary.renameTo(thumbnail);
+        } catch (IOException | SecurityException e) {
+            Log.e(LOG_TAG, "Failed to generate the thumbnail of " + imageUri, e);
+            return false;
+        } finally {
+            if (original != null) {
+                original.recycle();
+            }
+            if (cropped != null) {
+                cropped.recycle();
+            }
+        }
+    }
+
+    private static Bitmap decodeStream(Context context, Uri uri, BitmapFactory.Options options)
+            throws IOException {
+        InputStream input = context.getContentResolver().openInputStream(uri);
+        if (input == null) {
+            throw new IOException("Cannot open " + uri);
+        }
+        try {
+            return BitmapFactory.decodeStream(input, null, options);
+        } finally {
+            input.close();
+        }
+    }
+}
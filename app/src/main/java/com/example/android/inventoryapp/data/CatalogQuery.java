@@ -0,0 +1,194 @@
+package com.example.android.inventoryapp.data;
+
+import android.net.Uri;
+
+import com.example.android.inventoryapp.data.PlantContract.PlantEntry;
+
+/**
+ * Immutable sort order and filters of the catalog, turned into the query parameters of the
+ * pages of plants read from the {@link PlantProvider}. Every sort and filter is backed by an
+ * index, so that a page costs the same whatever the number of plants.
+ */
+
+public final class CatalogQuery {
+
+    /**
+     * The catalog as the plants were added, without filters
+     */
+    public static final CatalogQuery DEFAULT = new CatalogQuery(PlantEntry.SORT_BY_ID, null, null, null, null);
+
+    private final String mSort;
+    private final Long mMinPriceCents;
+    private final Long mMaxPriceCents;
+    private final Integer mQuantityBelow;
+    private final Integer mLowStockThreshold;
+
+    /**
+     * Constructs a new {@link CatalogQuery}.
+     *
+     * @param sort              One of the PlantEntry.SORT_BY_* values
+     * @param minPriceCents     The minimum price of the plants in cents, or null for no minimum
+     * @param maxPriceCents     The maximum price of the plants in cents, or null for no maximum
+     * @param quantityBelow     Only show the plants with a lower stock quantity, or null for all
+     * @param lowStockThreshold Only show the plants to reorder, with a quantity below this
+     *                          threshold, sorted by quantity, or null for all
+     */
+    public CatalogQuery(String sort, Long minPriceCents, Long maxPriceCents, Integer quantityBelow,
+                        Integer lowStockThreshold) {
+        mSort = lowStockThreshold != null ? PlantEntry.SORT_BY_QUANTITY : sort;
+        mMinPriceCents = minPriceCents;
+        mMaxPriceCents = maxPriceCents;
+        mQuantityBelow = quantityBelow;
+        mLowStockThreshold = lowStockThreshold;
+    }
+
+    public String getSort() {
+        return mSort;
+    }
+
+    public Long getMinPriceCents() {
+        return mMinPriceCents;
+    }
+
+    public Long getMaxPriceCents() {
+        return mMaxPriceCents;
+    }
+
+    public Integer getQuantityBelow() {
+        return mQuantityBelow;
+    }
+
+    public Integer getLowStockThreshold() {
+        return mLowStockThreshold;
+    }
+
+    /**
+     * Whether only the plants to reorder are shown
+     */
+    public boolean isLowStock() {
+        return mLowStockThreshold != null;
+    }
+
+    /**
+     * Return the same filters with the given sort order. The plants to reorder are always
+     * sorted by quantity.
+     */
+    public CatalogQuery withSort(String sort) {
+        return new CatalogQuery(sort, mMinPriceCents, mMaxPriceCents, mQuantityBelow, mLowStockThreshold);
+    }
+
+    /**
+     * Return the same sort order with the given filters.
+     */
+    public CatalogQuery withFilters(Long minPriceCents, Long maxPriceCents, Integer quantityBelow) {
+        return new CatalogQuery(mSort, minPriceCents, maxPriceCents, quantityBelow, mLowStockThreshold);
+    }
+
+    /**
+     * Return the same filters, only showing the plants with a quantity below the given
+     * threshold (at most PlantEntry.MAX_LOW_STOCK_THRESHOLD), or all the plants if null.
+     * Going back to all the plants keeps sorting them by quantity.
+     */
+    public CatalogQuery withLowStockThreshold(Integer lowStockThreshold) {
+        return new CatalogQuery(mSort, mMinPriceCents, mMaxPriceCents, mQuantityBelow, lowStockThreshold);
+    }
+
+    /**
+     * Whether some plants are filtered out
+     */
+    public boolean isFiltered() {
+        return mMinPriceCents != null || mMaxPriceCents != null || mQuantityBelow != null
+                || mLowStockThreshold != null;
+    }
+
+    /**
+     * Return true if a plant with the given price in cents and quantity passes the filters,
+     * like the provider filters them.
+     */
+    public boolean matches(long priceCents, int quantity) {
+        return (mMinPriceCents == null || priceCents >= mMinPriceCents)
+                && (mMaxPriceCents == null || priceCents <= mMaxPriceCents)
+                && (mQuantityBelow == null || quantity < mQuantityBelow)
+                && (mLowStockThreshold == null || quantity < mLowStockThreshold);
+    }
+
+    /**
+     * Build the content URI to read the first page of the catalog.
+     *
+     * @param limit the maximum number of plants in the page
+     */
+    public Uri buildFirstPageUri(int limit) {
+        return buildUpon(limit).build();
+    }
+
+    /**
+     * Build the content URI to read the page of the catalog following the given plant.
+     *
+     * @param afterValue the value of the sort column of the last plant of the previous page,
+     *                   ignored when sorting by ID
+     * @param afterId    the ID of the last plant of the previous page
+     * @param limit      the maximum number of plants in the page
+     */
+    public Uri buildNextPageUri(String afterValue, long afterId, int limit) {
+        Uri.Builder builder = buildUpon(limit)
+                .appendQueryParameter(PlantEntry.QUERY_PARAMETER_AFTER_ID, String.valueOf(afterId));
+        if (!PlantEntry.SORT_BY_ID.equals(mSort)) {
+            builder.appendQueryParameter(PlantEntry.QUERY_PARAMETER_AFTER_VALUE, afterValue);
+        }
+        return builder.build();
+    }
+
+    private Uri.Builder buildUpon(int limit) {
+        Uri.Builder builder;
+        if (mLowStockThreshold != null) {
+            // Read from the partial index of the plants low on stock
+            builder = PlantEntry.LOW_STOCK_URI.buildUpon()
+                    .appendQueryParameter(PlantEntry.QUERY_PARAMETER_THRESHOLD, String.valueOf(mLowStockThreshold));
+        } else {
+            builder = PlantEntry.CONTENT_URI.buildUpon();
+        }
+        builder.appendQueryParameter(PlantEntry.QUERY_PARAMETER_SORT, mSort);
+        if (mMinPriceCents != null) {
+            builder.appendQueryParameter(PlantEntry.QUERY_PARAMETER_MIN_PRICE_CENTS,
+                    String.valueOf(mMinPriceCents));
+        }
+        if (mMaxPriceCents != null) {
+            builder.appendQueryParameter(PlantEntry.QUERY_PARAMETER_MAX_PRICE_CENTS,
+                    String.valueOf(mMaxPriceCents));
+        }
+        if (mQuantityBelow != null) {
+            builder.appendQueryParameter(PlantEntry.QUERY_PARAMETER_QUANTITY_BELOW, String.valueOf(mQuantityBelow));
+        }
+        return builder.appendQueryParameter(PlantEntry.QUERY_PARAMETER_LIMIT, String.valueOf(limit));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CatalogQuery)) {
+            return false;
+        }
+        CatalogQuery other = (CatalogQuery) o;
+        return mSort.equals(other.mSort)
+                && equal(mMinPriceCents, other.mMinPriceCents)
+                && equal(mMaxPriceCents, other.mMaxPriceCents)
+                && equal(mQuantityBelow, other.mQuantityBelow)
+                && equal(mLowStockThreshold, other.mLowStockThreshold);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = mSort.hashCode();
+        result = 31 * result + (mMinPriceCents != null ? mMinPriceCents.hashCode() : 0);
+        result = 31 * result + (mMaxPriceCents != null ? mMaxPriceCents.hashCode() : 0);
+        result = 31 * result + (mQuantityBelow != null ? mQuantityBelow.hashCode() : 0);
+        result = 31 * result + (mLowStockThreshold != null ? mLowStockThreshold.hashCode() : 0);
+        return result;
+    }
+
+    private static boolean equal(Object first, Object second) {
+        return first == null ? second == null : first.equals(second);
+    }
+}
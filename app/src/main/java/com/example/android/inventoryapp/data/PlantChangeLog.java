@@ -0,0 +1,148 @@
+package com.example.android.inventoryapp.data;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.text.TextUtils;
+
+import com.example.android.inventoryapp.data.PlantContract.PlantEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * {@link PlantChangeLog} gives the change sequences of the plants written by the
+ * {@link PlantProvider}, keeps the tombstones of the deleted plants, and reads the plants
+ * changed or deleted after a given sequence, so that a copy of the catalog is kept up to date
+ * by reading the changes only, instead of the whole plants table.
+ *
+ * The next sequence is one more than the greatest sequence of the plants and of the
+ * tombstones, read from their indexes within the transaction of the write: as SQLite writes
+ * one transaction at a time, the sequences of a write are always greater than the ones of
+ * every write committed before it.
+ */
+
+final class PlantChangeLog {
+
+    /**
+     * SQL expression of the next change sequence, to read within the transaction of a write
+     */
+    static final String NEXT_SEQUENCE = "(SELECT MAX("
+            + "IFNULL((SELECT MAX(" + PlantEntry.COLUMN_PLANT_UPDATED_SEQ + ") FROM " + PlantEntry.TABLE_NAME + "), 0), "
+            + "IFNULL((SELECT MAX(" + PlantEntry.COLUMN_PLANT_UPDATED_SEQ + ") FROM "
+            + PlantEntry.TOMBSTONE_TABLE_NAME + "), 0)) + 1)";
+
+    /**
+     * Columns of the plants view the callers can read through the changes URI
+     */
+    private static final List<String> CHANGE_COLUMNS = Arrays.asList(
+            PlantEntry._ID,
+            PlantEntry.COLUMN_PLANT_NAME,
+            PlantEntry.COLUMN_PLANT_PRICE_CENTS,
+            PlantEntry.COLUMN_PLANT_QUANTITY,
+            PlantEntry.COLUMN_PLANT_IMAGE,
+            PlantEntry.COLUMN_PLANT_SUPPLIER_ID,
+            PlantEntry.COLUMN_PLANT_UPDATED_AT,
+            PlantEntry.COLUMN_PLANT_UPDATED_SEQ,
+            PlantEntry.COLUMN_PLANT_SUPPLIER_NAME,
+            PlantEntry.COLUMN_PLANT_SUPPLIER_PHONE,
+            PlantEntry.COLUMN_PLANT_SUPPLIER_EMAIL,
+            PlantEntry.COLUMN_DELETED);
+
+    private PlantChangeLog() {
+    }
+
+    /**
+     * Return the next change sequence. To call in the transaction of the write.
+     */
+    static long nextSequence(SQLiteDatabase db) {
+        return DatabaseUtils.longForQuery(db, "SELECT " + NEXT_SEQUENCE, null);
+    }
+
+    /**
+     * Write a tombstone, with a new change sequence, for each plant of the given selection of
+     * the plants table, about to be deleted. To call in the transaction of the deletion,
+     * before the deletion.
+     */
+    static void recordDeletes(SQLiteDatabase db, String selection, String[] selectionArgs) {
+        int argumentCount = selectionArgs != null ? selectionArgs.length : 0;
+        Object[] bindArgs = new Object[argumentCount + 1];
+        bindArgs[0] = nextSequence(db);
+        if (selectionArgs != null) {
+            System.arraycopy(selectionArgs, 0, bindArgs, 1, argumentCount);
+        }
+
+        db.execSQL("INSERT OR REPLACE INTO " + PlantEntry.TOMBSTONE_TABLE_NAME + " ("
+                + PlantEntry._ID + ", " + PlantEntry.COLUMN_PLANT_UPDATED_SEQ + ") "
+                + "SELECT " + PlantEntry._ID + ", ? FROM " + PlantEntry.TABLE_NAME
+                + (TextUtils.isEmpty(selection) ? "" : " WHERE " + selection), bindArgs);
+    }
+
+    /**
+     * Return a cursor over the plants changed after the given change sequence, with the given
+     * columns of the plants view (all of them if null), and over the plants deleted after it,
+     * with their ID and change sequence only, sorted by change sequence then by ID. Each row
+     * holds the {@link PlantEntry#_ID}, the {@link PlantEntry#COLUMN_PLANT_UPDATED_SEQ} and the
+     * {@link PlantEntry#COLUMN_DELETED} columns, whatever the projection.
+     *
+     * Both sides of the union are read in order from their index by change sequence, and
+     * merged, so that a page costs the number of its rows, whatever the size of the catalog.
+     *
+     * @param afterId The ID of the last row read with the given sequence, or null to read all
+     *                the rows after the given sequence
+     * @param limit   The maximum number of rows to return, or null for all of them
+     * @throws IllegalArgumentException if the projection names another column
+     */
+    static Cursor queryChanges(SQLiteDatabase db, String[] projection, long since, Long afterId, Long limit) {
+        // The columns of the projection, after the ID and the sequence
+        ArrayList<String> columns = new ArrayList<>();
+        if (projection == null) {
+            projection = CHANGE_COLUMNS.toArray(new String[CHANGE_COLUMNS.size()]);
+        }
+        for (String column : projection) {
+            if (!CHANGE_COLUMNS.contains(column)) {
+                throw new IllegalArgumentException("Invalid column " + column + " for the changes");
+            }
+            if (!column.equals(PlantEntry._ID) && !column.equals(PlantEntry.COLUMN_PLANT_UPDATED_SEQ)
+                    && !column.equals(PlantEntry.COLUMN_DELETED) && !columns.contains(column)) {
+                columns.add(column);
+            }
+        }
+
+        // The tombstones only have the ID and the sequence of the plants
+        StringBuilder plantColumns = new StringBuilder(PlantEntry._ID + ", " + PlantEntry.COLUMN_PLANT_UPDATED_SEQ);
+        StringBuilder tombstoneColumns = new StringBuilder(plantColumns);
+        for (String column : columns) {
+            plantColumns.append(", ").append(column);
+            tombstoneColumns.append(", NULL AS ").append(column);
+        }
+
+        // Written as a range on the sequence, which SQLite seeks in both indexes, refined by
+        // the ID for the rows with the same sequence as the last row read
+        String condition = PlantEntry.COLUMN_PLANT_UPDATED_SEQ + " > ?";
+        ArrayList<String> conditionArgs = new ArrayList<>();
+        conditionArgs.add(String.valueOf(since));
+        if (afterId != null) {
+            condition = PlantEntry.COLUMN_PLANT_UPDATED_SEQ + " >= ? AND ("
+                    + PlantEntry.COLUMN_PLANT_UPDATED_SEQ + " > ? OR " + PlantEntry._ID + " > ?)";
+            conditionArgs.add(String.valueOf(since));
+            conditionArgs.add(String.valueOf(afterId));
+        }
+
+        // The condition is written on both sides of the union
+        ArrayList<String> args = new ArrayList<>(conditionArgs);
+        args.addAll(conditionArgs);
+
+        String sql = "SELECT " + plantColumns + ", 0 AS " + PlantEntry.COLUMN_DELETED
+                + " FROM " + PlantEntry.VIEW_NAME + " WHERE " + condition
+                + " UNION ALL SELECT " + tombstoneColumns + ", 1 AS " + PlantEntry.COLUMN_DELETED
+                + " FROM " + PlantEntry.TOMBSTONE_TABLE_NAME + " WHERE " + condition
+                + " ORDER BY " + PlantEntry.COLUMN_PLANT_UPDATED_SEQ + ", " + PlantEntry._ID;
+        if (limit != null) {
+            sql += " LIMIT ?";
+            args.add(String.valueOf(limit));
+        }
+        return db.rawQuery(sql, args.toArray(new String[args.size()]));
+    }
+}
@@ -1,6 +1,8 @@
 package com.example.android.inventoryapp.data;
 
 import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.database.Cursor;
 import android.net.Uri;
 import android.provider.BaseColumns;
 
@@ -35,6 +37,129 @@ public class PlantContract {
      */
     public static final String PATH_PLANTS = "plants";
 
+    /**
+     * Path (appended to the plants' content URI) for the full-text search of plants.
+     * For instance, content://com.example.android.inventoryapp/plants/search/orchid
+     */
+    public static final String PATH_SEARCH = "search";
+
+    /**
+     * Path (appended to the content URI of a single plant) for the relative adjustment of
+     * the plant's stock quantity.
+     * For instance, content://com.example.android.inventoryapp/plants/3/adjust
+     */
+    public static final String PATH_ADJUST = "adjust";
+
+    /**
+     * Path (appended to the plants' content URI) for the summary of the whole inventory.
+     * For instance, content://com.example.android.inventoryapp/plants/stats
+     */
+    public static final String PATH_STATS = "stats";
+
+    /**
+     * Path (appended to the plants' content URI) for the plants that need to be reordered.
+     * For instance, content://com.example.android.inventoryapp/plants/low_stock
+     */
+    public static final String PATH_LOW_STOCK = "low_stock";
+
+    /**
+     * Path (appended to the plants' content URI) for the plants changed or deleted since a
+     * given change sequence.
+     * For instance, content://com.example.android.inventoryapp/plants/changes?since=42
+     */
+    public static final String PATH_CHANGES = "changes";
+
+    /**
+     * Path (appended to base content URI) for looking at the suppliers of the plants.
+     * For instance, content://com.example.android.inventoryapp/suppliers/
+     */
+    public static final String PATH_SUPPLIERS = "suppliers";
+
+    /**
+     * Path (appended to base content URI) for the stock adjustments queued by the app and not
+     * applied yet.
+     * For instance, content://com.example.android.inventoryapp/pending_adjustments/
+     */
+    public static final String PATH_PENDING_ADJUSTMENTS = "pending_adjustments";
+
+    /**
+     * Path (appended to the content URI of a single plant) for the movements of the plant's
+     * stock, and for its stock quantity at a given time.
+     * For instance, content://com.example.android.inventoryapp/plants/3/movements and
+     * content://com.example.android.inventoryapp/plants/3/stock?at=1500000000000
+     */
+    public static final String PATH_MOVEMENTS = "movements";
+    public static final String PATH_STOCK = "stock";
+
+    /**
+     * Method of {@link android.content.ContentResolver#call} opening the database of the
+     * provider, if it isn't open yet: the database is created or upgraded and its connection
+     * configured, so that the first query doesn't have to. Called on a background thread when
+     * the app starts, returns null.
+     */
+    public static final String METHOD_OPEN_DATABASE = "open_database";
+
+    /**
+     * Method of {@link android.content.ContentResolver#call} returning the statistics of the
+     * in-memory cache of the plants read one by one, under the keys below.
+     */
+    public static final String METHOD_GET_ROW_CACHE_STATS = "get_row_cache_stats";
+
+    /** Number of plants read from memory (long) */
+    public static final String KEY_ROW_CACHE_HITS = "row_cache_hits";
+
+    /** Number of plants read from the database (long) */
+    public static final String KEY_ROW_CACHE_MISSES = "row_cache_misses";
+
+    /** Number of plants currently in memory (int) */
+    public static final String KEY_ROW_CACHE_SIZE = "row_cache_size";
+
+    /**
+     * Method of {@link android.content.ContentResolver#call} returning the latency histograms
+     * of the operations of the provider since it started. The result holds a bundle for each
+     * operation run on each kind of URI, under a key like "query:plants", "update:plant_id"
+     * or "notify:plants", with the keys below, and a text version of all of them under
+     * {@link #KEY_METRICS_TEXT}. The same text is printed by
+     * "adb shell dumpsys activity provider com.example.android.inventoryapp".
+     */
+    public static final String METHOD_GET_METRICS = "get_metrics";
+
+    /** Number of operations (long) */
+    public static final String KEY_METRICS_COUNT = "count";
+
+    /** Total time of the operations, in nanoseconds (long) */
+    public static final String KEY_METRICS_TOTAL_NS = "total_ns";
+
+    /** Time of the slowest operation, in nanoseconds (long) */
+    public static final String KEY_METRICS_MAX_NS = "max_ns";
+
+    /**
+     * Number of rows returned by the queries, counted once their cursors are read, or
+     * changed by the writes (long)
+     */
+    public static final String KEY_METRICS_ROWS = "rows";
+
+    /**
+     * Number of operations by latency (long[]): index 0 counts the operations faster than
+     * 1 microsecond, and index i the operations taking from 2^(i - 1) up to 2^i microseconds,
+     * the last index counting all the slower ones.
+     */
+    public static final String KEY_METRICS_BUCKETS = "buckets";
+
+    /** All the metrics as text, one line for each operation on each kind of URI (String) */
+    public static final String KEY_METRICS_TEXT = "metrics_text";
+
+    /**
+     * Method of {@link android.content.ContentResolver#call} rolling the old stock movements
+     * into snapshots, so that the ledger stays bounded in size. See {@link StockMovementEntry}.
+     * Called on a background thread when the app starts, returns the number of movements
+     * removed under {@link #KEY_MOVEMENTS_REMOVED}.
+     */
+    public static final String METHOD_COMPACT_STOCK_MOVEMENTS = "compact_stock_movements";
+
+    /** Number of stock movements removed by the compaction (int) */
+    public static final String KEY_MOVEMENTS_REMOVED = "movements_removed";
+
     /**
      * Inner class that defines constant values for the plants database table.
      * Each entry in the table represents a single plant.
@@ -56,6 +181,222 @@ public class PlantContract {
         public static final String CONTENT_ITEM_TYPE =
                 ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_PLANTS;
 
+        /**
+         * The content URI to read the plants low on stock, the ones to reorder, sorted by
+         * quantity (lowest first) then by ID. Only the plants with a quantity below the
+         * {@link #QUERY_PARAMETER_THRESHOLD} are returned. The page, sort and filter query
+         * parameters of the {@link #CONTENT_URI} apply too, except that the only sort is
+         * {@link #SORT_BY_QUANTITY}.
+         */
+        public static final Uri LOW_STOCK_URI = Uri.withAppendedPath(CONTENT_URI, PATH_LOW_STOCK);
+
+        /**
+         * Query parameter of the {@link #LOW_STOCK_URI}: only the plants with a quantity strictly
+         * below this value are returned. Defaults to {@link #DEFAULT_LOW_STOCK_THRESHOLD}, and
+         * can't be more than {@link #MAX_LOW_STOCK_THRESHOLD}.
+         */
+        public static final String QUERY_PARAMETER_THRESHOLD = "threshold";
+
+        /**
+         * Default threshold of the {@link #LOW_STOCK_URI}, the same as the summary of the
+         * inventory. As the URI lists the plants to reorder, it returns the out of stock plants
+         * too: the plants of both the {@link SummaryEntry#COLUMN_OUT_OF_STOCK_COUNT} and the
+         * {@link SummaryEntry#COLUMN_LOW_STOCK_COUNT} of the summary, which counts them apart.
+         */
+        public static final int DEFAULT_LOW_STOCK_THRESHOLD = SummaryEntry.LOW_STOCK_THRESHOLD;
+
+        /**
+         * Maximum threshold of the {@link #LOW_STOCK_URI}. Only the plants below this quantity
+         * are kept in the {@link #LOW_STOCK_INDEX_NAME} index, so that the index stays small
+         * however big the catalog.
+         */
+        public static final int MAX_LOW_STOCK_THRESHOLD = 50;
+
+        /**
+         * The content URI to read the plants changed or deleted after a given change sequence,
+         * to keep a copy of the catalog up to date without reading it all again: see
+         * {@link #buildChangesUri(long)}. Each row holds the columns of a plant changed after
+         * the {@link #QUERY_PARAMETER_SINCE} sequence, or only the {@link #_ID} of a plant
+         * deleted after it, with {@link #COLUMN_DELETED} set to 1. The rows are sorted by
+         * {@link #COLUMN_PLANT_UPDATED_SEQ} then by ID, and always hold these two columns and
+         * {@link #COLUMN_DELETED}, whatever the projection.
+         *
+         * The {@link #QUERY_PARAMETER_LIMIT} applies too. As all the plants written by the same
+         * operation have the same sequence, the next page starts after both the sequence and
+         * the {@link #QUERY_PARAMETER_AFTER_ID} of the last row of the previous page.
+         */
+        public static final Uri CHANGES_URI = Uri.withAppendedPath(CONTENT_URI, PATH_CHANGES);
+
+        /**
+         * Query parameter of the {@link #CHANGES_URI}: only the plants changed or deleted after
+         * this change sequence are returned. 0 returns all the plants, and all the plants deleted
+         * since the change sequence was added.
+         */
+        public static final String QUERY_PARAMETER_SINCE = "since";
+
+        /**
+         * Build the content URI to read the plants changed or deleted after the given change
+         * sequence. Use 0 to read all of them, then the greatest
+         * {@link #COLUMN_PLANT_UPDATED_SEQ} read so far to read the next changes.
+         *
+         * @param since the change sequence of the last change already read
+         */
+        public static Uri buildChangesUri(long since) {
+            return CHANGES_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_SINCE, String.valueOf(since))
+                    .build();
+        }
+
+        /**
+         * Query parameter for keyset pagination: the {@link #_ID} of the last plant of the
+         * previous page. Only the plants after that plant in the {@link #QUERY_PARAMETER_SORT}
+         * order are returned: the plants with a greater {@link #_ID} when sorting by ID, or,
+         * on any other sort, the plants after the {@link #QUERY_PARAMETER_AFTER_VALUE} of the
+         * sort column, ties being ordered by {@link #_ID}. See
+         * {@link CatalogQuery#buildNextPageUri(String, long, int)}. On a search, the order is the
+         * ranking of the results, and the value of the sort column is the name of the plant,
+         * see {@link #buildSearchUri(String, String, long, int)}. On the {@link #CHANGES_URI},
+         * the order is the one of the change sequence, and the value of the sort column is the
+         * {@link #QUERY_PARAMETER_SINCE} sequence.
+         */
+        public static final String QUERY_PARAMETER_AFTER_ID = "after_id";
+
+        /**
+         * Query parameter limiting the number of plants returned by a single query.
+         */
+        public static final String QUERY_PARAMETER_LIMIT = "limit";
+
+        /**
+         * Query parameter for the order of the plants, one of the SORT_BY_* values.
+         * Defaults to {@link #SORT_BY_ID}, the order in which the plants were added.
+         */
+        public static final String QUERY_PARAMETER_SORT = "sort";
+
+        /**
+         * Possible values for {@link #QUERY_PARAMETER_SORT}: by ID (oldest first), by name
+         * (regardless of case), by price and by quantity (lowest first), and by date of the
+         * last change (most recently updated first). Ties are ordered by ID.
+         */
+        public static final String SORT_BY_ID = "id";
+        public static final String SORT_BY_NAME = "name";
+        public static final String SORT_BY_PRICE = "price";
+        public static final String SORT_BY_QUANTITY = "quantity";
+        public static final String SORT_BY_UPDATED = "updated";
+
+        /**
+         * Query parameter for keyset pagination on a sort other than {@link #SORT_BY_ID}: the
+         * value of the sort column of the last plant of the previous page. Only the plants after
+         * that plant, as given by this value and {@link #QUERY_PARAMETER_AFTER_ID}, are returned.
+         */
+        public static final String QUERY_PARAMETER_AFTER_VALUE = "after_value";
+
+        /**
+         * Query parameters filtering the plants by price in cents (both bounds included) and by
+         * stock quantity (only the plants with a quantity strictly below the given value).
+         */
+        public static final String QUERY_PARAMETER_MIN_PRICE_CENTS = "min_price_cents";
+        public static final String QUERY_PARAMETER_MAX_PRICE_CENTS = "max_price_cents";
+        public static final String QUERY_PARAMETER_QUANTITY_BELOW = "quantity_below";
+
+        /**
+         * Query parameter filtering the plants of a single supplier, given by its
+         * {@link SupplierEntry#_ID}. See {@link SupplierEntry#buildPlantsUri(long)}.
+         */
+        public static final String QUERY_PARAMETER_SUPPLIER_ID = "supplier_id";
+
+        /**
+         * Build the content URI to search the plants whose name or supplier name contain
+         * words starting with the words of the given query. The results are ranked, plants
+         * whose name starts with the query coming first, and the plants of the same rank are
+         * sorted by name regardless of case, then by ID.
+         *
+         * @param query the text the user is searching for
+         */
+        public static Uri buildSearchUri(String query) {
+            return CONTENT_URI.buildUpon()
+                    .appendPath(PATH_SEARCH)
+                    .appendPath(query)
+                    .build();
+        }
+
+        /**
+         * Build the content URI to read the first page of the results of a search, ranked
+         * like {@link #buildSearchUri(String)}.
+         *
+         * @param query the text the user is searching for
+         * @param limit the maximum number of plants in the page
+         */
+        public static Uri buildSearchUri(String query, int limit) {
+            return buildSearchUri(query).buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_LIMIT, String.valueOf(limit))
+                    .build();
+        }
+
+        /**
+         * Build the content URI to read the page of the results of a search following the
+         * given plant, so that the plants already read are skipped without being ranked again.
+         *
+         * @param query     the text the user is searching for
+         * @param afterName the name of the last plant of the previous page
+         * @param afterId   the ID of the last plant of the previous page
+         * @param limit     the maximum number of plants in the page
+         */
+        public static Uri buildSearchUri(String query, String afterName, long afterId, int limit) {
+            return buildSearchUri(query, limit).buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_AFTER_ID, String.valueOf(afterId))
+                    .appendQueryParameter(QUERY_PARAMETER_AFTER_VALUE, afterName)
+                    .build();
+        }
+
+        /**
+         * Build the content URI to adjust the stock quantity of the plant with the given ID.
+         * Updating this URI with a {@link #KEY_QUANTITY_DELTA} value atomically adds the delta
+         * to the stock quantity, and returns the new quantity of the plant instead of the
+         * number of rows updated, or {@link #ADJUST_REJECTED} if the new quantity would be out
+         * of the 0..{@link #MAX_QUANTITY} range (or the plant doesn't exist).
+         *
+         * @param id the ID of the plant
+         */
+        public static Uri buildAdjustUri(long id) {
+            return ContentUris.withAppendedId(CONTENT_URI, id).buildUpon()
+                    .appendPath(PATH_ADJUST)
+                    .build();
+        }
+
+        /**
+         * Key of the content values for the amount to add to (or, if negative, to remove from)
+         * the stock quantity of a plant, through the URI built by {@link #buildAdjustUri(long)}.
+         *
+         * Type: INTEGER
+         */
+        public static final String KEY_QUANTITY_DELTA = "quantity_delta";
+
+        /**
+         * Key of the content values for the reason of a change of the stock quantity, recorded
+         * with the stock movement: one of the {@link StockMovementEntry} REASON_* values, except
+         * {@link StockMovementEntry#REASON_SNAPSHOT}. Optional, with a stock adjustment or with
+         * an update of the {@link #COLUMN_PLANT_QUANTITY}. An adjustment defaults to a sale or
+         * a receipt, depending on the sign of the delta, and an update to a correction.
+         *
+         * Type: INTEGER
+         */
+        public static final String KEY_MOVEMENT_REASON = "movement_reason";
+
+        /**
+         * Result of a stock adjustment which has been rejected, leaving the quantity unchanged.
+         */
+        public static final int ADJUST_REJECTED = -1;
+
+        /**
+         * Maximum stock quantity of a plant.
+         */
+        public static final int MAX_QUANTITY = 9999;
+
+        /**
+         * Maximum price of a plant, in cents (999999.99).
+         */
+        public static final long MAX_PRICE_CENTS = 99999999;
+
         /** Name of database table for plants */
         public static final String TABLE_NAME = "plants";
 
@@ -74,14 +415,16 @@ public class PlantContract {
         public static final String COLUMN_PLANT_NAME = "plant_name";
 
         /**
-         * Price of the plant.
+         * Price of the plant, in cents, so that prices and the sums of prices are exact.
+         * Read it with {@link #getPriceCents(Cursor)}.
          *
-         * Type: REAL
+         * Type: INTEGER
          */
-        public static final String COLUMN_PLANT_PRICE = "plant_price";
+        public static final String COLUMN_PLANT_PRICE_CENTS = "plant_price_cents";
 
         /**
-         * Quantity of the plant in stock.
+         * Quantity of the plant in stock, the sum of the deltas of its stock movements, kept by
+         * the provider in the same transaction as the movements.
          *
          * Type: INTEGER
          */
@@ -95,25 +438,410 @@ public class PlantContract {
         public final static String COLUMN_PLANT_IMAGE ="plant_image";
 
         /**
-         * Supplier Name.
+         * ID of the supplier of the plant, in the suppliers table ({@link SupplierEntry#_ID}).
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_PLANT_SUPPLIER_ID = "supplier_id";
+
+        /**
+         * Supplier Name, joined from the suppliers table.
+         *
+         * The supplier columns can be written with the plant: the plant is then given the
+         * supplier with this name (regardless of case), created if there is none, and the
+         * phone and email address written are those of that supplier, for all its plants.
+         * Without a name, the phone and email address written are those of the current
+         * supplier of the plant.
          *
          * Type: TEXT
          */
         public final static String COLUMN_PLANT_SUPPLIER_NAME ="plant_supplier_name";
 
         /**
-         * Supplier Phone.
+         * Supplier Phone, joined from the suppliers table.
          *
          * Type: TEXT
          */
         public final static String COLUMN_PLANT_SUPPLIER_PHONE ="plant_supplier_phone";
 
         /**
-         * Supplier Email.
+         * Supplier Email, joined from the suppliers table.
          *
          * Type: TEXT
          */
         public final static String COLUMN_PLANT_SUPPLIER_EMAIL ="plant_supplier_email";
 
+        /**
+         * Time of the last change of the plant, in milliseconds since the epoch, set by the
+         * provider on every insert and update. 0 for the plants not changed since this column
+         * was added.
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_PLANT_UPDATED_AT = "plant_updated_at";
+
+        /**
+         * Change sequence of the last change of the plant, set by the provider on every insert
+         * and update, and on every change of its supplier. The sequence only grows: all the
+         * plants written by the same operation have the same sequence, greater than the one of
+         * every change committed before. 1 for the plants not changed since this column was
+         * added.
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_PLANT_UPDATED_SEQ = "updated_seq";
+
+        /**
+         * Whether a row of the {@link #CHANGES_URI} is a deleted plant (1) or not (0). Only
+         * found in the rows of the {@link #CHANGES_URI}.
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_DELETED = "deleted";
+
+        /**
+         * Name of the view joining each plant with its supplier, read by all the queries of
+         * plants, with the supplier columns under their COLUMN_PLANT_SUPPLIER_* names.
+         */
+        public static final String VIEW_NAME = "plants_with_suppliers";
+
+        /**
+         * Name of the full-text search (FTS4) virtual table indexing the name and the supplier
+         * name of the plants. Each row has the same docid as the {@link #_ID} of its plant.
+         */
+        public static final String SEARCH_TABLE_NAME = "plants_fts";
+
+        /**
+         * Name of the table of the deleted plants, holding the {@link #_ID} of each deleted
+         * plant with the {@link #COLUMN_PLANT_UPDATED_SEQ} of its deletion, so that the
+         * {@link #CHANGES_URI} can return the deletions too.
+         */
+        public static final String TOMBSTONE_TABLE_NAME = "plant_tombstones";
+
+        /**
+         * Names of the indexes of the plants and of the deleted plants by change sequence,
+         * read by the {@link #CHANGES_URI}.
+         */
+        public static final String UPDATED_SEQ_INDEX_NAME = "plants_updated_seq_index";
+        public static final String TOMBSTONE_INDEX_NAME = "plant_tombstones_updated_seq_index";
+
+        /**
+         * Names of the indexes on the name (ignoring case), the supplier, the quantity,
+         * the price and the time of the last change of the plants.
+         */
+        public static final String NAME_INDEX_NAME = "plants_name_index";
+        public static final String SUPPLIER_INDEX_NAME = "plants_supplier_index";
+        public static final String QUANTITY_INDEX_NAME = "plants_quantity_index";
+        public static final String PRICE_INDEX_NAME = "plants_price_index";
+        public static final String UPDATED_INDEX_NAME = "plants_updated_index";
+
+        /**
+         * Name of the partial index holding only the plants with a quantity below
+         * {@link #MAX_LOW_STOCK_THRESHOLD}, read by the {@link #LOW_STOCK_URI}.
+         */
+        public static final String LOW_STOCK_INDEX_NAME = "plants_low_stock_index";
+
+        /**
+         * Return the price in cents of the plant at the current row of the given cursor,
+         * whose projection holds {@link #COLUMN_PLANT_PRICE_CENTS}.
+         */
+        public static long getPriceCents(Cursor cursor) {
+            return cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_PLANT_PRICE_CENTS));
+        }
+
+    }
+
+    /**
+     * Inner class that defines constant values for the suppliers database table.
+     * Each entry in the table represents a single supplier, shared by all its plants.
+     * A supplier can only be deleted once it has no plants.
+     */
+    public static final class SupplierEntry implements BaseColumns {
+
+        /** The content URI to access the supplier data in the provider */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_SUPPLIERS);
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a list of suppliers.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SUPPLIERS;
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a single supplier.
+         */
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SUPPLIERS;
+
+        /**
+         * Build the content URI to read the plants of the supplier with the given ID. The page,
+         * sort and filter query parameters of the {@link PlantEntry#CONTENT_URI} apply too.
+         *
+         * @param id the ID of the supplier
+         */
+        public static Uri buildPlantsUri(long id) {
+            return PlantEntry.CONTENT_URI.buildUpon()
+                    .appendQueryParameter(PlantEntry.QUERY_PARAMETER_SUPPLIER_ID, String.valueOf(id))
+                    .build();
+        }
+
+        /** Name of database table for suppliers */
+        public static final String TABLE_NAME = "suppliers";
+
+        /**
+         * Unique ID number for the supplier (only for use in the database table).
+         *
+         * Type: INTEGER
+         */
+        public static final String _ID = BaseColumns._ID;
+
+        /**
+         * Name of the supplier, unique regardless of case.
+         *
+         * Type: TEXT
+         */
+        public static final String COLUMN_SUPPLIER_NAME = "supplier_name";
+
+        /**
+         * Phone of the supplier.
+         *
+         * Type: TEXT
+         */
+        public static final String COLUMN_SUPPLIER_PHONE = "supplier_phone";
+
+        /**
+         * Email of the supplier.
+         *
+         * Type: TEXT
+         */
+        public static final String COLUMN_SUPPLIER_EMAIL = "supplier_email";
+    }
+
+    /**
+     * Inner class that defines constant values for the stock movements database table.
+     * Each entry in the table is a change of the stock quantity of a plant, appended by the
+     * provider whenever it changes the quantity, so that the quantity of a plant is always
+     * the sum of the deltas of its movements, and its quantity at any past time the sum of
+     * the deltas of the movements until then.
+     *
+     * The old movements are rolled into snapshots, a single movement holding the net change
+     * of a plant over a period, with the {@link #REASON_SNAPSHOT} reason: the movements older
+     * than {@link #MOVEMENT_RETENTION_DAYS} days into one snapshot a day, and the movements
+     * older than {@link #DAILY_SNAPSHOT_RETENTION_DAYS} days into a single opening snapshot.
+     * The quantity at a time within a snapshot period is thus known to the end of the period.
+     * The movements of a plant are deleted with the plant.
+     */
+    public static final class StockMovementEntry implements BaseColumns {
+
+        /**
+         * The MIME type of the URI built by {@link #buildMovementsUri(long)}.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_MOVEMENTS;
+
+        /**
+         * The MIME type of the URI built by {@link #buildStockUri(long, long)}.
+         */
+        public static final String CONTENT_STOCK_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_PLANTS + "_" + PATH_STOCK;
+
+        /**
+         * Query parameter of the URI built by {@link #buildStockUri(long, long)}: the time of
+         * the stock quantity, in milliseconds since the epoch.
+         */
+        public static final String QUERY_PARAMETER_AT = "at";
+
+        /**
+         * Build the content URI to read the stock movements of the plant with the given ID,
+         * most recent first. The {@link PlantEntry#QUERY_PARAMETER_LIMIT} applies too.
+         *
+         * @param plantId the ID of the plant
+         */
+        public static Uri buildMovementsUri(long plantId) {
+            return ContentUris.withAppendedId(PlantEntry.CONTENT_URI, plantId).buildUpon()
+                    .appendPath(PATH_MOVEMENTS)
+                    .build();
+        }
+
+        /**
+         * Build the content URI to read the stock quantity of the plant with the given ID at
+         * the given time, a single row with the {@link PlantEntry#COLUMN_PLANT_QUANTITY}.
+         *
+         * @param plantId    the ID of the plant
+         * @param timeMillis the time, in milliseconds since the epoch
+         */
+        public static Uri buildStockUri(long plantId, long timeMillis) {
+            return ContentUris.withAppendedId(PlantEntry.CONTENT_URI, plantId).buildUpon()
+                    .appendPath(PATH_STOCK)
+                    .appendQueryParameter(QUERY_PARAMETER_AT, String.valueOf(timeMillis))
+                    .build();
+        }
+
+        /**
+         * Number of days the movements are kept as they were made.
+         */
+        public static final int MOVEMENT_RETENTION_DAYS = 30;
+
+        /**
+         * Number of days the daily snapshots are kept, before they are rolled into a single
+         * opening snapshot for each plant.
+         */
+        public static final int DAILY_SNAPSHOT_RETENTION_DAYS = 365;
+
+        /**
+         * Possible values for the {@link #COLUMN_REASON}: the net change of a plant over a
+         * period, rolled from older movements (or the quantity of the plant when the ledger
+         * was created), a correction of the quantity (an update of the quantity of a plant),
+         * a sale, and a receipt of stock (including the initial quantity of a new plant).
+         */
+        public static final int REASON_SNAPSHOT = 0;
+        public static final int REASON_CORRECTION = 1;
+        public static final int REASON_SALE = 2;
+        public static final int REASON_RECEIPT = 3;
+
+        /** Name of database table for stock movements */
+        public static final String TABLE_NAME = "stock_movements";
+
+        /**
+         * Unique ID number for the movement (only for use in the database table).
+         *
+         * Type: INTEGER
+         */
+        public static final String _ID = BaseColumns._ID;
+
+        /**
+         * ID of the plant whose stock has changed ({@link PlantEntry#_ID}).
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_PLANT_ID = "plant_id";
+
+        /**
+         * Change of the stock quantity, negative when the stock decreases.
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_DELTA = "delta";
+
+        /**
+         * Reason of the change, one of the REASON_* values.
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_REASON = "reason";
+
+        /**
+         * Time of the change, in milliseconds since the epoch. For a snapshot, the time of
+         * the last movement rolled into it.
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_CREATED_AT = "created_at";
+
+        /**
+         * Name of the index of the movements by plant and time, holding their delta, from
+         * which the quantity of a plant at a given time is added up.
+         */
+        public static final String PLANT_INDEX_NAME = "stock_movements_plant_index";
+    }
+
+    /**
+     * Inner class that defines constant values for the pending stock adjustments database
+     * table. Each row is a delta of the stock quantity of a plant, saved as soon as it is
+     * made, and not applied to the plant yet. The rows are applied and deleted together, in
+     * a single {@link android.content.ContentResolver#applyBatch} holding the adjustments of
+     * the plants and the deletion of the rows, so that a delta is applied exactly once, even
+     * if the app dies in the middle.
+     */
+    public static final class PendingAdjustmentEntry implements BaseColumns {
+
+        /** The content URI to access the pending adjustments in the provider */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_PENDING_ADJUSTMENTS);
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a list of pending adjustments.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_PENDING_ADJUSTMENTS;
+
+        /** Name of database table for pending adjustments */
+        public static final String TABLE_NAME = "pending_adjustments";
+
+        /**
+         * Unique ID number for the adjustment (only for use in the database table), in the
+         * order the adjustments were saved.
+         *
+         * Type: INTEGER
+         */
+        public static final String _ID = BaseColumns._ID;
+
+        /**
+         * ID of the plant to adjust ({@link PlantEntry#_ID}).
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_PLANT_ID = "plant_id";
+
+        /**
+         * Quantity to add to the stock of the plant, negative when the stock decreases.
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_DELTA = "delta";
+    }
+
+    /**
+     * Inner class that defines constant values for the inventory summary database table.
+     * The table holds a single row, kept up to date by triggers on the plants table, so that
+     * reading the totals of the inventory costs the same whatever the number of plants.
+     */
+    public static final class SummaryEntry {
+
+        /** The content URI to read the summary of the inventory in the provider */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(PlantEntry.CONTENT_URI, PATH_STATS);
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for the summary of the inventory.
+         */
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_PLANTS + "_" + PATH_STATS;
+
+        /**
+         * Plants in stock with a quantity below this value are counted as low on stock. The
+         * out of stock plants are counted apart, by the {@link #COLUMN_OUT_OF_STOCK_COUNT}.
+         */
+        public static final int LOW_STOCK_THRESHOLD = 5;
+
+        /** Name of database table for the inventory summary */
+        public static final String TABLE_NAME = "inventory_summary";
+
+        /**
+         * Number of plants in the catalog.
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_PLANT_COUNT = "plant_count";
+
+        /**
+         * Value of the whole stock, in cents: the sum of the price times the quantity of
+         * every plant.
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_STOCK_VALUE_CENTS = "stock_value_cents";
+
+        /**
+         * Number of plants with a quantity of 0.
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_OUT_OF_STOCK_COUNT = "out_of_stock_count";
+
+        /**
+         * Number of plants in stock, but with a quantity below {@link #LOW_STOCK_THRESHOLD}.
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_LOW_STOCK_COUNT = "low_stock_count";
     }
 }
@@ -1,13 +1,27 @@
 package com.example.android.inventoryapp.data;
 
+import android.annotation.TargetApi;
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
+import android.util.Log;
 
-import com.example.android.inventoryapp.data.PlantContract.PlantEntry;
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Database helper for LIF app. Manages database creation and version management.
+ *
+ * The database is opened in write-ahead logging (WAL) mode, so that the readers (like the
+ * catalog loader) never wait for the writers (like imports and sync jobs), and vice versa.
+ * SQLite's automatic checkpoints, which would run on the thread of whichever writer commits,
+ * are replaced by passive checkpoints run on a background thread once the log grows past
+ * {@link #CHECKPOINT_WAL_SIZE}. The automatic checkpoints are only kept as a backstop, at
+ * {@link #AUTOCHECKPOINT_PAGES}, far past that size, should a write skip the scheduling.
  */
 
 public class PlantDbHelper extends SQLiteOpenHelper {
@@ -18,16 +32,170 @@ public class PlantDbHelper extends SQLiteOpenHelper {
     private static final String DATABASE_NAME = "flowershop.db";
 
     /**
-     * Database version. If you change the database schema, you must increment the database version.
+     * Database version. If you change the database schema, you must add a step to
+     * {@link PlantMigrations#MIGRATIONS} and increment the database version.
      */
-    private static final int DATABASE_VERSION = 1;
+    static final int DATABASE_VERSION = 11;
+
+    /**
+     * Default synchronous mode. In WAL mode NORMAL is still safe from corruption,
+     * and only syncs the log at checkpoints instead of at every commit.
+     */
+    public static final String DEFAULT_SYNCHRONOUS = "NORMAL";
+
+    /**
+     * Default size of the page cache of the connection, in KiB
+     */
+    public static final int DEFAULT_CACHE_SIZE_KB = 2048;
+
+    /**
+     * Default size of the memory-mapped part of the database file, in bytes
+     * (only supported by SQLite 3.7.17 and later, ignored otherwise)
+     */
+    public static final long DEFAULT_MMAP_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * Size of the write-ahead log, in bytes, after which a checkpoint is scheduled
+     */
+    public static final long CHECKPOINT_WAL_SIZE = 1024 * 1024;
+
+    /**
+     * Number of pages of the write-ahead log after which SQLite checkpoints it on the thread
+     * of the writer, a backstop well past {@link #CHECKPOINT_WAL_SIZE} (16 MiB with pages of
+     * 4 KiB)
+     */
+    static final int AUTOCHECKPOINT_PAGES = 4096;
+
+    /**
+     * Background thread running the checkpoints
+     */
+    private static final ExecutorService sCheckpointExecutor = Executors.newSingleThreadExecutor();
+
+    /** Synchronous mode of the connection */
+    private final String mSynchronous;
+
+    /** Size of the page cache of the connection, in KiB */
+    private final int mCacheSizeKb;
+
+    /** Size of the memory-mapped part of the database file, in bytes */
+    private final long mMmapSize;
+
+    /** Write-ahead log file of the database */
+    private final File mWalFile;
+
+    /** Whether a checkpoint is scheduled and not run yet */
+    private final AtomicBoolean mCheckpointPending = new AtomicBoolean();
+
     /**
      * Constructs a new instance of {@link PlantDbHelper}.
      *
      * @param context of the app
      */
     public PlantDbHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME, DEFAULT_SYNCHRONOUS, DEFAULT_CACHE_SIZE_KB, DEFAULT_MMAP_SIZE);
+    }
+
+    /**
+     * Constructs a new instance of {@link PlantDbHelper} with a custom connection configuration.
+     *
+     * @param context     of the app
+     * @param name        of the database file
+     * @param synchronous mode of the connection (OFF, NORMAL or FULL)
+     * @param cacheSizeKb size of the page cache of the connection, in KiB
+     * @param mmapSize    size of the memory-mapped part of the database file, in bytes
+     */
+    public PlantDbHelper(Context context, String name, String synchronous, int cacheSizeKb, long mmapSize) {
+        super(context, name, null, DATABASE_VERSION);
+        mSynchronous = synchronous;
+        mCacheSizeKb = cacheSizeKb;
+        mMmapSize = mmapSize;
+        mWalFile = new File(context.getDatabasePath(name).getPath() + "-wal");
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            setWriteAheadLoggingEnabled(true);
+        }
+    }
+
+    /**
+     * This is called when the database connection is being configured,
+     * before the database is created or upgraded.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        // Enforce the references of the plants to their suppliers, on every connection
+        db.setForeignKeyConstraintsEnabled(true);
+        configureConnection(db);
+    }
+
+    /**
+     * This is called when the database has been opened.
+     */
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        // Before Jelly Bean there is no onConfigure() callback: configure the connection here
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            if (!db.isReadOnly()) {
+                db.enableWriteAheadLogging();
+                db.execSQL("PRAGMA foreign_keys = ON");
+            }
+            configureConnection(db);
+        }
+    }
+
+    /**
+     * Apply the configured pragmas to the connection.
+     */
+    private void configureConnection(SQLiteDatabase db) {
+        db.execSQL("PRAGMA synchronous = " + mSynchronous);
+        // A negative cache size is in KiB instead of pages
+        executePragma(db, "PRAGMA cache_size = -" + mCacheSizeKb);
+        executePragma(db, "PRAGMA mmap_size = " + mMmapSize);
+        // Checkpoints are run by {@link #checkpointIfNeeded()} instead of by the writers, which
+        // only checkpoint if the log has grown far past its size anyway
+        executePragma(db, "PRAGMA wal_autocheckpoint = " + AUTOCHECKPOINT_PAGES);
+    }
+
+    /**
+     * Execute a pragma which may return a row, which execSQL() doesn't allow.
+     */
+    private static void executePragma(SQLiteDatabase db, String pragma) {
+        Cursor cursor = db.rawQuery(pragma, null);
+        try {
+            cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Schedule a checkpoint on a background thread if the write-ahead log has grown past
+     * {@link #CHECKPOINT_WAL_SIZE}, and no checkpoint is pending. This is meant to be called
+     * after each write.
+     */
+    public void checkpointIfNeeded() {
+        if (mWalFile.length() < CHECKPOINT_WAL_SIZE || !mCheckpointPending.compareAndSet(false, true)) {
+            return;
+        }
+        sCheckpointExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mCheckpointPending.set(false);
+                checkpoint();
+            }
+        });
+    }
+
+    /**
+     * Copy the pages of the write-ahead log back into the database file. The checkpoint is
+     * passive, so it never waits for readers or writers: the pages still in use are copied
+     * by a following checkpoint.
+     */
+    public void checkpoint() {
+        try {
+            executePragma(getWritableDatabase(), "PRAGMA wal_checkpoint(PASSIVE)");
+        } catch (RuntimeException e) {
+            Log.e(LOG_TAG, "Failed to checkpoint the database", e);
+        }
     }
 
     /**
@@ -35,19 +203,9 @@ public class PlantDbHelper extends SQLiteOpenHelper {
      */
     @Override
     public void onCreate(SQLiteDatabase db) {
-        // Create a String that contains the SQL statement to create the plants table
-        String SQL_CREATE_PLANTS_TABLE =  "CREATE TABLE " + PlantEntry.TABLE_NAME + " ("
-                + PlantEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
-                + PlantEntry.COLUMN_PLANT_NAME + " TEXT NOT NULL, "
-                + PlantEntry.COLUMN_PLANT_PRICE + " REAL NOT NULL, "
-                + PlantEntry.COLUMN_PLANT_QUANTITY + " INTEGER NOT NULL DEFAULT 0, "
-                + PlantEntry.COLUMN_PLANT_IMAGE + " TEXT, "
-                + PlantEntry.COLUMN_PLANT_SUPPLIER_NAME + " TEXT NOT NULL, "
-                + PlantEntry.COLUMN_PLANT_SUPPLIER_PHONE + " TEXT NOT NULL, "
-                + PlantEntry.COLUMN_PLANT_SUPPLIER_EMAIL + " TEXT NOT NULL);";
-
-        // Execute the SQL statement
-        db.execSQL(SQL_CREATE_PLANTS_TABLE);
+        // Create the first version of the schema, then upgrade it like an existing database
+        PlantMigrations.createVersion1(db);
+        PlantMigrations.migrate(db, PlantMigrations.FIRST_VERSION, DATABASE_VERSION);
     }
 
     /**
@@ -55,6 +213,6 @@ public class PlantDbHelper extends SQLiteOpenHelper {
      */
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // The database is still at version 1, so there's nothing to do be done here.
+        PlantMigrations.migrate(db, oldVersion, newVersion);
     }
 }
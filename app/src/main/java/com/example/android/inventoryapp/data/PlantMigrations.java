@@ -0,0 +1,699 @@
+package com.example.android.inventoryapp.data;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.inventoryapp.data.PlantContract.PendingAdjustmentEntry;
+import com.example.android.inventoryapp.data.PlantContract.PlantEntry;
+import com.example.android.inventoryapp.data.PlantContract.StockMovementEntry;
+import com.example.android.inventoryapp.data.PlantContract.SummaryEntry;
+import com.example.android.inventoryapp.data.PlantContract.SupplierEntry;
+
+/**
+ * Ordered steps upgrading the schema of the database from one version to the next.
+ *
+ * {@link PlantDbHelper} creates the version 1 schema and then runs all the steps, both on
+ * a new database and when upgrading an existing one, so that every install goes through
+ * the same tested statements. To change the schema, add a new step at the end of
+ * {@link #MIGRATIONS} and increment {@link PlantDbHelper#DATABASE_VERSION} to its version.
+ */
+
+final class PlantMigrations {
+
+    /**
+     * Version of the schema created by {@link #createVersion1}
+     */
+    static final int FIRST_VERSION = 1;
+
+    /**
+     * A step upgrading the schema from the previous version to {@link #version}.
+     */
+    abstract static class Migration {
+        /** The version of the schema after this step */
+        final int version;
+
+        Migration(int version) {
+            this.version = version;
+        }
+
+        /**
+         * Upgrade the schema from version - 1 to version. This runs inside the upgrade
+         * transaction opened by SQLiteOpenHelper.
+         */
+        abstract void migrate(SQLiteDatabase db);
+    }
+
+    /**
+     * All the steps, ordered by version, with no gaps
+     */
+    static final Migration[] MIGRATIONS = {
+            // Version 2 adds the full-text search index: create it and fill it with the plants
+            // that are already in the database.
+            new Migration(2) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    createSearchIndex(db);
+                    db.execSQL("INSERT INTO " + PlantEntry.SEARCH_TABLE_NAME + " (docid, "
+                            + PlantEntry.COLUMN_PLANT_NAME + ", " + PlantEntry.COLUMN_PLANT_SUPPLIER_NAME + ") "
+                            + "SELECT " + PlantEntry._ID + ", " + PlantEntry.COLUMN_PLANT_NAME + ", "
+                            + PlantEntry.COLUMN_PLANT_SUPPLIER_NAME + " FROM " + PlantEntry.TABLE_NAME);
+                }
+            },
+            // Version 3 adds the secondary indexes used to sort and filter the plants
+            // without scanning the whole table.
+            new Migration(3) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    // Names are sorted and compared regardless of case
+                    db.execSQL("CREATE INDEX " + PlantEntry.NAME_INDEX_NAME + " ON " + PlantEntry.TABLE_NAME
+                            + " (" + PlantEntry.COLUMN_PLANT_NAME + " COLLATE NOCASE);");
+                    db.execSQL("CREATE INDEX " + PlantEntry.SUPPLIER_INDEX_NAME + " ON " + PlantEntry.TABLE_NAME
+                            + " (" + PlantEntry.COLUMN_PLANT_SUPPLIER_NAME + ");");
+                    db.execSQL("CREATE INDEX " + PlantEntry.QUANTITY_INDEX_NAME + " ON " + PlantEntry.TABLE_NAME
+                            + " (" + PlantEntry.COLUMN_PLANT_QUANTITY + ");");
+                }
+            },
+            // Version 4 adds the inventory summary, kept up to date by triggers: create it and
+            // compute it once from the plants that are already in the database.
+            new Migration(4) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    createSummaryTable(db, VERSION_1_PRICE_COLUMN, VERSION_4_STOCK_VALUE_COLUMN, "REAL");
+                }
+            },
+            // Version 5 adds the time of the last change of the plants, and turns the indexes
+            // used to sort and filter the catalog into covering indexes, so that a page of the
+            // catalog is read from the index alone, in order, without touching the table.
+            new Migration(5) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    db.execSQL("ALTER TABLE " + PlantEntry.TABLE_NAME + " ADD COLUMN "
+                            + PlantEntry.COLUMN_PLANT_UPDATED_AT + " INTEGER NOT NULL DEFAULT 0;");
+                    db.execSQL("DROP INDEX " + PlantEntry.NAME_INDEX_NAME + ";");
+                    db.execSQL("DROP INDEX " + PlantEntry.QUANTITY_INDEX_NAME + ";");
+                    createCatalogIndex(db, PlantEntry.NAME_INDEX_NAME, PlantEntry.COLUMN_PLANT_NAME,
+                            VERSION_5_CATALOG_COLUMNS, null);
+                    createCatalogIndex(db, PlantEntry.PRICE_INDEX_NAME, VERSION_1_PRICE_COLUMN,
+                            VERSION_5_CATALOG_COLUMNS, null);
+                    createCatalogIndex(db, PlantEntry.QUANTITY_INDEX_NAME, PlantEntry.COLUMN_PLANT_QUANTITY,
+                            VERSION_5_CATALOG_COLUMNS, null);
+                    createCatalogIndex(db, PlantEntry.UPDATED_INDEX_NAME, PlantEntry.COLUMN_PLANT_UPDATED_AT,
+                            VERSION_5_CATALOG_COLUMNS, null);
+                }
+            },
+            // Version 6 adds a partial index of the plants low on stock, so that the list of
+            // the plants to reorder only reads the few plants it shows. Partial indexes came
+            // with SQLite 3.8.0 (Lollipop): older versions go on reading the quantity index.
+            new Migration(6) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    if (supportsPartialIndexes(db)) {
+                        createCatalogIndex(db, PlantEntry.LOW_STOCK_INDEX_NAME, PlantEntry.COLUMN_PLANT_QUANTITY,
+                                VERSION_5_CATALOG_COLUMNS, LOW_STOCK_INDEX_WHERE);
+                    }
+                }
+            },
+            // Version 7 moves the suppliers to their own table, each plant referencing its
+            // supplier by ID. SQLite can't drop columns, so the plants table is rebuilt without
+            // the supplier columns, with its indexes and triggers, and read through a view
+            // joining the suppliers.
+            new Migration(7) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    createSuppliersTable(db);
+                    rebuildPlantsTableWithSuppliers(db);
+                }
+            },
+            // Version 8 stores the prices as integer cents instead of floating point units, so
+            // that prices and the stock value are exact. The plants table is rebuilt with the
+            // prices converted, and the summary computed again from them.
+            new Migration(8) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    rebuildPlantsTableWithPriceCents(db);
+                }
+            },
+            // Version 9 adds the ledger of the stock movements, appended to by the provider on
+            // every change of a stock quantity: create it, with an opening snapshot of the
+            // quantity of each plant that is already in the database.
+            new Migration(9) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    createStockMovementsTable(db);
+                }
+            },
+            // Version 10 adds the change sequence of the plants, set by the provider on every
+            // write, and the tombstones of the deleted plants, so that a copy of the catalog
+            // can be kept up to date by reading only the changes since its last sequence. The
+            // plants already in the database all start at sequence 1.
+            new Migration(10) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    db.execSQL("ALTER TABLE " + PlantEntry.TABLE_NAME + " ADD COLUMN "
+                            + PlantEntry.COLUMN_PLANT_UPDATED_SEQ + " INTEGER NOT NULL DEFAULT 1;");
+                    createChangeLog(db);
+                    db.execSQL("DROP VIEW " + PlantEntry.VIEW_NAME);
+                    createPlantsView(db, PlantEntry.COLUMN_PLANT_PRICE_CENTS, PlantEntry.COLUMN_PLANT_UPDATED_SEQ);
+                }
+            },
+            // Version 11 adds the stock adjustments saved by the app and not applied yet, so
+            // that they are applied and forgotten in the same transaction.
+            new Migration(11) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    db.execSQL("CREATE TABLE " + PendingAdjustmentEntry.TABLE_NAME + " ("
+                            + PendingAdjustmentEntry._ID + " INTEGER PRIMARY KEY, "
+                            + PendingAdjustmentEntry.COLUMN_PLANT_ID + " INTEGER NOT NULL, "
+                            + PendingAdjustmentEntry.COLUMN_DELTA + " INTEGER NOT NULL);");
+                }
+            },
+    };
+
+    /**
+     * Names of the price of the plants and of the stock value of the summary before
+     * version 8, when they were stored as floating point units
+     */
+    private static final String VERSION_1_PRICE_COLUMN = "plant_price";
+    private static final String VERSION_4_STOCK_VALUE_COLUMN = "stock_value";
+
+    /**
+     * Columns of the plants read by the catalog, held by the catalog indexes from version 5
+     * to version 6, when the name of the supplier was a column of the plants
+     */
+    private static final String[] VERSION_5_CATALOG_COLUMNS = {
+            PlantEntry.COLUMN_PLANT_NAME,
+            VERSION_1_PRICE_COLUMN,
+            PlantEntry.COLUMN_PLANT_QUANTITY,
+            PlantEntry.COLUMN_PLANT_SUPPLIER_NAME,
+            PlantEntry.COLUMN_PLANT_UPDATED_AT};
+
+    /**
+     * Columns of the plants read by the catalog, held by the catalog indexes in version 7,
+     * when the prices were stored as floating point units
+     */
+    private static final String[] VERSION_7_CATALOG_COLUMNS = {
+            PlantEntry.COLUMN_PLANT_NAME,
+            VERSION_1_PRICE_COLUMN,
+            PlantEntry.COLUMN_PLANT_QUANTITY,
+            PlantEntry.COLUMN_PLANT_SUPPLIER_ID,
+            PlantEntry.COLUMN_PLANT_UPDATED_AT};
+
+    /**
+     * Columns of the plants read by the catalog, held by the catalog indexes. The name of
+     * the supplier is then read from the suppliers table by its ID.
+     */
+    private static final String[] CATALOG_COLUMNS = {
+            PlantEntry.COLUMN_PLANT_NAME,
+            PlantEntry.COLUMN_PLANT_PRICE_CENTS,
+            PlantEntry.COLUMN_PLANT_QUANTITY,
+            PlantEntry.COLUMN_PLANT_SUPPLIER_ID,
+            PlantEntry.COLUMN_PLANT_UPDATED_AT};
+
+    /**
+     * Temporary name of the plants table while it is rebuilt
+     */
+    private static final String NEW_PLANTS_TABLE_NAME = PlantEntry.TABLE_NAME + "_new";
+
+    /**
+     * Condition of the plants held by the {@link PlantEntry#LOW_STOCK_INDEX_NAME} index.
+     * SQLite only reads a partial index for a query with this very condition in its WHERE
+     * clause, so the provider adds it as is to the queries of the low stock plants.
+     */
+    static final String LOW_STOCK_INDEX_WHERE = PlantEntry.COLUMN_PLANT_QUANTITY + " < "
+            + PlantEntry.MAX_LOW_STOCK_THRESHOLD;
+
+    /**
+     * First version of SQLite supporting partial indexes, as {major, minor}
+     */
+    private static final int[] PARTIAL_INDEX_SQLITE_VERSION = {3, 8};
+
+    private PlantMigrations() {
+    }
+
+    /**
+     * Create the schema of the first version of the database.
+     */
+    static void createVersion1(SQLiteDatabase db) {
+        // Create a String that contains the SQL statement to create the plants table
+        String SQL_CREATE_PLANTS_TABLE =  "CREATE TABLE " + PlantEntry.TABLE_NAME + " ("
+                + PlantEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + PlantEntry.COLUMN_PLANT_NAME + " TEXT NOT NULL, "
+                + VERSION_1_PRICE_COLUMN + " REAL NOT NULL, "
+                + PlantEntry.COLUMN_PLANT_QUANTITY + " INTEGER NOT NULL DEFAULT 0, "
+                + PlantEntry.COLUMN_PLANT_IMAGE + " TEXT, "
+                + PlantEntry.COLUMN_PLANT_SUPPLIER_NAME + " TEXT NOT NULL, "
+                + PlantEntry.COLUMN_PLANT_SUPPLIER_PHONE + " TEXT NOT NULL, "
+                + PlantEntry.COLUMN_PLANT_SUPPLIER_EMAIL + " TEXT NOT NULL);";
+
+        // Execute the SQL statement
+        db.execSQL(SQL_CREATE_PLANTS_TABLE);
+    }
+
+    /**
+     * Run in order all the steps upgrading the schema from oldVersion to newVersion.
+     *
+     * @throws IllegalStateException if a step is missing
+     */
+    static void migrate(SQLiteDatabase db, int oldVersion, int newVersion) {
+        int version = oldVersion;
+        for (Migration migration : MIGRATIONS) {
+            if (migration.version <= oldVersion || migration.version > newVersion) {
+                continue;
+            }
+            if (migration.version != version + 1) {
+                throw new IllegalStateException("No migration to version " + (version + 1));
+            }
+            migration.migrate(db);
+            version = migration.version;
+        }
+        if (version != newVersion) {
+            throw new IllegalStateException("No migration from version " + version + " to " + newVersion);
+        }
+    }
+
+    /**
+     * Create a covering index of the catalog sorted by the given column, then by ID like the
+     * provider breaks the ties, followed by all the other given columns read by the catalog,
+     * only holding the plants matching the given condition (if not null). Names are sorted
+     * regardless of case.
+     */
+    private static void createCatalogIndex(SQLiteDatabase db, String indexName, String sortColumn,
+                                           String[] catalogColumns, String where) {
+        StringBuilder sql = new StringBuilder("CREATE INDEX ").append(indexName)
+                .append(" ON ").append(PlantEntry.TABLE_NAME).append(" (").append(sortColumn);
+        if (PlantEntry.COLUMN_PLANT_NAME.equals(sortColumn)) {
+            sql.append(" COLLATE NOCASE");
+        }
+        sql.append(", ").append(PlantEntry._ID);
+        for (String column : catalogColumns) {
+            if (!column.equals(sortColumn)) {
+                sql.append(", ").append(column);
+            }
+        }
+        sql.append(")");
+        if (where != null) {
+            sql.append(" WHERE ").append(where);
+        }
+        db.execSQL(sql.append(";").toString());
+    }
+
+    /**
+     * Return true if the SQLite library of the device supports partial indexes.
+     */
+    private static boolean supportsPartialIndexes(SQLiteDatabase db) {
+        String[] version = DatabaseUtils.stringForQuery(db, "SELECT sqlite_version()", null).split("\\.");
+        for (int i = 0; i < PARTIAL_INDEX_SQLITE_VERSION.length; i++) {
+            int part = i < version.length ? Integer.parseInt(version[i]) : 0;
+            if (part != PARTIAL_INDEX_SQLITE_VERSION[i]) {
+                return part > PARTIAL_INDEX_SQLITE_VERSION[i];
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Create the single row inventory summary table, filled with the totals of the plants
+     * in the database, and the triggers that add the changes of every insert, update and
+     * delete of a plant to it, so that the totals never need to be computed again.
+     *
+     * @param priceColumn      the price column of the plants
+     * @param stockValueColumn the stock value column of the summary
+     * @param stockValueType   the type of the stock value, the type of the prices
+     */
+    private static void createSummaryTable(SQLiteDatabase db, String priceColumn, String stockValueColumn,
+                                           String stockValueType) {
+        db.execSQL("CREATE TABLE " + SummaryEntry.TABLE_NAME + " ("
+                + SummaryEntry.COLUMN_PLANT_COUNT + " INTEGER NOT NULL, "
+                + stockValueColumn + " " + stockValueType + " NOT NULL, "
+                + SummaryEntry.COLUMN_OUT_OF_STOCK_COUNT + " INTEGER NOT NULL, "
+                + SummaryEntry.COLUMN_LOW_STOCK_COUNT + " INTEGER NOT NULL);");
+
+        // SUM keeps the type of the prices, unlike TOTAL which always adds floating point values
+        db.execSQL("INSERT INTO " + SummaryEntry.TABLE_NAME + " SELECT COUNT(*), "
+                + "IFNULL(SUM(" + stockValue("", priceColumn) + "), 0), "
+                + "TOTAL(" + isOutOfStock("") + "), "
+                + "TOTAL(" + isLowOnStock("") + ") "
+                + "FROM " + PlantEntry.TABLE_NAME);
+
+        createSummaryTriggers(db, priceColumn, stockValueColumn);
+    }
+
+    /**
+     * Create the triggers adding the changes of the plants to the inventory summary.
+     */
+    private static void createSummaryTriggers(SQLiteDatabase db, String priceColumn, String stockValueColumn) {
+        db.execSQL("CREATE TRIGGER " + SummaryEntry.TABLE_NAME + "_insert AFTER INSERT ON "
+                + PlantEntry.TABLE_NAME + " BEGIN "
+                + "UPDATE " + SummaryEntry.TABLE_NAME + " SET "
+                + SummaryEntry.COLUMN_PLANT_COUNT + " = " + SummaryEntry.COLUMN_PLANT_COUNT + " + 1, "
+                + stockValueColumn + " = " + stockValueColumn
+                + " + " + stockValue("new.", priceColumn) + ", "
+                + SummaryEntry.COLUMN_OUT_OF_STOCK_COUNT + " = " + SummaryEntry.COLUMN_OUT_OF_STOCK_COUNT
+                + " + " + isOutOfStock("new.") + ", "
+                + SummaryEntry.COLUMN_LOW_STOCK_COUNT + " = " + SummaryEntry.COLUMN_LOW_STOCK_COUNT
+                + " + " + isLowOnStock("new.") + "; END;");
+
+        // Only the price and the quantity count in the summary
+        db.execSQL("CREATE TRIGGER " + SummaryEntry.TABLE_NAME + "_update AFTER UPDATE OF "
+                + priceColumn + ", " + PlantEntry.COLUMN_PLANT_QUANTITY
+                + " ON " + PlantEntry.TABLE_NAME + " BEGIN "
+                + "UPDATE " + SummaryEntry.TABLE_NAME + " SET "
+                + stockValueColumn + " = " + stockValueColumn
+                + " - " + stockValue("old.", priceColumn) + " + " + stockValue("new.", priceColumn) + ", "
+                + SummaryEntry.COLUMN_OUT_OF_STOCK_COUNT + " = " + SummaryEntry.COLUMN_OUT_OF_STOCK_COUNT
+                + " - " + isOutOfStock("old.") + " + " + isOutOfStock("new.") + ", "
+                + SummaryEntry.COLUMN_LOW_STOCK_COUNT + " = " + SummaryEntry.COLUMN_LOW_STOCK_COUNT
+                + " - " + isLowOnStock("old.") + " + " + isLowOnStock("new.") + "; END;");
+
+        db.execSQL("CREATE TRIGGER " + SummaryEntry.TABLE_NAME + "_delete AFTER DELETE ON "
+                + PlantEntry.TABLE_NAME + " BEGIN "
+                + "UPDATE " + SummaryEntry.TABLE_NAME + " SET "
+                + SummaryEntry.COLUMN_PLANT_COUNT + " = " + SummaryEntry.COLUMN_PLANT_COUNT + " - 1, "
+                + stockValueColumn + " = " + stockValueColumn
+                + " - " + stockValue("old.", priceColumn) + ", "
+                + SummaryEntry.COLUMN_OUT_OF_STOCK_COUNT + " = " + SummaryEntry.COLUMN_OUT_OF_STOCK_COUNT
+                + " - " + isOutOfStock("old.") + ", "
+                + SummaryEntry.COLUMN_LOW_STOCK_COUNT + " = " + SummaryEntry.COLUMN_LOW_STOCK_COUNT
+                + " - " + isLowOnStock("old.") + "; END;");
+    }
+
+    /**
+     * Create the suppliers table, filled with the suppliers of the plants in the database: one
+     * supplier for each name (regardless of case), with the phone and email address of its
+     * most recently added plant.
+     */
+    private static void createSuppliersTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + SupplierEntry.TABLE_NAME + " ("
+                + SupplierEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + SupplierEntry.COLUMN_SUPPLIER_NAME + " TEXT NOT NULL UNIQUE COLLATE NOCASE, "
+                + SupplierEntry.COLUMN_SUPPLIER_PHONE + " TEXT, "
+                + SupplierEntry.COLUMN_SUPPLIER_EMAIL + " TEXT NOT NULL);");
+
+        db.execSQL("INSERT INTO " + SupplierEntry.TABLE_NAME + " ("
+                + SupplierEntry.COLUMN_SUPPLIER_NAME + ", " + SupplierEntry.COLUMN_SUPPLIER_PHONE + ", "
+                + SupplierEntry.COLUMN_SUPPLIER_EMAIL + ") "
+                + "SELECT " + PlantEntry.COLUMN_PLANT_SUPPLIER_NAME + ", " + PlantEntry.COLUMN_PLANT_SUPPLIER_PHONE
+                + ", " + PlantEntry.COLUMN_PLANT_SUPPLIER_EMAIL + " FROM " + PlantEntry.TABLE_NAME
+                + " WHERE " + PlantEntry._ID + " IN (SELECT MAX(" + PlantEntry._ID + ") FROM " + PlantEntry.TABLE_NAME
+                + " GROUP BY " + PlantEntry.COLUMN_PLANT_SUPPLIER_NAME + " COLLATE NOCASE)"
+                + " ORDER BY " + PlantEntry._ID);
+    }
+
+    /**
+     * Rebuild the plants table with the ID of the supplier of each plant instead of the
+     * supplier columns, then create again its indexes and triggers, dropped with the old
+     * table, and the view joining the plants with their suppliers.
+     */
+    private static void rebuildPlantsTableWithSuppliers(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + NEW_PLANTS_TABLE_NAME + " ("
+                + PlantEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + PlantEntry.COLUMN_PLANT_NAME + " TEXT NOT NULL, "
+                + VERSION_1_PRICE_COLUMN + " REAL NOT NULL, "
+                + PlantEntry.COLUMN_PLANT_QUANTITY + " INTEGER NOT NULL DEFAULT 0, "
+                + PlantEntry.COLUMN_PLANT_IMAGE + " TEXT, "
+                + PlantEntry.COLUMN_PLANT_SUPPLIER_ID + " INTEGER NOT NULL REFERENCES "
+                + SupplierEntry.TABLE_NAME + " (" + SupplierEntry._ID + "), "
+                + PlantEntry.COLUMN_PLANT_UPDATED_AT + " INTEGER NOT NULL DEFAULT 0);");
+
+        // The supplier names are compared regardless of case, like the suppliers table does
+        db.execSQL("INSERT INTO " + NEW_PLANTS_TABLE_NAME + " ("
+                + PlantEntry._ID + ", " + PlantEntry.COLUMN_PLANT_NAME + ", " + VERSION_1_PRICE_COLUMN + ", "
+                + PlantEntry.COLUMN_PLANT_QUANTITY + ", " + PlantEntry.COLUMN_PLANT_IMAGE + ", "
+                + PlantEntry.COLUMN_PLANT_SUPPLIER_ID + ", " + PlantEntry.COLUMN_PLANT_UPDATED_AT + ") "
+                + "SELECT " + PlantEntry.TABLE_NAME + "." + PlantEntry._ID + ", " + PlantEntry.COLUMN_PLANT_NAME + ", "
+                + VERSION_1_PRICE_COLUMN + ", " + PlantEntry.COLUMN_PLANT_QUANTITY + ", "
+                + PlantEntry.COLUMN_PLANT_IMAGE + ", " + SupplierEntry.TABLE_NAME + "." + SupplierEntry._ID + ", "
+                + PlantEntry.COLUMN_PLANT_UPDATED_AT
+                + " FROM " + PlantEntry.TABLE_NAME + " JOIN " + SupplierEntry.TABLE_NAME + " ON "
+                + SupplierEntry.TABLE_NAME + "." + SupplierEntry.COLUMN_SUPPLIER_NAME + " = "
+                + PlantEntry.TABLE_NAME + "." + PlantEntry.COLUMN_PLANT_SUPPLIER_NAME);
+
+        replacePlantsTable(db);
+
+        createCatalogIndexes(db, VERSION_1_PRICE_COLUMN, VERSION_7_CATALOG_COLUMNS);
+        createSummaryTriggers(db, VERSION_1_PRICE_COLUMN, VERSION_4_STOCK_VALUE_COLUMN);
+        createSupplierSearchTriggers(db);
+        createPlantsView(db, VERSION_1_PRICE_COLUMN);
+    }
+
+    /**
+     * Rebuild the plants table with the prices in cents, rounded to the nearest cent, then
+     * create again its indexes and triggers, and the inventory summary with the stock value
+     * in cents, computed again from the prices in cents.
+     */
+    private static void rebuildPlantsTableWithPriceCents(SQLiteDatabase db) {
+        // The view and the trigger on the suppliers read the plants table, which is replaced
+        db.execSQL("DROP VIEW " + PlantEntry.VIEW_NAME);
+        db.execSQL("DROP TRIGGER " + SupplierEntry.TABLE_NAME + "_search_update");
+
+        db.execSQL("CREATE TABLE " + NEW_PLANTS_TABLE_NAME + " ("
+                + PlantEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + PlantEntry.COLUMN_PLANT_NAME + " TEXT NOT NULL, "
+                + PlantEntry.COLUMN_PLANT_PRICE_CENTS + " INTEGER NOT NULL, "
+                + PlantEntry.COLUMN_PLANT_QUANTITY + " INTEGER NOT NULL DEFAULT 0, "
+                + PlantEntry.COLUMN_PLANT_IMAGE + " TEXT, "
+                + PlantEntry.COLUMN_PLANT_SUPPLIER_ID + " INTEGER NOT NULL REFERENCES "
+                + SupplierEntry.TABLE_NAME + " (" + SupplierEntry._ID + "), "
+                + PlantEntry.COLUMN_PLANT_UPDATED_AT + " INTEGER NOT NULL DEFAULT 0);");
+
+        db.execSQL("INSERT INTO " + NEW_PLANTS_TABLE_NAME + " ("
+                + PlantEntry._ID + ", " + PlantEntry.COLUMN_PLANT_NAME + ", " + PlantEntry.COLUMN_PLANT_PRICE_CENTS + ", "
+                + PlantEntry.COLUMN_PLANT_QUANTITY + ", " + PlantEntry.COLUMN_PLANT_IMAGE + ", "
+                + PlantEntry.COLUMN_PLANT_SUPPLIER_ID + ", " + PlantEntry.COLUMN_PLANT_UPDATED_AT + ") "
+                + "SELECT " + PlantEntry._ID + ", " + PlantEntry.COLUMN_PLANT_NAME + ", "
+                + "CAST(ROUND(" + VERSION_1_PRICE_COLUMN + " * 100) AS INTEGER), "
+                + PlantEntry.COLUMN_PLANT_QUANTITY + ", " + PlantEntry.COLUMN_PLANT_IMAGE + ", "
+                + PlantEntry.COLUMN_PLANT_SUPPLIER_ID + ", " + PlantEntry.COLUMN_PLANT_UPDATED_AT
+                + " FROM " + PlantEntry.TABLE_NAME);
+
+        replacePlantsTable(db);
+
+        createCatalogIndexes(db, PlantEntry.COLUMN_PLANT_PRICE_CENTS, CATALOG_COLUMNS);
+        db.execSQL("DROP TABLE " + SummaryEntry.TABLE_NAME);
+        createSummaryTable(db, PlantEntry.COLUMN_PLANT_PRICE_CENTS, SummaryEntry.COLUMN_STOCK_VALUE_CENTS, "INTEGER");
+        createSupplierSearchTriggers(db);
+        createPlantsView(db, PlantEntry.COLUMN_PLANT_PRICE_CENTS);
+    }
+
+    /**
+     * Create the stock movements table, with the index of the movements by plant and time,
+     * and the trigger deleting the movements of a plant with the plant. Each plant in stock
+     * gets a snapshot of its quantity, at the time of its last change, so that its quantity
+     * is the sum of the deltas of its movements from the start.
+     *
+     * The trigger is on the plants table: a later rebuild of the plants table has to create
+     * it again.
+     */
+    private static void createStockMovementsTable(SQLiteDatabase db) {
+        // Without AUTOINCREMENT, appending a movement doesn't write the sqlite_sequence table
+        db.execSQL("CREATE TABLE " + StockMovementEntry.TABLE_NAME + " ("
+                + StockMovementEntry._ID + " INTEGER PRIMARY KEY, "
+                + StockMovementEntry.COLUMN_PLANT_ID + " INTEGER NOT NULL, "
+                + StockMovementEntry.COLUMN_DELTA + " INTEGER NOT NULL, "
+                + StockMovementEntry.COLUMN_REASON + " INTEGER NOT NULL, "
+                + StockMovementEntry.COLUMN_CREATED_AT + " INTEGER NOT NULL);");
+
+        db.execSQL("CREATE INDEX " + StockMovementEntry.PLANT_INDEX_NAME + " ON " + StockMovementEntry.TABLE_NAME
+                + " (" + StockMovementEntry.COLUMN_PLANT_ID + ", " + StockMovementEntry.COLUMN_CREATED_AT
+                + ", " + StockMovementEntry.COLUMN_DELTA + ");");
+
+        db.execSQL("CREATE TRIGGER " + StockMovementEntry.TABLE_NAME + "_delete AFTER DELETE ON "
+                + PlantEntry.TABLE_NAME + " BEGIN "
+                + "DELETE FROM " + StockMovementEntry.TABLE_NAME
+                + " WHERE " + StockMovementEntry.COLUMN_PLANT_ID + " = old." + PlantEntry._ID + "; END;");
+
+        db.execSQL("INSERT INTO " + StockMovementEntry.TABLE_NAME + " ("
+                + StockMovementEntry.COLUMN_PLANT_ID + ", " + StockMovementEntry.COLUMN_DELTA + ", "
+                + StockMovementEntry.COLUMN_REASON + ", " + StockMovementEntry.COLUMN_CREATED_AT + ") "
+                + "SELECT " + PlantEntry._ID + ", " + PlantEntry.COLUMN_PLANT_QUANTITY + ", "
+                + StockMovementEntry.REASON_SNAPSHOT + ", " + PlantEntry.COLUMN_PLANT_UPDATED_AT
+                + " FROM " + PlantEntry.TABLE_NAME + " WHERE " + PlantEntry.COLUMN_PLANT_QUANTITY + " != 0"
+                + " ORDER BY " + PlantEntry._ID);
+    }
+
+    /**
+     * Create the index of the plants by change sequence, the table of the deleted plants with
+     * its own index by change sequence, and the trigger giving a new change sequence to the
+     * plants of a supplier whenever the supplier changes, as the supplier columns are part of
+     * the plants.
+     *
+     * The trigger reads the plants table: a later rebuild of the plants table has to drop it
+     * first, and create it again.
+     */
+    private static void createChangeLog(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX " + PlantEntry.UPDATED_SEQ_INDEX_NAME + " ON " + PlantEntry.TABLE_NAME
+                + " (" + PlantEntry.COLUMN_PLANT_UPDATED_SEQ + ");");
+
+        // The IDs of the plants are never given again, so a plant has a single tombstone
+        db.execSQL("CREATE TABLE " + PlantEntry.TOMBSTONE_TABLE_NAME + " ("
+                + PlantEntry._ID + " INTEGER PRIMARY KEY, "
+                + PlantEntry.COLUMN_PLANT_UPDATED_SEQ + " INTEGER NOT NULL);");
+        db.execSQL("CREATE INDEX " + PlantEntry.TOMBSTONE_INDEX_NAME + " ON " + PlantEntry.TOMBSTONE_TABLE_NAME
+                + " (" + PlantEntry.COLUMN_PLANT_UPDATED_SEQ + ");");
+
+        db.execSQL("CREATE TRIGGER " + SupplierEntry.TABLE_NAME + "_changes_update AFTER UPDATE OF "
+                + SupplierEntry.COLUMN_SUPPLIER_NAME + ", " + SupplierEntry.COLUMN_SUPPLIER_PHONE + ", "
+                + SupplierEntry.COLUMN_SUPPLIER_EMAIL + " ON " + SupplierEntry.TABLE_NAME + " BEGIN "
+                + "UPDATE " + PlantEntry.TABLE_NAME + " SET " + PlantEntry.COLUMN_PLANT_UPDATED_SEQ + " = "
+                + PlantChangeLog.NEXT_SEQUENCE
+                + " WHERE " + PlantEntry.COLUMN_PLANT_SUPPLIER_ID + " = new." + SupplierEntry._ID + "; END;");
+    }
+
+    /**
+     * Replace the plants table by the new plants table, filled with the same plants. The
+     * indexes and triggers of the plants table are dropped with it.
+     */
+    private static void replacePlantsTable(SQLiteDatabase db) {
+        // Keep the last ID given to a plant, so that the IDs of the deleted plants (and the
+        // names of their thumbnails) are never given again
+        db.execSQL("UPDATE sqlite_sequence SET seq = (SELECT seq FROM sqlite_sequence WHERE name = '"
+                + PlantEntry.TABLE_NAME + "') WHERE name = '" + NEW_PLANTS_TABLE_NAME + "'");
+
+        // Dropping the table doesn't fire its triggers: the summary stays as it is
+        db.execSQL("DROP TABLE " + PlantEntry.TABLE_NAME);
+        db.execSQL("ALTER TABLE " + NEW_PLANTS_TABLE_NAME + " RENAME TO " + PlantEntry.TABLE_NAME);
+    }
+
+    /**
+     * Create the catalog indexes of the plants table, holding the given catalog columns, from
+     * version 7 on.
+     */
+    private static void createCatalogIndexes(SQLiteDatabase db, String priceColumn, String[] catalogColumns) {
+        createCatalogIndex(db, PlantEntry.NAME_INDEX_NAME, PlantEntry.COLUMN_PLANT_NAME, catalogColumns, null);
+        createCatalogIndex(db, PlantEntry.PRICE_INDEX_NAME, priceColumn, catalogColumns, null);
+        createCatalogIndex(db, PlantEntry.QUANTITY_INDEX_NAME, PlantEntry.COLUMN_PLANT_QUANTITY, catalogColumns, null);
+        createCatalogIndex(db, PlantEntry.UPDATED_INDEX_NAME, PlantEntry.COLUMN_PLANT_UPDATED_AT, catalogColumns, null);
+        // Also used to find the plants of a supplier, and to check that a supplier has none
+        createCatalogIndex(db, PlantEntry.SUPPLIER_INDEX_NAME, PlantEntry.COLUMN_PLANT_SUPPLIER_ID, catalogColumns, null);
+        if (supportsPartialIndexes(db)) {
+            createCatalogIndex(db, PlantEntry.LOW_STOCK_INDEX_NAME, PlantEntry.COLUMN_PLANT_QUANTITY,
+                    catalogColumns, LOW_STOCK_INDEX_WHERE);
+        }
+    }
+
+    /**
+     * Create the view of the plants joined with their suppliers, with the supplier columns
+     * named like the columns of the plants table before version 7, and the given columns of
+     * the plants added after version 7. The join is a LEFT JOIN, which always has the plants
+     * as the outer loop: a page of the catalog is read from the index of its sort, in order,
+     * and each supplier is looked up by ID.
+     */
+    private static void createPlantsView(SQLiteDatabase db, String priceColumn, String... newColumns) {
+        StringBuilder columns = new StringBuilder();
+        for (String column : newColumns) {
+            columns.append(column).append(", ");
+        }
+        db.execSQL("CREATE VIEW " + PlantEntry.VIEW_NAME + " AS SELECT "
+                + PlantEntry.TABLE_NAME + "." + PlantEntry._ID + " AS " + PlantEntry._ID + ", "
+                + PlantEntry.COLUMN_PLANT_NAME + ", "
+                + priceColumn + ", "
+                + PlantEntry.COLUMN_PLANT_QUANTITY + ", "
+                + PlantEntry.COLUMN_PLANT_IMAGE + ", "
+                + PlantEntry.COLUMN_PLANT_SUPPLIER_ID + ", "
+                + PlantEntry.COLUMN_PLANT_UPDATED_AT + ", "
+                + columns
+                + SupplierEntry.COLUMN_SUPPLIER_NAME + " AS " + PlantEntry.COLUMN_PLANT_SUPPLIER_NAME + ", "
+                + SupplierEntry.COLUMN_SUPPLIER_PHONE + " AS " + PlantEntry.COLUMN_PLANT_SUPPLIER_PHONE + ", "
+                + SupplierEntry.COLUMN_SUPPLIER_EMAIL + " AS " + PlantEntry.COLUMN_PLANT_SUPPLIER_EMAIL
+                + " FROM " + PlantEntry.TABLE_NAME + " LEFT JOIN " + SupplierEntry.TABLE_NAME + " ON "
+                + SupplierEntry.TABLE_NAME + "." + SupplierEntry._ID + " = "
+                + PlantEntry.TABLE_NAME + "." + PlantEntry.COLUMN_PLANT_SUPPLIER_ID + ";");
+    }
+
+    /**
+     * SQL expression of the name of the supplier with the ID of the given column.
+     */
+    private static String supplierName(String supplierIdColumn) {
+        return "(SELECT " + SupplierEntry.COLUMN_SUPPLIER_NAME + " FROM " + SupplierEntry.TABLE_NAME
+                + " WHERE " + SupplierEntry._ID + " = " + supplierIdColumn + ")";
+    }
+
+    /**
+     * SQL expression of the stock value of a plant, whose columns start with the given prefix
+     * ("new." or "old." in a trigger), with the given price column.
+     */
+    private static String stockValue(String prefix, String priceColumn) {
+        return "(" + prefix + priceColumn + " * " + prefix + PlantEntry.COLUMN_PLANT_QUANTITY + ")";
+    }
+
+    /**
+     * SQL expression worth 1 if a plant is out of stock, 0 otherwise.
+     */
+    private static String isOutOfStock(String prefix) {
+        return "(" + prefix + PlantEntry.COLUMN_PLANT_QUANTITY + " = 0)";
+    }
+
+    /**
+     * SQL expression worth 1 if a plant is in stock, but low on stock, 0 otherwise.
+     */
+    private static String isLowOnStock(String prefix) {
+        return "(" + prefix + PlantEntry.COLUMN_PLANT_QUANTITY + " BETWEEN 1 AND "
+                + (SummaryEntry.LOW_STOCK_THRESHOLD - 1) + ")";
+    }
+
+    /**
+     * Create the triggers keeping the full-text search table in sync with the plants table
+     * and the suppliers table, once the name of the supplier has moved to the suppliers: the
+     * name is looked up when a plant is written, and copied to all the plants of a supplier
+     * when it is renamed.
+     */
+    private static void createSupplierSearchTriggers(SQLiteDatabase db) {
+        db.execSQL("CREATE TRIGGER " + PlantEntry.SEARCH_TABLE_NAME + "_insert AFTER INSERT ON "
+                + PlantEntry.TABLE_NAME + " BEGIN "
+                + "INSERT INTO " + PlantEntry.SEARCH_TABLE_NAME + " (docid, "
+                + PlantEntry.COLUMN_PLANT_NAME + ", " + PlantEntry.COLUMN_PLANT_SUPPLIER_NAME + ") "
+                + "VALUES (new." + PlantEntry._ID + ", new." + PlantEntry.COLUMN_PLANT_NAME
+                + ", " + supplierName("new." + PlantEntry.COLUMN_PLANT_SUPPLIER_ID) + "); END;");
+
+        db.execSQL("CREATE TRIGGER " + PlantEntry.SEARCH_TABLE_NAME + "_update AFTER UPDATE OF "
+                + PlantEntry.COLUMN_PLANT_NAME + ", " + PlantEntry.COLUMN_PLANT_SUPPLIER_ID
+                + " ON " + PlantEntry.TABLE_NAME + " BEGIN "
+                + "UPDATE " + PlantEntry.SEARCH_TABLE_NAME + " SET "
+                + PlantEntry.COLUMN_PLANT_NAME + " = new." + PlantEntry.COLUMN_PLANT_NAME + ", "
+                + PlantEntry.COLUMN_PLANT_SUPPLIER_NAME + " = "
+                + supplierName("new." + PlantEntry.COLUMN_PLANT_SUPPLIER_ID)
+                + " WHERE docid = old." + PlantEntry._ID + "; END;");
+
+        db.execSQL("CREATE TRIGGER " + PlantEntry.SEARCH_TABLE_NAME + "_delete AFTER DELETE ON "
+                + PlantEntry.TABLE_NAME + " BEGIN "
+                + "DELETE FROM " + PlantEntry.SEARCH_TABLE_NAME
+                + " WHERE docid = old." + PlantEntry._ID + "; END;");
+
+        db.execSQL("CREATE TRIGGER " + SupplierEntry.TABLE_NAME + "_search_update AFTER UPDATE OF "
+                + SupplierEntry.COLUMN_SUPPLIER_NAME + " ON " + SupplierEntry.TABLE_NAME + " BEGIN "
+                + "UPDATE " + PlantEntry.SEARCH_TABLE_NAME + " SET "
+                + PlantEntry.COLUMN_PLANT_SUPPLIER_NAME + " = new." + SupplierEntry.COLUMN_SUPPLIER_NAME
+                + " WHERE docid IN (SELECT " + PlantEntry._ID + " FROM " + PlantEntry.TABLE_NAME
+                + " WHERE " + PlantEntry.COLUMN_PLANT_SUPPLIER_ID + " = new." + SupplierEntry._ID + "); END;");
+    }
+
+    /**
+     * Create the full-text search table mirroring the name and the supplier name of the plants,
+     * and the triggers that keep it in sync with the plants table.
+     */
+    private static void createSearchIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE VIRTUAL TABLE " + PlantEntry.SEARCH_TABLE_NAME + " USING fts4("
+                + PlantEntry.COLUMN_PLANT_NAME + ", "
+                + PlantEntry.COLUMN_PLANT_SUPPLIER_NAME + ");");
+
+        db.execSQL("CREATE TRIGGER " + PlantEntry.SEARCH_TABLE_NAME + "_insert AFTER INSERT ON "
+                + PlantEntry.TABLE_NAME + " BEGIN "
+                + "INSERT INTO " + PlantEntry.SEARCH_TABLE_NAME + " (docid, "
+                + PlantEntry.COLUMN_PLANT_NAME + ", " + PlantEntry.COLUMN_PLANT_SUPPLIER_NAME + ") "
+                + "VALUES (new." + PlantEntry._ID + ", new." + PlantEntry.COLUMN_PLANT_NAME
+                + ", new." + PlantEntry.COLUMN_PLANT_SUPPLIER_NAME + "); END;");
+
+        db.execSQL("CREATE TRIGGER " + PlantEntry.SEARCH_TABLE_NAME + "_update AFTER UPDATE OF "
+                + PlantEntry.COLUMN_PLANT_NAME + ", " + PlantEntry.COLUMN_PLANT_SUPPLIER_NAME
+                + " ON " + PlantEntry.TABLE_NAME + " BEGIN "
+                + "UPDATE " + PlantEntry.SEARCH_TABLE_NAME + " SET "
+                + PlantEntry.COLUMN_PLANT_NAME + " = new." + PlantEntry.COLUMN_PLANT_NAME + ", "
+                + PlantEntry.COLUMN_PLANT_SUPPLIER_NAME + " = new." + PlantEntry.COLUMN_PLANT_SUPPLIER_NAME
+                + " WHERE docid = old." + PlantEntry._ID + "; END;");
+
+        db.execSQL("CREATE TRIGGER " + PlantEntry.SEARCH_TABLE_NAME + "_delete AFTER DELETE ON "
+                + PlantEntry.TABLE_NAME + " BEGIN "
+                + "DELETE FROM " + PlantEntry.SEARCH_TABLE_NAME
+                + " WHERE docid = old." + PlantEntry._ID + "; END;");
+    }
+}
@@ -1,22 +1,67 @@
 package com.example.android.inventoryapp.data;
 
+import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.CancellationSignal;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.text.TextUtils;
 import android.util.Log;
 
+import com.example.android.inventoryapp.data.PlantContract.PendingAdjustmentEntry;
 import com.example.android.inventoryapp.data.PlantContract.PlantEntry;
+import com.example.android.inventoryapp.data.PlantContract.StockMovementEntry;
+import com.example.android.inventoryapp.data.PlantContract.SummaryEntry;
+import com.example.android.inventoryapp.data.PlantContract.SupplierEntry;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 import static com.example.android.inventoryapp.data.PlantContract.PlantEntry.COLUMN_PLANT_QUANTITY;
 
 /**
  * {@link ContentProvider} for LIF app.
+ *
+ * Changes are notified as precisely as possible: a change to a single plant is notified on the
+ * content URI of that plant (plants/#), so that only the observers of that plant and of the
+ * whole plants table (registered with notifyForDescendants) are notified, while a change to
+ * several plants is notified on the plants table URI, reaching the observers of every plant.
+ *
+ * The suppliers are kept in their own table, and plants are read through a view joining each
+ * plant to its supplier, so the supplier columns of the plants can still be read, filtered and
+ * written as before: a change to the contact of a supplier is a single row, for all its plants.
+ *
+ * Every change of the stock quantity of a plant, whether an adjustment, an update or the
+ * initial quantity of a new plant, appends a movement to the stock ledger in the transaction
+ * of the change, so that the quantity of a plant is the sum of its movements, and its stock
+ * at any past time can be read back. The old movements are rolled into snapshots by
+ * {@link PlantContract#METHOD_COMPACT_STOCK_MOVEMENTS}, called in the background.
+ *
+ * Every write also gives the plants it changes a new change sequence, and leaves a tombstone
+ * for each plant it deletes, so that the plants changed since a given sequence can be read
+ * from an index instead of reading the whole plants table again.
  */
 
 public class PlantProvider extends ContentProvider {
@@ -36,6 +81,66 @@ public class PlantProvider extends ContentProvider {
      */
     private static final int PLANT_ID = 101;
 
+    /**
+     * URI matcher code for the content URI for the full-text search of plants
+     */
+    private static final int PLANT_SEARCH = 102;
+
+    /**
+     * URI matcher code for the content URI adjusting the stock quantity of a single plant
+     */
+    private static final int PLANT_ADJUST = 103;
+
+    /**
+     * URI matcher code for the content URI for the summary of the inventory
+     */
+    private static final int PLANT_STATS = 104;
+
+    /**
+     * URI matcher code for the content URI for the plants low on stock
+     */
+    private static final int PLANT_LOW_STOCK = 105;
+
+    /**
+     * URI matcher code for the content URI for the suppliers table
+     */
+    private static final int SUPPLIERS = 106;
+
+    /**
+     * URI matcher code for the content URI for a single supplier in the suppliers table
+     */
+    private static final int SUPPLIER_ID = 107;
+
+    /**
+     * URI matcher code for the content URI for the stock movements of a single plant
+     */
+    private static final int PLANT_MOVEMENTS = 108;
+
+    /**
+     * URI matcher code for the content URI for the stock quantity of a single plant at a
+     * given time
+     */
+    private static final int PLANT_STOCK = 109;
+
+    /**
+     * URI matcher code for the content URI for the plants changed or deleted since a given
+     * change sequence
+     */
+    private static final int PLANT_CHANGES = 110;
+
+    /**
+     * URI matcher code for the content URI for the pending stock adjustments table
+     */
+    private static final int PENDING_ADJUSTMENTS = 111;
+
+    /**
+     * Names of the kinds of URI in the metrics, indexed by URI matcher code - {@link #PLANTS}
+     */
+    private static final String[] URI_NAMES = {
+            "plants", "plant_id", "plant_search", "plant_adjust", "plant_stats", "plant_low_stock",
+            "suppliers", "supplier_id", "plant_movements", "plant_stock",
+            "plant_changes", "pending_adjustments"};
+
     /**
      * UriMatcher object to match a content URI to a corresponding code.
      * The input passed into the constructor represents the code to return for the root URI.
@@ -62,37 +167,400 @@ public class PlantProvider extends ContentProvider {
         // For example, "content://com.example.android.inventoryapp/plants/3" matches, but
         // "content://com.example.android.inventoryapp/plants" (without a number at the end) doesn't match.
         sUriMatcher.addURI(PlantContract.CONTENT_AUTHORITY, PlantContract.PATH_PLANTS + "/#", PLANT_ID);
+
+        // The content URI of the form "content://com.example.android.inventoryapp/plants/search/*"
+        // will map to the integer code {@link #PLANT_SEARCH}. This URI is used to search plants
+        // by the words in their name or supplier name, where "*" is the text to search for.
+        sUriMatcher.addURI(PlantContract.CONTENT_AUTHORITY,
+                PlantContract.PATH_PLANTS + "/" + PlantContract.PATH_SEARCH + "/*", PLANT_SEARCH);
+
+        // The content URI of the form "content://com.example.android.inventoryapp/plants/#/adjust"
+        // will map to the integer code {@link #PLANT_ADJUST}. This URI is used to add a delta
+        // to the stock quantity of ONE single plant, without reading it first.
+        sUriMatcher.addURI(PlantContract.CONTENT_AUTHORITY,
+                PlantContract.PATH_PLANTS + "/#/" + PlantContract.PATH_ADJUST, PLANT_ADJUST);
+
+        // The content URI of the form "content://com.example.android.inventoryapp/plants/stats"
+        // will map to the integer code {@link #PLANT_STATS}. This URI is used to read the
+        // totals of the inventory, from the summary table kept up to date by triggers.
+        sUriMatcher.addURI(PlantContract.CONTENT_AUTHORITY,
+                PlantContract.PATH_PLANTS + "/" + PlantContract.PATH_STATS, PLANT_STATS);
+
+        // The content URI of the form "content://com.example.android.inventoryapp/plants/low_stock"
+        // will map to the integer code {@link #PLANT_LOW_STOCK}. This URI is used to read the
+        // plants to reorder, from the partial index holding only the plants low on stock.
+        sUriMatcher.addURI(PlantContract.CONTENT_AUTHORITY,
+                PlantContract.PATH_PLANTS + "/" + PlantContract.PATH_LOW_STOCK, PLANT_LOW_STOCK);
+
+        // The content URIs of the form "content://com.example.android.inventoryapp/suppliers"
+        // and "content://com.example.android.inventoryapp/suppliers/#" will map to the integer
+        // codes {@link #SUPPLIERS} and {@link #SUPPLIER_ID}. These URIs are used to access the
+        // suppliers table, shared by all the plants of each supplier.
+        sUriMatcher.addURI(PlantContract.CONTENT_AUTHORITY, PlantContract.PATH_SUPPLIERS, SUPPLIERS);
+        sUriMatcher.addURI(PlantContract.CONTENT_AUTHORITY, PlantContract.PATH_SUPPLIERS + "/#", SUPPLIER_ID);
+
+        // The content URIs of the form "content://com.example.android.inventoryapp/plants/#/movements"
+        // and "content://com.example.android.inventoryapp/plants/#/stock" will map to the integer
+        // codes {@link #PLANT_MOVEMENTS} and {@link #PLANT_STOCK}. These URIs are used to read
+        // the stock ledger of ONE single plant, and its stock quantity at a given time.
+        sUriMatcher.addURI(PlantContract.CONTENT_AUTHORITY,
+                PlantContract.PATH_PLANTS + "/#/" + PlantContract.PATH_MOVEMENTS, PLANT_MOVEMENTS);
+        sUriMatcher.addURI(PlantContract.CONTENT_AUTHORITY,
+                PlantContract.PATH_PLANTS + "/#/" + PlantContract.PATH_STOCK, PLANT_STOCK);
+
+        // The content URI of the form "content://com.example.android.inventoryapp/plants/changes"
+        // will map to the integer code {@link #PLANT_CHANGES}. This URI is used to read the
+        // plants changed or deleted since a given change sequence, to keep a copy up to date.
+        sUriMatcher.addURI(PlantContract.CONTENT_AUTHORITY,
+                PlantContract.PATH_PLANTS + "/" + PlantContract.PATH_CHANGES, PLANT_CHANGES);
+
+        // The content URI of the form "content://com.example.android.inventoryapp/pending_adjustments"
+        // will map to the integer code {@link #PENDING_ADJUSTMENTS}. This URI is used to save
+        // the stock adjustments of the app until they are applied to the plants.
+        sUriMatcher.addURI(PlantContract.CONTENT_AUTHORITY, PlantContract.PATH_PENDING_ADJUSTMENTS,
+                PENDING_ADJUSTMENTS);
+    }
+
+    /**
+     * Rank of a search result: 0 for the plants whose name starts with the query, 1 for the
+     * plants whose name contains it, and 2 for the plants matching only by supplier name.
+     * Takes the two LIKE patterns of the query as arguments, see {@link PlantSearch#rank}.
+     */
+    private static final String SEARCH_RANK = "(CASE"
+            + " WHEN " + PlantEntry.COLUMN_PLANT_NAME + " LIKE ? ESCAPE '\\' THEN 0"
+            + " WHEN " + PlantEntry.COLUMN_PLANT_NAME + " LIKE ? ESCAPE '\\' THEN 1"
+            + " ELSE 2 END)";
+
+    /**
+     * Ranking of the search results, the plants of the same rank being sorted by name, then
+     * by ID so that the pages of the results follow a stable order.
+     */
+    private static final String SEARCH_SORT_ORDER = SEARCH_RANK + ", "
+            + PlantEntry.COLUMN_PLANT_NAME + " COLLATE NOCASE, " + PlantEntry._ID;
+
+    /**
+     * Selection of the search results ranked after a given plant, taking as arguments the LIKE
+     * patterns of the query and the rank of that plant twice, then its name twice and its ID.
+     */
+    private static final String SEARCH_AFTER_SELECTION = "(" + SEARCH_RANK + ">CAST(? AS INTEGER) OR ("
+            + SEARCH_RANK + "=CAST(? AS INTEGER) AND (" + PlantEntry.COLUMN_PLANT_NAME + " COLLATE NOCASE>? OR ("
+            + PlantEntry.COLUMN_PLANT_NAME + " COLLATE NOCASE=? AND " + PlantEntry._ID + ">?))))";
+
+    /**
+     * A sort order of the catalog, given by {@link PlantEntry#QUERY_PARAMETER_SORT}.
+     */
+    private static class SortMode {
+        /** The sorted expression, or null when sorting by ID only */
+        final String expression;
+
+        /** Whether the plants are sorted in descending order */
+        final boolean descending;
+
+        SortMode(String expression, boolean descending) {
+            this.expression = expression;
+            this.descending = descending;
+        }
+
+        /**
+         * Return the ORDER BY clause of this sort, breaking the ties by ID like the catalog
+         * indexes do, so that the order is stable and a page can start after any plant.
+         */
+        String getOrderBy() {
+            String direction = descending ? " DESC" : " ASC";
+            String orderById = PlantEntry._ID + direction;
+            return expression != null ? expression + direction + ", " + orderById : orderById;
+        }
+    }
+
+    /**
+     * The only sort orders accepted by {@link PlantEntry#QUERY_PARAMETER_SORT}, each one
+     * backed by a covering index
+     */
+    private static final Map<String, SortMode> SORT_MODES = new HashMap<>();
+
+    static {
+        SORT_MODES.put(PlantEntry.SORT_BY_ID, new SortMode(null, false));
+        SORT_MODES.put(PlantEntry.SORT_BY_NAME, new SortMode(PlantEntry.COLUMN_PLANT_NAME + " COLLATE NOCASE", false));
+        SORT_MODES.put(PlantEntry.SORT_BY_PRICE, new SortMode(PlantEntry.COLUMN_PLANT_PRICE_CENTS, false));
+        SORT_MODES.put(PlantEntry.SORT_BY_QUANTITY, new SortMode(COLUMN_PLANT_QUANTITY, false));
+        SORT_MODES.put(PlantEntry.SORT_BY_UPDATED, new SortMode(PlantEntry.COLUMN_PLANT_UPDATED_AT, true));
     }
 
+    /**
+     * Columns the callers can sort the plants by through the sortOrder argument of a query
+     */
+    private static final Set<String> SORTABLE_COLUMNS = new HashSet<>(Arrays.asList(
+            PlantEntry._ID,
+            PlantEntry.COLUMN_PLANT_NAME,
+            PlantEntry.COLUMN_PLANT_PRICE_CENTS,
+            PlantEntry.COLUMN_PLANT_QUANTITY,
+            PlantEntry.COLUMN_PLANT_SUPPLIER_ID,
+            PlantEntry.COLUMN_PLANT_SUPPLIER_NAME,
+            PlantEntry.COLUMN_PLANT_UPDATED_AT));
+
+    /**
+     * Columns bound by the compiled statement inserting plants in bulk
+     */
+    private static final String[] INSERT_PLANT_COLUMNS = {
+            PlantEntry.COLUMN_PLANT_NAME,
+            PlantEntry.COLUMN_PLANT_PRICE_CENTS,
+            PlantEntry.COLUMN_PLANT_QUANTITY,
+            PlantEntry.COLUMN_PLANT_IMAGE,
+            PlantEntry.COLUMN_PLANT_SUPPLIER_ID,
+            // Always last, set by the provider
+            PlantEntry.COLUMN_PLANT_UPDATED_AT,
+            PlantEntry.COLUMN_PLANT_UPDATED_SEQ};
+
+    /**
+     * SQL statement inserting a plant, compiled once for all the rows of a bulk insertion
+     */
+    private static final String INSERT_PLANT_SQL = "INSERT INTO " + PlantEntry.TABLE_NAME + " ("
+            + TextUtils.join(", ", INSERT_PLANT_COLUMNS) + ") VALUES ("
+            + TextUtils.join(", ", Collections.nCopies(INSERT_PLANT_COLUMNS.length, "?")) + ")";
+
+    /**
+     * SQL statement adding a delta to the stock quantity of a plant, only if the new quantity
+     * stays within the valid range, with the next change sequence
+     */
+    private static final String ADJUST_QUANTITY_SQL = "UPDATE " + PlantEntry.TABLE_NAME
+            + " SET " + COLUMN_PLANT_QUANTITY + " = " + COLUMN_PLANT_QUANTITY + " + ?, "
+            + PlantEntry.COLUMN_PLANT_UPDATED_AT + " = ?, "
+            + PlantEntry.COLUMN_PLANT_UPDATED_SEQ + " = " + PlantChangeLog.NEXT_SEQUENCE
+            + " WHERE " + PlantEntry._ID + " = ?"
+            + " AND " + COLUMN_PLANT_QUANTITY + " + ? BETWEEN 0 AND " + PlantEntry.MAX_QUANTITY;
+
+    /**
+     * SQL statement reading the stock quantity of a plant
+     */
+    private static final String SELECT_QUANTITY_SQL = "SELECT " + COLUMN_PLANT_QUANTITY
+            + " FROM " + PlantEntry.TABLE_NAME + " WHERE " + PlantEntry._ID + " = ?";
+
     /**
      * Database helper object
      */
     private PlantDbHelper mDbHelper;
 
+    /**
+     * Plants recently read one by one, served from memory until they are written
+     */
+    private final PlantRowCache mRowCache = new PlantRowCache();
+
+    /**
+     * Latency histograms of the operations, by kind of URI
+     */
+    private final ProviderMetrics mMetrics = new ProviderMetrics(URI_NAMES);
+
+    /**
+     * State of the batch being applied by {@link #applyBatch(ArrayList)} on the current thread,
+     * or null if the thread isn't applying a batch.
+     */
+    private final ThreadLocal<Batch> mBatch = new ThreadLocal<>();
+
+    /**
+     * State of a batch of operations applied in a single transaction.
+     */
+    private static class Batch {
+        /** Compiled statement shared by all the insertions of the batch */
+        SQLiteStatement insertStatement;
+
+        /** Compiled statement shared by all the stock movements of the insertions of the batch */
+        SQLiteStatement movementStatement;
+
+        /** Suppliers of the plants written by the batch, shared by all its operations */
+        SupplierResolver supplierResolver;
+
+        /** Whether any operation of the batch has changed the data */
+        boolean changed;
+
+        /** Whether any operation of the batch has changed the suppliers */
+        boolean suppliersChanged;
+
+        /** IDs of the plants written by the batch, to remove from the row cache at the end */
+        final HashSet<Long> writtenIds = new HashSet<>();
+
+        /** Whether the batch has written plants not known by ID */
+        boolean writtenUnknownRows;
+    }
+
+    /**
+     * Constructs the provider declared in the manifest, on the database of the app.
+     */
+    public PlantProvider() {
+    }
+
+    /**
+     * Constructs a provider on the database of the given helper, for tests.
+     */
+    PlantProvider(PlantDbHelper dbHelper) {
+        mDbHelper = dbHelper;
+    }
+
     @Override
     public boolean onCreate() {
-        mDbHelper = new PlantDbHelper(getContext());
+        if (mDbHelper == null) {
+            mDbHelper = new PlantDbHelper(getContext());
+        }
         return true;
     }
 
     @Override
     public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
                         String sortOrder) {
+        return query(uri, projection, selection, selectionArgs, sortOrder, null);
+    }
+
+    /**
+     * Query the plants like {@link #query(Uri, String[], String, String[], String)}, and stop
+     * the query as soon as the given signal is canceled, like when the text of a search
+     * changes before its results are read. Called with a signal from Jelly Bean on.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                        String sortOrder, CancellationSignal cancellationSignal) {
+        long start = System.nanoTime();
+
+        // Figure out if the URI matcher can match the URI to a specific code
+        int match = sUriMatcher.match(uri);
+        Cursor cursor = queryUri(match, uri, projection, selection, selectionArgs, sortOrder,
+                cancellationSignal);
+
+        // The time measured covers the preparation of the query, not its run: the rows are
+        // only read, and counted, when the caller reads the cursor
+        mMetrics.record(ProviderMetrics.OP_QUERY, match - PLANTS, start, 0);
+        return mMetrics.countRows(cursor, match - PLANTS);
+    }
+
+    /**
+     * Query the plants for the given URI matcher code of the given URI.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private Cursor queryUri(int match, Uri uri, String[] projection, String selection, String[] selectionArgs,
+                            String sortOrder, CancellationSignal cancellationSignal) {
         // Get readable database
         SQLiteDatabase database = mDbHelper.getReadableDatabase();
 
         // This cursor will hold the result of the query
         Cursor cursor;
 
-        // Figure out if the URI matcher can match the URI to a specific code
-        int match = sUriMatcher.match(uri);
+        // Notify the cursor of the changes to the rows it was created for
+        Uri notificationUri;
+
         switch (match) {
+            case PLANT_LOW_STOCK:
+                // For the PLANT_LOW_STOCK code, only keep the plants below the threshold. The
+                // condition of the partial index comes first, as is, so that SQLite reads the
+                // partial index, and the bound threshold then narrows it down.
+                String threshold = uri.getQueryParameter(PlantEntry.QUERY_PARAMETER_THRESHOLD);
+                long lowStockThreshold = threshold != null ? parseQueryParameter(uri, threshold)
+                        : PlantEntry.DEFAULT_LOW_STOCK_THRESHOLD;
+                if (lowStockThreshold > PlantEntry.MAX_LOW_STOCK_THRESHOLD) {
+                    throw new IllegalArgumentException("Low stock threshold above "
+                            + PlantEntry.MAX_LOW_STOCK_THRESHOLD + " for " + uri);
+                }
+                selection = appendSelection(selection, PlantMigrations.LOW_STOCK_INDEX_WHERE);
+                selection = appendSelection(selection, COLUMN_PLANT_QUANTITY + "<?");
+                selectionArgs = appendSelectionArgs(selectionArgs, String.valueOf(lowStockThreshold));
+
+                // Then page through them like through the catalog sorted by quantity, the
+                // order of the partial index
+                // fall through
             case PLANTS:
                 // For the PLANTS code, query the plants table directly with the given
                 // projection, selection, selection arguments, and sort order. The cursor
                 // could contain multiple rows of the plants table.
-                cursor = database.query(PlantEntry.TABLE_NAME, projection, selection, selectionArgs,
-                        null, null, sortOrder);
+                //
+                // The filters of the URI are bound like the selection, so that all the pages
+                // with the same filters share the same statement.
+                String minPriceCents = uri.getQueryParameter(PlantEntry.QUERY_PARAMETER_MIN_PRICE_CENTS);
+                if (minPriceCents != null) {
+                    selection = appendSelection(selection, PlantEntry.COLUMN_PLANT_PRICE_CENTS + ">=?");
+                    selectionArgs = appendSelectionArgs(selectionArgs,
+                            String.valueOf(parseQueryParameter(uri, minPriceCents)));
+                }
+                String maxPriceCents = uri.getQueryParameter(PlantEntry.QUERY_PARAMETER_MAX_PRICE_CENTS);
+                if (maxPriceCents != null) {
+                    selection = appendSelection(selection, PlantEntry.COLUMN_PLANT_PRICE_CENTS + "<=?");
+                    selectionArgs = appendSelectionArgs(selectionArgs,
+                            String.valueOf(parseQueryParameter(uri, maxPriceCents)));
+                }
+                String quantityBelow = uri.getQueryParameter(PlantEntry.QUERY_PARAMETER_QUANTITY_BELOW);
+                if (quantityBelow != null) {
+                    selection = appendSelection(selection, COLUMN_PLANT_QUANTITY + "<?");
+                    selectionArgs = appendSelectionArgs(selectionArgs,
+                            String.valueOf(parseQueryParameter(uri, quantityBelow)));
+                }
+                String supplierId = uri.getQueryParameter(PlantEntry.QUERY_PARAMETER_SUPPLIER_ID);
+                if (supplierId != null) {
+                    selection = appendSelection(selection, PlantEntry.COLUMN_PLANT_SUPPLIER_ID + "=?");
+                    selectionArgs = appendSelectionArgs(selectionArgs,
+                            String.valueOf(parseQueryParameter(uri, supplierId)));
+                }
+
+                // The sort of the URI can only be one of the whitelisted sort modes, and
+                // the sort order argument can only name whitelisted columns
+                String sort = uri.getQueryParameter(PlantEntry.QUERY_PARAMETER_SORT);
+                if (match == PLANT_LOW_STOCK) {
+                    if (sort != null && !sort.equals(PlantEntry.SORT_BY_QUANTITY)) {
+                        throw new IllegalArgumentException("Low stock plants are sorted by quantity " + uri);
+                    }
+                    if (sortOrder != null) {
+                        throw new IllegalArgumentException("Low stock plants take no sort order " + uri);
+                    }
+                    sort = PlantEntry.SORT_BY_QUANTITY;
+                }
+                String afterId = uri.getQueryParameter(PlantEntry.QUERY_PARAMETER_AFTER_ID);
+                String limit = uri.getQueryParameter(PlantEntry.QUERY_PARAMETER_LIMIT);
+                SortMode sortMode = null;
+                if (sort != null) {
+                    sortMode = SORT_MODES.get(sort);
+                    if (sortMode == null) {
+                        throw new IllegalArgumentException("Unknown sort " + sort + " for " + uri);
+                    }
+                } else if (sortOrder == null && (afterId != null || limit != null)) {
+                    // A page only makes sense on a stable order, so default to the ID order
+                    sortMode = SORT_MODES.get(PlantEntry.SORT_BY_ID);
+                }
+                if (sortOrder != null) {
+                    if (sortMode != null || afterId != null) {
+                        throw new IllegalArgumentException("Paged and sorted queries take no sort order " + uri);
+                    }
+                    validateSortOrder(sortOrder);
+                }
+
+                // If the URI carries the "after_id" parameter, only read the rows that come
+                // after the given plant in the sort order (keyset pagination), so that SQLite
+                // can seek straight to the first row of the page through the index of the sort,
+                // instead of skipping over all the previous pages like an OFFSET would do.
+                if (sortMode != null) {
+                    sortOrder = sortMode.getOrderBy();
+                    if (afterId != null) {
+                        String after = String.valueOf(parseQueryParameter(uri, afterId));
+                        String comparison = sortMode.descending ? "<" : ">";
+                        if (sortMode.expression == null) {
+                            selection = appendSelection(selection, PlantEntry._ID + comparison + "?");
+                            selectionArgs = appendSelectionArgs(selectionArgs, after);
+                        } else {
+                            String afterValue = uri.getQueryParameter(PlantEntry.QUERY_PARAMETER_AFTER_VALUE);
+                            if (afterValue == null) {
+                                throw new IllegalArgumentException("Paged queries sorted by " + sort
+                                        + " need an after value " + uri);
+                            }
+                            // Written as a range on the sorted expression, which SQLite seeks in
+                            // the index, refined by the ID for the plants with the same value
+                            selection = appendSelection(selection, sortMode.expression + comparison + "=? AND ("
+                                    + sortMode.expression + comparison + "? OR " + PlantEntry._ID + comparison + "?)");
+                            selectionArgs = appendSelectionArgs(selectionArgs, afterValue, afterValue, after);
+                        }
+                    }
+                }
+                Long pageLimit = null;
+                if (limit != null) {
+                    pageLimit = parseQueryParameter(uri, limit);
+                }
+                cursor = queryPlants(database, projection, selection, selectionArgs, sortOrder, pageLimit,
+                        cancellationSignal);
+                notificationUri = PlantEntry.CONTENT_URI;
                 break;
             case PLANT_ID:
                 // For the PLANT_ID code, extract out the ID from the URI.
@@ -103,13 +571,161 @@ public class PlantProvider extends ContentProvider {
                 // For every "?" in the selection, we need to have an element in the selection
                 // arguments that will fill in the "?". Since we have 1 question mark in the
                 // selection, we have 1 String in the selection arguments' String array.
+                long plantId = ContentUris.parseId(uri);
                 selection = PlantEntry._ID + "=?";
-                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
+                selectionArgs = new String[]{String.valueOf(plantId)};
+
+                // Serve the plant from memory if it has been read recently and not written since,
+                // unless a transaction is open on this thread, like the one of a batch: its reads
+                // must see its own writes, which the cache doesn't hold yet, and the rows it reads
+                // must not be cached, and read by the other threads, before they are committed
+                if (!database.inTransaction()) {
+                    cursor = mRowCache.query(plantId, projection);
+                    if (cursor == null) {
+                        cursor = readPlantRow(database, plantId, projection, cancellationSignal);
+                    }
+                }
+                if (cursor == null) {
+                    // This will perform a query on the plants table where the _id equals 3 to return a
+                    // Cursor containing that row of the table.
+                    cursor = queryPlants(database, projection, selection, selectionArgs, sortOrder, null,
+                            cancellationSignal);
+                }
+
+                // Only the changes to this plant (or to all the plants) affect the cursor
+                notificationUri = ContentUris.withAppendedId(PlantEntry.CONTENT_URI, plantId);
+                break;
+            case PLANT_SEARCH:
+                // For the PLANT_SEARCH code, look up the matching plants in the full-text search
+                // index, so that the cost of the query depends on the number of matches instead
+                // of the size of the plants table, and read only those rows by their ID.
+                String query = uri.getLastPathSegment().trim();
+                String matchExpression = buildMatchExpression(query);
+                if (matchExpression == null) {
+                    // Nothing to search for, so nothing can match
+                    selection = appendSelection(selection, "0");
+                } else {
+                    selection = appendSelection(selection, PlantEntry._ID + " IN (SELECT docid FROM "
+                            + PlantEntry.SEARCH_TABLE_NAME + " WHERE " + PlantEntry.SEARCH_TABLE_NAME
+                            + " MATCH ?)");
+                    selectionArgs = appendSelectionArgs(selectionArgs, matchExpression);
+                }
+
+                // Rank the results, unless another sort order was requested. The arguments of
+                // the ranking follow the selection arguments, as the ORDER BY clause follows
+                // the WHERE clause in the statement.
+                String searchAfterId = uri.getQueryParameter(PlantEntry.QUERY_PARAMETER_AFTER_ID);
+                if (sortOrder != null) {
+                    if (searchAfterId != null) {
+                        throw new IllegalArgumentException("Paged searches take no sort order " + uri);
+                    }
+                    validateSortOrder(sortOrder);
+                } else {
+                    String likeQuery = escapeLikePattern(query);
+                    String startsWith = likeQuery + "%";
+                    String contains = "%" + likeQuery + "%";
+
+                    // If the URI carries the "after_id" parameter, only read the results ranked
+                    // after the given plant (keyset pagination), so that each page only reads
+                    // and ranks the plants of the page instead of all the previous ones again
+                    if (searchAfterId != null) {
+                        String after = String.valueOf(parseQueryParameter(uri, searchAfterId));
+                        String afterName = uri.getQueryParameter(PlantEntry.QUERY_PARAMETER_AFTER_VALUE);
+                        if (afterName == null) {
+                            throw new IllegalArgumentException("Paged searches need an after value " + uri);
+                        }
+                        String afterRank = String.valueOf(PlantSearch.rank(afterName, query));
+                        selection = appendSelection(selection, SEARCH_AFTER_SELECTION);
+                        selectionArgs = appendSelectionArgs(selectionArgs, startsWith, contains, afterRank,
+                                startsWith, contains, afterRank, afterName, afterName, after);
+                    }
+                    sortOrder = SEARCH_SORT_ORDER;
+                    selectionArgs = appendSelectionArgs(selectionArgs, startsWith, contains);
+                }
+
+                String searchLimitParameter = uri.getQueryParameter(PlantEntry.QUERY_PARAMETER_LIMIT);
+                Long searchLimit = null;
+                if (searchLimitParameter != null) {
+                    searchLimit = parseQueryParameter(uri, searchLimitParameter);
+                }
+                cursor = queryPlants(database, projection, selection, selectionArgs, sortOrder, searchLimit,
+                        cancellationSignal);
 
-                // This will perform a query on the plants table where the _id equals 3 to return a
-                // Cursor containing that row of the table.
-                cursor = database.query(PlantEntry.TABLE_NAME, projection, selection, selectionArgs,
+                // The results of a search change whenever any plant changes
+                notificationUri = PlantEntry.CONTENT_URI;
+                break;
+            case PLANT_STATS:
+                // For the PLANT_STATS code, read the single row of the summary table, which
+                // the triggers keep up to date, instead of adding up all the plants
+                cursor = database.query(SummaryEntry.TABLE_NAME, projection, selection, selectionArgs,
                         null, null, sortOrder);
+
+                // The totals change whenever any plant changes
+                notificationUri = PlantEntry.CONTENT_URI;
+                break;
+            case SUPPLIERS:
+                // For the SUPPLIERS code, query the suppliers table directly, sorted by name
+                // unless another sort order was requested
+                cursor = database.query(SupplierEntry.TABLE_NAME, projection, selection, selectionArgs,
+                        null, null, sortOrder != null ? sortOrder : SupplierEntry.COLUMN_SUPPLIER_NAME);
+                notificationUri = SupplierEntry.CONTENT_URI;
+                break;
+            case SUPPLIER_ID:
+                // For the SUPPLIER_ID code, read the single supplier with the ID of the URI
+                selection = SupplierEntry._ID + "=?";
+                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
+                cursor = database.query(SupplierEntry.TABLE_NAME, projection, selection, selectionArgs,
+                        null, null, sortOrder);
+                notificationUri = SupplierEntry.CONTENT_URI;
+                break;
+            case PLANT_MOVEMENTS:
+                // For the PLANT_MOVEMENTS code, read the movements of the plant whose ID is the
+                // segment before "movements", most recent first, from the index of the movements
+                // by plant and time
+                long movementsPlantId = Long.parseLong(uri.getPathSegments().get(1));
+                selection = appendSelection(selection, StockMovementEntry.COLUMN_PLANT_ID + "=?");
+                selectionArgs = appendSelectionArgs(selectionArgs, String.valueOf(movementsPlantId));
+                String movementsLimit = uri.getQueryParameter(PlantEntry.QUERY_PARAMETER_LIMIT);
+                cursor = database.query(StockMovementEntry.TABLE_NAME, projection, selection, selectionArgs,
+                        null, null, StockMovementEntry.COLUMN_CREATED_AT + " DESC, " + StockMovementEntry._ID + " DESC",
+                        movementsLimit != null ? String.valueOf(parseQueryParameter(uri, movementsLimit)) : null);
+
+                // The movements only change with the stock of this plant (or of all the plants)
+                notificationUri = ContentUris.withAppendedId(PlantEntry.CONTENT_URI, movementsPlantId);
+                break;
+            case PLANT_STOCK:
+                // For the PLANT_STOCK code, add up the movements of the plant until the time of
+                // the URI, or until now without time
+                long stockPlantId = Long.parseLong(uri.getPathSegments().get(1));
+                String at = uri.getQueryParameter(StockMovementEntry.QUERY_PARAMETER_AT);
+                long time = at != null ? parseQueryParameter(uri, at) : System.currentTimeMillis();
+                cursor = StockLedger.queryQuantityAt(database, stockPlantId, time);
+                notificationUri = ContentUris.withAppendedId(PlantEntry.CONTENT_URI, stockPlantId);
+                break;
+            case PLANT_CHANGES:
+                // For the PLANT_CHANGES code, read the plants changed or deleted after the
+                // sequence of the URI, in the order of the change sequence, which is the only
+                // order the pages can follow
+                if (selection != null || sortOrder != null) {
+                    throw new IllegalArgumentException("Changes take no selection or sort order " + uri);
+                }
+                String since = uri.getQueryParameter(PlantEntry.QUERY_PARAMETER_SINCE);
+                String changesAfterId = uri.getQueryParameter(PlantEntry.QUERY_PARAMETER_AFTER_ID);
+                String changesLimit = uri.getQueryParameter(PlantEntry.QUERY_PARAMETER_LIMIT);
+                cursor = PlantChangeLog.queryChanges(database, projection,
+                        since != null ? parseQueryParameter(uri, since) : 0,
+                        changesAfterId != null ? parseQueryParameter(uri, changesAfterId) : null,
+                        changesLimit != null ? parseQueryParameter(uri, changesLimit) : null);
+
+                // Any change to any plant is a new change
+                notificationUri = PlantEntry.CONTENT_URI;
+                break;
+            case PENDING_ADJUSTMENTS:
+                // For the PENDING_ADJUSTMENTS code, query the pending adjustments table directly,
+                // in the order they were saved unless another sort order was requested
+                cursor = database.query(PendingAdjustmentEntry.TABLE_NAME, projection, selection, selectionArgs,
+                        null, null, sortOrder != null ? sortOrder : PendingAdjustmentEntry._ID);
+                notificationUri = PendingAdjustmentEntry.CONTENT_URI;
                 break;
             default:
                 throw new IllegalArgumentException("Cannot query unknown URI " + uri);
@@ -118,12 +734,244 @@ public class PlantProvider extends ContentProvider {
         // Set notification URI on the Cursor,
         // so we know what content URI the Cursor was created for.
         // If the data at this URI changes, then we know we need to update the Cursor.
-        cursor.setNotificationUri(getContext().getContentResolver(), uri);
+        cursor.setNotificationUri(getContext().getContentResolver(), notificationUri);
 
         // Return the cursor
         return cursor;
     }
 
+    /**
+     * Query the plants, joined with their suppliers through the plants view, with the given
+     * cancellation signal if there is one.
+     *
+     * The limit is bound as an argument, like the values of the selection, instead of being
+     * written into the SQL. All the pages and all the searches of the catalog thus share the
+     * same few SQL statements, which SQLite parses and plans only once per connection: the
+     * following queries reuse the compiled statement from the statement cache of the connection.
+     *
+     * @param limit The maximum number of rows to return, or null for all of them
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static Cursor queryPlants(SQLiteDatabase database, String[] projection, String selection,
+                                      String[] selectionArgs, String sortOrder, Long limit,
+                                      CancellationSignal cancellationSignal) {
+        StringBuilder sql = new StringBuilder("SELECT ");
+        sql.append(projection != null ? TextUtils.join(", ", projection) : "*");
+        sql.append(" FROM ").append(PlantEntry.VIEW_NAME);
+        if (!TextUtils.isEmpty(selection)) {
+            sql.append(" WHERE ").append(selection);
+        }
+        if (!TextUtils.isEmpty(sortOrder)) {
+            sql.append(" ORDER BY ").append(sortOrder);
+        }
+        if (limit != null) {
+            sql.append(" LIMIT ?");
+            selectionArgs = appendSelectionArgs(selectionArgs, String.valueOf(limit));
+        }
+
+        // The signal is only ever given from Jelly Bean on, where the query accepts it
+        if (cancellationSignal != null) {
+            return database.rawQuery(sql.toString(), selectionArgs, cancellationSignal);
+        }
+        return database.rawQuery(sql.toString(), selectionArgs);
+    }
+
+    /**
+     * Read all the columns of the given plant from the database and keep them in the row cache.
+     * Return a cursor holding the plant with the given columns, or null if the plant doesn't
+     * exist or the projection isn't made of plain columns, to let the caller run the query.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private Cursor readPlantRow(SQLiteDatabase database, long plantId, String[] projection,
+                                CancellationSignal cancellationSignal) {
+        // Read the generation first: if the plant is written while it is being read,
+        // the row read is returned but not cached
+        long generation = mRowCache.getGeneration();
+        Cursor cursor = queryPlants(database, null, PlantEntry._ID + "=?",
+                new String[]{String.valueOf(plantId)}, null, null, cancellationSignal);
+        PlantRowCache.Row row;
+        try {
+            row = mRowCache.put(plantId, cursor, generation);
+        } finally {
+            cursor.close();
+        }
+        return row != null ? row.toCursor(projection) : null;
+    }
+
+    /**
+     * Remove the given plant from the row cache after it has been written. If it was cached,
+     * and the write didn't delete it, read it again right away, so that the screens reloading
+     * it after the change are still served from memory. Within a batch, this is postponed
+     * to the end of the batch, whether it is committed or rolled back, as the changes aren't
+     * visible to the other connections yet: meanwhile the cache keeps the committed row, and
+     * the reads of the batch itself bypass it.
+     */
+    private void invalidatePlantRow(long plantId, boolean reload) {
+        Batch batch = mBatch.get();
+        if (batch != null) {
+            batch.writtenIds.add(plantId);
+        } else if (mRowCache.remove(plantId) && reload) {
+            reloadPlantRow(plantId);
+        }
+    }
+
+    /**
+     * Remove all the plants from the row cache, after writing plants not known by ID.
+     */
+    private void invalidatePlantRows() {
+        Batch batch = mBatch.get();
+        if (batch != null) {
+            batch.writtenUnknownRows = true;
+        } else {
+            mRowCache.clear();
+        }
+    }
+
+    /**
+     * Read the given plant into the row cache, after a write.
+     */
+    private void reloadPlantRow(long plantId) {
+        long generation = mRowCache.getGeneration();
+        Cursor cursor = queryPlants(mDbHelper.getReadableDatabase(), null, PlantEntry._ID + "=?",
+                new String[]{String.valueOf(plantId)}, null, null, null);
+        try {
+            mRowCache.put(plantId, cursor, generation);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Return the statistics of the row cache for {@link PlantContract#METHOD_GET_ROW_CACHE_STATS},
+     * and the latency histograms for {@link PlantContract#METHOD_GET_METRICS}, and compact the
+     * stock ledger for {@link PlantContract#METHOD_COMPACT_STOCK_MOVEMENTS}.
+     */
+    @Nullable
+    @Override
+    public Bundle call(@NonNull String method, @Nullable String arg, @Nullable Bundle extras) {
+        if (PlantContract.METHOD_OPEN_DATABASE.equals(method)) {
+            // Runs onCreate() or onUpgrade() and the configuration of the connection, once
+            mDbHelper.getWritableDatabase();
+            return null;
+        }
+        if (PlantContract.METHOD_GET_ROW_CACHE_STATS.equals(method)) {
+            return mRowCache.getStats();
+        }
+        if (PlantContract.METHOD_GET_METRICS.equals(method)) {
+            return mMetrics.getSnapshot();
+        }
+        if (PlantContract.METHOD_COMPACT_STOCK_MOVEMENTS.equals(method)) {
+            // The quantities don't change, so there is nothing to notify
+            Bundle result = new Bundle();
+            result.putInt(PlantContract.KEY_MOVEMENTS_REMOVED,
+                    StockLedger.compact(mDbHelper.getWritableDatabase(), System.currentTimeMillis()));
+            checkpointIfNeeded();
+            return result;
+        }
+        return super.call(method, arg, extras);
+    }
+
+    /**
+     * Print the latency histograms and the statistics of the row cache, for
+     * "adb shell dumpsys activity provider com.example.android.inventoryapp".
+     */
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        writer.println("Latencies:");
+        writer.print(mMetrics.toText());
+        Bundle rowCacheStats = mRowCache.getStats();
+        writer.println("Row cache: hits=" + rowCacheStats.getLong(PlantContract.KEY_ROW_CACHE_HITS)
+                + " misses=" + rowCacheStats.getLong(PlantContract.KEY_ROW_CACHE_MISSES)
+                + " size=" + rowCacheStats.getInt(PlantContract.KEY_ROW_CACHE_SIZE));
+    }
+
+    /**
+     * Combine the given selection with an additional condition, in AND.
+     */
+    private static String appendSelection(String selection, String condition) {
+        if (selection == null || selection.trim().length() == 0) {
+            return condition;
+        }
+        return "(" + selection + ") AND " + condition;
+    }
+
+    /**
+     * Append the given arguments to the selection arguments of a query.
+     */
+    private static String[] appendSelectionArgs(String[] selectionArgs, String... args) {
+        if (selectionArgs == null) {
+            return args;
+        }
+        String[] result = new String[selectionArgs.length + args.length];
+        System.arraycopy(selectionArgs, 0, result, 0, selectionArgs.length);
+        System.arraycopy(args, 0, result, selectionArgs.length, args.length);
+        return result;
+    }
+
+    /**
+     * Build the full-text search MATCH expression for the text the user is searching for:
+     * every word of the text must be the prefix of a word in the name or supplier name of
+     * the plant. Return null if the text contains no words.
+     */
+    private static String buildMatchExpression(String query) {
+        StringBuilder expression = new StringBuilder();
+        for (String word : PlantSearch.tokenizeQuery(query)) {
+            if (expression.length() > 0) {
+                expression.append(' ');
+            }
+            expression.append(word).append('*');
+        }
+        return expression.length() > 0 ? expression.toString() : null;
+    }
+
+    /**
+     * Escape the wildcards of a LIKE pattern, using '\' as escape character.
+     */
+    private static String escapeLikePattern(String text) {
+        return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    /**
+     * Check that the given sort order only sorts by the {@link #SORTABLE_COLUMNS}, each one
+     * optionally followed by "COLLATE NOCASE" and by "ASC" or "DESC", and throw an
+     * {@link IllegalArgumentException} if it doesn't. Any other SQL could run unindexed
+     * sorts of the whole table, or worse.
+     */
+    private static void validateSortOrder(String sortOrder) {
+        for (String term : sortOrder.split(",")) {
+            String[] words = term.trim().split("\\s+");
+            boolean valid = SORTABLE_COLUMNS.contains(words[0]);
+            int i = 1;
+            if (valid && i + 1 < words.length && words[i].equalsIgnoreCase("COLLATE")
+                    && words[i + 1].equalsIgnoreCase("NOCASE")) {
+                i += 2;
+            }
+            if (valid && i < words.length) {
+                String direction = words[i].toUpperCase(Locale.US);
+                valid = direction.equals("ASC") || direction.equals("DESC");
+                i++;
+            }
+            if (!valid || i != words.length) {
+                throw new IllegalArgumentException("Invalid sort order " + sortOrder);
+            }
+        }
+    }
+
+    /**
+     * Parse the non negative numeric value of a query parameter of the given URI.
+     */
+    private static long parseQueryParameter(Uri uri, String value) {
+        try {
+            long number = Long.parseLong(value);
+            if (number >= 0) {
+                return number;
+            }
+        } catch (NumberFormatException e) {
+            // Fall through to the error below
+        }
+        throw new IllegalArgumentException("Invalid query parameter " + value + " for " + uri);
+    }
+
     @Nullable
     @Override
     public String getType(@NonNull Uri uri) {
@@ -133,6 +981,26 @@ public class PlantProvider extends ContentProvider {
                 return PlantContract.PlantEntry.CONTENT_LIST_TYPE;
             case PLANT_ID:
                 return PlantContract.PlantEntry.CONTENT_ITEM_TYPE;
+            case PLANT_SEARCH:
+                return PlantContract.PlantEntry.CONTENT_LIST_TYPE;
+            case PLANT_ADJUST:
+                return PlantContract.PlantEntry.CONTENT_ITEM_TYPE;
+            case PLANT_STATS:
+                return SummaryEntry.CONTENT_ITEM_TYPE;
+            case PLANT_LOW_STOCK:
+                return PlantContract.PlantEntry.CONTENT_LIST_TYPE;
+            case SUPPLIERS:
+                return SupplierEntry.CONTENT_LIST_TYPE;
+            case SUPPLIER_ID:
+                return SupplierEntry.CONTENT_ITEM_TYPE;
+            case PLANT_MOVEMENTS:
+                return StockMovementEntry.CONTENT_LIST_TYPE;
+            case PLANT_STOCK:
+                return StockMovementEntry.CONTENT_STOCK_TYPE;
+            case PLANT_CHANGES:
+                return PlantContract.PlantEntry.CONTENT_LIST_TYPE;
+            case PENDING_ADJUSTMENTS:
+                return PendingAdjustmentEntry.CONTENT_LIST_TYPE;
             default:
                 throw new IllegalStateException("Unknown URI " + uri + " with match " + match);
         }
@@ -140,13 +1008,25 @@ public class PlantProvider extends ContentProvider {
 
     @Override
     public Uri insert(Uri uri, ContentValues contentValues) {
+        long start = System.nanoTime();
         final int match = sUriMatcher.match(uri);
+        Uri newUri;
         switch (match) {
             case PLANTS:
-                return insertPlant(uri, contentValues);
+                newUri = insertPlant(uri, contentValues);
+                break;
+            case SUPPLIERS:
+                newUri = insertSupplier(uri, contentValues);
+                break;
+            case PENDING_ADJUSTMENTS:
+                newUri = insertPendingAdjustment(uri, contentValues);
+                break;
             default:
                 throw new IllegalArgumentException("Insertion is not supported for " + uri);
         }
+        mMetrics.record(ProviderMetrics.OP_INSERT, match - PLANTS, start, newUri != null ? 1 : 0);
+        checkpointIfNeeded();
+        return newUri;
     }
 
     /**
@@ -154,15 +1034,91 @@ public class PlantProvider extends ContentProvider {
      * for that specific row in the database.
      */
     private Uri insertPlant(Uri uri, ContentValues values) {
+        validatePlant(values);
+
+        // Get writable database
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        // Insert the supplier of the plant, if it's new, the new plant with the given values,
+        // and the receipt of its initial stock in the same transaction. Within a batch, reuse
+        // the compiled statements of the batch instead of compiling new ones for each plant.
+        long id;
+        long now = System.currentTimeMillis();
+        Batch batch = mBatch.get();
+        SupplierResolver suppliers = getSupplierResolver(database);
+        database.beginTransaction();
+        SQLiteStatement movement = batch != null ? batch.movementStatement
+                : database.compileStatement(StockLedger.INSERT_MOVEMENT_SQL);
+        try {
+            long sequence = PlantChangeLog.nextSequence(database);
+            ContentValues plant = suppliers.toPlantValues(values);
+            if (batch != null) {
+                id = insertPlant(batch.insertStatement, plant, now, sequence);
+            } else {
+                plant.put(PlantEntry.COLUMN_PLANT_UPDATED_AT, now);
+                plant.put(PlantEntry.COLUMN_PLANT_UPDATED_SEQ, sequence);
+                id = database.insert(PlantEntry.TABLE_NAME, null, plant);
+            }
+            if (id != -1) {
+                StockLedger.recordMovement(movement, id, values.getAsInteger(COLUMN_PLANT_QUANTITY),
+                        StockMovementEntry.REASON_RECEIPT, now);
+                database.setTransactionSuccessful();
+            }
+        } finally {
+            if (batch == null) {
+                movement.close();
+            }
+            database.endTransaction();
+        }
+        // If the ID is -1, then the insertion failed. Log an error and return null.
+        if (id == -1) {
+            Log.e(LOG_TAG, "Failed to insert row for " + uri);
+            return null;
+        }
+        invalidatePlantRow(id, false);
+        if (suppliers.hasChangedSuppliers()) {
+            // The other plants of a supplier whose phone or email address has changed
+            invalidatePlantRows();
+            notifySuppliersChanged();
+        }
+
+        // Notify the listeners of the new plant and of the whole plants table
+        notifyChange(ContentUris.withAppendedId(PlantEntry.CONTENT_URI, id));
+
+        // Return the new URI with the ID (of the newly inserted row) appended at the end
+        return ContentUris.withAppendedId(uri, id);
+    }
+
+    /**
+     * Insert a plant with the given content values through the given compiled statement
+     * of {@link #INSERT_PLANT_SQL}, changed at the given time with the given change sequence.
+     * Return the ID of the new row.
+     */
+    private static long insertPlant(SQLiteStatement statement, ContentValues values, long updatedAt,
+                                    long sequence) {
+        statement.clearBindings();
+        int valueCount = INSERT_PLANT_COLUMNS.length - 2;
+        for (int i = 0; i < valueCount; i++) {
+            DatabaseUtils.bindObjectToProgram(statement, i + 1, values.get(INSERT_PLANT_COLUMNS[i]));
+        }
+        statement.bindLong(valueCount + 1, updatedAt);
+        statement.bindLong(valueCount + 2, sequence);
+        return statement.executeInsert();
+    }
+
+    /**
+     * Check that the given content values hold all the data required for a new plant,
+     * and throw an {@link IllegalArgumentException} if they don't.
+     */
+    private static void validatePlant(ContentValues values) {
         // Check that the plant name is not null
         String plantName = values.getAsString(PlantEntry.COLUMN_PLANT_NAME);
         if (plantName == null || plantName.trim().length() == 0) {
             throw new IllegalArgumentException("Plant requires a name");
         }
 
-        // Check that the plant price is not null or has a negative value
-        Double plantPrice = values.getAsDouble(PlantEntry.COLUMN_PLANT_PRICE);
-        if (plantPrice == null || plantPrice < 0) {
+        // Check that the plant price is a valid number of cents
+        if (getPriceCents(values) == null) {
             throw new IllegalArgumentException("Plant requires a valid price");
         }
 
@@ -172,62 +1128,450 @@ public class PlantProvider extends ContentProvider {
             throw new IllegalArgumentException("Plant requires a valid quantity");
         }
 
-        // Check that the name of the supplier is not null
-        String supplierName = values.getAsString(PlantEntry.COLUMN_PLANT_SUPPLIER_NAME);
+        // Without the ID of an existing supplier, the name and the email address of the
+        // supplier are required
+        if (values.getAsLong(PlantEntry.COLUMN_PLANT_SUPPLIER_ID) == null) {
+            // Check that the name of the supplier is not null
+            String supplierName = values.getAsString(PlantEntry.COLUMN_PLANT_SUPPLIER_NAME);
+            if (supplierName == null || supplierName.trim().length() == 0) {
+                throw new IllegalArgumentException("It's required a valid name for the supplier");
+            }
+
+            // Check that the email address of the supplier is not null
+            String supplierEmail = values.getAsString(PlantEntry.COLUMN_PLANT_SUPPLIER_EMAIL);
+            if (supplierEmail == null || supplierEmail.trim().length() == 0) {
+                throw new IllegalArgumentException("It's required a valid email address for the supplier");
+            }
+        }
+
+        // No need to check the Strings for the plant image and for the supplier's phone
+        // for these data are not mandatory (any value is valid, including null).
+    }
+
+    /**
+     * Return the price in cents of the given plant values, or null if it is missing, negative,
+     * above {@link PlantEntry#MAX_PRICE_CENTS}, or not a whole number of cents: a price given
+     * in units, as a Double or a decimal String, is rejected instead of being truncated.
+     */
+    private static Long getPriceCents(ContentValues values) {
+        Object price = values.get(PlantEntry.COLUMN_PLANT_PRICE_CENTS);
+        long priceCents;
+        if (price instanceof Long || price instanceof Integer || price instanceof Short || price instanceof Byte) {
+            priceCents = ((Number) price).longValue();
+        } else if (price instanceof String) {
+            try {
+                priceCents = Long.parseLong((String) price);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        } else {
+            return null;
+        }
+        return priceCents >= 0 && priceCents <= PlantEntry.MAX_PRICE_CENTS ? priceCents : null;
+    }
+
+    /**
+     * Return the {@link PlantEntry#KEY_MOVEMENT_REASON} of the given values, or the given
+     * default reason if there is none.
+     *
+     * @throws IllegalArgumentException if the reason isn't one the callers can give
+     */
+    private static int getMovementReason(ContentValues values, int defaultReason) {
+        if (!values.containsKey(PlantEntry.KEY_MOVEMENT_REASON)) {
+            return defaultReason;
+        }
+        Integer reason = values.getAsInteger(PlantEntry.KEY_MOVEMENT_REASON);
+        if (reason == null || !StockLedger.isValidReason(reason)) {
+            throw new IllegalArgumentException("Invalid stock movement reason " + reason);
+        }
+        return reason;
+    }
+
+    /**
+     * Return the supplier resolver of the batch being applied on the current thread, or a
+     * new one for a single operation.
+     */
+    private SupplierResolver getSupplierResolver(SQLiteDatabase database) {
+        Batch batch = mBatch.get();
+        return batch != null ? batch.supplierResolver : new SupplierResolver(database);
+    }
+
+    /**
+     * Insert a supplier into the database with the given content values. Return the new
+     * content URI for that specific row in the database, or null if a supplier already has
+     * the same name.
+     */
+    private Uri insertSupplier(Uri uri, ContentValues values) {
+        // Check that the name and the email address of the supplier are not null
+        String supplierName = values.getAsString(SupplierEntry.COLUMN_SUPPLIER_NAME);
         if (supplierName == null || supplierName.trim().length() == 0) {
             throw new IllegalArgumentException("It's required a valid name for the supplier");
         }
-
-        // Check that the email address of the supplier is not null
-        String supplierEmail = values.getAsString(PlantEntry.COLUMN_PLANT_SUPPLIER_EMAIL);
+        String supplierEmail = values.getAsString(SupplierEntry.COLUMN_SUPPLIER_EMAIL);
         if (supplierEmail == null || supplierEmail.trim().length() == 0) {
             throw new IllegalArgumentException("It's required a valid email address for the supplier");
         }
 
-        // No need to check the Strings for the plant image and for the supplier's phone
-        // for these data are not mandatory (any value is valid, including null).
+        long id = mDbHelper.getWritableDatabase().insert(SupplierEntry.TABLE_NAME, null, values);
+        if (id == -1) {
+            Log.e(LOG_TAG, "Failed to insert row for " + uri);
+            return null;
+        }
 
-        // Get writable database
-        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        // No plant has this supplier yet: only the suppliers have changed
+        notifySuppliersChanged();
+        return ContentUris.withAppendedId(uri, id);
+    }
 
-        // Insert the new plant with the given values
-        long id = database.insert(PlantEntry.TABLE_NAME, null, values);
-        // If the ID is -1, then the insertion failed. Log an error and return null.
+    /**
+     * Save a stock adjustment not applied yet with the given content values. Return the new
+     * content URI for that specific row in the database.
+     *
+     * The pending adjustments are only read back by the app when it starts, so nothing is
+     * notified: saving an adjustment costs a single row, whatever the number of observers.
+     */
+    private Uri insertPendingAdjustment(Uri uri, ContentValues values) {
+        if (values.getAsLong(PendingAdjustmentEntry.COLUMN_PLANT_ID) == null
+                || values.getAsInteger(PendingAdjustmentEntry.COLUMN_DELTA) == null) {
+            throw new IllegalArgumentException("Pending adjustment requires a plant ID and a delta");
+        }
+        long id = mDbHelper.getWritableDatabase().insert(PendingAdjustmentEntry.TABLE_NAME, null, values);
         if (id == -1) {
             Log.e(LOG_TAG, "Failed to insert row for " + uri);
             return null;
         }
+        return ContentUris.withAppendedId(uri, id);
+    }
+
+    /**
+     * Insert all the given plants in a single transaction, through a single compiled statement,
+     * and notify the listeners only once at the end. Either all the plants are inserted, or none
+     * of them is. Return the number of plants inserted.
+     */
+    @Override
+    public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] values) {
+        long start = System.nanoTime();
+        final int match = sUriMatcher.match(uri);
+        if (match != PLANTS) {
+            throw new IllegalArgumentException("Insertion is not supported for " + uri);
+        }
+
+        // Get writable database
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        int rowsInserted = 0;
+        long updatedAt = System.currentTimeMillis();
+        // Each supplier is only read and written once for all the plants
+        SupplierResolver suppliers = new SupplierResolver(database);
+        database.beginTransaction();
+        SQLiteStatement statement = database.compileStatement(INSERT_PLANT_SQL);
+        SQLiteStatement movement = database.compileStatement(StockLedger.INSERT_MOVEMENT_SQL);
+        try {
+            // All the plants of the insertion have the same change sequence
+            long sequence = PlantChangeLog.nextSequence(database);
+            for (ContentValues plant : values) {
+                validatePlant(plant);
+                long id = insertPlant(statement, suppliers.toPlantValues(plant), updatedAt, sequence);
+                StockLedger.recordMovement(movement, id, plant.getAsInteger(COLUMN_PLANT_QUANTITY),
+                        StockMovementEntry.REASON_RECEIPT, updatedAt);
+                rowsInserted++;
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            statement.close();
+            movement.close();
+            database.endTransaction();
+        }
+
+        // Notify all listeners only once that the data has changed for the plant content URI
+        if (suppliers.hasChangedSuppliers()) {
+            invalidatePlantRows();
+            notifySuppliersChanged();
+        }
+        if (rowsInserted != 0) {
+            notifyChange(PlantEntry.CONTENT_URI);
+        }
+
+        // Return the number of rows inserted
+        mMetrics.record(ProviderMetrics.OP_BULK_INSERT, match - PLANTS, start, rowsInserted);
+        checkpointIfNeeded();
+        return rowsInserted;
+    }
+
+    /**
+     * Apply all the given operations in a single transaction, so that either all of them
+     * succeed or none does, and notify the listeners only once at the end.
+     */
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(@NonNull ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        long start = System.nanoTime();
+
+        // Get writable database
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        Batch batch = new Batch();
+        ContentProviderResult[] results;
+        database.beginTransaction();
+        try {
+            batch.insertStatement = database.compileStatement(INSERT_PLANT_SQL);
+            batch.movementStatement = database.compileStatement(StockLedger.INSERT_MOVEMENT_SQL);
+            batch.supplierResolver = new SupplierResolver(database);
+            mBatch.set(batch);
+            results = super.applyBatch(operations);
+            database.setTransactionSuccessful();
+        } finally {
+            mBatch.remove();
+            if (batch.insertStatement != null) {
+                batch.insertStatement.close();
+            }
+            if (batch.movementStatement != null) {
+                batch.movementStatement.close();
+            }
+            database.endTransaction();
+
+            // Forget the plants written by the batch, now that the changes are committed (or
+            // rolled back), so that no read made during the transaction stays in the cache
+            if (batch.writtenUnknownRows) {
+                mRowCache.clear();
+            } else {
+                for (long plantId : batch.writtenIds) {
+                    mRowCache.remove(plantId);
+                }
+            }
+        }
+
+        // Notify all listeners only once, after the changes have been committed
+        if (batch.changed) {
+            notifyChangeNow(PlantEntry.CONTENT_URI);
+        }
+        if (batch.suppliersChanged) {
+            notifyChangeNow(SupplierEntry.CONTENT_URI);
+        }
+        // A batch is counted on the plants URI (index 0), with its number of operations as rows
+        mMetrics.record(ProviderMetrics.OP_APPLY_BATCH, 0, start, results.length);
+        checkpointIfNeeded();
+        return results;
+    }
+
+    /**
+     * Notify all listeners that the data at the given URI has changed, after a write has been
+     * committed. Within a batch, this is postponed to the end of the batch.
+     */
+    private void notifyChange(Uri uri) {
+        Batch batch = mBatch.get();
+        if (batch != null) {
+            batch.changed = true;
+        } else {
+            notifyChangeNow(uri);
+        }
+    }
+
+    /**
+     * Notify the listeners of the suppliers that they have changed, after a write has been
+     * committed. Within a batch, this is postponed to the end of the batch.
+     */
+    private void notifySuppliersChanged() {
+        Batch batch = mBatch.get();
+        if (batch != null) {
+            batch.suppliersChanged = true;
+        } else {
+            notifyChangeNow(SupplierEntry.CONTENT_URI);
+        }
+    }
 
-        // Notify all listeners that the data has changed for the plant content URI
+    /**
+     * Notify all listeners that the data at the given URI has changed, timing the fan-out of
+     * the notification.
+     */
+    private void notifyChangeNow(Uri uri) {
+        long start = System.nanoTime();
         getContext().getContentResolver().notifyChange(uri, null);
+        mMetrics.record(ProviderMetrics.OP_NOTIFY, sUriMatcher.match(uri) - PLANTS, start, 0);
+    }
 
-        // Return the new URI with the ID (of the newly inserted row) appended at the end
-        return ContentUris.withAppendedId(uri, id);
+    /**
+     * Let the database helper checkpoint the write-ahead log if needed, after every write
+     * committed, whether it notifies anything or not. Within a batch, this is postponed to the
+     * end of the batch.
+     */
+    private void checkpointIfNeeded() {
+        if (mBatch.get() == null) {
+            mDbHelper.checkpointIfNeeded();
+        }
     }
 
     @Override
     public int update(Uri uri, ContentValues contentValues, String selection,
                       String[] selectionArgs) {
+        long start = System.nanoTime();
         final int match = sUriMatcher.match(uri);
+        int result = updateUri(match, uri, contentValues, selection, selectionArgs);
+
+        // An adjustment returns the new quantity of the plant, instead of a number of rows
+        int rows = match != PLANT_ADJUST ? result : result != PlantEntry.ADJUST_REJECTED ? 1 : 0;
+        mMetrics.record(ProviderMetrics.OP_UPDATE, match - PLANTS, start, rows);
+        checkpointIfNeeded();
+        return result;
+    }
+
+    /**
+     * Update the plants for the given URI matcher code of the given URI.
+     */
+    private int updateUri(int match, Uri uri, ContentValues contentValues, String selection,
+                          String[] selectionArgs) {
         switch (match) {
             case PLANTS:
-                return updatePlant(uri, contentValues, selection, selectionArgs);
+                return updatePlant(PlantEntry.CONTENT_URI, contentValues, toPlantsTableSelection(selection),
+                        selectionArgs);
             case PLANT_ID:
                 // For the PLANT_ID code, extract out the ID from the URI,
                 // so we know which row to update. Selection will be "_id=?" and selection
                 // arguments will be a String array containing the actual ID.
+                long plantId = ContentUris.parseId(uri);
                 selection = PlantEntry._ID + "=?";
-                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
-                return updatePlant(uri, contentValues, selection, selectionArgs);
+                selectionArgs = new String[]{String.valueOf(plantId)};
+                return updatePlant(ContentUris.withAppendedId(PlantEntry.CONTENT_URI, plantId),
+                        contentValues, selection, selectionArgs);
+            case PLANT_ADJUST:
+                // For the PLANT_ADJUST code, the ID of the plant is the segment before "adjust"
+                long id = Long.parseLong(uri.getPathSegments().get(1));
+                return adjustPlantQuantity(id, contentValues);
+            case SUPPLIER_ID:
+                return updateSupplier(ContentUris.parseId(uri), contentValues);
             default:
                 throw new IllegalArgumentException("Update is not supported for " + uri);
         }
     }
 
+    /**
+     * Return the given selection of plants, which can name the supplier columns of the plants
+     * view, as a selection of the plants table, to update or delete the plants selected.
+     */
+    private static String toPlantsTableSelection(String selection) {
+        if (TextUtils.isEmpty(selection)) {
+            return selection;
+        }
+        return PlantEntry._ID + " IN (SELECT " + PlantEntry._ID + " FROM " + PlantEntry.VIEW_NAME
+                + " WHERE " + selection + ")";
+    }
+
+    /**
+     * Clear the suppliers resolved by the batch being applied on the current thread, if any,
+     * after a supplier has been changed or deleted without its resolver.
+     */
+    private void clearBatchSuppliers() {
+        Batch batch = mBatch.get();
+        if (batch != null && batch.supplierResolver != null) {
+            batch.supplierResolver.clear();
+        }
+    }
+
+    /**
+     * Update the supplier with the given ID with the given content values, a single row for all
+     * the plants of the supplier. Return the number of suppliers updated, 0 if another supplier
+     * already has the new name.
+     */
+    private int updateSupplier(long id, ContentValues values) {
+        // If the name or the email address of the supplier are present, check that they
+        // are not null
+        if (values.containsKey(SupplierEntry.COLUMN_SUPPLIER_NAME)) {
+            String supplierName = values.getAsString(SupplierEntry.COLUMN_SUPPLIER_NAME);
+            if (supplierName == null || supplierName.trim().length() == 0) {
+                throw new IllegalArgumentException("It's required a valid name for the supplier");
+            }
+        }
+        if (values.containsKey(SupplierEntry.COLUMN_SUPPLIER_EMAIL)) {
+            String supplierEmail = values.getAsString(SupplierEntry.COLUMN_SUPPLIER_EMAIL);
+            if (supplierEmail == null || supplierEmail.trim().length() == 0) {
+                throw new IllegalArgumentException("It's required a valid email address for the supplier");
+            }
+        }
+
+        // If there are no values to update, then don't try to update the database
+        if (values.size() == 0) {
+            return 0;
+        }
+
+        int rowsUpdated;
+        try {
+            rowsUpdated = mDbHelper.getWritableDatabase().update(SupplierEntry.TABLE_NAME, values,
+                    SupplierEntry._ID + "=?", new String[]{String.valueOf(id)});
+        } catch (SQLiteConstraintException e) {
+            Log.e(LOG_TAG, "Failed to update supplier " + id, e);
+            return 0;
+        }
+
+        // The supplier columns of all the plants of the supplier have changed
+        if (rowsUpdated != 0) {
+            clearBatchSuppliers();
+            invalidatePlantRows();
+            notifySuppliersChanged();
+            notifyChange(PlantEntry.CONTENT_URI);
+        }
+        return rowsUpdated;
+    }
+
+    /**
+     * Add the {@link PlantEntry#KEY_QUANTITY_DELTA} of the given content values to the stock
+     * quantity of the plant with the given ID, in a single statement, so that concurrent
+     * adjustments can't overwrite each other, and append the movement to the stock ledger.
+     * Return the new stock quantity, or {@link PlantEntry#ADJUST_REJECTED} if it would be out
+     * of the valid range.
+     */
+    private int adjustPlantQuantity(long id, ContentValues values) {
+        Integer delta = values.getAsInteger(PlantEntry.KEY_QUANTITY_DELTA);
+        if (delta == null) {
+            throw new IllegalArgumentException("Stock adjustment requires a quantity delta");
+        }
+        int reason = getMovementReason(values,
+                delta < 0 ? StockMovementEntry.REASON_SALE : StockMovementEntry.REASON_RECEIPT);
+
+        // Get writable database
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        // Update and read back the quantity, and record the movement, in the same transaction,
+        // so that the quantity returned is the one written by this adjustment
+        int newQuantity = PlantEntry.ADJUST_REJECTED;
+        long now = System.currentTimeMillis();
+        database.beginTransaction();
+        SQLiteStatement adjust = database.compileStatement(ADJUST_QUANTITY_SQL);
+        SQLiteStatement select = database.compileStatement(SELECT_QUANTITY_SQL);
+        SQLiteStatement movement = database.compileStatement(StockLedger.INSERT_MOVEMENT_SQL);
+        try {
+            adjust.bindLong(1, delta);
+            adjust.bindLong(2, now);
+            adjust.bindLong(3, id);
+            adjust.bindLong(4, delta);
+            if (adjust.executeUpdateDelete() == 1) {
+                StockLedger.recordMovement(movement, id, delta, reason, now);
+                select.bindLong(1, id);
+                newQuantity = (int) select.simpleQueryForLong();
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            adjust.close();
+            select.close();
+            movement.close();
+            database.endTransaction();
+        }
+
+        // If the quantity has changed, then notify all listeners of the plant
+        if (newQuantity != PlantEntry.ADJUST_REJECTED) {
+            invalidatePlantRow(id, true);
+            notifyChange(ContentUris.withAppendedId(PlantEntry.CONTENT_URI, id));
+        }
+
+        // Return the new stock quantity
+        return newQuantity;
+    }
+
     /**
      * Update plants in the database with the given content values. Apply the changes to the rows
-     * specified in the selection and selection arguments (which could be 0 or 1 or more plants).
-     * Return the number of rows that were successfully updated.
+     * specified in the selection and selection arguments (which could be 0 or 1 or more plants),
+     * and notify the changes on the given URI. Return the number of rows that were successfully
+     * updated.
      */
     private int updatePlant(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
         // If the {@link PlantEntry#COLUMN_PLANT_NAME} key is present,
@@ -239,13 +1583,10 @@ public class PlantProvider extends ContentProvider {
             }
         }
 
-        // If the {@link PlantEntry#COLUMN_PLANT_PRICE} key is present,
-        // check that the plant price is not null or has a negative value
-        if (values.containsKey(PlantEntry.COLUMN_PLANT_PRICE)) {
-            Double plantPrice = values.getAsDouble(PlantEntry.COLUMN_PLANT_PRICE);
-            if (plantPrice == null || plantPrice < 0) {
-                throw new IllegalArgumentException("Plant requires a valid price");
-            }
+        // If the {@link PlantEntry#COLUMN_PLANT_PRICE_CENTS} key is present,
+        // check that the plant price is a valid number of cents
+        if (values.containsKey(PlantEntry.COLUMN_PLANT_PRICE_CENTS) && getPriceCents(values) == null) {
+            throw new IllegalArgumentException("Plant requires a valid price");
         }
 
         // If the {@link PlantEntry#COLUMN_PLANT_QUANTITY} key is present,
@@ -278,6 +1619,12 @@ public class PlantProvider extends ContentProvider {
         // No need to check the Strings for the plant image and for the supplier's phone
         // for these data are not mandatory (any value is valid, including null).
 
+        // Take out the reason of the stock movement, which isn't a column of the plants,
+        // without changing the values of the caller
+        int reason = getMovementReason(values, StockMovementEntry.REASON_CORRECTION);
+        values = new ContentValues(values);
+        values.remove(PlantEntry.KEY_MOVEMENT_REASON);
+
         // If there are no values to update, then don't try to update the database
         if (values.size() == 0) {
             return 0;
@@ -286,13 +1633,60 @@ public class PlantProvider extends ContentProvider {
         // Otherwise, get writable database to update the data
         SQLiteDatabase database = mDbHelper.getWritableDatabase();
 
-        // Perform the update on the database and get the number of rows affected
-        int rowsUpdated = database.update(PlantEntry.TABLE_NAME, values, selection, selectionArgs);
+        // Record the time of the change
+        long now = System.currentTimeMillis();
+        values.put(PlantEntry.COLUMN_PLANT_UPDATED_AT, now);
+
+        // Write the supplier columns to the suppliers table, and the rest to the plants table,
+        // in the same transaction
+        int rowsUpdated;
+        boolean suppliersChanged = false;
+        database.beginTransaction();
+        try {
+            // The change sequence is read first, so that the other plants of a supplier changed
+            // by the update get the same sequence from the trigger on the suppliers
+            values.put(PlantEntry.COLUMN_PLANT_UPDATED_SEQ, PlantChangeLog.nextSequence(database));
+            if (SupplierResolver.hasSupplierColumns(values)) {
+                SupplierResolver suppliers = getSupplierResolver(database);
+                if (!values.containsKey(PlantEntry.COLUMN_PLANT_SUPPLIER_NAME)) {
+                    // Without a name, the contact of the current supplier of the plants changes
+                    suppliers.updateSuppliersOfPlants(values, selection, selectionArgs);
+                }
+                values = suppliers.toPlantValues(values);
+                suppliersChanged = suppliers.hasChangedSuppliers();
+            }
+
+            // Record the change of the plants whose quantity changes, while the old quantities
+            // can still be read
+            if (values.containsKey(COLUMN_PLANT_QUANTITY)) {
+                StockLedger.recordQuantityUpdate(database, values.getAsInteger(COLUMN_PLANT_QUANTITY),
+                        reason, now, selection, selectionArgs);
+            }
+
+            // Perform the update on the database and get the number of rows affected
+            rowsUpdated = database.update(PlantEntry.TABLE_NAME, values, selection, selectionArgs);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        // The other plants of a supplier whose phone or email address has changed have
+        // changed too
+        if (suppliersChanged) {
+            invalidatePlantRows();
+            notifySuppliersChanged();
+            uri = PlantEntry.CONTENT_URI;
+        }
 
         // If 1 or more rows were updated, then notify all listeners that the data at the
         // given URI has changed
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            if (sUriMatcher.match(uri) == PLANT_ID) {
+                invalidatePlantRow(ContentUris.parseId(uri), true);
+            } else {
+                invalidatePlantRows();
+            }
+            notifyChange(uri);
         }
 
         // Return the number of rows updated
@@ -301,35 +1695,85 @@ public class PlantProvider extends ContentProvider {
 
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
+        long start = System.nanoTime();
+
         // Get writable database
         SQLiteDatabase database = mDbHelper.getWritableDatabase();
 
-        // Track the number of rows that were deleted
+        // Track the number of rows that were deleted, and the URI of the rows to notify
         int rowsDeleted;
+        Uri notificationUri;
 
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case PLANTS:
                 // Delete all rows that match the selection and selection args
-                rowsDeleted = database.delete(PlantEntry.TABLE_NAME, selection, selectionArgs);
+                rowsDeleted = deletePlants(database, toPlantsTableSelection(selection), selectionArgs);
+                notificationUri = PlantEntry.CONTENT_URI;
+                if (rowsDeleted != 0) {
+                    invalidatePlantRows();
+                }
                 break;
             case PLANT_ID:
                 // Delete a single row given by the ID in the URI
+                long plantId = ContentUris.parseId(uri);
                 selection = PlantEntry._ID + "=?";
+                selectionArgs = new String[]{String.valueOf(plantId)};
+                rowsDeleted = deletePlants(database, selection, selectionArgs);
+                notificationUri = ContentUris.withAppendedId(PlantEntry.CONTENT_URI, plantId);
+                if (rowsDeleted != 0) {
+                    invalidatePlantRow(plantId, false);
+                }
+                break;
+            case SUPPLIER_ID:
+                // Delete a single supplier given by the ID in the URI, only if it has no plants,
+                // which the index of the plants by supplier tells right away
+                selection = SupplierEntry._ID + "=? AND NOT EXISTS (SELECT 1 FROM " + PlantEntry.TABLE_NAME
+                        + " WHERE " + PlantEntry.COLUMN_PLANT_SUPPLIER_ID + " = " + SupplierEntry.TABLE_NAME
+                        + "." + SupplierEntry._ID + ")";
                 selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
-                rowsDeleted = database.delete(PlantContract.PlantEntry.TABLE_NAME, selection, selectionArgs);
+                rowsDeleted = database.delete(SupplierEntry.TABLE_NAME, selection, selectionArgs);
+                if (rowsDeleted != 0) {
+                    clearBatchSuppliers();
+                }
+                notificationUri = SupplierEntry.CONTENT_URI;
                 break;
+            case PENDING_ADJUSTMENTS:
+                // Forget the pending adjustments applied, in the transaction of the batch which
+                // applied them. Nothing observes them, so nothing is notified.
+                rowsDeleted = database.delete(PendingAdjustmentEntry.TABLE_NAME, selection, selectionArgs);
+                mMetrics.record(ProviderMetrics.OP_DELETE, match - PLANTS, start, rowsDeleted);
+                checkpointIfNeeded();
+                return rowsDeleted;
             default:
                 throw new IllegalArgumentException("Deletion is not supported for " + uri);
         }
 
-        // If 1 or more rows were deleted, then notify all listeners that the data at the
-        // given URI has changed
+        // If 1 or more rows were deleted, then notify all listeners that the data of
+        // the deleted rows has changed
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(notificationUri);
         }
 
         // Return the number of rows deleted
+        mMetrics.record(ProviderMetrics.OP_DELETE, match - PLANTS, start, rowsDeleted);
+        checkpointIfNeeded();
         return rowsDeleted;
     }
-}
\ No newline at end of file
+
+    /**
+     * Delete the plants of the given selection of the plants table, with a tombstone for each
+     * of them in the same transaction. Return the number of plants deleted.
+     */
+    private static int deletePlants(SQLiteDatabase database, String selection, String[] selectionArgs) {
+        database.beginTransaction();
+        try {
+            PlantChangeLog.recordDeletes(database, selection, selectionArgs);
+            int rowsDeleted = database.delete(PlantEntry.TABLE_NAME, selection, selectionArgs);
+            database.setTransactionSuccessful();
+            return rowsDeleted;
+        } finally {
+            database.endTransaction();
+        }
+    }
+}
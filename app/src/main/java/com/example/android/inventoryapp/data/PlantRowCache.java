@@ -0,0 +1,180 @@
+package com.example.android.inventoryapp.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.os.Bundle;
+import android.util.LruCache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link PlantRowCache} keeps in memory the last plants read one by one from the database by
+ * the {@link PlantProvider}, like the plant shown by the detail screen, so that opening the
+ * same plant again, or reloading it after a change, doesn't go to the database.
+ *
+ * The rows are removed by the provider whenever it writes them. A read racing with a write
+ * could still put back the row as it was before the write, so every removal also bumps a
+ * generation, and a row read before the last removal is never cached.
+ */
+
+final class PlantRowCache {
+
+    /**
+     * Maximum number of plants kept in memory
+     */
+    private static final int MAX_ROWS = 64;
+
+    private final LruCache<Long, Row> mRows = new LruCache<>(MAX_ROWS);
+
+    /**
+     * Number of removals so far. Only changed while holding the lock of {@link #mRows}.
+     */
+    private long mGeneration;
+
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+
+    /**
+     * All the columns of a plant, as read from the database.
+     */
+    static final class Row {
+        private final String[] mColumnNames;
+        private final Object[] mValues;
+
+        private Row(String[] columnNames, Object[] values) {
+            mColumnNames = columnNames;
+            mValues = values;
+        }
+
+        /**
+         * Return a cursor holding only this row, with the given columns (or all of them if the
+         * projection is null), or null if a column isn't a plain column of the plants table.
+         */
+        Cursor toCursor(String[] projection) {
+            if (projection == null) {
+                MatrixCursor cursor = new MatrixCursor(mColumnNames, 1);
+                cursor.addRow(mValues);
+                return cursor;
+            }
+            Object[] values = new Object[projection.length];
+            for (int i = 0; i < projection.length; i++) {
+                int index = indexOf(projection[i]);
+                if (index == -1) {
+                    return null;
+                }
+                values[i] = mValues[index];
+            }
+            MatrixCursor cursor = new MatrixCursor(projection, 1);
+            cursor.addRow(values);
+            return cursor;
+        }
+
+        private int indexOf(String columnName) {
+            for (int i = 0; i < mColumnNames.length; i++) {
+                if (mColumnNames[i].equalsIgnoreCase(columnName)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Return a cursor holding the given plant with the given columns if the plant is in memory,
+     * or null if it has to be read from the database.
+     */
+    Cursor query(long plantId, String[] projection) {
+        Row row = mRows.get(plantId);
+        if (row == null) {
+            mMisses.incrementAndGet();
+            return null;
+        }
+        Cursor cursor = row.toCursor(projection);
+        if (cursor != null) {
+            mHits.incrementAndGet();
+        }
+        return cursor;
+    }
+
+    /**
+     * Return the current generation, to be read before reading a plant from the database
+     * and given back to {@link #put(long, Cursor, long)}.
+     */
+    long getGeneration() {
+        synchronized (mRows) {
+            return mGeneration;
+        }
+    }
+
+    /**
+     * Read the first row of the given cursor, holding all the columns of the given plant,
+     * and keep it in memory unless the plant has been written since the given generation.
+     *
+     * @return the row read, or null if the cursor is empty (the plant doesn't exist)
+     */
+    Row put(long plantId, Cursor cursor, long generation) {
+        if (!cursor.moveToFirst()) {
+            return null;
+        }
+        int count = cursor.getColumnCount();
+        Object[] values = new Object[count];
+        for (int i = 0; i < count; i++) {
+            switch (cursor.getType(i)) {
+                case Cursor.FIELD_TYPE_INTEGER:
+                    values[i] = cursor.getLong(i);
+                    break;
+                case Cursor.FIELD_TYPE_FLOAT:
+                    values[i] = cursor.getDouble(i);
+                    break;
+                case Cursor.FIELD_TYPE_STRING:
+                    values[i] = cursor.getString(i);
+                    break;
+                case Cursor.FIELD_TYPE_BLOB:
+                    values[i] = cursor.getBlob(i);
+                    break;
+                default:
+                    values[i] = null;
+            }
+        }
+        Row row = new Row(cursor.getColumnNames(), values);
+        synchronized (mRows) {
+            if (generation == mGeneration) {
+                mRows.put(plantId, row);
+            }
+        }
+        return row;
+    }
+
+    /**
+     * Forget the given plant, after it has been written.
+     *
+     * @return true if the plant was in memory
+     */
+    boolean remove(long plantId) {
+        synchronized (mRows) {
+            mGeneration++;
+            return mRows.remove(plantId) != null;
+        }
+    }
+
+    /**
+     * Forget all the plants, after an unknown set of plants has been written.
+     */
+    void clear() {
+        synchronized (mRows) {
+            mGeneration++;
+            mRows.evictAll();
+        }
+    }
+
+    /**
+     * Return the hits, misses and size of the cache, under the keys of {@link PlantContract}.
+     */
+    Bundle getStats() {
+        Bundle stats = new Bundle();
+        stats.putLong(PlantContract.KEY_ROW_CACHE_HITS, mHits.get());
+        stats.putLong(PlantContract.KEY_ROW_CACHE_MISSES, mMisses.get());
+        stats.putInt(PlantContract.KEY_ROW_CACHE_SIZE, mRows.size());
+        return stats;
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.android.inventoryapp.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Rules of the search of plants by the words in their name or supplier name, shared by the
+ * {@link PlantProvider}, which runs the search in SQLite through the full-text search index,
+ * and by the catalog, which refines the results of a previous search in memory when the user
+ * keeps typing.
+ *
+ * The matching mirrors the "simple" tokenizer of the FTS index: words are the runs of ASCII
+ * letters and digits and of non ASCII chars, and only the ASCII letters are compared
+ * regardless of case.
+ */
+
+public final class PlantSearch {
+
+    private PlantSearch() {
+    }
+
+    /**
+     * Split the text the user is searching for into words, lower-cased like the FTS index
+     * does. Every word must be the prefix of a word in the name or supplier name of a plant
+     * for the plant to match.
+     */
+    public static List<String> tokenizeQuery(String query) {
+        List<String> words = new ArrayList<>();
+        int length = query.length();
+        int i = 0;
+        while (i < length) {
+            // Skip the separators, including the FTS operators and quotes
+            while (i < length && !Character.isLetterOrDigit(query.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < length && Character.isLetterOrDigit(query.charAt(i))) {
+                i++;
+            }
+            if (i > start) {
+                words.add(toLowerCaseAscii(query.substring(start, i)));
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Return true if all the plants matching the new query also match the previous one,
+     * so that the results of the new query can be taken from the results of the previous one.
+     * This is the case when every word of the previous query is the prefix of a word of the
+     * new one, like when the user types more letters or adds a word.
+     */
+    public static boolean narrows(String previousQuery, String newQuery) {
+        List<String> previousWords = tokenizeQuery(previousQuery);
+        List<String> newWords = tokenizeQuery(newQuery);
+        if (previousWords.isEmpty()) {
+            // The previous query matched nothing
+            return false;
+        }
+        for (String previousWord : previousWords) {
+            boolean found = false;
+            for (String newWord : newWords) {
+                if (newWord.startsWith(previousWord)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return true if every word of the query is the prefix of a word of one of the given texts.
+     *
+     * @param queryWords The words of the query, as returned by {@link #tokenizeQuery(String)}
+     * @param texts      The name and the supplier name of the plant
+     */
+    public static boolean matches(List<String> queryWords, String... texts) {
+        if (queryWords.isEmpty()) {
+            return false;
+        }
+        for (String queryWord : queryWords) {
+            boolean found = false;
+            for (String text : texts) {
+                if (text != null && hasWordStartingWith(text, queryWord)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sort the given plant names like the provider ranks the search results: names starting
+     * with the query first, then names containing it, then the other ones, each group in
+     * alphabetical order regardless of case.
+     *
+     * @param items The items to sort in place
+     * @param names Returns the name of an item
+     * @param query The text the user is searching for
+     */
+    public static <T> void sortByRank(List<T> items, final NameProvider<T> names, String query) {
+        final String lowerQuery = toLowerCaseAscii(query.trim());
+        Collections.sort(items, new Comparator<T>() {
+            @Override
+            public int compare(T first, T second) {
+                String firstName = toLowerCaseAscii(names.getName(first));
+                String secondName = toLowerCaseAscii(names.getName(second));
+                int result = rankLowerCase(firstName, lowerQuery) - rankLowerCase(secondName, lowerQuery);
+                return result != 0 ? result : firstName.compareTo(secondName);
+            }
+        });
+    }
+
+    /**
+     * Returns the name of the plant of an item sorted by {@link #sortByRank}.
+     */
+    public interface NameProvider<T> {
+        String getName(T item);
+    }
+
+    /**
+     * Return the rank of the given plant name in the results of a search of the given text,
+     * as in the provider's SEARCH_SORT_ORDER: 0 if the name starts with the text, 1 if it
+     * contains it, and 2 otherwise.
+     */
+    public static int rank(String name, String query) {
+        return rankLowerCase(toLowerCaseAscii(name), toLowerCaseAscii(query.trim()));
+    }
+
+    /**
+     * Rank of a lower-cased name for a lower-cased query, see {@link #rank(String, String)}
+     */
+    private static int rankLowerCase(String name, String query) {
+        if (name.startsWith(query)) {
+            return 0;
+        }
+        return name.contains(query) ? 1 : 2;
+    }
+
+    /**
+     * Return true if a word of the given text, as split by the FTS tokenizer,
+     * starts with the given lower-cased prefix.
+     */
+    private static boolean hasWordStartingWith(String text, String prefix) {
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && !isTokenChar(text.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < length && isTokenChar(text.charAt(i))) {
+                i++;
+            }
+            if (i - start >= prefix.length() && regionMatchesLowerCase(text, start, prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Return true if the text at the given position, lower-cased, starts with the given prefix.
+     */
+    private static boolean regionMatchesLowerCase(String text, int start, String prefix) {
+        for (int j = 0; j < prefix.length(); j++) {
+            if (toLowerCaseAscii(text.charAt(start + j)) != prefix.charAt(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return true if the char is part of a word for the "simple" FTS tokenizer
+     */
+    private static boolean isTokenChar(char c) {
+        return c >= 0x80 || (c >= '0' && c <= '9') || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static char toLowerCaseAscii(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    private static String toLowerCaseAscii(String text) {
+        if (text == null) {
+            return "";
+        }
+        char[] chars = text.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = toLowerCaseAscii(chars[i]);
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,240 @@
+package com.example.android.inventoryapp.data;
+
+import android.database.CrossProcessCursorWrapper;
+import android.database.Cursor;
+import android.os.Bundle;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link ProviderMetrics} keeps a latency histogram of every operation of the
+ * {@link PlantProvider}, for each kind of URI, along with the number of rows the operations
+ * returned or changed, so that a slow catalog can be traced back to the queries, the writes
+ * or the change notifications.
+ *
+ * Recording an operation only takes a few atomic increments, without locks or allocations
+ * besides the small cursor counting the rows of a query, so the histograms are always on. The latencies are counted in buckets of powers of two of
+ * microseconds: bucket 0 holds the latencies below 1 us, and bucket i the latencies from
+ * 2^(i - 1) us up to 2^i us, the last bucket holding all the longer ones.
+ */
+
+final class ProviderMetrics {
+
+    /**
+     * Operations of the provider, in the order of {@link #OPERATION_NAMES}
+     */
+    static final int OP_QUERY = 0;
+    static final int OP_INSERT = 1;
+    static final int OP_BULK_INSERT = 2;
+    static final int OP_UPDATE = 3;
+    static final int OP_DELETE = 4;
+    static final int OP_APPLY_BATCH = 5;
+    static final int OP_NOTIFY = 6;
+
+    private static final String[] OPERATION_NAMES = {
+            "query", "insert", "bulk_insert", "update", "delete", "apply_batch", "notify"};
+
+    /**
+     * Number of buckets of each histogram, the last one starting at about 4 seconds
+     */
+    static final int BUCKET_COUNT = 24;
+
+    /**
+     * Latencies and row counts of an operation on a kind of URI.
+     */
+    private static final class Histogram {
+        final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong totalNs = new AtomicLong();
+        final AtomicLong maxNs = new AtomicLong();
+        final AtomicLong rows = new AtomicLong();
+
+        void record(long elapsedNs, int rowCount) {
+            buckets.incrementAndGet(getBucket(elapsedNs));
+            count.incrementAndGet();
+            totalNs.addAndGet(elapsedNs);
+            rows.addAndGet(rowCount);
+            long max;
+            do {
+                max = maxNs.get();
+            } while (elapsedNs > max && !maxNs.compareAndSet(max, elapsedNs));
+        }
+    }
+
+    /**
+     * Names of the kinds of URI, indexed like the URIs given to {@link #record}
+     */
+    private final String[] mUriNames;
+
+    /**
+     * Histograms of all the operations on all the kinds of URI, by operation then by URI
+     */
+    private final Histogram[] mHistograms;
+
+    /**
+     * Constructs a new {@link ProviderMetrics}.
+     *
+     * @param uriNames The names of the kinds of URI of the provider, by index
+     */
+    ProviderMetrics(String[] uriNames) {
+        mUriNames = uriNames;
+        mHistograms = new Histogram[OPERATION_NAMES.length * uriNames.length];
+        for (int i = 0; i < mHistograms.length; i++) {
+            mHistograms[i] = new Histogram();
+        }
+    }
+
+    /**
+     * Record an operation started at the given {@link System#nanoTime()} and ending now.
+     *
+     * @param operation One of the OP_* operations
+     * @param uri       The index of the kind of URI in the names given to the constructor
+     * @param startNs   The time the operation started
+     * @param rows      The number of rows returned or changed by the operation
+     */
+    void record(int operation, int uri, long startNs, int rows) {
+        recordElapsed(operation, uri, System.nanoTime() - startNs, rows);
+    }
+
+    /**
+     * Record an operation which took the given time, in nanoseconds.
+     */
+    void recordElapsed(int operation, int uri, long elapsedNs, int rows) {
+        mHistograms[operation * mUriNames.length + uri].record(elapsedNs, rows);
+    }
+
+    /**
+     * Add the given number of rows to an operation already recorded, without counting
+     * another operation.
+     */
+    void recordRows(int operation, int uri, int rows) {
+        mHistograms[operation * mUriNames.length + uri].rows.addAndGet(rows);
+    }
+
+    /**
+     * Return a cursor reading the given query cursor, which records the number of rows of
+     * the query when its caller first asks for it. Counting the rows of a query runs it and
+     * fills the first window of the cursor: left to the caller, this happens on the thread
+     * reading the cursor, when it reads it, instead of delaying the return of the query.
+     *
+     * @param cursor The cursor returned by the query
+     * @param uri    The index of the kind of URI queried
+     */
+    Cursor countRows(Cursor cursor, int uri) {
+        return new RowCountingCursor(cursor, uri);
+    }
+
+    /**
+     * Cursor recording the number of rows of a query on the first call to {@link #getCount()},
+     * which the cursors do themselves as soon as they are moved. Filling the windows of a
+     * cursor sent to another process is still left to the cursor it wraps.
+     */
+    private final class RowCountingCursor extends CrossProcessCursorWrapper {
+        private final int mUri;
+        private boolean mCounted;
+
+        RowCountingCursor(Cursor cursor, int uri) {
+            super(cursor);
+            mUri = uri;
+        }
+
+        @Override
+        public int getCount() {
+            int count = super.getCount();
+            if (!mCounted) {
+                mCounted = true;
+                recordRows(OP_QUERY, mUri, count);
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Return the bucket of the given latency.
+     */
+    static int getBucket(long elapsedNs) {
+        long micros = elapsedNs / 1000;
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        return Math.min(bucket, BUCKET_COUNT - 1);
+    }
+
+    /**
+     * Return a snapshot of the histograms of the operations recorded so far: a bundle under
+     * the key "operation:uri" for each of them, holding the keys of {@link PlantContract},
+     * and a text version of all of them under {@link PlantContract#KEY_METRICS_TEXT}.
+     */
+    Bundle getSnapshot() {
+        Bundle snapshot = new Bundle();
+        for (int i = 0; i < mHistograms.length; i++) {
+            Histogram histogram = mHistograms[i];
+            long count = histogram.count.get();
+            if (count == 0) {
+                continue;
+            }
+            long[] buckets = new long[BUCKET_COUNT];
+            for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+                buckets[bucket] = histogram.buckets.get(bucket);
+            }
+            Bundle metrics = new Bundle();
+            metrics.putLong(PlantContract.KEY_METRICS_COUNT, count);
+            metrics.putLong(PlantContract.KEY_METRICS_TOTAL_NS, histogram.totalNs.get());
+            metrics.putLong(PlantContract.KEY_METRICS_MAX_NS, histogram.maxNs.get());
+            metrics.putLong(PlantContract.KEY_METRICS_ROWS, histogram.rows.get());
+            metrics.putLongArray(PlantContract.KEY_METRICS_BUCKETS, buckets);
+            snapshot.putBundle(getName(i), metrics);
+        }
+        snapshot.putString(PlantContract.KEY_METRICS_TEXT, toText());
+        return snapshot;
+    }
+
+    /**
+     * Return a line of text for each operation recorded so far, with its count, mean and
+     * maximum latencies, the upper bounds of its median and 90th and 99th percentiles
+     * latencies, and its number of rows.
+     */
+    String toText() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < mHistograms.length; i++) {
+            Histogram histogram = mHistograms[i];
+            long count = histogram.count.get();
+            if (count == 0) {
+                continue;
+            }
+            long[] buckets = new long[BUCKET_COUNT];
+            for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+                buckets[bucket] = histogram.buckets.get(bucket);
+            }
+            text.append(String.format(Locale.US,
+                    "%s: count=%d mean=%dus max=%dus p50<%s p90<%s p99<%s rows=%d%n",
+                    getName(i), count, histogram.totalNs.get() / count / 1000, histogram.maxNs.get() / 1000,
+                    getPercentileBound(buckets, 0.5), getPercentileBound(buckets, 0.9),
+                    getPercentileBound(buckets, 0.99), histogram.rows.get()));
+        }
+        return text.toString();
+    }
+
+    private String getName(int histogram) {
+        return OPERATION_NAMES[histogram / mUriNames.length] + ":" + mUriNames[histogram % mUriNames.length];
+    }
+
+    /**
+     * Return the upper bound of the bucket holding the given percentile of the latencies.
+     */
+    private static String getPercentileBound(long[] buckets, double percentile) {
+        long total = 0;
+        for (long count : buckets) {
+            total += count;
+        }
+        long rank = (long) Math.ceil(total * percentile);
+        long seen = 0;
+        for (int bucket = 0; bucket < buckets.length - 1; bucket++) {
+            seen += buckets[bucket];
+            if (seen >= rank) {
+                return (1L << bucket) + "us";
+            }
+        }
+        return "inf";
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.android.inventoryapp.data;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.text.TextUtils;
+
+import com.example.android.inventoryapp.data.PlantContract.PlantEntry;
+import com.example.android.inventoryapp.data.PlantContract.StockMovementEntry;
+
+/**
+ * {@link StockLedger} writes and reads the stock movements of the plants: it appends a
+ * movement for every change of the stock quantity made by the {@link PlantProvider}, within
+ * the transaction of the change, adds up the movements of a plant to get its quantity at a
+ * given time, and rolls the old movements into snapshots.
+ *
+ * A snapshot is a single movement holding the sum of the deltas of the movements it
+ * replaces, so that the quantity of a plant is still the sum of the deltas of all its
+ * movements, and the quantity at the end of each snapshot period is still exact.
+ */
+
+final class StockLedger {
+
+    /**
+     * Length of a day, the period of the daily snapshots, in milliseconds
+     */
+    static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    /**
+     * SQL statement appending a stock movement, compiled once for all the plants of a bulk
+     * insertion or of a batch
+     */
+    static final String INSERT_MOVEMENT_SQL = "INSERT INTO " + StockMovementEntry.TABLE_NAME + " ("
+            + StockMovementEntry.COLUMN_PLANT_ID + ", " + StockMovementEntry.COLUMN_DELTA + ", "
+            + StockMovementEntry.COLUMN_REASON + ", " + StockMovementEntry.COLUMN_CREATED_AT
+            + ") VALUES (?, ?, ?, ?)";
+
+    /**
+     * SQL query adding up the deltas of the movements of a plant until a given time, read
+     * from the index of the movements by plant and time alone
+     */
+    private static final String QUANTITY_AT_SQL = "SELECT IFNULL(SUM(" + StockMovementEntry.COLUMN_DELTA
+            + "), 0) AS " + PlantEntry.COLUMN_PLANT_QUANTITY + " FROM " + StockMovementEntry.TABLE_NAME
+            + " WHERE " + StockMovementEntry.COLUMN_PLANT_ID + " = ? AND "
+            + StockMovementEntry.COLUMN_CREATED_AT + " <= ?";
+
+    private StockLedger() {
+    }
+
+    /**
+     * Return whether the given value is a reason the callers can give to a change of the
+     * stock quantity: any reason but the snapshots, which only the compaction writes.
+     */
+    static boolean isValidReason(int reason) {
+        return reason == StockMovementEntry.REASON_CORRECTION
+                || reason == StockMovementEntry.REASON_SALE
+                || reason == StockMovementEntry.REASON_RECEIPT;
+    }
+
+    /**
+     * Append a movement of the given delta to the stock of the given plant, through the given
+     * compiled statement of {@link #INSERT_MOVEMENT_SQL}. Nothing is appended for a delta of 0.
+     */
+    static void recordMovement(SQLiteStatement statement, long plantId, long delta, int reason, long time) {
+        if (delta == 0) {
+            return;
+        }
+        statement.bindLong(1, plantId);
+        statement.bindLong(2, delta);
+        statement.bindLong(3, reason);
+        statement.bindLong(4, time);
+        statement.executeInsert();
+    }
+
+    /**
+     * Append a movement for each plant of the given selection of the plants table whose stock
+     * quantity is about to be set to the given quantity, with the difference between the two
+     * quantities as delta. To call in the transaction of the update, before the update.
+     */
+    static void recordQuantityUpdate(SQLiteDatabase db, int quantity, int reason, long time,
+                                     String selection, String[] selectionArgs) {
+        String condition = PlantEntry.COLUMN_PLANT_QUANTITY + " != ?";
+        if (!TextUtils.isEmpty(selection)) {
+            condition = "(" + selection + ") AND " + condition;
+        }
+
+        // The arguments are in the order of the statement: the columns, the selection, and
+        // the condition on the quantity
+        int argumentCount = selectionArgs != null ? selectionArgs.length : 0;
+        Object[] bindArgs = new Object[argumentCount + 4];
+        bindArgs[0] = quantity;
+        bindArgs[1] = reason;
+        bindArgs[2] = time;
+        if (selectionArgs != null) {
+            System.arraycopy(selectionArgs, 0, bindArgs, 3, argumentCount);
+        }
+        bindArgs[argumentCount + 3] = quantity;
+
+        db.execSQL("INSERT INTO " + StockMovementEntry.TABLE_NAME + " ("
+                + StockMovementEntry.COLUMN_PLANT_ID + ", " + StockMovementEntry.COLUMN_DELTA + ", "
+                + StockMovementEntry.COLUMN_REASON + ", " + StockMovementEntry.COLUMN_CREATED_AT + ") "
+                + "SELECT " + PlantEntry._ID + ", ? - " + PlantEntry.COLUMN_PLANT_QUANTITY + ", ?, ?"
+                + " FROM " + PlantEntry.TABLE_NAME + " WHERE " + condition, bindArgs);
+    }
+
+    /**
+     * Return a cursor holding a single row with the stock quantity of the given plant at the
+     * given time, in the {@link PlantEntry#COLUMN_PLANT_QUANTITY} column: 0 before its first
+     * movement, or if the plant doesn't exist.
+     */
+    static Cursor queryQuantityAt(SQLiteDatabase db, long plantId, long time) {
+        return db.rawQuery(QUANTITY_AT_SQL, new String[]{String.valueOf(plantId), String.valueOf(time)});
+    }
+
+    /**
+     * Roll the movements older than {@link StockMovementEntry#MOVEMENT_RETENTION_DAYS} days
+     * into one snapshot a day for each plant, and the movements older than
+     * {@link StockMovementEntry#DAILY_SNAPSHOT_RETENTION_DAYS} days into a single snapshot for
+     * each plant, in a single transaction. Return the number of movements removed.
+     *
+     * @param now The current time, in milliseconds since the epoch
+     */
+    static int compact(SQLiteDatabase db, long now) {
+        int removed;
+        db.beginTransaction();
+        try {
+            removed = compact(db, now - StockMovementEntry.MOVEMENT_RETENTION_DAYS * DAY_MILLIS, DAY_MILLIS);
+            removed += compact(db, now - StockMovementEntry.DAILY_SNAPSHOT_RETENTION_DAYS * DAY_MILLIS, 0);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return removed;
+    }
+
+    /**
+     * Replace the movements of each plant made before the given time by a snapshot for each
+     * period of the given length, or by a single snapshot if the period is 0. The periods
+     * already down to a single movement are left as they are. Return the number of movements
+     * removed.
+     */
+    private static int compact(SQLiteDatabase db, long before, long periodMillis) {
+        // The snapshots are appended after the last movement, which tells them apart from the
+        // movements they replace
+        long lastId = DatabaseUtils.longForQuery(db, "SELECT IFNULL(MAX(" + StockMovementEntry._ID
+                + "), 0) FROM " + StockMovementEntry.TABLE_NAME, null);
+        String[] args = {String.valueOf(before)};
+
+        // Without period, all the movements of a plant are in the same snapshot
+        String table = StockMovementEntry.TABLE_NAME + ".";
+        String groupBy = StockMovementEntry.COLUMN_PLANT_ID;
+        String samePeriod = "";
+        if (periodMillis != 0) {
+            groupBy += ", " + period("", periodMillis);
+            samePeriod = " AND " + period("snapshot.", periodMillis) + " = " + period(table, periodMillis);
+        }
+
+        // The time of a snapshot is the one of its last movement, in the same period
+        db.execSQL("INSERT INTO " + StockMovementEntry.TABLE_NAME + " ("
+                + StockMovementEntry.COLUMN_PLANT_ID + ", " + StockMovementEntry.COLUMN_DELTA + ", "
+                + StockMovementEntry.COLUMN_REASON + ", " + StockMovementEntry.COLUMN_CREATED_AT + ") "
+                + "SELECT " + StockMovementEntry.COLUMN_PLANT_ID + ", SUM(" + StockMovementEntry.COLUMN_DELTA + "), "
+                + StockMovementEntry.REASON_SNAPSHOT + ", MAX(" + StockMovementEntry.COLUMN_CREATED_AT + ")"
+                + " FROM " + StockMovementEntry.TABLE_NAME
+                + " WHERE " + StockMovementEntry.COLUMN_CREATED_AT + " < ?"
+                + " GROUP BY " + groupBy + " HAVING COUNT(*) > 1", args);
+
+        return db.delete(StockMovementEntry.TABLE_NAME, StockMovementEntry._ID + " <= " + lastId
+                + " AND " + StockMovementEntry.COLUMN_CREATED_AT + " < ?"
+                + " AND EXISTS (SELECT 1 FROM " + StockMovementEntry.TABLE_NAME + " AS snapshot"
+                + " WHERE snapshot." + StockMovementEntry._ID + " > " + lastId
+                + " AND snapshot." + StockMovementEntry.COLUMN_PLANT_ID + " = " + table + StockMovementEntry.COLUMN_PLANT_ID
+                + samePeriod + ")", args);
+    }
+
+    /**
+     * SQL expression of the snapshot period of a movement, whose columns start with the given
+     * prefix: the number of the period since the epoch.
+     */
+    private static String period(String prefix, long periodMillis) {
+        return prefix + StockMovementEntry.COLUMN_CREATED_AT + " / " + periodMillis;
+    }
+}
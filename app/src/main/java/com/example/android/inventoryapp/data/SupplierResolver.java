@@ -0,0 +1,222 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.text.TextUtils;
+
+import com.example.android.inventoryapp.data.PlantContract.PlantEntry;
+import com.example.android.inventoryapp.data.PlantContract.SupplierEntry;
+
+import java.util.HashMap;
+
+/**
+ * {@link SupplierResolver} turns the supplier columns written with a plant (the name, phone
+ * and email address of its supplier) into the ID of a row of the suppliers table, creating
+ * the supplier if there is none with that name, and updating its phone and email address
+ * if they have changed.
+ *
+ * The suppliers already resolved are kept in memory, so that a bulk insertion of thousands
+ * of plants from a few dozen suppliers only reads and writes each supplier once. A resolver
+ * is meant for a single operation or transaction of the {@link PlantProvider}.
+ */
+
+final class SupplierResolver {
+
+    /**
+     * Supplier columns of the plants, which aren't columns of the plants table
+     */
+    private static final String[] SUPPLIER_COLUMNS = {
+            PlantEntry.COLUMN_PLANT_SUPPLIER_NAME,
+            PlantEntry.COLUMN_PLANT_SUPPLIER_PHONE,
+            PlantEntry.COLUMN_PLANT_SUPPLIER_EMAIL};
+
+    /**
+     * A row of the suppliers table, as last read or written.
+     */
+    private static final class Supplier {
+        final long id;
+        String phone;
+        String email;
+
+        Supplier(long id, String phone, String email) {
+            this.id = id;
+            this.phone = phone;
+            this.email = email;
+        }
+    }
+
+    private final SQLiteDatabase mDatabase;
+
+    /**
+     * Suppliers already resolved, by name as written with the plants
+     */
+    private final HashMap<String, Supplier> mSuppliers = new HashMap<>();
+
+    /**
+     * Whether a supplier has been created or changed
+     */
+    private boolean mChanged;
+
+    SupplierResolver(SQLiteDatabase database) {
+        mDatabase = database;
+    }
+
+    /**
+     * Return true if the given plant values hold any of the supplier columns.
+     */
+    static boolean hasSupplierColumns(ContentValues values) {
+        for (String column : SUPPLIER_COLUMNS) {
+            if (values.containsKey(column)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Return whether this resolver has created or changed a supplier, and thus changed the
+     * rows of other plants than the ones written.
+     */
+    boolean hasChangedSuppliers() {
+        return mChanged;
+    }
+
+    /**
+     * Forget the suppliers already resolved, after a supplier has been changed or deleted
+     * directly, so that the next plants read them again from the suppliers table.
+     */
+    void clear() {
+        mSuppliers.clear();
+    }
+
+    /**
+     * Return the values to write to the plants table for the given plant values: the supplier
+     * columns are replaced by the {@link PlantEntry#COLUMN_PLANT_SUPPLIER_ID} of the supplier
+     * with the given name, if there is one. The given values are left unchanged.
+     *
+     * @throws IllegalArgumentException if a new supplier has no email address
+     */
+    ContentValues toPlantValues(ContentValues values) {
+        ContentValues plant = new ContentValues(values);
+        for (String column : SUPPLIER_COLUMNS) {
+            plant.remove(column);
+        }
+        String name = values.getAsString(PlantEntry.COLUMN_PLANT_SUPPLIER_NAME);
+        if (name != null) {
+            plant.put(PlantEntry.COLUMN_PLANT_SUPPLIER_ID, resolve(name.trim(), values));
+        }
+        return plant;
+    }
+
+    /**
+     * Write the phone and email address of the given plant values (if any) to the current
+     * suppliers of the plants matching the given selection of the plants view, when the
+     * values don't name a supplier. Return the number of suppliers changed.
+     */
+    int updateSuppliersOfPlants(ContentValues values, String selection, String[] selectionArgs) {
+        ContentValues supplier = getContactValues(values);
+        if (supplier.size() == 0) {
+            return 0;
+        }
+        String plants = "SELECT " + PlantEntry.COLUMN_PLANT_SUPPLIER_ID + " FROM " + PlantEntry.VIEW_NAME;
+        if (!TextUtils.isEmpty(selection)) {
+            plants += " WHERE " + selection;
+        }
+        int rowsUpdated = mDatabase.update(SupplierEntry.TABLE_NAME, supplier,
+                SupplierEntry._ID + " IN (" + plants + ")", selectionArgs);
+        if (rowsUpdated != 0) {
+            mChanged = true;
+            mSuppliers.clear();
+        }
+        return rowsUpdated;
+    }
+
+    /**
+     * Return the ID of the supplier with the given name, with the phone and email address of
+     * the given values (if any).
+     */
+    private long resolve(String name, ContentValues values) {
+        Supplier supplier = mSuppliers.get(name);
+        if (supplier == null) {
+            supplier = query(name);
+            if (supplier == null) {
+                supplier = insert(name, values);
+            }
+            mSuppliers.put(name, supplier);
+        }
+
+        // Only write the contact of the supplier if it has changed
+        ContentValues changes = new ContentValues();
+        if (values.containsKey(PlantEntry.COLUMN_PLANT_SUPPLIER_PHONE)) {
+            String phone = values.getAsString(PlantEntry.COLUMN_PLANT_SUPPLIER_PHONE);
+            if (!TextUtils.equals(phone, supplier.phone)) {
+                changes.put(SupplierEntry.COLUMN_SUPPLIER_PHONE, phone);
+                supplier.phone = phone;
+            }
+        }
+        if (values.containsKey(PlantEntry.COLUMN_PLANT_SUPPLIER_EMAIL)) {
+            String email = values.getAsString(PlantEntry.COLUMN_PLANT_SUPPLIER_EMAIL);
+            if (!TextUtils.equals(email, supplier.email)) {
+                changes.put(SupplierEntry.COLUMN_SUPPLIER_EMAIL, email);
+                supplier.email = email;
+            }
+        }
+        if (changes.size() != 0) {
+            mDatabase.update(SupplierEntry.TABLE_NAME, changes, SupplierEntry._ID + "=?",
+                    new String[]{String.valueOf(supplier.id)});
+            mChanged = true;
+        }
+        return supplier.id;
+    }
+
+    /**
+     * Read the supplier with the given name (regardless of case), or return null if there
+     * is none.
+     */
+    private Supplier query(String name) {
+        Cursor cursor = mDatabase.query(SupplierEntry.TABLE_NAME,
+                new String[]{SupplierEntry._ID, SupplierEntry.COLUMN_SUPPLIER_PHONE, SupplierEntry.COLUMN_SUPPLIER_EMAIL},
+                SupplierEntry.COLUMN_SUPPLIER_NAME + "=?", new String[]{name}, null, null, null);
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            return new Supplier(cursor.getLong(0), cursor.getString(1), cursor.getString(2));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Create the supplier with the given name, and the phone and email address of the given
+     * values.
+     */
+    private Supplier insert(String name, ContentValues values) {
+        String email = values.getAsString(PlantEntry.COLUMN_PLANT_SUPPLIER_EMAIL);
+        if (email == null || email.trim().length() == 0) {
+            throw new IllegalArgumentException("It's required a valid email address for the supplier");
+        }
+        ContentValues supplier = getContactValues(values);
+        supplier.put(SupplierEntry.COLUMN_SUPPLIER_NAME, name);
+        long id = mDatabase.insertOrThrow(SupplierEntry.TABLE_NAME, null, supplier);
+        mChanged = true;
+        return new Supplier(id, supplier.getAsString(SupplierEntry.COLUMN_SUPPLIER_PHONE), email);
+    }
+
+    /**
+     * Return the phone and email address of the given plant values, as supplier values.
+     */
+    private static ContentValues getContactValues(ContentValues values) {
+        ContentValues supplier = new ContentValues();
+        if (values.containsKey(PlantEntry.COLUMN_PLANT_SUPPLIER_PHONE)) {
+            supplier.put(SupplierEntry.COLUMN_SUPPLIER_PHONE,
+                    values.getAsString(PlantEntry.COLUMN_PLANT_SUPPLIER_PHONE));
+        }
+        if (values.containsKey(PlantEntry.COLUMN_PLANT_SUPPLIER_EMAIL)) {
+            supplier.put(SupplierEntry.COLUMN_SUPPLIER_EMAIL,
+                    values.getAsString(PlantEntry.COLUMN_PLANT_SUPPLIER_EMAIL));
+        }
+        return supplier;
+    }
+}
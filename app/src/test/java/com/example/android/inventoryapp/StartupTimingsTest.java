@@ -0,0 +1,70 @@
+package com.example.android.inventoryapp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of {@link StartupTimings}, the timing marks of the cold start of the app.
+ */
+public class StartupTimingsTest {
+
+    /** Clock moving forward by hand, in milliseconds */
+    private long mNowMillis = 1000;
+
+    private final StartupTimings mTimings = new StartupTimings(new StartupTimings.Clock() {
+        @Override
+        public long nanoTime() {
+            return mNowMillis * 1000000;
+        }
+    });
+
+    @Test
+    public void getMarks_isRelativeToApplicationCreated() throws Exception {
+        mTimings.mark(StartupTimings.MARK_APPLICATION_CREATED);
+        mNowMillis += 20;
+        mTimings.mark(StartupTimings.MARK_CATALOG_INFLATED);
+        mNowMillis += 5;
+        mTimings.mark(StartupTimings.MARK_DATABASE_OPENED);
+        mNowMillis += 10;
+        mTimings.mark(StartupTimings.MARK_FIRST_PAGE_PRIMED);
+        mNowMillis += 15;
+        mTimings.mark(StartupTimings.MARK_FIRST_ROWS_SHOWN);
+
+        Map<String, Long> marks = mTimings.getMarks();
+        assertEquals(Arrays.asList(StartupTimings.MARK_APPLICATION_CREATED, StartupTimings.MARK_CATALOG_INFLATED,
+                StartupTimings.MARK_DATABASE_OPENED, StartupTimings.MARK_FIRST_PAGE_PRIMED,
+                StartupTimings.MARK_FIRST_ROWS_SHOWN), new ArrayList<>(marks.keySet()));
+        assertEquals(Arrays.asList(0L, 20L, 25L, 35L, 50L), new ArrayList<>(marks.values()));
+        assertEquals(15, mTimings.getElapsedMillis(StartupTimings.MARK_DATABASE_OPENED,
+                StartupTimings.MARK_FIRST_ROWS_SHOWN));
+        assertEquals("application_created=0ms catalog_inflated=20ms database_opened=25ms "
+                + "first_page_primed=35ms first_rows_shown=50ms", mTimings.toText());
+    }
+
+    @Test
+    public void mark_onlyKeepsFirstTime() throws Exception {
+        assertTrue(mTimings.mark(StartupTimings.MARK_APPLICATION_CREATED));
+        mNowMillis += 30;
+        assertTrue(mTimings.mark(StartupTimings.MARK_FIRST_ROWS_SHOWN));
+
+        // Rows loaded again after a rotation aren't part of the cold start
+        mNowMillis += 500;
+        assertFalse(mTimings.mark(StartupTimings.MARK_FIRST_ROWS_SHOWN));
+        assertEquals(30, mTimings.getElapsedMillis(StartupTimings.MARK_APPLICATION_CREATED,
+                StartupTimings.MARK_FIRST_ROWS_SHOWN));
+    }
+
+    @Test
+    public void getElapsedMillis_isNegativeUntilBothMarksReached() throws Exception {
+        mTimings.mark(StartupTimings.MARK_APPLICATION_CREATED);
+
+        assertFalse(mTimings.hasMark(StartupTimings.MARK_DATABASE_OPENED));
+        assertEquals(-1, mTimings.getElapsedMillis(StartupTimings.MARK_APPLICATION_CREATED,
+                StartupTimings.MARK_DATABASE_OPENED));
+    }
+}
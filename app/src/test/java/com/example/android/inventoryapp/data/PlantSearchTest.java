@@ -0,0 +1,56 @@
+package com.example.android.inventoryapp.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of {@link PlantSearch}, the search rules used to refine the results
+ * of a search in memory while the user types.
+ */
+public class PlantSearchTest {
+
+    @Test
+    public void tokenizeQuery_splitsOnSeparatorsAndLowerCases() throws Exception {
+        assertEquals(Arrays.asList("red", "rose"), PlantSearch.tokenizeQuery("  Red-ROSE* "));
+        assertEquals(Arrays.asList("or", "caf\u00e9"), PlantSearch.tokenizeQuery("OR \"Caf\u00e9\""));
+        assertTrue(PlantSearch.tokenizeQuery("*-\"").isEmpty());
+    }
+
+    @Test
+    public void narrows_whenEveryPreviousWordIsExtended() throws Exception {
+        assertTrue(PlantSearch.narrows("ro", "ros"));
+        assertTrue(PlantSearch.narrows("ro", "rose red"));
+        assertTrue(PlantSearch.narrows("red ro", "rose red"));
+        assertFalse(PlantSearch.narrows("ros", "ro"));
+        assertFalse(PlantSearch.narrows("rose", "tulip"));
+        assertFalse(PlantSearch.narrows("", "rose"));
+    }
+
+    @Test
+    public void matches_likeTheFullTextIndex() throws Exception {
+        List<String> words = PlantSearch.tokenizeQuery("ro gree");
+        assertTrue(PlantSearch.matches(words, "Red Rose", "Green Farm"));
+        assertTrue(PlantSearch.matches(words, "Rosemary", "Evergreen/GREENHOUSE"));
+        assertFalse(PlantSearch.matches(words, "Red Rose", "Farm"));
+        assertFalse(PlantSearch.matches(words, "Carrot", "Green Farm"));
+        assertFalse(PlantSearch.matches(PlantSearch.tokenizeQuery("cafe"), "Caf\u00e9", null));
+    }
+
+    @Test
+    public void sortByRank_likeTheProvider() throws Exception {
+        List<String> names = new ArrayList<>(Arrays.asList("Wild rose", "zinnia", "Rose", "primrose", "rosemary"));
+        PlantSearch.sortByRank(names, new PlantSearch.NameProvider<String>() {
+            @Override
+            public String getName(String item) {
+                return item;
+            }
+        }, "ros");
+        // Names starting with the query, then names containing it, then the others
+        assertEquals(Arrays.asList("Rose", "rosemary", "primrose", "Wild rose", "zinnia"), names);
+    }
+}
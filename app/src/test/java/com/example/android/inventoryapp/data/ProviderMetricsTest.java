@@ -0,0 +1,63 @@
+package com.example.android.inventoryapp.data;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of {@link ProviderMetrics}, the latency histograms of {@link PlantProvider}.
+ */
+public class ProviderMetricsTest {
+
+    private final ProviderMetrics mMetrics = new ProviderMetrics(new String[]{"plants", "plant_id"});
+
+    @Test
+    public void getBucket_isPowerOfTwoOfMicroseconds() throws Exception {
+        assertEquals(0, ProviderMetrics.getBucket(0));
+        assertEquals(0, ProviderMetrics.getBucket(999));
+        assertEquals(1, ProviderMetrics.getBucket(1000));
+        assertEquals(2, ProviderMetrics.getBucket(2000));
+        assertEquals(2, ProviderMetrics.getBucket(3999));
+        assertEquals(3, ProviderMetrics.getBucket(4000));
+        assertEquals(11, ProviderMetrics.getBucket(1024000));
+        assertEquals(ProviderMetrics.BUCKET_COUNT - 1, ProviderMetrics.getBucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void toText_onlyListsRecordedOperations() throws Exception {
+        assertEquals("", mMetrics.toText());
+
+        mMetrics.record(ProviderMetrics.OP_QUERY, 1, System.nanoTime(), 1);
+        mMetrics.recordElapsed(ProviderMetrics.OP_QUERY, 1, 5000, 1);
+
+        String text = mMetrics.toText();
+        assertTrue(text, text.startsWith("query:plant_id: count=2 "));
+        assertTrue(text, text.contains(" rows=2"));
+        assertEquals(1, text.split("\n").length);
+    }
+
+    @Test
+    public void recordRows_addsRowsWithoutCountingOperation() throws Exception {
+        mMetrics.record(ProviderMetrics.OP_QUERY, 0, System.nanoTime(), 0);
+        mMetrics.recordRows(ProviderMetrics.OP_QUERY, 0, 50);
+
+        String text = mMetrics.toText();
+        assertTrue(text, text.startsWith("query:plants: count=1 "));
+        assertTrue(text, text.contains(" rows=50"));
+    }
+
+    @Test
+    public void toText_boundsPercentilesByBuckets() throws Exception {
+        // 90 operations of 3 us, and 10 operations of 100 ms
+        for (int i = 0; i < 90; i++) {
+            mMetrics.recordElapsed(ProviderMetrics.OP_UPDATE, 0, 3000, 1);
+        }
+        for (int i = 0; i < 10; i++) {
+            mMetrics.recordElapsed(ProviderMetrics.OP_UPDATE, 0, 100000000, 1);
+        }
+
+        String text = mMetrics.toText();
+        assertTrue(text, text.startsWith("update:plants: count=100 mean=10002us max=100000us "
+                + "p50<4us p90<4us p99<131072us rows=100"));
+    }
+}